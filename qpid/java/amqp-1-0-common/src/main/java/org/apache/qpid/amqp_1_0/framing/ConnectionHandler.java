@@ -93,6 +93,10 @@ public class ConnectionHandler
         private final BlockingQueue<AMQFrame<T>> _queue = new ArrayBlockingQueue<AMQFrame<T>>(100);
         private ConnectionEndpoint _conn;
 
+        // frames are queued by the threads of all the sessions, so this does not use the connection lock: nothing
+        // called while holding it may lock the connection
+        private final Object _lock = new Object();
+
         private final AMQFrame<T> _endOfFrameMarker = new AMQFrame<T>(null)
         {
             @Override public short getChannel()
@@ -141,10 +145,10 @@ public class ConnectionHandler
 
         private void immediateClose()
         {
-            synchronized (_conn.getLock())
+            synchronized (_lock)
             {
                 _closed = true;
-                _conn.getLock().notifyAll();
+                _lock.notifyAll();
             }
         }
 
@@ -160,25 +164,25 @@ public class ConnectionHandler
 
         public void send(final AMQFrame<T> frame, final ByteBuffer payload)
         {
-            synchronized(_conn.getLock())
-            {
-                try
-                {
 // TODO HACK - check frame length
-                    int size = _conn.getDescribedTypeRegistry()
-                            .getValueWriter(frame.getFrameBody()).writeToBuffer(EMPTY_BYTEBUFFER) + 8;
+            int size = _conn.getDescribedTypeRegistry()
+                    .getValueWriter(frame.getFrameBody()).writeToBuffer(EMPTY_BYTEBUFFER) + 8;
 
-                    if(size > _conn.getMaxFrameSize())
-                    {
-                        throw new OversizeFrameException(frame, size);
-                    }
+            if(size > _conn.getMaxFrameSize())
+            {
+                throw new OversizeFrameException(frame, size);
+            }
 
+            synchronized(_lock)
+            {
+                try
+                {
                     while(!_queue.offer(frame))
                     {
-                        _conn.getLock().wait(1000L);
+                        _lock.wait(1000L);
 
                     }
-                    _conn.getLock().notifyAll();
+                    _lock.notifyAll();
                 }
                 catch (InterruptedException e)
                 {
@@ -190,19 +194,19 @@ public class ConnectionHandler
 
         public void close()
         {
-            synchronized (_conn.getLock())
+            synchronized (_lock)
             {
                 if(!_queue.offer(_endOfFrameMarker))
                 {
                     _setForClose = true;
                 }
-                _conn.getLock().notifyAll();
+                _lock.notifyAll();
             }
         }
 
         public AMQFrame<T> getNextFrame(final boolean wait)
         {
-            synchronized(_conn.getLock())
+            synchronized(_lock)
             {
                 long time = System.currentTimeMillis();
                 try
@@ -210,7 +214,7 @@ public class ConnectionHandler
                     AMQFrame frame = null;
                     while(!closed() && (frame = _queue.poll()) == null && wait)
                     {
-                        _conn.getLock().wait(_conn.getIdleTimeout()/2);
+                        _lock.wait(_conn.getIdleTimeout()/2);
 
                         if(_conn.getIdleTimeout()>0)
                         {
@@ -248,17 +252,17 @@ public class ConnectionHandler
                         FRAME_LOGGER.fine("SEND[" + _conn.getRemoteAddress() + "|" + frame.getChannel() + "] : " + frame.getFrameBody());
                     }
 
-                    _conn.getLock().notifyAll();
+                    _lock.notifyAll();
 
                     return frame;
                 }
                 catch (InterruptedException e)
                 {
-                    _conn.setClosedForOutput(true);
                     e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-                    return null;
                 }
             }
+            _conn.setClosedForOutput(true);
+            return null;
         }
 
         public boolean closed()
@@ -82,7 +82,7 @@ public class AMQPFrameTransport implements FrameTransport<AMQFrame<FrameBody>>,
 
     public void send(final AMQFrame<FrameBody> frame, final ByteBuffer payload)
     {
-        synchronized(_endpoint.getLock())
+        synchronized(_outputLock)
         {
             boolean empty = _queue.isEmpty();
             try
@@ -90,7 +90,7 @@ public class AMQPFrameTransport implements FrameTransport<AMQFrame<FrameBody>>,
 
                 while(!_queue.offer(frame))
                 {
-                    _endpoint.getLock().wait(1000L);
+                    _outputLock.wait(1000L);
 
                 }
                 if(empty && _outputListener != null)
@@ -98,7 +98,7 @@ public class AMQPFrameTransport implements FrameTransport<AMQFrame<FrameBody>>,
                     _outputListener.onStateChange(true);
                 }
 
-                _endpoint.getLock().notifyAll();
+                _outputLock.notifyAll();
             }
             catch (InterruptedException e)
             {
@@ -109,15 +109,15 @@ public class AMQPFrameTransport implements FrameTransport<AMQFrame<FrameBody>>,
 
     public void close()
     {
-        synchronized (_endpoint.getLock())
+        synchronized (_outputLock)
         {
-            _endpoint.getLock().notifyAll();
+            _outputLock.notifyAll();
         }
     }
 
     public AMQFrame<FrameBody> getNextFrame()
     {
-        synchronized(_endpoint.getLock())
+        synchronized(_outputLock)
         {
             AMQFrame<FrameBody> frame = null;
             if(isOpenForOutput())
@@ -33,6 +33,7 @@ import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -94,9 +95,9 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
     private static final long DEFAULT_SYNC_TIMEOUT = Long.getLong("amqp.connection_sync_timeout", 5000l);
 
 
-    private ConnectionState _state = ConnectionState.UNOPENED;
+    private volatile ConnectionState _state = ConnectionState.UNOPENED;
     private short _channelMax = DEFAULT_CHANNEL_MAX;
-    private int _maxFrameSize = 4096;
+    private volatile int _maxFrameSize = 4096;
     private String _remoteContainerId;
 
     private SocketAddress _remoteAddress;
@@ -107,9 +108,9 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
     // positioned by the *incoming* channel
     private SessionEndpoint[] _receivingSessions;
     private boolean _closedForInput;
-    private boolean _closedForOutput;
+    private volatile boolean _closedForOutput;
 
-    private long _idleTimeout;
+    private volatile long _idleTimeout;
 
     private AMQPDescribedTypeRegistry _describedTypeRegistry = AMQPDescribedTypeRegistry.newInstance()
             .registerTransportLayer()
@@ -330,7 +331,7 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         return -1;
     }
 
-    private SessionEndpoint getSession(final short channel)
+    private synchronized SessionEndpoint getSession(final short channel)
     {
         SessionEndpoint session = _receivingSessions[channel];
         if (session == null)
@@ -394,10 +395,19 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         notifyAll();
     }
 
-    public synchronized void receiveClose(short channel, Close close)
+    public void receiveClose(short channel, Close close)
     {
         setClosedForInput(true);
         _connectionEventListener.closeReceived();
+        synchronized (this)
+        {
+            closeReceived(close);
+        }
+        notifySessions();
+    }
+
+    private void closeReceived(final Close close)
+    {
         switch (_state)
         {
             case UNOPENED:
@@ -446,10 +456,16 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         }
     }
 
-    public synchronized void inputClosed()
+    public void inputClosed()
     {
-        if (!_closedForInput)
+        List<SessionEndpoint> sessions = new ArrayList<SessionEndpoint>();
+        synchronized (this)
         {
+            if (_closedForInput)
+            {
+                notifyAll();
+                return;
+            }
             _closedForInput = true;
             switch (_state)
             {
@@ -472,18 +488,68 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
                 {
                     if (_receivingSessions[i] != null)
                     {
-                        _receivingSessions[i].end();
+                        sessions.add(_receivingSessions[i]);
                         _receivingSessions[i] = null;
 
                     }
                 }
             }
-            if(_connectionEventListener != null)
+        }
+
+        // sessions take their own locks, and may call back into the connection, so must be ended without holding
+        // the connection lock
+        for (SessionEndpoint session : sessions)
+        {
+            session.end();
+        }
+        if(_connectionEventListener != null)
+        {
+            _connectionEventListener.closeReceived();
+        }
+        synchronized (this)
+        {
+            notifyAll();
+        }
+        notifySessions();
+    }
+
+    /**
+     * Wakes any threads waiting on the sessions of this connection, whose conditions may depend on the state of the
+     * connection.
+     */
+    private void notifySessions()
+    {
+        Set<SessionEndpoint> sessions = new HashSet<SessionEndpoint>();
+        synchronized (this)
+        {
+            if (_sendingSessions != null)
+            {
+                for (SessionEndpoint session : _sendingSessions)
+                {
+                    if (session != null)
+                    {
+                        sessions.add(session);
+                    }
+                }
+            }
+            if (_receivingSessions != null)
+            {
+                for (SessionEndpoint session : _receivingSessions)
+                {
+                    if (session != null)
+                    {
+                        sessions.add(session);
+                    }
+                }
+            }
+        }
+        for (SessionEndpoint session : sessions)
+        {
+            synchronized (session.getLock())
             {
-                _connectionEventListener.closeReceived();
+                session.getLock().notifyAll();
             }
         }
-        notifyAll();
     }
 
     private void sendClose(Close closeToSend)
@@ -499,91 +565,50 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         notifyAll();
     }
 
-    public synchronized void receiveBegin(short channel, Begin begin)
+    public void receiveBegin(short channel, Begin begin)
     {
-        short myChannelId;
-
-
         if (begin.getRemoteChannel() != null)
         {
-            myChannelId = begin.getRemoteChannel().shortValue();
-            SessionEndpoint endpoint;
-            try
-            {
-                endpoint = _sendingSessions[myChannelId];
-            }
-            catch (IndexOutOfBoundsException e)
+            // the peer is replying to a session we began: the session is updated under its own lock
+            SessionEndpoint endpoint = findBegunSession(channel, begin);
+            if (endpoint != null && endpoint.receiveBegin(channel, begin) == SessionState.END_SENT)
             {
-                final Error error = new Error();
-                error.setCondition(ConnectionError.FRAMING_ERROR);
-                error.setDescription("BEGIN received on channel " + channel + " with given remote-channel "
-                                     + begin.getRemoteChannel() + " which is outside the valid range of 0 to "
-                                     + _channelMax + ".");
-                close(error);
-                return;
-            }
-            if (endpoint != null)
-            {
-                if (_receivingSessions[channel] == null)
+                synchronized (this)
                 {
-                    _receivingSessions[channel] = endpoint;
-                    endpoint.setReceivingChannel(channel);
-                    endpoint.setNextIncomingId(begin.getNextOutgoingId());
-                    endpoint.setOutgoingSessionCredit(begin.getIncomingWindow());
-
-                    if (endpoint.getState() == SessionState.END_SENT)
-                    {
-                        _sendingSessions[myChannelId] = null;
-                    }
-                }
-                else
-                {
-                    final Error error = new Error();
-                    error.setCondition(ConnectionError.FRAMING_ERROR);
-                    error.setDescription("BEGIN received on channel " + channel + " which is already in use.");
-                    close(error);
+                    _sendingSessions[begin.getRemoteChannel().shortValue()] = null;
                 }
             }
-            else
-            {
-                final Error error = new Error();
-                error.setCondition(ConnectionError.FRAMING_ERROR);
-                error.setDescription("BEGIN received on channel " + channel + " with given remote-channel "
-                                     + begin.getRemoteChannel() + " which is not known as a begun session.");
-                close(error);
-            }
-
-
         }
-        else // Peer requesting session creation
+        else
         {
+            receivePeerBegin(channel, begin);
+        }
+    }
 
-            myChannelId = getFirstFreeChannel();
-            if (myChannelId == -1)
-            {
-                // close any half open channel
-                myChannelId = getFirstFreeChannel();
-
-            }
-
+    private synchronized SessionEndpoint findBegunSession(short channel, Begin begin)
+    {
+        short myChannelId = begin.getRemoteChannel().shortValue();
+        SessionEndpoint endpoint;
+        try
+        {
+            endpoint = _sendingSessions[myChannelId];
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            final Error error = new Error();
+            error.setCondition(ConnectionError.FRAMING_ERROR);
+            error.setDescription("BEGIN received on channel " + channel + " with given remote-channel "
+                                 + begin.getRemoteChannel() + " which is outside the valid range of 0 to "
+                                 + _channelMax + ".");
+            close(error);
+            return null;
+        }
+        if (endpoint != null)
+        {
             if (_receivingSessions[channel] == null)
             {
-                SessionEndpoint endpoint = new SessionEndpoint(this, begin);
-
                 _receivingSessions[channel] = endpoint;
-                _sendingSessions[myChannelId] = endpoint;
-
-                Begin beginToSend = new Begin();
-
-                endpoint.setReceivingChannel(channel);
-                endpoint.setSendingChannel(myChannelId);
-                beginToSend.setRemoteChannel(UnsignedShort.valueOf(channel));
-                beginToSend.setNextOutgoingId(endpoint.getNextOutgoingId());
-                beginToSend.setOutgoingWindow(endpoint.getOutgoingWindowSize());
-                beginToSend.setIncomingWindow(endpoint.getIncomingWindowSize());
-                send(myChannelId, beginToSend);
-
-                _connectionEventListener.remoteSessionCreation(endpoint);
+                return endpoint;
             }
             else
             {
@@ -592,20 +617,68 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
                 error.setDescription("BEGIN received on channel " + channel + " which is already in use.");
                 close(error);
             }
+        }
+        else
+        {
+            final Error error = new Error();
+            error.setCondition(ConnectionError.FRAMING_ERROR);
+            error.setDescription("BEGIN received on channel " + channel + " with given remote-channel "
+                                 + begin.getRemoteChannel() + " which is not known as a begun session.");
+            close(error);
+        }
+        return null;
+    }
+
+    private synchronized void receivePeerBegin(short channel, Begin begin)
+    {
+        short myChannelId = getFirstFreeChannel();
+        if (myChannelId == -1)
+        {
+            // close any half open channel
+            myChannelId = getFirstFreeChannel();
 
         }
 
+        if (_receivingSessions[channel] == null)
+        {
+            // the new session is not yet known to any other thread, so may be set up under the connection lock
+            SessionEndpoint endpoint = new SessionEndpoint(this, begin);
+
+            _receivingSessions[channel] = endpoint;
+            _sendingSessions[myChannelId] = endpoint;
+
+            Begin beginToSend = new Begin();
 
+            endpoint.setReceivingChannel(channel);
+            endpoint.setSendingChannel(myChannelId);
+            beginToSend.setRemoteChannel(UnsignedShort.valueOf(channel));
+            beginToSend.setNextOutgoingId(endpoint.getNextOutgoingId());
+            beginToSend.setOutgoingWindow(endpoint.getOutgoingWindowSize());
+            beginToSend.setIncomingWindow(endpoint.getIncomingWindowSize());
+            send(myChannelId, beginToSend);
+
+            _connectionEventListener.remoteSessionCreation(endpoint);
+        }
+        else
+        {
+            final Error error = new Error();
+            error.setCondition(ConnectionError.FRAMING_ERROR);
+            error.setDescription("BEGIN received on channel " + channel + " which is already in use.");
+            close(error);
+        }
     }
 
 
-    public synchronized void receiveEnd(short channel, End end)
+    public void receiveEnd(short channel, End end)
     {
-        SessionEndpoint endpoint = _receivingSessions[channel];
-        if (endpoint != null)
+        SessionEndpoint endpoint;
+        synchronized (this)
         {
+            endpoint = _receivingSessions[channel];
             _receivingSessions[channel] = null;
-
+        }
+        if (endpoint != null)
+        {
             endpoint.receiveEnd(end);
         }
         else
@@ -625,7 +698,7 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         }
     }
 
-    public synchronized void receiveAttach(short channel, Attach attach)
+    public void receiveAttach(short channel, Attach attach)
     {
         SessionEndpoint endPoint = getSession(channel);
         if (endPoint != null)
@@ -635,7 +708,7 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
     }
 
 
-    public synchronized void receiveDetach(short channel, Detach detach)
+    public void receiveDetach(short channel, Detach detach)
     {
         SessionEndpoint endPoint = getSession(channel);
         if (endPoint != null)
@@ -644,7 +717,7 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         }
     }
 
-    public synchronized void receiveTransfer(short channel, Transfer transfer)
+    public void receiveTransfer(short channel, Transfer transfer)
     {
         SessionEndpoint endPoint = getSession(channel);
         if (endPoint != null)
@@ -653,7 +726,7 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         }
     }
 
-    public synchronized void receiveDisposition(short channel, Disposition disposition)
+    public void receiveDisposition(short channel, Disposition disposition)
     {
         SessionEndpoint endPoint = getSession(channel);
         if (endPoint != null)
@@ -662,7 +735,7 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         }
     }
 
-    public synchronized void receiveFlow(short channel, Flow flow)
+    public void receiveFlow(short channel, Flow flow)
     {
         SessionEndpoint endPoint = getSession(channel);
         if (endPoint != null)
@@ -672,13 +745,17 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
     }
 
 
-    public synchronized void send(short channel, FrameBody body)
+    public void send(short channel, FrameBody body)
     {
         send(channel, body, null);
     }
 
 
-    public synchronized int send(short channel, FrameBody body, ByteBuffer payload)
+    /**
+     * Sends a frame.  Sessions send frames while holding their own locks rather than that of the connection, so this
+     * method takes no lock itself: the body and payload must not be changed by other threads while it is encoded.
+     */
+    public int send(short channel, FrameBody body, ByteBuffer payload)
     {
         if (!_closedForOutput)
         {
@@ -791,7 +868,7 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         _logger = logger;
     }
 
-    public synchronized void receive(final short channel, final Object frame)
+    public void receive(final short channel, final Object frame)
     {
         if (_logger.isEnabled())
         {
@@ -799,11 +876,15 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         }
         if (frame instanceof FrameBody)
         {
+            // connection frames lock the connection, session frames only their session
             ((FrameBody) frame).invoke(channel, this);
         }
         else if (frame instanceof SaslFrameBody)
         {
-            ((SaslFrameBody) frame).invoke(this);
+            synchronized (this)
+            {
+                ((SaslFrameBody) frame).invoke(this);
+            }
         }
     }
 
@@ -829,7 +910,7 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         return this;
     }
 
-    public synchronized long getIdleTimeout()
+    public long getIdleTimeout()
     {
         return _idleTimeout;
     }
@@ -179,6 +179,20 @@ public class SendingLinkEndpoint extends LinkEndpoint<SendingLinkListener>
                && getSession().hasCreditToSend();
     }
 
+    /**
+     * @return the number of transfers which can be sent on this link without exceeding either the link credit or
+     * the credit of its session
+     */
+    public int getCreditToSend()
+    {
+        UnsignedInteger linkCredit = getLinkCredit();
+        if(linkCredit == null)
+        {
+            return 0;
+        }
+        return (int) Math.min(linkCredit.longValue(), (long) getSession().getCreditToSend());
+    }
+
     public void receiveDeliveryState(final Delivery unsettled,
                                                final DeliveryState state,
                                                final Boolean settled)
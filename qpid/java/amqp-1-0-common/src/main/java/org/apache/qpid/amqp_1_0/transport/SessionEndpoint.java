@@ -56,7 +56,7 @@ import org.apache.qpid.amqp_1_0.type.transport.Transfer;
 
 public class SessionEndpoint
 {
-    private SessionState _state = SessionState.INACTIVE;
+    private volatile SessionState _state = SessionState.INACTIVE;
 
     private final Map<String, LinkEndpoint> _linkMap = new HashMap<String, LinkEndpoint>();
     private final Map<LinkEndpoint, UnsignedInteger> _localLinkEndpoints = new HashMap<LinkEndpoint, UnsignedInteger>();
@@ -168,6 +168,23 @@ public class SessionEndpoint
         return _state;
     }
 
+    /**
+     * Called when the peer replies to the begin sent for this session.
+     *
+     * @return the state of the session once the begin has been received
+     */
+    SessionState receiveBegin(final short receivingChannel, final Begin begin)
+    {
+        synchronized(getLock())
+        {
+            setReceivingChannel(receivingChannel);
+            setNextIncomingId(begin.getNextOutgoingId());
+            setOutgoingSessionCredit(begin.getIncomingWindow());
+            getLock().notifyAll();
+            return _state;
+        }
+    }
+
     public void end()
     {
         end(new End());
@@ -261,49 +278,52 @@ public class SessionEndpoint
 
     public void receiveAttach(final Attach attach)
     {
-        if(_state == SessionState.ACTIVE)
+        synchronized(getLock())
         {
-            UnsignedInteger handle = attach.getHandle();
-            if(_remoteLinkEndpoints.containsKey(handle))
-            {
-                // TODO - Error - handle busy?
-            }
-            else
+            if(_state == SessionState.ACTIVE)
             {
-                LinkEndpoint endpoint = getLinkMap().get(attach.getName());
-                if(endpoint == null)
+                UnsignedInteger handle = attach.getHandle();
+                if(_remoteLinkEndpoints.containsKey(handle))
+                {
+                    // TODO - Error - handle busy?
+                }
+                else
                 {
-                    endpoint = attach.getRole() == Role.RECEIVER
-                               ? new SendingLinkEndpoint(this, attach)
-                               : new ReceivingLinkEndpoint(this, attach);
+                    LinkEndpoint endpoint = getLinkMap().get(attach.getName());
+                    if(endpoint == null)
+                    {
+                        endpoint = attach.getRole() == Role.RECEIVER
+                                   ? new SendingLinkEndpoint(this, attach)
+                                   : new ReceivingLinkEndpoint(this, attach);
 
-                    // TODO : fix below - distinguish between local and remote owned
-                    endpoint.setSource(attach.getSource());
-                    endpoint.setTarget(attach.getTarget());
+                        // TODO : fix below - distinguish between local and remote owned
+                        endpoint.setSource(attach.getSource());
+                        endpoint.setTarget(attach.getTarget());
 
 
-                }
+                    }
 
-                if(attach.getRole() == Role.SENDER)
-                {
-                    endpoint.setDeliveryCount(attach.getInitialDeliveryCount());
-                }
+                    if(attach.getRole() == Role.SENDER)
+                    {
+                        endpoint.setDeliveryCount(attach.getInitialDeliveryCount());
+                    }
 
-                _remoteLinkEndpoints.put(handle, endpoint);
+                    _remoteLinkEndpoints.put(handle, endpoint);
 
-                if(!_localLinkEndpoints.containsKey(endpoint))
-                {
-                    UnsignedInteger localHandle = findNextAvailableHandle();
-                    endpoint.setLocalHandle(localHandle);
-                    _localLinkEndpoints.put(endpoint, localHandle);
+                    if(!_localLinkEndpoints.containsKey(endpoint))
+                    {
+                        UnsignedInteger localHandle = findNextAvailableHandle();
+                        endpoint.setLocalHandle(localHandle);
+                        _localLinkEndpoints.put(endpoint, localHandle);
 
-                    _sessionEventListener.remoteLinkCreation(endpoint);
+                        _sessionEventListener.remoteLinkCreation(endpoint);
 
 
-                }
-                else
-                {
-                    endpoint.receiveAttach(attach);
+                    }
+                    else
+                    {
+                        endpoint.receiveAttach(attach);
+                    }
                 }
             }
         }
@@ -337,8 +357,11 @@ public class SessionEndpoint
 
     public void receiveDetach(final Detach detach)
     {
-        UnsignedInteger handle = detach.getHandle();
-        detach(handle, detach);
+        synchronized(getLock())
+        {
+            UnsignedInteger handle = detach.getHandle();
+            detach(handle, detach);
+        }
     }
 
     private void detach(UnsignedInteger handle, Detach detach)
@@ -478,45 +501,47 @@ public class SessionEndpoint
 
     public void receiveDisposition(final Disposition disposition)
     {
-        Role dispositionRole = disposition.getRole();
+        synchronized(getLock())
+        {
+            Role dispositionRole = disposition.getRole();
 
-        LinkedHashMap<UnsignedInteger, Delivery> unsettledTransfers;
+            LinkedHashMap<UnsignedInteger, Delivery> unsettledTransfers;
 
-        if(dispositionRole == Role.RECEIVER)
-        {
-            unsettledTransfers = _outgoingUnsettled;
-        }
-        else
-        {
-            unsettledTransfers = _incomingUnsettled;
+            if(dispositionRole == Role.RECEIVER)
+            {
+                unsettledTransfers = _outgoingUnsettled;
+            }
+            else
+            {
+                unsettledTransfers = _incomingUnsettled;
 
-        }
+            }
 
-        UnsignedInteger deliveryId = disposition.getFirst();
-        UnsignedInteger last = disposition.getLast();
-        if(last == null)
-        {
-            last = deliveryId;
-        }
+            UnsignedInteger deliveryId = disposition.getFirst();
+            UnsignedInteger last = disposition.getLast();
+            if(last == null)
+            {
+                last = deliveryId;
+            }
 
 
-                while(deliveryId.compareTo(last)<=0)
-                {
+                    while(deliveryId.compareTo(last)<=0)
+                    {
 
-                    Delivery delivery = unsettledTransfers.get(deliveryId);
-                    if(delivery != null)
+                        Delivery delivery = unsettledTransfers.get(deliveryId);
+                        if(delivery != null)
+                        {
+                            delivery.getLinkEndpoint().receiveDeliveryState(delivery,
+                                                                       disposition.getState(),
+                                                                       disposition.getSettled());
+                        }
+                        deliveryId = deliveryId.add(UnsignedInteger.ONE);
+                    }
+                    if(disposition.getSettled())
                     {
-                        delivery.getLinkEndpoint().receiveDeliveryState(delivery,
-                                                                   disposition.getState(),
-                                                                   disposition.getSettled());
+                        checkSendFlow();
                     }
-                    deliveryId = deliveryId.add(UnsignedInteger.ONE);
-                }
-                if(disposition.getSettled())
-                {
-                    checkSendFlow();
-                }
-
+        }
     }
 
     private void checkSendFlow()
@@ -647,9 +672,13 @@ public class SessionEndpoint
 
     }
 
+    /**
+     * The lock guarding the state of this session and its links, which is independent of the locks of the other
+     * sessions on the connection.  A thread holding it may go on to lock the connection, but never the reverse.
+     */
     public Object getLock()
     {
-        return _connection.getLock();
+        return this;
     }
 
 
@@ -660,12 +689,29 @@ public class SessionEndpoint
 
     public void waitUntil(Predicate predicate) throws TimeoutException, InterruptedException
     {
-        _connection.waitUntil(predicate);
+        waitUntil(predicate, getSyncTimeout());
     }
 
     public void waitUntil(Predicate predicate, long timeout) throws TimeoutException, InterruptedException
     {
-        _connection.waitUntil(predicate, timeout);
+        long endTime = System.currentTimeMillis() + timeout;
+
+        synchronized (getLock())
+        {
+            while (!predicate.isSatisfied())
+            {
+                getLock().wait(timeout);
+
+                if (!predicate.isSatisfied())
+                {
+                    timeout = endTime - System.currentTimeMillis();
+                    if (timeout <= 0l)
+                    {
+                        throw new TimeoutException();
+                    }
+                }
+            }
+        }
     }
 
 
@@ -831,6 +877,20 @@ public class SessionEndpoint
         return b && b1;
     }
 
+    /**
+     * @return the number of transfers which can be sent before either the session credit granted by the peer or the
+     * outgoing window of this session is used up
+     */
+    public int getCreditToSend()
+    {
+        if(_outgoingSessionCredit == null)
+        {
+            return 0;
+        }
+        long credit = Math.min(_outgoingSessionCredit.longValue(), (long) _availableOutgoingCredit);
+        return credit > 0l ? (int) credit : 0;
+    }
+
     public UnsignedInteger getIncomingWindowSize()
     {
         return UnsignedInteger.valueOf(_availableIncomingCredit);
@@ -68,6 +68,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AMQPDescribedTypeRegistry implements DescribedTypeConstructorRegistry, ValueWriter.Registry
 {
@@ -298,7 +299,8 @@ public class AMQPDescribedTypeRegistry implements DescribedTypeConstructorRegist
     }
 
 
-    private final Map<Class, ValueWriter.Factory> _writerMap = new HashMap<Class, ValueWriter.Factory>();
+    // sessions encode frames concurrently, and writers for new collection classes are added as they are first seen
+    private final Map<Class, ValueWriter.Factory> _writerMap = new ConcurrentHashMap<Class, ValueWriter.Factory>();
 
     public <V extends Object> ValueWriter<V> getValueWriter(V value, Map<Class, ValueWriter> localCache)
     {
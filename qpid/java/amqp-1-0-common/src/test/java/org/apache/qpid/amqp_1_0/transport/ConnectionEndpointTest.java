@@ -0,0 +1,402 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.amqp_1_0.transport;
+
+import java.nio.ByteBuffer;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.qpid.amqp_1_0.framing.AMQFrame;
+import org.apache.qpid.amqp_1_0.type.FrameBody;
+import org.apache.qpid.amqp_1_0.type.UnsignedShort;
+import org.apache.qpid.amqp_1_0.type.transport.Error;
+import org.apache.qpid.amqp_1_0.type.transport.Open;
+
+public class ConnectionEndpointTest extends TestCase
+{
+    private static final long TIMEOUT = 10000l;
+    private static final int THREADS = 4;
+
+    private final List<Throwable> _errors = Collections.synchronizedList(new ArrayList<Throwable>());
+    private final List<SessionEndpoint> _remoteSessions =
+            Collections.synchronizedList(new ArrayList<SessionEndpoint>());
+
+    private ConnectionEndpoint _client;
+    private ConnectionEndpoint _server;
+    private Pipe _clientOutput;
+    private Pipe _serverOutput;
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            if (_clientOutput != null)
+            {
+                _clientOutput.close();
+            }
+            if (_serverOutput != null)
+            {
+                _serverOutput.close();
+            }
+        }
+        finally
+        {
+            super.tearDown();
+        }
+    }
+
+    public void testSessionsProgressWhileAnotherSessionIsLocked() throws Exception
+    {
+        connect();
+        final SessionEndpoint lockedSession = createActiveSession(_client);
+
+        Runnable sessionLifecycle = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                SessionEndpoint session = createActiveSession(_client);
+                for (int i = 0; i < 10; i++)
+                {
+                    synchronized (session.getLock())
+                    {
+                        session.sendFlow();
+                    }
+                }
+                endSession(session);
+            }
+        };
+
+        // the sessions only take their own locks and that of the connection, so are not held up by another session
+        synchronized (lockedSession.getLock())
+        {
+            runConcurrently(sessionLifecycle, 1);
+        }
+
+        assertNoErrors();
+        assertEquals("Unexpected number of sessions begun by the peer", THREADS + 1, _remoteSessions.size());
+        assertTrue("Locked session should still be active", lockedSession.isActive());
+        assertTrue("Connection should still be open", _client.isOpen());
+    }
+
+    public void testBeginRepliesAndEndsRaceWithCreateSession() throws Exception
+    {
+        connect();
+
+        Runnable sessionLifecycles = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                SessionEndpoint session = createActiveSession(_client);
+                endSession(session);
+            }
+        };
+        runConcurrently(sessionLifecycles, 50);
+
+        assertNoErrors();
+        assertEquals("Unexpected number of sessions begun by the peer", THREADS * 50, _remoteSessions.size());
+        assertTrue("Client connection should still be open", _client.isOpen());
+        assertTrue("Server connection should still be open", _server.isOpen());
+        assertEquals("Channels of ended sessions should be free again", 0, _client.getFirstFreeChannel());
+    }
+
+    public void testWaiterOnSessionWokenWhenInputClosed() throws Exception
+    {
+        // the peer never replies, so the session is known to the connection only as one it is sending on
+        _client = new ConnectionEndpoint(new Container(), (Principal) null, null);
+        _clientOutput = new Pipe(null);
+        _client.setFrameOutputHandler(_clientOutput);
+        _client.open();
+        Open open = new Open();
+        open.setContainerId("peer");
+        open.setChannelMax(UnsignedShort.valueOf((short) 255));
+        _client.receiveOpen((short) 0, open);
+
+        SessionEndpoint session = _client.createSession("test");
+        assertEquals(SessionState.BEGIN_SENT, session.getState());
+
+        Thread waiter = startWaiterForInputClosed(session);
+        _client.inputClosed();
+
+        waiter.join(TIMEOUT);
+        assertFalse("Waiter on session was not woken when the input of the connection was closed", waiter.isAlive());
+        assertNoErrors();
+    }
+
+    public void testWaiterOnSessionWokenWhenCloseReceived() throws Exception
+    {
+        connect();
+        SessionEndpoint session = createActiveSession(_client);
+
+        Thread waiter = startWaiterForInputClosed(session);
+        _server.close(new Error());
+
+        waiter.join(TIMEOUT);
+        assertFalse("Waiter on session was not woken when the connection was closed by the peer", waiter.isAlive());
+        assertNoErrors();
+        assertTrue("Connection should be closed", _client.isClosed());
+    }
+
+    private void connect() throws Exception
+    {
+        _client = new ConnectionEndpoint(new Container("client"), (Principal) null, null);
+        _server = new ConnectionEndpoint(new Container("server"), (SaslServerProvider) null);
+        _server.setConnectionEventListener(new ConnectionEventListener()
+        {
+            @Override
+            public void openReceived()
+            {
+            }
+
+            @Override
+            public void remoteSessionCreation(final SessionEndpoint endpoint)
+            {
+                _remoteSessions.add(endpoint);
+            }
+
+            @Override
+            public void closeReceived()
+            {
+            }
+        });
+
+        _clientOutput = new Pipe(_server);
+        _serverOutput = new Pipe(_client);
+        _client.setFrameOutputHandler(_clientOutput);
+        _server.setFrameOutputHandler(_serverOutput);
+
+        _client.open();
+        _client.waitUntil(new Predicate()
+        {
+            @Override
+            public boolean isSatisfied()
+            {
+                return _client.isOpen();
+            }
+        }, TIMEOUT);
+    }
+
+    private SessionEndpoint createActiveSession(final ConnectionEndpoint connection)
+    {
+        final SessionEndpoint session = connection.createSession("test");
+        assertNotNull("No free channel for session", session);
+        waitUntil(session, new Predicate()
+        {
+            @Override
+            public boolean isSatisfied()
+            {
+                return session.isActive();
+            }
+        });
+        return session;
+    }
+
+    private void endSession(final SessionEndpoint session)
+    {
+        session.end();
+        waitUntil(session, new Predicate()
+        {
+            @Override
+            public boolean isSatisfied()
+            {
+                return session.getState() == SessionState.ENDED;
+            }
+        });
+    }
+
+    private void waitUntil(final SessionEndpoint session, final Predicate predicate)
+    {
+        try
+        {
+            session.waitUntil(predicate, TIMEOUT);
+        }
+        catch (Exception e)
+        {
+            throw new AssertionError("Session did not reach the expected state, but is " + session.getState());
+        }
+    }
+
+    private Thread startWaiterForInputClosed(final SessionEndpoint session) throws InterruptedException
+    {
+        final CountDownLatch waiting = new CountDownLatch(1);
+        Thread waiter = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    session.waitUntil(new Predicate()
+                    {
+                        @Override
+                        public boolean isSatisfied()
+                        {
+                            waiting.countDown();
+                            return session.getConnection().closedForInput();
+                        }
+                    }, TIMEOUT * 10);
+                }
+                catch (Throwable e)
+                {
+                    _errors.add(e);
+                }
+            }
+        }, "waiter");
+        waiter.start();
+        assertTrue("Waiter did not start", waiting.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        // once the predicate has been checked, the waiter holds the session lock until it waits
+        synchronized (session.getLock())
+        {
+            assertFalse(session.getConnection().closedForInput());
+        }
+        return waiter;
+    }
+
+    private void runConcurrently(final Runnable task, final int iterations) throws InterruptedException
+    {
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < THREADS; i++)
+        {
+            Thread thread = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for (int j = 0; j < iterations; j++)
+                        {
+                            task.run();
+                        }
+                    }
+                    catch (Throwable e)
+                    {
+                        _errors.add(e);
+                    }
+                }
+            }, "session-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join(TIMEOUT * 3);
+            assertFalse("Thread " + thread.getName() + " did not complete", thread.isAlive());
+        }
+    }
+
+    private void assertNoErrors()
+    {
+        assertTrue("Unexpected errors: " + _errors, _errors.isEmpty());
+    }
+
+    /**
+     * Passes the frames sent by one connection to its peer on a thread of its own, as the network would.  Frames are
+     * discarded if there is no peer.
+     */
+    private class Pipe implements FrameOutputHandler<FrameBody>, Runnable
+    {
+        private final BlockingQueue<AMQFrame<FrameBody>> _frames = new LinkedBlockingQueue<AMQFrame<FrameBody>>();
+        private final ConnectionEndpoint _peer;
+        private final Thread _thread;
+        private volatile boolean _closed;
+
+        Pipe(final ConnectionEndpoint peer)
+        {
+            _peer = peer;
+            _thread = new Thread(this, "pipe");
+            _thread.setDaemon(true);
+            _thread.start();
+        }
+
+        @Override
+        public boolean canSend()
+        {
+            return !_closed;
+        }
+
+        @Override
+        public void send(final AMQFrame<FrameBody> frame)
+        {
+            _frames.add(frame);
+        }
+
+        @Override
+        public void send(final AMQFrame<FrameBody> frame, final ByteBuffer payload)
+        {
+            _frames.add(frame);
+        }
+
+        @Override
+        public void close()
+        {
+            _closed = true;
+            _thread.interrupt();
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (true)
+                {
+                    AMQFrame<FrameBody> frame = _frames.take();
+                    if (_peer != null)
+                    {
+                        frame.getFrameBody().invoke(frame.getChannel(), _peer);
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                // closed
+            }
+            catch (RuntimeException e)
+            {
+                _errors.add(e);
+            }
+            finally
+            {
+                if (_peer != null)
+                {
+                    // frames still queued when the output was closed are delivered before the input of the peer closes
+                    AMQFrame<FrameBody> frame;
+                    while ((frame = _frames.poll()) != null)
+                    {
+                        frame.getFrameBody().invoke(frame.getChannel(), _peer);
+                    }
+                    _peer.inputClosed();
+                }
+            }
+        }
+    }
+}
@@ -48,9 +48,11 @@ import org.apache.log4j.Logger;
 
 import org.apache.qpid.server.message.EnqueueableMessage;
 import org.apache.qpid.server.model.ConfiguredObject;
+import org.apache.qpid.server.store.ChunkedContent;
 import org.apache.qpid.server.store.Event;
 import org.apache.qpid.server.store.EventListener;
 import org.apache.qpid.server.store.EventManager;
+import org.apache.qpid.server.store.FlowToDiskManager;
 import org.apache.qpid.server.store.MessageStore;
 import org.apache.qpid.server.store.StorableMessageMetaData;
 import org.apache.qpid.server.store.StoreException;
@@ -59,9 +61,11 @@ import org.apache.qpid.server.store.StoredMemoryMessage;
 import org.apache.qpid.server.store.StoredMessage;
 import org.apache.qpid.server.store.TransactionLogResource;
 import org.apache.qpid.server.store.Xid;
+import org.apache.qpid.server.store.berkeleydb.entry.MessageContentKey;
 import org.apache.qpid.server.store.berkeleydb.entry.PreparedTransaction;
 import org.apache.qpid.server.store.berkeleydb.entry.QueueEntryKey;
 import org.apache.qpid.server.store.berkeleydb.tuple.ContentBinding;
+import org.apache.qpid.server.store.berkeleydb.tuple.MessageContentKeyBinding;
 import org.apache.qpid.server.store.berkeleydb.tuple.MessageMetaDataBinding;
 import org.apache.qpid.server.store.berkeleydb.tuple.PreparedTransactionBinding;
 import org.apache.qpid.server.store.berkeleydb.tuple.QueueEntryBinding;
@@ -79,7 +83,7 @@ public abstract class AbstractBDBMessageStore implements MessageStore
 
     private static final String MESSAGE_META_DATA_DB_NAME = "MESSAGE_METADATA";
     private static final String MESSAGE_META_DATA_SEQ_DB_NAME = "MESSAGE_METADATA.SEQ";
-    private static final String MESSAGE_CONTENT_DB_NAME = "MESSAGE_CONTENT";
+    private static final String MESSAGE_CONTENT_DB_NAME = "MESSAGE_CONTENT_CHUNKS";
     private static final String DELIVERY_DB_NAME = "QUEUE_ENTRIES";
 
     //TODO: Add upgrader to remove BRIDGES and LINKS
@@ -87,6 +91,9 @@ public abstract class AbstractBDBMessageStore implements MessageStore
     private static final String LINKDB_NAME = "LINKS";
     private static final String XID_DB_NAME = "XIDS";
 
+    public static final String CONTENT_CACHE_SIZE_CONTEXT_VAR = "qpid.bdb.contentCacheSize";
+    public static final long DEFAULT_CONTENT_CACHE_SIZE = 64l * 1024l * 1024l;
+
     private final EventManager _eventManager = new EventManager();
 
     private final DatabaseEntry MESSAGE_METADATA_SEQ_KEY = new DatabaseEntry("MESSAGE_METADATA_SEQ_KEY".getBytes(
@@ -101,6 +108,10 @@ public abstract class AbstractBDBMessageStore implements MessageStore
     private boolean _limitBusted;
     private long _totalStoreSize;
 
+    private static final CommitStatistics NO_COMMIT_STATISTICS = new CommitStatistics();
+
+    private volatile MessageContentCache _contentCache = new MessageContentCache(0l);
+
     @Override
     public void upgradeStoreStructure() throws StoreException
     {
@@ -129,10 +140,59 @@ public abstract class AbstractBDBMessageStore implements MessageStore
         }
         else
         {
-            return new StoredMemoryMessage<T>(newMessageId, metaData);
+            return new StoredMemoryMessage<T>(newMessageId, metaData, getFlowToDiskManager());
         }
     }
 
+    protected FlowToDiskManager getFlowToDiskManager()
+    {
+        return FlowToDiskManager.getFlowToDiskManager(getParent());
+    }
+
+    /**
+     * Creates the content cache, sized by the context variable {@link #CONTENT_CACHE_SIZE_CONTEXT_VAR} of the parent.
+     * Called by the concrete store when it is opened.
+     */
+    protected void openContentCache(final ConfiguredObject<?> parent)
+    {
+        Long contentCacheSize = parent.getContextValue(Long.class, CONTENT_CACHE_SIZE_CONTEXT_VAR);
+        _contentCache = new MessageContentCache(contentCacheSize == null ? DEFAULT_CONTENT_CACHE_SIZE : contentCacheSize);
+    }
+
+    protected void closeContentCache()
+    {
+        _contentCache.clear();
+    }
+
+    public long getContentCacheSize()
+    {
+        return _contentCache.getSize();
+    }
+
+    public long getContentCacheHits()
+    {
+        return _contentCache.getHits();
+    }
+
+    public long getContentCacheMisses()
+    {
+        return _contentCache.getMisses();
+    }
+
+    public long getContentCacheEvictions()
+    {
+        return _contentCache.getEvictions();
+    }
+
+    /**
+     * @return the group commit statistics of the environment, or empty statistics if the store is not open
+     */
+    public CommitStatistics getCommitStatistics()
+    {
+        EnvironmentFacade environmentFacade = getEnvironmentFacade();
+        return environmentFacade == null ? NO_COMMIT_STATISTICS : environmentFacade.getCommitStatistics();
+    }
+
     public long getNextMessageId()
     {
         long newMessageId;
@@ -408,9 +468,7 @@ public abstract class AbstractBDBMessageStore implements MessageStore
                     }
 
                     //now remove the content data from the store if there is any.
-                    DatabaseEntry contentKeyEntry = new DatabaseEntry();
-                    LongBinding.longToEntry(messageId, contentKeyEntry);
-                    getMessageContentDb().delete(tx, contentKeyEntry);
+                    removeContent(tx, messageId);
 
                     if (getLogger().isDebugEnabled())
                     {
@@ -508,7 +566,7 @@ public abstract class AbstractBDBMessageStore implements MessageStore
 
     /**
      * Fills the provided ByteBuffer with as much content for the specified message as possible, starting
-     * from the specified offset in the message.
+     * from the specified offset in the message.  Only the chunks of content covering the requested range are read.
      *
      * @param messageId The message to get the data for.
      * @param offset    The offset of the data within the message.
@@ -520,40 +578,45 @@ public abstract class AbstractBDBMessageStore implements MessageStore
      */
     int getContent(long messageId, int offset, ByteBuffer dst) throws StoreException
     {
-        DatabaseEntry contentKeyEntry = new DatabaseEntry();
-        LongBinding.longToEntry(messageId, contentKeyEntry);
-        DatabaseEntry value = new DatabaseEntry();
-        ContentBinding contentTupleBinding = ContentBinding.getInstance();
-
-
         if (getLogger().isDebugEnabled())
         {
             getLogger().debug("Message Id: " + messageId + " Getting content body from offset: " + offset);
         }
 
+        MessageContentKeyBinding keyBinding = MessageContentKeyBinding.getInstance();
+        DatabaseEntry key = new DatabaseEntry();
+        keyBinding.objectToEntry(new MessageContentKey(messageId, ChunkedContent.getChunkIndex(offset)), key);
+        DatabaseEntry value = new DatabaseEntry();
+
+        Cursor cursor = null;
         try
         {
+            cursor = getMessageContentDb().openCursor(null, null);
 
             int written = 0;
-            OperationStatus status = getMessageContentDb().get(null, contentKeyEntry, value, LockMode.READ_UNCOMMITTED);
-            if (status == OperationStatus.SUCCESS)
+            int offsetInChunk = ChunkedContent.getOffsetInChunk(offset);
+            OperationStatus status = cursor.getSearchKeyRange(key, value, LockMode.READ_UNCOMMITTED);
+            while (status == OperationStatus.SUCCESS && dst.hasRemaining())
             {
-                byte[] dataAsBytes = contentTupleBinding.entryToObject(value);
-                int size = dataAsBytes.length;
-                if (offset > size)
+                MessageContentKey chunkKey = keyBinding.entryToObject(key);
+                if (chunkKey.getMessageId() != messageId)
                 {
-                    throw new RuntimeException("Offset " + offset + " is greater than message size " + size
-                                               + " for message id " + messageId + "!");
-
+                    break;
                 }
 
-                written = size - offset;
-                if(written > dst.remaining())
+                int length = value.getSize() - offsetInChunk;
+                if (length < 0)
                 {
-                    written = dst.remaining();
+                    int size = chunkKey.getChunkIndex() * ChunkedContent.CHUNK_SIZE + value.getSize();
+                    throw new RuntimeException("Offset " + offset + " is greater than message size " + size
+                                               + " for message id " + messageId + "!");
                 }
+                length = Math.min(length, dst.remaining());
+                dst.put(value.getData(), value.getOffset() + offsetInChunk, length);
+                written += length;
+                offsetInChunk = 0;
 
-                dst.put(dataAsBytes, offset, written);
+                status = cursor.getNext(key, value, LockMode.READ_UNCOMMITTED);
             }
             return written;
         }
@@ -564,6 +627,80 @@ public abstract class AbstractBDBMessageStore implements MessageStore
                                                                  + " to database: "
                                                                  + e.getMessage(), e);
         }
+        finally
+        {
+            closeCursorSafely(cursor, getEnvironmentFacade());
+        }
+    }
+
+    /**
+     * Reads all of the chunks of content of the specified message.
+     *
+     * @return the content, or null if there is no content for the message
+     *
+     * @throws org.apache.qpid.server.store.StoreException If the operation fails for any reason.
+     */
+    ChunkedContent getAllContent(long messageId) throws StoreException
+    {
+        MessageContentKeyBinding keyBinding = MessageContentKeyBinding.getInstance();
+        DatabaseEntry key = new DatabaseEntry();
+        keyBinding.objectToEntry(new MessageContentKey(messageId, 0), key);
+        DatabaseEntry value = new DatabaseEntry();
+        ContentBinding contentTupleBinding = ContentBinding.getInstance();
+
+        Cursor cursor = null;
+        try
+        {
+            cursor = getMessageContentDb().openCursor(null, null);
+
+            ChunkedContent content = null;
+            OperationStatus status = cursor.getSearchKeyRange(key, value, LockMode.READ_UNCOMMITTED);
+            while (status == OperationStatus.SUCCESS && keyBinding.entryToObject(key).getMessageId() == messageId)
+            {
+                if (content == null)
+                {
+                    content = new ChunkedContent();
+                }
+                content.addChunk(contentTupleBinding.entryToObject(value));
+                status = cursor.getNext(key, value, LockMode.READ_UNCOMMITTED);
+            }
+            return content;
+        }
+        catch (DatabaseException e)
+        {
+            throw getEnvironmentFacade().handleDatabaseException("Error getting AMQMessage with id "
+                                                                 + messageId
+                                                                 + " to database: "
+                                                                 + e.getMessage(), e);
+        }
+        finally
+        {
+            closeCursorSafely(cursor, getEnvironmentFacade());
+        }
+    }
+
+    private void removeContent(final Transaction tx, long messageId)
+    {
+        MessageContentKeyBinding keyBinding = MessageContentKeyBinding.getInstance();
+        DatabaseEntry key = new DatabaseEntry();
+        keyBinding.objectToEntry(new MessageContentKey(messageId, 0), key);
+        DatabaseEntry value = new DatabaseEntry();
+        value.setPartial(0, 0, true);
+
+        Cursor cursor = getMessageContentDb().openCursor(tx, null);
+        try
+        {
+            OperationStatus status = cursor.getSearchKeyRange(key, value, LockMode.RMW);
+            while (status == OperationStatus.SUCCESS && keyBinding.entryToObject(key).getMessageId() == messageId)
+            {
+                cursor.delete();
+                status = cursor.getNext(key, value, LockMode.RMW);
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
     }
 
     private void visitMessagesInternal(MessageHandler handler, EnvironmentFacade environmentFacade)
@@ -636,34 +773,38 @@ public abstract class AbstractBDBMessageStore implements MessageStore
     }
 
     /**
-     * Stores a chunk of message data.
+     * Stores the content of a message, one record per chunk.
      *
      * @param tx         The transaction for the operation.
      * @param messageId       The message to store the data for.
-     * @param offset          The offset of the data chunk in the message.
-     * @param contentBody     The content of the data chunk.
+     * @param content         The content of the message.
      *
      * @throws org.apache.qpid.server.store.StoreException If the operation fails for any reason, or if the specified message does not exist.
      */
-    private void addContent(final Transaction tx, long messageId, int offset,
-                            ByteBuffer contentBody) throws StoreException
+    private void addContent(final Transaction tx, long messageId, ChunkedContent content) throws StoreException
     {
+        MessageContentKeyBinding keyBinding = MessageContentKeyBinding.getInstance();
         DatabaseEntry key = new DatabaseEntry();
-        LongBinding.longToEntry(messageId, key);
         DatabaseEntry value = new DatabaseEntry();
-        ContentBinding messageBinding = ContentBinding.getInstance();
-        messageBinding.objectToEntry(contentBody.array(), value);
         try
         {
-            OperationStatus status = getMessageContentDb().put(tx, key, value);
-            if (status != OperationStatus.SUCCESS)
+            for (int i = 0; i < content.getChunkCount(); i++)
             {
-                throw new StoreException("Error adding content for message id " + messageId + ": " + status);
+                keyBinding.objectToEntry(new MessageContentKey(messageId, i), key);
+                ByteBuffer chunk = content.getChunk(i);
+                value.setData(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+
+                OperationStatus status = getMessageContentDb().put(tx, key, value);
+                if (status != OperationStatus.SUCCESS)
+                {
+                    throw new StoreException("Error adding content for message id " + messageId + ": " + status);
+                }
             }
 
             if (getLogger().isDebugEnabled())
             {
-                getLogger().debug("Storing content for message " + messageId + " in transaction " + tx);
+                getLogger().debug("Storing " + content.getChunkCount() + " chunks of content for message "
+                                  + messageId + " in transaction " + tx);
 
             }
         }
@@ -1049,17 +1190,23 @@ public abstract class AbstractBDBMessageStore implements MessageStore
 
     protected abstract Logger getLogger();
 
-    private class StoredBDBMessage<T extends StorableMessageMetaData> implements StoredMessage<T>
+    private class StoredBDBMessage<T extends StorableMessageMetaData> implements StoredMessage<T>, FlowToDiskManager.FlowableMessage
     {
 
         private final long _messageId;
         private final boolean _isRecovered;
+        private final FlowToDiskManager _flowToDiskManager = getFlowToDiskManager();
 
         private T _metaData;
         private volatile SoftReference<T> _metaDataRef;
 
-        private byte[] _data;
-        private volatile SoftReference<byte[]> _dataRef;
+        private volatile ChunkedContent _data;
+
+        // when flowing to disk, stored content is held here until the flow to disk manager releases it
+        private volatile ChunkedContent _heldData;
+
+        private boolean _registered;
+        private boolean _removed;
 
         StoredBDBMessage(long messageId, T metaData)
         {
@@ -1102,51 +1249,64 @@ public abstract class AbstractBDBMessageStore implements MessageStore
         @Override
         public void addContent(int offsetInMessage, ByteBuffer src)
         {
-            src = src.slice();
-
             if(_data == null)
             {
-                _data = new byte[src.remaining()];
-                _dataRef = new SoftReference<byte[]>(_data);
-                src.duplicate().get(_data);
+                _data = new ChunkedContent(_metaData.getContentSize());
             }
-            else
-            {
-                byte[] oldData = _data;
-                _data = new byte[oldData.length + src.remaining()];
-                _dataRef = new SoftReference<byte[]>(_data);
+            _data.append(src.slice());
 
-                System.arraycopy(oldData, 0, _data, 0, oldData.length);
-                src.duplicate().get(_data, oldData.length, src.remaining());
+            if(_flowToDiskManager.isEnabled() && registerCompleteContent())
+            {
+                // registered before it is stored, as a message which is only enqueued on non-durable queues never is
+                _flowToDiskManager.contentInMemory(this, _data.getLength());
             }
+        }
 
+        private synchronized boolean registerCompleteContent()
+        {
+            if(_registered || stored() || _data.getLength() < _metaData.getContentSize())
+            {
+                return false;
+            }
+            _registered = true;
+            return true;
         }
 
         @Override
         public int getContent(int offsetInMessage, ByteBuffer dst)
         {
-            byte[] data = _dataRef == null ? null : _dataRef.get();
+            ChunkedContent data = getData(offsetInMessage);
             if(data != null)
             {
-                int length = Math.min(dst.remaining(), data.length - offsetInMessage);
-                dst.put(data, offsetInMessage, length);
-                return length;
+                if(offsetInMessage > data.getLength())
+                {
+                    throw new RuntimeException("Offset " + offsetInMessage + " is greater than message size "
+                                               + data.getLength() + " for message id " + _messageId + "!");
+                }
+                return data.read(offsetInMessage, dst);
             }
             else
             {
                 checkMessageStoreOpen();
 
-                return AbstractBDBMessageStore.this.getContent(_messageId, offsetInMessage, dst);
+                // not cached, so read only the chunks covering the requested range
+                final long startTime = System.nanoTime();
+                int length = AbstractBDBMessageStore.this.getContent(_messageId, offsetInMessage, dst);
+                if(_flowToDiskManager.isEnabled())
+                {
+                    _flowToDiskManager.contentReloaded(startTime);
+                }
+                return length;
             }
         }
 
         @Override
         public ByteBuffer getContent(int offsetInMessage, int size)
         {
-            byte[] data = _dataRef == null ? null : _dataRef.get();
+            ChunkedContent data = getData(offsetInMessage);
             if(data != null)
             {
-                return ByteBuffer.wrap(data,offsetInMessage,size);
+                return data.read(offsetInMessage, size);
             }
             else
             {
@@ -1158,16 +1318,79 @@ public abstract class AbstractBDBMessageStore implements MessageStore
             }
         }
 
+        /**
+         * Returns the whole content, from memory if it is held or cached.  Otherwise, for a read from the start of
+         * the content, reads it from the database and adds it to the content cache.  Returns null if the content is
+         * too large to be cached, or if a read from further on finds it no longer cached, so that a delivery whose
+         * content is evicted part way through reads only the ranges it still needs.
+         */
+        private ChunkedContent getData(int offsetInMessage)
+        {
+            ChunkedContent data = _heldData;
+            if(data == null)
+            {
+                data = _data;
+            }
+            if(data == null)
+            {
+                data = _contentCache.get(_messageId);
+            }
+            if(data == null && offsetInMessage == 0 && _contentCache.isCacheable(getMetaData().getContentSize()))
+            {
+                data = loadData();
+            }
+            return data;
+        }
+
+        private synchronized ChunkedContent loadData()
+        {
+            // another thread may have loaded the content while we were waiting
+            ChunkedContent data = _contentCache.peek(_messageId);
+            if(data == null)
+            {
+                checkMessageStoreOpen();
+
+                final long startTime = System.nanoTime();
+                data = getAllContent(_messageId);
+                if(_flowToDiskManager.isEnabled())
+                {
+                    _flowToDiskManager.contentReloaded(startTime);
+                }
+                if(data == null)
+                {
+                    data = new ChunkedContent();
+                }
+                _contentCache.put(_messageId, data);
+            }
+            return data;
+        }
+
         synchronized void store(Transaction txn)
         {
             if (!stored())
             {
                 try
                 {
-                    _dataRef = new SoftReference<byte[]>(_data);
                     AbstractBDBMessageStore.this.storeMetaData(txn, _messageId, _metaData);
-                    AbstractBDBMessageStore.this.addContent(txn, _messageId, 0,
-                                                    _data == null ? ByteBuffer.allocate(0) : ByteBuffer.wrap(_data));
+                    if(_data != null)
+                    {
+                        AbstractBDBMessageStore.this.addContent(txn, _messageId, _data);
+
+                        if(_flowToDiskManager.isEnabled())
+                        {
+                            // hold the content until it is explicitly flowed to disk
+                            _heldData = _data;
+                            if(!_registered)
+                            {
+                                _registered = true;
+                                _flowToDiskManager.contentInMemory(this, _data.getLength());
+                            }
+                        }
+                        else
+                        {
+                            _contentCache.put(_messageId, _data);
+                        }
+                    }
                 }
                 finally
                 {
@@ -1207,11 +1430,30 @@ public abstract class AbstractBDBMessageStore implements MessageStore
         {
             checkMessageStoreOpen();
 
+            _flowToDiskManager.contentReleased(this);
+            synchronized (this)
+            {
+                _removed = true;
+                _heldData = null;
+            }
+            _contentCache.remove(_messageId);
+
             int delta = getMetaData().getContentSize();
             removeMessage(_messageId, false);
             storedSizeChangeOccurred(-delta);
         }
 
+        @Override
+        public synchronized void flowToDisk()
+        {
+            if(!_removed)
+            {
+                // a message which is only enqueued on non-durable queues is otherwise never written to the store
+                flushToStore();
+                _heldData = null;
+            }
+        }
+
         private boolean stored()
         {
             return _metaData == null || _isRecovered;
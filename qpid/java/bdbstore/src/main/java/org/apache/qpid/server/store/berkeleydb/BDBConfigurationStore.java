@@ -64,7 +64,7 @@ public class BDBConfigurationStore implements MessageStoreProvider, DurableConfi
 {
     private static final Logger LOGGER = Logger.getLogger(BDBConfigurationStore.class);
 
-    public static final int VERSION = 8;
+    public static final int VERSION = 9;
     private static final String CONFIGURED_OBJECTS_DB_NAME = "CONFIGURED_OBJECTS";
     private static final String CONFIGURED_OBJECT_HIERARCHY_DB_NAME = "CONFIGURED_OBJECT_HIERARCHY";
 
@@ -515,6 +515,8 @@ public class BDBConfigurationStore implements MessageStoreProvider, DurableConfi
                 {
                     _persistentSizeLowThreshold = _persistentSizeHighThreshold;
                 }
+
+                openContentCache(parent);
             }
         }
 
@@ -526,7 +528,10 @@ public class BDBConfigurationStore implements MessageStoreProvider, DurableConfi
         @Override
         public void closeMessageStore()
         {
-            _messageStoreOpen.set(false);
+            if (_messageStoreOpen.compareAndSet(true, false))
+            {
+                closeContentCache();
+            }
         }
 
         @Override
@@ -78,6 +78,8 @@ public class BDBMessageStore extends AbstractBDBMessageStore
 
             _environmentFacade = _environmentFacadeFactory.createEnvironmentFacade(parent);
             _storeLocation = _environmentFacade.getStoreLocation();
+
+            openContentCache(parent);
         }
     }
 
@@ -86,6 +88,7 @@ public class BDBMessageStore extends AbstractBDBMessageStore
     {
         if (_messageStoreOpen.compareAndSet(true, false))
         {
+            closeContentCache();
             if (_environmentFacade != null)
             {
                 try
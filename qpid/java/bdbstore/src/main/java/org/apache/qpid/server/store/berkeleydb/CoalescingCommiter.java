@@ -22,7 +22,10 @@ package org.apache.qpid.server.store.berkeleydb;
 
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.log4j.Logger;
 import org.apache.qpid.server.store.StoreFuture;
@@ -31,13 +34,48 @@ import com.sleepycat.je.DatabaseException;
 import com.sleepycat.je.Environment;
 import com.sleepycat.je.Transaction;
 
+/**
+ * Commits transactions without flushing the log, and has a single thread flush the log on behalf of all of the
+ * transactions committed since its previous flush (group commit).
+ *
+ * When synchronous commits are arriving faster than the log can be flushed, the commit thread waits briefly before
+ * flushing so that more commits can share the flush.  The wait is never longer than the average time a flush takes
+ * (nor longer than {@link #MAX_COALESCING_DELAY}), is only made when at least one more commit is expected to arrive
+ * within it, and ends as soon as {@link #MAX_BATCH_SIZE} commits are waiting.
+ */
 public class CoalescingCommiter implements Committer
 {
+    /** The longest time, in microseconds, that the commit thread will wait for further commits before flushing */
+    static final long MAX_COALESCING_DELAY = Long.getLong("qpid.bdb.commit.maxCoalescingDelay", 1000l);
+
+    /** The number of waiting commits at which the commit thread flushes without waiting for more */
+    static final int MAX_BATCH_SIZE = Integer.getInteger("qpid.bdb.commit.maxBatchSize", 256);
+
     private final CommitThread _commitThread;
+    private final CommitStatistics _statistics;
 
     public CoalescingCommiter(String name, EnvironmentFacade environmentFacade)
     {
-        _commitThread = new CommitThread("Commit-Thread-" + name, environmentFacade);
+        this(name, environmentFacade, new CommitStatistics());
+    }
+
+    public CoalescingCommiter(String name, EnvironmentFacade environmentFacade, CommitStatistics statistics)
+    {
+        this(name, environmentFacade, statistics, MAX_COALESCING_DELAY, MAX_BATCH_SIZE);
+    }
+
+    CoalescingCommiter(String name, EnvironmentFacade environmentFacade, CommitStatistics statistics,
+                       long maxCoalescingDelay, int maxBatchSize)
+    {
+        _statistics = statistics;
+        _commitThread = new CommitThread("Commit-Thread-" + name, environmentFacade, statistics,
+                                         TimeUnit.MICROSECONDS.toNanos(maxCoalescingDelay), maxBatchSize);
+    }
+
+    @Override
+    public CommitStatistics getStatistics()
+    {
+        return _statistics;
     }
 
     @Override
@@ -76,6 +114,7 @@ public class CoalescingCommiter implements Committer
         private final CommitThread _commitThread;
         private final Transaction _tx;
         private final boolean _syncCommit;
+        private final long _startTime = System.nanoTime();
         private RuntimeException _databaseException;
         private boolean _complete;
 
@@ -93,6 +132,7 @@ public class CoalescingCommiter implements Committer
                 LOGGER.debug("complete() called for transaction " + _tx);
             }
             _complete = true;
+            _commitThread.getStatistics().commitCompleted(_startTime, _syncCommit);
 
             notifyAll();
         }
@@ -118,7 +158,7 @@ public class CoalescingCommiter implements Committer
                 return;
             }
 
-            waitForCompletion();
+            awaitCompletion();
 
             if (_databaseException != null)
             {
@@ -132,7 +172,24 @@ public class CoalescingCommiter implements Committer
             return _complete;
         }
 
-        public synchronized void waitForCompletion()
+        @Override
+        public void waitForCompletion()
+        {
+            if (!isComplete())
+            {
+                // an asynchronous commit is now being waited for, so it should not wait for the next periodic flush.
+                // The commit thread is notified without holding this future's monitor, which close() takes while
+                // holding the commit thread's lock.
+                _commitThread.explicitNotify();
+            }
+            awaitCompletion();
+        }
+
+        /**
+         * Waits for the commit thread to complete or abort this commit.  Both do so while holding this future's
+         * monitor, so no polling is needed.
+         */
+        private synchronized void awaitCompletion()
         {
             long startTime = 0;
             if(LOGGER.isDebugEnabled())
@@ -140,12 +197,11 @@ public class CoalescingCommiter implements Committer
                 startTime = System.currentTimeMillis();
             }
 
-            while (!isComplete())
+            while (!_complete)
             {
-                _commitThread.explicitNotify();
                 try
                 {
-                    wait(250);
+                    wait();
                 }
                 catch (InterruptedException e)
                 {
@@ -173,23 +229,49 @@ public class CoalescingCommiter implements Committer
     {
         private static final Logger LOGGER = Logger.getLogger(CommitThread.class);
 
+        // weight given to the latest sample in the moving averages of arrival rate and flush time
+        private static final double SMOOTHING = 0.2d;
+
         private final AtomicBoolean _stopped = new AtomicBoolean(false);
         private final Queue<BDBCommitFuture> _jobQueue = new ConcurrentLinkedQueue<BDBCommitFuture>();
+        private final AtomicInteger _jobCount = new AtomicInteger();
         private final Object _lock = new Object();
         private final EnvironmentFacade _environmentFacade;
+        private final CommitStatistics _statistics;
+        private final long _maxCoalescingDelay;
+        private final int _maxBatchSize;
 
-        public CommitThread(String name, EnvironmentFacade environmentFacade)
+        private volatile boolean _coalescing;
+        private volatile boolean _flushRequested;
+
+        // only accessed by the commit thread
+        private double _arrivalRate;
+        private double _averageFsyncNanos;
+        private long _lastFlushTime = System.nanoTime();
+
+        public CommitThread(String name, EnvironmentFacade environmentFacade, CommitStatistics statistics,
+                            long maxCoalescingDelay, int maxBatchSize)
         {
             super(name);
             _environmentFacade = environmentFacade;
+            _statistics = statistics;
+            _maxCoalescingDelay = maxCoalescingDelay;
+            _maxBatchSize = Math.max(1, maxBatchSize);
+        }
+
+        CommitStatistics getStatistics()
+        {
+            return _statistics;
         }
 
         public void explicitNotify()
         {
+            _flushRequested = true;
             synchronized (_lock)
             {
                 _lock.notify();
             }
+            LockSupport.unpark(this);
         }
 
         public void run()
@@ -211,31 +293,91 @@ public class CoalescingCommiter implements Committer
                         }
                     }
                 }
+                coalesce();
                 processJobs();
             }
         }
 
+        /**
+         * Waits for more commits to join the batch if they are expected to arrive before a flush would complete.
+         */
+        private void coalesce()
+        {
+            long delay = getCoalescingDelay();
+            if (delay > 0l && !_flushRequested)
+            {
+                _coalescing = true;
+                try
+                {
+                    final long deadline = System.nanoTime() + delay;
+                    long remaining = delay;
+                    while (remaining > 0l && _jobCount.get() < _maxBatchSize && !_flushRequested && !_stopped.get())
+                    {
+                        LockSupport.parkNanos(this, remaining);
+                        remaining = deadline - System.nanoTime();
+                    }
+                }
+                finally
+                {
+                    _coalescing = false;
+                }
+            }
+            _flushRequested = false;
+        }
+
+        private long getCoalescingDelay()
+        {
+            if (_maxCoalescingDelay <= 0l || _jobCount.get() >= _maxBatchSize)
+            {
+                return 0l;
+            }
+            // there is no point waiting longer than a flush takes, as commits arriving later can share the next one
+            long window = Math.min(_maxCoalescingDelay, (long) _averageFsyncNanos);
+            // the average only moves when the log is flushed, so after an idle spell it still reflects the earlier
+            // load: the rate at which the waiting commits arrived since the last flush is used when it is lower
+            long sinceLastFlush = System.nanoTime() - _lastFlushTime;
+            double arrivalRate = sinceLastFlush > 0l
+                    ? Math.min(_arrivalRate, (double) _jobCount.get() / sinceLastFlush)
+                    : _arrivalRate;
+            return arrivalRate * window >= 1d ? window : 0l;
+        }
+
+        private void updateAverages(final long flushStartTime, final long fsyncNanos, final int batchSize)
+        {
+            long interval = flushStartTime - _lastFlushTime;
+            _lastFlushTime = flushStartTime;
+            if (interval > 0l)
+            {
+                _arrivalRate = SMOOTHING * ((double) batchSize / interval) + (1d - SMOOTHING) * _arrivalRate;
+            }
+            _averageFsyncNanos = _averageFsyncNanos == 0d
+                    ? fsyncNanos
+                    : SMOOTHING * fsyncNanos + (1d - SMOOTHING) * _averageFsyncNanos;
+        }
+
         private void processJobs()
         {
-            int size = _jobQueue.size();
+            // commits are counted after being queued, so the first size jobs in the queue were all committed
+            // before the flush below
+            int size = _jobCount.get();
 
             try
             {
-                long startTime = 0;
-                if(LOGGER.isDebugEnabled())
-                {
-                    startTime = System.currentTimeMillis();
-                }
+                long startTime = System.nanoTime();
 
                 Environment environment = _environmentFacade.getEnvironment();
                 if (environment != null && environment.isValid())
                 {
                     environment.flushLog(true);
+
+                    long duration = System.nanoTime() - startTime;
+                    _statistics.fsyncCompleted(duration, size);
+                    updateAverages(startTime, duration, size);
                 }
 
                 if(LOGGER.isDebugEnabled())
                 {
-                    long duration = System.currentTimeMillis() - startTime;
+                    long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
                     LOGGER.debug("flushLog completed in " + duration  + " ms");
                 }
 
@@ -246,6 +388,7 @@ public class CoalescingCommiter implements Committer
                     {
                         break;
                     }
+                    _jobCount.decrementAndGet();
                     commit.complete();
                 }
 
@@ -263,6 +406,7 @@ public class CoalescingCommiter implements Committer
                         {
                             break;
                         }
+                        _jobCount.decrementAndGet();
                         commit.abort(e);
                     }
                 }
@@ -284,7 +428,7 @@ public class CoalescingCommiter implements Committer
 
         private boolean hasJobs()
         {
-            return !_jobQueue.isEmpty();
+            return _jobCount.get() > 0;
         }
 
         public void addJob(BDBCommitFuture commit, final boolean sync)
@@ -294,7 +438,15 @@ public class CoalescingCommiter implements Committer
                 throw new IllegalStateException("Commit thread is stopped");
             }
             _jobQueue.add(commit);
-            if(sync)
+            int jobCount = _jobCount.incrementAndGet();
+            if (_coalescing)
+            {
+                if (jobCount >= _maxBatchSize)
+                {
+                    LockSupport.unpark(this);
+                }
+            }
+            else if(sync)
             {
                 synchronized (_lock)
                 {
@@ -313,6 +465,7 @@ public class CoalescingCommiter implements Committer
                 int abortedCommits = 0;
                 while ((commit = _jobQueue.poll()) != null)
                 {
+                    _jobCount.decrementAndGet();
                     abortedCommits++;
                     commit.abort(e);
                 }
@@ -322,6 +475,7 @@ public class CoalescingCommiter implements Committer
                 }
                 _lock.notifyAll();
             }
+            LockSupport.unpark(this);
         }
     }
 }
@@ -0,0 +1,130 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store.berkeleydb;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.qpid.server.stats.LatencyHistogram;
+
+/**
+ * Counts the log flushes performed by a {@link CoalescingCommiter}, the number of commits completed by each flush,
+ * and the time synchronous commits spend waiting for their flush.  The time every commit, synchronous or not, takes
+ * from being requested to its flush completing is recorded in a {@link LatencyHistogram}.
+ *
+ * Batch sizes are counted in power of two buckets: 1, 2-3, 4-7 and so on, with the last bucket holding every batch of
+ * 1024 or more commits.
+ */
+public class CommitStatistics
+{
+    private static final int BUCKETS = 11;
+
+    private final AtomicLong _fsyncCount = new AtomicLong();
+    private final AtomicLong _fsyncNanos = new AtomicLong();
+    private final AtomicLong _commitCount = new AtomicLong();
+    private final AtomicLong _commitNanos = new AtomicLong();
+    private final AtomicLongArray _batchSizes = new AtomicLongArray(BUCKETS);
+    private final LatencyHistogram _commitLatency = new LatencyHistogram();
+
+    void fsyncCompleted(final long durationNanos, final int batchSize)
+    {
+        _fsyncCount.incrementAndGet();
+        _fsyncNanos.addAndGet(durationNanos);
+        if (batchSize > 0)
+        {
+            _batchSizes.incrementAndGet(getBucket(batchSize));
+        }
+    }
+
+    void commitCompleted(final long startTime, final boolean syncCommit)
+    {
+        long duration = System.nanoTime() - startTime;
+        _commitLatency.record(TimeUnit.NANOSECONDS.toMicros(duration));
+        if (syncCommit)
+        {
+            _commitCount.incrementAndGet();
+            _commitNanos.addAndGet(duration);
+        }
+    }
+
+    static int getBucket(final int batchSize)
+    {
+        return Math.min(BUCKETS - 1, 31 - Integer.numberOfLeadingZeros(batchSize));
+    }
+
+    public long getFsyncCount()
+    {
+        return _fsyncCount.get();
+    }
+
+    /**
+     * @return the average time taken to flush the log, in microseconds
+     */
+    public long getAverageFsyncLatency()
+    {
+        long count = _fsyncCount.get();
+        return count == 0l ? 0l : TimeUnit.NANOSECONDS.toMicros(_fsyncNanos.get() / count);
+    }
+
+    /**
+     * @return the average time from a synchronous commit being requested to its flush completing, in microseconds
+     */
+    public long getAverageCommitLatency()
+    {
+        long count = _commitCount.get();
+        return count == 0l ? 0l : TimeUnit.NANOSECONDS.toMicros(_commitNanos.get() / count);
+    }
+
+    /**
+     * @return the number of flushes which completed each range of batch sizes, keyed by the range
+     */
+    public Map<String, Object> getBatchSizeHistogram()
+    {
+        Map<String, Object> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            int lower = 1 << i;
+            String range;
+            if (i == BUCKETS - 1)
+            {
+                range = lower + "+";
+            }
+            else if (i == 0)
+            {
+                range = "1";
+            }
+            else
+            {
+                range = lower + "-" + ((lower << 1) - 1);
+            }
+            histogram.put(range, _batchSizes.get(i));
+        }
+        return histogram;
+    }
+
+    public LatencyHistogram getCommitLatency()
+    {
+        return _commitLatency;
+    }
+}
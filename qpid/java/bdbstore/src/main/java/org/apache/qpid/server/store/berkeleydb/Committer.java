@@ -31,4 +31,6 @@ public interface Committer
     StoreFuture commit(Transaction tx, boolean syncCommit);
 
     void stop();
+
+    CommitStatistics getStatistics();
 }
\ No newline at end of file
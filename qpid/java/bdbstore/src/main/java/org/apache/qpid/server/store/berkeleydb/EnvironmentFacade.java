@@ -56,6 +56,8 @@ public interface EnvironmentFacade
 
     StoreFuture commit(com.sleepycat.je.Transaction tx, boolean sync);
 
+    CommitStatistics getCommitStatistics();
+
     DatabaseException handleDatabaseException(String contextMessage, DatabaseException e);
 
     String getStoreLocation();
@@ -0,0 +1,175 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store.berkeleydb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.qpid.server.store.ChunkedContent;
+
+/**
+ * A least recently used cache of message content, bounded by the total number of bytes it holds.
+ *
+ * The content of a message is cached as the chunks read from the database, so a message which is delivered in many
+ * frames is read from the database once and each frame is then served from the cached chunks.  Content larger than
+ * the whole cache is never cached.  A maximum size of zero or less disables the cache.
+ */
+class MessageContentCache
+{
+    private final long _maximumSize;
+    private final LinkedHashMap<Long, ChunkedContent> _entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long _size;
+
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _evictions = new AtomicLong();
+
+    MessageContentCache(final long maximumSize)
+    {
+        _maximumSize = maximumSize;
+    }
+
+    ChunkedContent get(final long messageId)
+    {
+        if(_maximumSize <= 0l)
+        {
+            return null;
+        }
+
+        ChunkedContent content;
+        synchronized (_entries)
+        {
+            content = _entries.get(messageId);
+        }
+
+        if(content == null)
+        {
+            _misses.incrementAndGet();
+        }
+        else
+        {
+            _hits.incrementAndGet();
+        }
+        return content;
+    }
+
+    /**
+     * Returns the cached content without updating the statistics.
+     */
+    ChunkedContent peek(final long messageId)
+    {
+        if(_maximumSize <= 0l)
+        {
+            return null;
+        }
+
+        synchronized (_entries)
+        {
+            return _entries.get(messageId);
+        }
+    }
+
+    void put(final long messageId, final ChunkedContent content)
+    {
+        if(!isCacheable(content.getLength()))
+        {
+            return;
+        }
+
+        synchronized (_entries)
+        {
+            ChunkedContent previous = _entries.put(messageId, content);
+            if(previous != null)
+            {
+                _size -= previous.getLength();
+            }
+            _size += content.getLength();
+
+            Iterator<Map.Entry<Long, ChunkedContent>> iterator = _entries.entrySet().iterator();
+            while(_size > _maximumSize && iterator.hasNext())
+            {
+                Map.Entry<Long, ChunkedContent> eldest = iterator.next();
+                iterator.remove();
+                _size -= eldest.getValue().getLength();
+                _evictions.incrementAndGet();
+            }
+        }
+    }
+
+    boolean isCacheable(final long contentSize)
+    {
+        return _maximumSize > 0l && contentSize <= _maximumSize;
+    }
+
+    void remove(final long messageId)
+    {
+        if(_maximumSize > 0l)
+        {
+            synchronized (_entries)
+            {
+                ChunkedContent content = _entries.remove(messageId);
+                if(content != null)
+                {
+                    _size -= content.getLength();
+                }
+            }
+        }
+    }
+
+    void clear()
+    {
+        synchronized (_entries)
+        {
+            _entries.clear();
+            _size = 0l;
+        }
+    }
+
+    long getMaximumSize()
+    {
+        return _maximumSize;
+    }
+
+    long getSize()
+    {
+        synchronized (_entries)
+        {
+            return _size;
+        }
+    }
+
+    long getHits()
+    {
+        return _hits.get();
+    }
+
+    long getMisses()
+    {
+        return _misses.get();
+    }
+
+    long getEvictions()
+    {
+        return _evictions.get();
+    }
+}
@@ -123,6 +123,12 @@ public class StandardEnvironmentFacade implements EnvironmentFacade
         return _committer.commit(tx, syncCommit);
     }
 
+    @Override
+    public CommitStatistics getCommitStatistics()
+    {
+        return _committer.getStatistics();
+    }
+
     @Override
     public void close()
     {
@@ -52,6 +52,7 @@ import org.apache.log4j.Logger;
 import org.apache.qpid.server.configuration.IllegalConfigurationException;
 import org.apache.qpid.server.store.StoreFuture;
 import org.apache.qpid.server.store.berkeleydb.CoalescingCommiter;
+import org.apache.qpid.server.store.berkeleydb.CommitStatistics;
 import org.apache.qpid.server.store.berkeleydb.EnvironmentFacade;
 import org.apache.qpid.server.store.berkeleydb.LoggingAsyncExceptionListener;
 import org.apache.qpid.server.util.DaemonThreadFactory;
@@ -166,6 +167,8 @@ public class ReplicatedEnvironmentFacade implements EnvironmentFacade, StateChan
 
     private volatile Durability _realMessageStoreDurability = null;
     private volatile CoalescingCommiter _coalescingCommiter = null;
+    // shared by successive commiters, so that statistics survive changes to the local synchronization policy
+    private final CommitStatistics _commitStatistics = new CommitStatistics();
     private volatile ReplicatedEnvironment _environment;
     private volatile long _joinTime;
     private volatile ReplicatedEnvironment.State _lastKnownEnvironmentState;
@@ -247,6 +250,12 @@ public class ReplicatedEnvironmentFacade implements EnvironmentFacade, StateChan
         return StoreFuture.IMMEDIATE_FUTURE;
     }
 
+    @Override
+    public CommitStatistics getCommitStatistics()
+    {
+        return _commitStatistics;
+    }
+
     @Override
     public void close()
     {
@@ -1126,7 +1135,7 @@ public class ReplicatedEnvironmentFacade implements EnvironmentFacade, StateChan
             if (localTransactionSynchronizationPolicy == LOCAL_TRANSACTION_SYNCHRONIZATION_POLICY)
             {
                 localTransactionSynchronizationPolicy = SyncPolicy.NO_SYNC;
-                _coalescingCommiter = new CoalescingCommiter(_configuration.getGroupName(), this);
+                _coalescingCommiter = new CoalescingCommiter(_configuration.getGroupName(), this, _commitStatistics);
                 _coalescingCommiter.start();
             }
             _realMessageStoreDurability = new Durability(localTransactionSynchronizationPolicy, remoteTransactionSynchronizationPolicy, replicaAcknowledgmentPolicy);
@@ -0,0 +1,59 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store.berkeleydb.tuple;
+
+import com.sleepycat.bind.tuple.TupleBinding;
+import com.sleepycat.bind.tuple.TupleInput;
+import com.sleepycat.bind.tuple.TupleOutput;
+
+import org.apache.qpid.server.store.berkeleydb.entry.MessageContentKey;
+
+/**
+ * Binds the key of a chunk of message content.  The message id is written before the chunk index, so the chunks of
+ * a message are adjacent and in order.
+ */
+public class MessageContentKeyBinding extends TupleBinding<MessageContentKey>
+{
+
+    private static final MessageContentKeyBinding INSTANCE = new MessageContentKeyBinding();
+
+    public static MessageContentKeyBinding getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /** private constructor forces getInstance instead */
+    private MessageContentKeyBinding() { }
+
+    public MessageContentKey entryToObject(TupleInput tupleInput)
+    {
+        long messageId = tupleInput.readLong();
+        int chunkIndex = tupleInput.readInt();
+
+        return new MessageContentKey(messageId, chunkIndex);
+    }
+
+    public void objectToEntry(MessageContentKey key, TupleOutput tupleOutput)
+    {
+        tupleOutput.writeLong(key.getMessageId());
+        tupleOutput.writeInt(key.getChunkIndex());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store.berkeleydb.upgrade;
+
+import org.apache.log4j.Logger;
+
+import org.apache.qpid.server.model.ConfiguredObject;
+import org.apache.qpid.server.store.ChunkedContent;
+import org.apache.qpid.server.store.StoreException;
+import org.apache.qpid.server.store.berkeleydb.entry.MessageContentKey;
+import org.apache.qpid.server.store.berkeleydb.tuple.ContentBinding;
+import org.apache.qpid.server.store.berkeleydb.tuple.MessageContentKeyBinding;
+
+import com.sleepycat.bind.tuple.LongBinding;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.Transaction;
+
+public class UpgradeFrom8To9 extends AbstractStoreUpgrade
+{
+    private static final Logger _logger = Logger.getLogger(UpgradeFrom8To9.class);
+
+    static final String OLD_CONTENT_DB_NAME = "MESSAGE_CONTENT";
+    static final String NEW_CONTENT_DB_NAME = "MESSAGE_CONTENT_CHUNKS";
+
+    /**
+     * Upgrades from a v8 database to a v9 database
+     *
+     * Change in this version:
+     *
+     * Message content is moved from the database MESSAGE_CONTENT to MESSAGE_CONTENT_CHUNKS.  The structure of the
+     * database changes from ( message-id: long ) -> ( byte[] data ) to ( message-id: long, chunk-index: int ) ->
+     * ( byte[] data ), where every chunk of a message except the last holds exactly
+     * {@link ChunkedContent#CHUNK_SIZE} bytes.
+     */
+    @Override
+    public void performUpgrade(final Environment environment, final UpgradeInteractionHandler handler, ConfiguredObject<?> parent)
+    {
+        reportStarting(environment, 8);
+
+        if (environment.getDatabaseNames().contains(OLD_CONTENT_DB_NAME))
+        {
+            Transaction transaction = environment.beginTransaction(null, null);
+            try
+            {
+                CursorOperation contentOperation = new CursorOperation()
+                {
+                    @Override
+                    public void processEntry(final Database oldContentDatabase, final Database newContentDatabase,
+                                             final Transaction transaction, final DatabaseEntry key,
+                                             final DatabaseEntry value)
+                    {
+                        long messageId = LongBinding.entryToLong(key);
+                        byte[] data = ContentBinding.getInstance().entryToObject(value);
+                        splitContent(messageId, data, newContentDatabase, transaction);
+                    }
+                };
+                new DatabaseTemplate(environment, OLD_CONTENT_DB_NAME, NEW_CONTENT_DB_NAME, transaction)
+                        .run(contentOperation);
+                _logger.info(contentOperation.getRowCount() + " Message Content Entries");
+
+                environment.removeDatabase(transaction, OLD_CONTENT_DB_NAME);
+                transaction.commit();
+            }
+            catch (RuntimeException e)
+            {
+                transaction.abort();
+                throw e;
+            }
+        }
+
+        reportFinished(environment, 9);
+    }
+
+    private void splitContent(final long messageId, final byte[] data, final Database newContentDatabase,
+                              final Transaction transaction)
+    {
+        int chunkIndex = 0;
+        int offset = 0;
+        do
+        {
+            int length = Math.min(ChunkedContent.CHUNK_SIZE, data.length - offset);
+            DatabaseEntry key = new DatabaseEntry();
+            MessageContentKeyBinding.getInstance().objectToEntry(new MessageContentKey(messageId, chunkIndex), key);
+            DatabaseEntry value = new DatabaseEntry();
+            value.setData(data, offset, length);
+
+            OperationStatus status = newContentDatabase.put(transaction, key, value);
+            if (status != OperationStatus.SUCCESS)
+            {
+                throw new StoreException("Error writing content chunk " + chunkIndex + " of message " + messageId
+                                         + " to database: " + status);
+            }
+            offset += length;
+            chunkIndex++;
+        }
+        while (offset < data.length);
+    }
+}
@@ -28,6 +28,7 @@ import java.util.concurrent.ScheduledFuture;
 import org.apache.qpid.server.connection.IConnectionRegistry;
 import org.apache.qpid.server.exchange.ExchangeImpl;
 import org.apache.qpid.server.logging.EventLogger;
+import org.apache.qpid.server.message.MessageConversionCache;
 import org.apache.qpid.server.message.MessageDestination;
 import org.apache.qpid.server.message.MessageSource;
 import org.apache.qpid.server.model.AbstractConfiguredObject;
@@ -47,6 +48,7 @@ import org.apache.qpid.server.protocol.LinkRegistry;
 import org.apache.qpid.server.queue.AMQQueue;
 import org.apache.qpid.server.stats.StatisticsCounter;
 import org.apache.qpid.server.store.DurableConfigurationStore;
+import org.apache.qpid.server.store.FlowToDiskManager;
 import org.apache.qpid.server.store.MessageStore;
 import org.apache.qpid.server.txn.DtxRegistry;
 import org.apache.qpid.server.virtualhost.ExchangeIsAlternateException;
@@ -85,6 +87,9 @@ public class BDBHAReplicaVirtualHost extends AbstractConfiguredObject<BDBHARepli
     @ManagedAttributeField
     private int _housekeepingThreadCount;
 
+    @ManagedAttributeField
+    private long _flowToDiskThreshold;
+
     @ManagedObjectFactoryConstructor
     public BDBHAReplicaVirtualHost(final Map<String, Object> attributes, VirtualHostNode<?> virtualHostNode)
     {
@@ -216,6 +221,12 @@ public class BDBHAReplicaVirtualHost extends AbstractConfiguredObject<BDBHARepli
         return 0;
     }
 
+    @Override
+    public long getFlowToDiskThreshold()
+    {
+        return 0;
+    }
+
     @Override
     public long getQueueCount()
     {
@@ -258,6 +269,65 @@ public class BDBHAReplicaVirtualHost extends AbstractConfiguredObject<BDBHARepli
         return 0;
     }
 
+    @Override
+    public long getFlowToDiskInMemoryBytes()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getFlowToDiskEvictedBytes()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getFlowToDiskEvictedMessages()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getFlowToDiskReloadCount()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getFlowToDiskAverageReloadLatency()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getMessageConversions()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getMessageConversionCacheHits()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getMessageConversionCacheBytes()
+    {
+        return 0;
+    }
+
+    @Override
+    public Map<String, Object> getLatencyHistograms()
+    {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public void resetLatencyHistograms()
+    {
+    }
+
     @Override
     public Collection<VirtualHostAlias> getAliases()
     {
@@ -420,6 +490,18 @@ public class BDBHAReplicaVirtualHost extends AbstractConfiguredObject<BDBHARepli
         return null;
     }
 
+    @Override
+    public FlowToDiskManager getFlowToDiskManager()
+    {
+        return FlowToDiskManager.DISABLED;
+    }
+
+    @Override
+    public MessageConversionCache getMessageConversionCache()
+    {
+        return MessageConversionCache.DISABLED;
+    }
+
     @Override
     public void registerMessageReceived(final long messageSize, final long timestamp)
     {
@@ -21,10 +21,12 @@
 package org.apache.qpid.server.virtualhost.berkeleydb;
 
 import java.util.List;
+import java.util.Map;
 
 import org.apache.qpid.server.exchange.ExchangeImpl;
 import org.apache.qpid.server.model.DerivedAttribute;
 import org.apache.qpid.server.model.ManagedAttribute;
+import org.apache.qpid.server.model.ManagedStatistic;
 import org.apache.qpid.server.queue.AMQQueue;
 import org.apache.qpid.server.store.SizeMonitoringSettings;
 import org.apache.qpid.server.virtualhost.VirtualHostImpl;
@@ -58,4 +60,31 @@ public interface BDBHAVirtualHost<X extends BDBHAVirtualHost<X>> extends Virtual
 
     @ManagedAttribute
     List<String> getPermittedNodes();
+
+    @ManagedStatistic
+    long getContentCacheSize();
+
+    @ManagedStatistic
+    long getContentCacheHits();
+
+    @ManagedStatistic
+    long getContentCacheMisses();
+
+    @ManagedStatistic
+    long getContentCacheEvictions();
+
+    @ManagedStatistic
+    long getCommitFsyncCount();
+
+    @ManagedStatistic
+    long getCommitAverageFsyncLatency();
+
+    @ManagedStatistic
+    long getCommitAverageLatency();
+
+    /**
+     * The number of log flushes which completed each range of batch sizes (the number of commits sharing a flush).
+     */
+    @DerivedAttribute
+    Map<String, Object> getCommitBatchSizeHistogram();
 }
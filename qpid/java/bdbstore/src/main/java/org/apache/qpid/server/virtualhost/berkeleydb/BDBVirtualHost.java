@@ -20,10 +20,16 @@
 package org.apache.qpid.server.virtualhost.berkeleydb;
 
 
+import java.util.Map;
+
 import org.apache.qpid.server.exchange.ExchangeImpl;
+import org.apache.qpid.server.model.DerivedAttribute;
 import org.apache.qpid.server.model.ManagedAttribute;
+import org.apache.qpid.server.model.ManagedContextDefault;
+import org.apache.qpid.server.model.ManagedStatistic;
 import org.apache.qpid.server.queue.AMQQueue;
 import org.apache.qpid.server.store.SizeMonitoringSettings;
+import org.apache.qpid.server.store.berkeleydb.AbstractBDBMessageStore;
 import org.apache.qpid.server.virtualhost.VirtualHostImpl;
 
 public interface BDBVirtualHost<X extends BDBVirtualHost<X>> extends VirtualHostImpl<X, AMQQueue<?>, ExchangeImpl<?>>, org.apache.qpid.server.store.FileBasedSettings, SizeMonitoringSettings
@@ -31,6 +37,9 @@ public interface BDBVirtualHost<X extends BDBVirtualHost<X>> extends VirtualHost
 
     String STORE_PATH = "storePath";
 
+    @ManagedContextDefault( name = "qpid.bdb.contentCacheSize")
+    long DEFAULT_CONTENT_CACHE_SIZE = AbstractBDBMessageStore.DEFAULT_CONTENT_CACHE_SIZE;
+
     @ManagedAttribute(mandatory = true)
     String getStorePath();
 
@@ -39,4 +48,31 @@ public interface BDBVirtualHost<X extends BDBVirtualHost<X>> extends VirtualHost
 
     @ManagedAttribute(mandatory = true, defaultValue = "0")
     Long getStoreOverfullSize();
+
+    @ManagedStatistic
+    long getContentCacheSize();
+
+    @ManagedStatistic
+    long getContentCacheHits();
+
+    @ManagedStatistic
+    long getContentCacheMisses();
+
+    @ManagedStatistic
+    long getContentCacheEvictions();
+
+    @ManagedStatistic
+    long getCommitFsyncCount();
+
+    @ManagedStatistic
+    long getCommitAverageFsyncLatency();
+
+    @ManagedStatistic
+    long getCommitAverageLatency();
+
+    /**
+     * The number of log flushes which completed each range of batch sizes (the number of commits sharing a flush).
+     */
+    @DerivedAttribute
+    Map<String, Object> getCommitBatchSizeHistogram();
 }
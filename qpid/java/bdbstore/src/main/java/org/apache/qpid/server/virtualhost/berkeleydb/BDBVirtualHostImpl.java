@@ -27,6 +27,7 @@ import org.apache.qpid.server.model.ManagedObject;
 import org.apache.qpid.server.model.ManagedObjectFactoryConstructor;
 import org.apache.qpid.server.model.VirtualHostNode;
 import org.apache.qpid.server.store.MessageStore;
+import org.apache.qpid.server.store.berkeleydb.AbstractBDBMessageStore;
 import org.apache.qpid.server.store.berkeleydb.BDBMessageStore;
 import org.apache.qpid.server.virtualhost.AbstractVirtualHost;
 
@@ -75,4 +76,72 @@ public class BDBVirtualHostImpl extends AbstractVirtualHost<BDBVirtualHostImpl>
     {
         return _storeOverfullSize;
     }
+
+    @Override
+    public long getContentCacheSize()
+    {
+        return getBDBMessageStore().getContentCacheSize();
+    }
+
+    @Override
+    public long getContentCacheHits()
+    {
+        return getBDBMessageStore().getContentCacheHits();
+    }
+
+    @Override
+    public long getContentCacheMisses()
+    {
+        return getBDBMessageStore().getContentCacheMisses();
+    }
+
+    @Override
+    public long getContentCacheEvictions()
+    {
+        return getBDBMessageStore().getContentCacheEvictions();
+    }
+
+    @Override
+    public long getCommitFsyncCount()
+    {
+        return getBDBMessageStore().getCommitStatistics().getFsyncCount();
+    }
+
+    @Override
+    public long getCommitAverageFsyncLatency()
+    {
+        return getBDBMessageStore().getCommitStatistics().getAverageFsyncLatency();
+    }
+
+    @Override
+    public long getCommitAverageLatency()
+    {
+        return getBDBMessageStore().getCommitStatistics().getAverageCommitLatency();
+    }
+
+    @Override
+    public Map<String, Object> getCommitBatchSizeHistogram()
+    {
+        return getBDBMessageStore().getCommitStatistics().getBatchSizeHistogram();
+    }
+
+    @Override
+    public Map<String, Object> getLatencyHistograms()
+    {
+        Map<String, Object> histograms = super.getLatencyHistograms();
+        histograms.put("storeCommit", getBDBMessageStore().getCommitStatistics().getCommitLatency().getSummary());
+        return histograms;
+    }
+
+    @Override
+    public void resetLatencyHistograms()
+    {
+        super.resetLatencyHistograms();
+        getBDBMessageStore().getCommitStatistics().getCommitLatency().reset();
+    }
+
+    private AbstractBDBMessageStore getBDBMessageStore()
+    {
+        return (AbstractBDBMessageStore) getMessageStore();
+    }
 }
@@ -337,6 +337,32 @@ public class BDBMessageStoreTest extends MessageStoreTestCase
         assertTrue("Unexpected content", Arrays.equals(expected, array));
     }
 
+    public void testPartialReadOfEvictedContentReadsOnlyTheRange() throws Exception
+    {
+        BDBMessageStore bdbStore = (BDBMessageStore) getStore();
+        StoredMessage<MessageMetaData> storedMessage = createAndStoreSingleChunkMessage_0_8(bdbStore);
+        storedMessage.flushToStore().waitForCompletion();
+
+        // as if the content had been evicted part way through a delivery
+        bdbStore.closeContentCache();
+
+        ByteBuffer content = storedMessage.getContent(5, 5);
+        byte[] expected = new byte[5];
+        System.arraycopy(CONTENT_BYTES, 5, expected, 0, 5);
+        byte[] actual = new byte[content.remaining()];
+        content.get(actual);
+        assertTrue("Unexpected content", Arrays.equals(expected, actual));
+        assertEquals("The whole content should not have been loaded for a read of part of it",
+                     0l, bdbStore.getContentCacheSize());
+
+        content = storedMessage.getContent(0, CONTENT_BYTES.length);
+        actual = new byte[content.remaining()];
+        content.get(actual);
+        assertTrue("Unexpected content", Arrays.equals(CONTENT_BYTES, actual));
+        assertEquals("The content should have been cached for a read from its start",
+                     (long) CONTENT_BYTES.length, bdbStore.getContentCacheSize());
+    }
+
     /**
      * Tests that messages which are added to the store and then removed using the
      * public MessageStore interfaces are actually removed from the store by then
@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.qpid.server.store.berkeleydb;
+
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import org.apache.qpid.server.store.StoreFuture;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.Transaction;
+
+public class CoalescingCommiterTest extends QpidTestCase
+{
+    private static final long TIMEOUT = 10000l;
+    private static final long FLUSH_MILLIS = 50l;
+
+    private final AtomicInteger _flushes = new AtomicInteger();
+    private final List<Throwable> _errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+    private EnvironmentFacade _environmentFacade;
+    private Environment _environment;
+    private CommitStatistics _statistics;
+    private CoalescingCommiter _commiter;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _environment = mock(Environment.class);
+        when(_environment.isValid()).thenReturn(true);
+        _environmentFacade = mock(EnvironmentFacade.class);
+        when(_environmentFacade.getEnvironment()).thenReturn(_environment);
+        _statistics = new CommitStatistics();
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            if (_commiter != null)
+            {
+                _commiter.stop();
+            }
+        }
+        finally
+        {
+            super.tearDown();
+        }
+    }
+
+    public void testSyncCommitCompletesOnReturn() throws Exception
+    {
+        onFlush(null);
+        startCommiter(CoalescingCommiter.MAX_COALESCING_DELAY, CoalescingCommiter.MAX_BATCH_SIZE);
+
+        StoreFuture future = _commiter.commit(mock(Transaction.class), true);
+
+        assertTrue("Synchronous commit should be complete once committed", future.isComplete());
+        assertEquals("Unexpected number of flushes", 1, _flushes.get());
+        assertEquals("Unexpected number of synchronous commits counted", 1l,
+                     _statistics.getCommitLatency().getCount());
+    }
+
+    public void testAsyncCommitCompletesWhenWaitedFor() throws Exception
+    {
+        onFlush(null);
+        startCommiter(CoalescingCommiter.MAX_COALESCING_DELAY, CoalescingCommiter.MAX_BATCH_SIZE);
+
+        StoreFuture future = _commiter.commit(mock(Transaction.class), false);
+        future.waitForCompletion();
+
+        assertTrue("Asynchronous commit should be complete once waited for", future.isComplete());
+        assertTrue("Log was not flushed", _flushes.get() >= 1);
+    }
+
+    public void testConcurrentCommitsShareOneFlush() throws Exception
+    {
+        final CountDownLatch flushStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFlush = new CountDownLatch(1);
+        onFlush(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (_flushes.get() == 1)
+                {
+                    flushStarted.countDown();
+                    await(releaseFlush);
+                }
+            }
+        });
+        startCommiter(CoalescingCommiter.MAX_COALESCING_DELAY, CoalescingCommiter.MAX_BATCH_SIZE);
+
+        // the first commit holds the commit thread in its flush while the others are queued
+        Thread first = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                _commiter.commit(mock(Transaction.class), true);
+            }
+        }, "first-committer");
+        first.start();
+        assertTrue("Flush did not start", flushStarted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        int threads = 4;
+        final int commitsPerThread = 5;
+        final List<StoreFuture> futures = Collections.synchronizedList(new ArrayList<StoreFuture>());
+        runConcurrently(threads, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (int i = 0; i < commitsPerThread; i++)
+                {
+                    futures.add(_commiter.commit(mock(Transaction.class), false));
+                }
+            }
+        });
+        releaseFlush.countDown();
+
+        for (StoreFuture future : futures)
+        {
+            future.waitForCompletion();
+            assertTrue("Commit is not complete", future.isComplete());
+        }
+        first.join(TIMEOUT);
+        assertFalse("First commit is not complete", first.isAlive());
+        assertEquals("Queued commits should have been completed by a single flush", 2, _flushes.get());
+        assertEquals("Unexpected number of flushes of one commit", 1l,
+                     _statistics.getBatchSizeHistogram().get("1"));
+        assertEquals("Unexpected number of flushes of 16-31 commits", 1l,
+                     _statistics.getBatchSizeHistogram().get("16-31"));
+    }
+
+    public void testCoalescingBacksOffWhenIdle() throws Exception
+    {
+        final List<Long> flushTimes = Collections.synchronizedList(new ArrayList<Long>());
+        onFlush(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                flushTimes.add(System.nanoTime());
+                sleep(FLUSH_MILLIS);
+            }
+        });
+        // flushes are long, so under load the commit thread waits for further commits for as long as a flush takes
+        startCommiter(TimeUnit.SECONDS.toMicros(1), CoalescingCommiter.MAX_BATCH_SIZE);
+
+        runConcurrently(8, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (int i = 0; i < 10; i++)
+                {
+                    _commiter.commit(mock(Transaction.class), true);
+                }
+            }
+        });
+        assertTrue("Commits made under load should have been coalesced", _flushes.get() < 80);
+
+        // once the load has gone, a lone commit is flushed without waiting for others that are not coming
+        sleep(FLUSH_MILLIS * 4);
+        long commitTime = System.nanoTime();
+        _commiter.commit(mock(Transaction.class), true);
+
+        long wait = TimeUnit.NANOSECONDS.toMillis(flushTimes.get(flushTimes.size() - 1) - commitTime);
+        assertTrue("Commit made when idle waited " + wait + " ms before being flushed", wait < FLUSH_MILLIS / 2);
+    }
+
+    private void startCommiter(final long maxCoalescingDelay, final int maxBatchSize)
+    {
+        _commiter = new CoalescingCommiter(getTestName(), _environmentFacade, _statistics,
+                                           maxCoalescingDelay, maxBatchSize);
+        _commiter.start();
+    }
+
+    private void onFlush(final Runnable action)
+    {
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(final InvocationOnMock invocation)
+            {
+                _flushes.incrementAndGet();
+                if (action != null)
+                {
+                    action.run();
+                }
+                return null;
+            }
+        }).when(_environment).flushLog(anyBoolean());
+    }
+
+    private void runConcurrently(final int threadCount, final Runnable task) throws InterruptedException
+    {
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < threadCount; i++)
+        {
+            Thread thread = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        task.run();
+                    }
+                    catch (Throwable e)
+                    {
+                        _errors.add(e);
+                    }
+                }
+            }, "committer-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join(TIMEOUT);
+            assertFalse("Thread " + thread.getName() + " did not complete", thread.isAlive());
+        }
+        assertTrue("Unexpected errors: " + _errors, _errors.isEmpty());
+    }
+
+    private static void await(final CountDownLatch latch)
+    {
+        try
+        {
+            latch.await(TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(final long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.qpid.server.store.berkeleydb;
+
+import java.util.Map;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class CommitStatisticsTest extends QpidTestCase
+{
+    public void testBatchSizeBuckets()
+    {
+        assertEquals("Unexpected bucket", 0, CommitStatistics.getBucket(1));
+        assertEquals("Unexpected bucket", 1, CommitStatistics.getBucket(2));
+        assertEquals("Unexpected bucket", 1, CommitStatistics.getBucket(3));
+        assertEquals("Unexpected bucket", 2, CommitStatistics.getBucket(4));
+        assertEquals("Unexpected bucket", 10, CommitStatistics.getBucket(1024));
+        assertEquals("Unexpected bucket", 10, CommitStatistics.getBucket(Integer.MAX_VALUE));
+    }
+
+    public void testFsyncStatistics()
+    {
+        CommitStatistics statistics = new CommitStatistics();
+        statistics.fsyncCompleted(2000000l, 1);
+        statistics.fsyncCompleted(4000000l, 5);
+        statistics.fsyncCompleted(3000000l, 6);
+
+        assertEquals("Unexpected fsync count", 3l, statistics.getFsyncCount());
+        assertEquals("Unexpected average fsync latency", 3000l, statistics.getAverageFsyncLatency());
+
+        Map<String, Object> histogram = statistics.getBatchSizeHistogram();
+        assertEquals("Unexpected number of buckets", 11, histogram.size());
+        assertEquals("Unexpected count for batches of 1", 1l, histogram.get("1"));
+        assertEquals("Unexpected count for batches of 4-7", 2l, histogram.get("4-7"));
+        assertEquals("Unexpected count for batches of 1024 or more", 0l, histogram.get("1024+"));
+    }
+
+    public void testCommitLatency()
+    {
+        CommitStatistics statistics = new CommitStatistics();
+        statistics.commitCompleted(System.nanoTime(), true);
+        statistics.commitCompleted(System.nanoTime(), false);
+
+        assertEquals("Unexpected number of commits in the latency histogram", 2l,
+                     statistics.getCommitLatency().getCount());
+
+        statistics.getCommitLatency().reset();
+        assertEquals("Unexpected number of commits after reset", 0l, statistics.getCommitLatency().getCount());
+    }
+
+    public void testNoCommits()
+    {
+        CommitStatistics statistics = new CommitStatistics();
+        assertEquals("Unexpected average fsync latency", 0l, statistics.getAverageFsyncLatency());
+        assertEquals("Unexpected average commit latency", 0l, statistics.getAverageCommitLatency());
+    }
+}
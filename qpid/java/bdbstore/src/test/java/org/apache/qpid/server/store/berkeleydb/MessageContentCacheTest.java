@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.qpid.server.store.berkeleydb;
+
+import java.nio.ByteBuffer;
+
+import org.apache.qpid.server.store.ChunkedContent;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class MessageContentCacheTest extends QpidTestCase
+{
+    public void testLeastRecentlyUsedContentIsEvicted()
+    {
+        MessageContentCache cache = new MessageContentCache(250);
+        ChunkedContent first = createContent(100);
+        ChunkedContent second = createContent(100);
+        ChunkedContent third = createContent(100);
+
+        cache.put(1l, first);
+        cache.put(2l, second);
+        assertSame("Unexpected content", first, cache.get(1l));
+
+        cache.put(3l, third);
+
+        assertNull("Least recently used content should have been evicted", cache.get(2l));
+        assertSame("Unexpected content", first, cache.get(1l));
+        assertSame("Unexpected content", third, cache.get(3l));
+        assertEquals("Unexpected size", 200l, cache.getSize());
+        assertEquals("Unexpected evictions", 1l, cache.getEvictions());
+        assertEquals("Unexpected hits", 3l, cache.getHits());
+        assertEquals("Unexpected misses", 1l, cache.getMisses());
+    }
+
+    public void testContentLargerThanCacheIsNotCached()
+    {
+        MessageContentCache cache = new MessageContentCache(250);
+        cache.put(1l, createContent(100));
+        cache.put(2l, createContent(251));
+
+        assertNull("Content should not have been cached", cache.peek(2l));
+        assertNotNull("Content should not have been evicted", cache.peek(1l));
+        assertEquals("Unexpected size", 100l, cache.getSize());
+        assertEquals("Unexpected evictions", 0l, cache.getEvictions());
+    }
+
+    public void testRemove()
+    {
+        MessageContentCache cache = new MessageContentCache(250);
+        cache.put(1l, createContent(100));
+        cache.put(2l, createContent(100));
+
+        cache.remove(1l);
+
+        assertNull("Content should have been removed", cache.peek(1l));
+        assertEquals("Unexpected size", 100l, cache.getSize());
+        assertEquals("Removal should not count as eviction", 0l, cache.getEvictions());
+    }
+
+    public void testDisabledCache()
+    {
+        MessageContentCache cache = new MessageContentCache(0l);
+        cache.put(1l, createContent(0));
+
+        assertNull("Disabled cache should hold nothing", cache.get(1l));
+        assertEquals("Unexpected misses", 0l, cache.getMisses());
+    }
+
+    private ChunkedContent createContent(final int length)
+    {
+        ChunkedContent content = new ChunkedContent(length);
+        content.append(ByteBuffer.allocate(length));
+        return content;
+    }
+}
@@ -24,11 +24,13 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.qpid.server.store.ChunkedContent;
 import org.apache.qpid.server.store.berkeleydb.BDBConfigurationStore;
+import org.apache.qpid.server.store.berkeleydb.entry.MessageContentKey;
 import org.apache.qpid.server.store.berkeleydb.tuple.ContentBinding;
+import org.apache.qpid.server.store.berkeleydb.tuple.MessageContentKeyBinding;
 
 import com.sleepycat.bind.tuple.IntegerBinding;
-import com.sleepycat.bind.tuple.LongBinding;
 import com.sleepycat.je.Cursor;
 import com.sleepycat.je.Database;
 import com.sleepycat.je.DatabaseConfig;
@@ -135,12 +137,16 @@ public class UpgraderTest extends AbstractUpgradeTestCase
             public void processEntry(Database sourceDatabase, Database targetDatabase, Transaction transaction, DatabaseEntry key,
                     DatabaseEntry value)
             {
-                long id = LongBinding.entryToLong(key);
-                assertTrue("Unexpected id", id > 0);
+                MessageContentKey contentKey = MessageContentKeyBinding.getInstance().entryToObject(key);
+                assertTrue("Unexpected id", contentKey.getMessageId() > 0);
+                assertTrue("Unexpected chunk index", contentKey.getChunkIndex() >= 0);
                 byte[] content = contentBinding.entryToObject(value);
                 assertNotNull("Unexpected content", content);
+                assertTrue("Unexpected chunk length", content.length <= ChunkedContent.CHUNK_SIZE);
             }
         };
-        new DatabaseTemplate(_environment, "MESSAGE_CONTENT", null).run(contentCursorOperation);
+        new DatabaseTemplate(_environment, "MESSAGE_CONTENT_CHUNKS", null).run(contentCursorOperation);
+        assertFalse("Old content database should have been removed",
+                    _environment.getDatabaseNames().contains("MESSAGE_CONTENT"));
     }
 }
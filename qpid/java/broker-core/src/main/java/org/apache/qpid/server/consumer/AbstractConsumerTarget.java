@@ -20,8 +20,10 @@
  */
 package org.apache.qpid.server.consumer;
 
+import org.apache.qpid.server.message.MessageInstance;
 import org.apache.qpid.server.util.StateChangeListener;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
 public abstract class AbstractConsumerTarget implements ConsumerTarget
@@ -70,4 +72,26 @@ public abstract class AbstractConsumerTarget implements ConsumerTarget
         return _stateListener.get();
     }
 
+    public void send(final List<? extends MessageInstance> entries)
+    {
+        for(MessageInstance entry : entries)
+        {
+            send(entry, true);
+        }
+    }
+
+    public int allocateCredit(final List<? extends MessageInstance> entries)
+    {
+        int allocated = 0;
+        for(MessageInstance entry : entries)
+        {
+            if(!allocateCredit(entry.getMessage()))
+            {
+                break;
+            }
+            allocated++;
+        }
+        return allocated;
+    }
+
 }
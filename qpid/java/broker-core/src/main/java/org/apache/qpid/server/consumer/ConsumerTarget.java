@@ -20,6 +20,8 @@
  */
 package org.apache.qpid.server.consumer;
 
+import java.util.List;
+
 import org.apache.qpid.server.message.MessageInstance;
 import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.protocol.AMQSessionModel;
@@ -50,6 +52,12 @@ public interface ConsumerTarget
 
     void send(MessageInstance entry, boolean batch);
 
+    /**
+     * Sends a batch of entries for which credit has already been allocated (and which, if the consumer acquires, have
+     * already been acquired).  The transfers need not be flushed until {@link #flushBatched()} is called.
+     */
+    void send(List<? extends MessageInstance> entries);
+
     void flushBatched();
 
     void queueDeleted();
@@ -58,6 +66,14 @@ public interface ConsumerTarget
 
     boolean allocateCredit(ServerMessage msg);
 
+    /**
+     * Allocates credit for as many of the given entries as possible, in order, stopping at the first entry for which
+     * there is insufficient credit.
+     *
+     * @return the number of entries for which credit was allocated
+     */
+    int allocateCredit(List<? extends MessageInstance> entries);
+
     void restoreCredit(ServerMessage queueEntry);
 
     boolean isSuspended();
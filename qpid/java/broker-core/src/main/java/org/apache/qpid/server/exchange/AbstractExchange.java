@@ -59,6 +59,7 @@ import org.apache.qpid.server.model.State;
 import org.apache.qpid.server.model.StateTransition;
 import org.apache.qpid.server.queue.AMQQueue;
 import org.apache.qpid.server.queue.BaseQueue;
+import org.apache.qpid.server.stats.LatencyHistogram;
 import org.apache.qpid.server.store.StorableMessageMetaData;
 import org.apache.qpid.server.txn.ServerTransaction;
 import org.apache.qpid.server.util.Action;
@@ -97,6 +98,7 @@ public abstract class AbstractExchange<T extends AbstractExchange<T>>
     private final AtomicLong _receivedMessageSize = new AtomicLong();
     private final AtomicLong _routedMessageCount = new AtomicLong();
     private final AtomicLong _routedMessageSize = new AtomicLong();
+    private final LatencyHistogram _routeLatency = new LatencyHistogram();
     private final AtomicLong _droppedMessageCount = new AtomicLong();
     private final AtomicLong _droppedMessageSize = new AtomicLong();
 
@@ -460,6 +462,7 @@ public abstract class AbstractExchange<T extends AbstractExchange<T>>
                                           final String routingAddress,
                                           final InstanceProperties instanceProperties)
     {
+        final long startTime = System.nanoTime();
         _receivedMessageCount.incrementAndGet();
         _receivedMessageSize.addAndGet(message.getSize());
         List<? extends BaseQueue> queues = doRoute(message, routingAddress, instanceProperties);
@@ -495,9 +498,16 @@ public abstract class AbstractExchange<T extends AbstractExchange<T>>
             _droppedMessageCount.incrementAndGet();
             _droppedMessageSize.addAndGet(message.getSize());
         }
+        _routeLatency.recordSince(startTime);
         return queues;
     }
 
+    @Override
+    public LatencyHistogram getRouteLatency()
+    {
+        return _routeLatency;
+    }
+
     public final  <M extends ServerMessage<? extends StorableMessageMetaData>> int send(final M message,
                                                                                         final String routingAddress,
                                                                                         final InstanceProperties instanceProperties,
@@ -27,6 +27,7 @@ import org.apache.qpid.server.logging.EventLogger;
 import org.apache.qpid.server.message.MessageDestination;
 import org.apache.qpid.server.model.Exchange;
 import org.apache.qpid.server.queue.AMQQueue;
+import org.apache.qpid.server.stats.LatencyHistogram;
 
 public interface ExchangeImpl<T extends ExchangeImpl<T>> extends Exchange<T>, ExchangeReferrer, MessageDestination
 {
@@ -100,6 +101,11 @@ public interface ExchangeImpl<T extends ExchangeImpl<T>> extends Exchange<T>, Ex
 
     void addBinding(BindingImpl binding);
 
+    /**
+     * @return the time taken to route each message sent to this exchange
+     */
+    LatencyHistogram getRouteLatency();
+
 
     public interface BindingListener
     {
@@ -119,6 +119,35 @@ class HeadersBinding
         return _binding;
     }
 
+    /**
+     * @return the names of the headers which must be present, whatever their value
+     */
+    Set<String> getRequired()
+    {
+        return required;
+    }
+
+    /**
+     * @return the names and values of the headers which must be present with the given value
+     */
+    Map<String, Object> getMatches()
+    {
+        return matches;
+    }
+
+    boolean isMatchAny()
+    {
+        return matchAny;
+    }
+
+    /**
+     * @return true if the headers of every message satisfy this binding, leaving only its filter (if any) to test
+     */
+    boolean isUnconditional()
+    {
+        return required.isEmpty() && matches.isEmpty();
+    }
+
     /**
      * Checks whether the supplied headers match the requirements of this binding
      * @param headers the headers to check
@@ -281,4 +310,10 @@ class HeadersBinding
 
         return true;
     }
+
+    @Override
+    public int hashCode()
+    {
+        return _binding == null ? 0 : _binding.hashCode();
+    }
 }
@@ -0,0 +1,206 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.exchange;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.qpid.server.message.AMQMessageHeader;
+
+/**
+ * An inverted index of header bindings by the header names and values they refer to.
+ *
+ * Given the headers of a message, the index returns only those bindings which could match them: the bindings which
+ * place no condition on the headers, the "any" bindings for which at least one header condition holds, and the
+ * "all" bindings for which every header condition holds.  Candidates must still be checked with
+ * {@link HeadersBinding#matches(org.apache.qpid.server.filter.Filterable)}, which also applies any filter carried by
+ * the binding.
+ *
+ * Updates must be serialised by the caller, lookups may run concurrently with them.
+ */
+class HeadersBindingIndex
+{
+    private final Set<HeadersBinding> _unconditional = newBindingSet();
+    private final ConcurrentHashMap<String, Set<HeadersBinding>> _byName =
+            new ConcurrentHashMap<String, Set<HeadersBinding>>();
+    private final ConcurrentHashMap<String, ConcurrentHashMap<Object, Set<HeadersBinding>>> _byNameAndValue =
+            new ConcurrentHashMap<String, ConcurrentHashMap<Object, Set<HeadersBinding>>>();
+
+    void add(HeadersBinding binding)
+    {
+        if(binding.isUnconditional())
+        {
+            _unconditional.add(binding);
+        }
+        else
+        {
+            for(String name : binding.getRequired())
+            {
+                Set<HeadersBinding> bindings = _byName.get(name);
+                if(bindings == null)
+                {
+                    bindings = newBindingSet();
+                    _byName.put(name, bindings);
+                }
+                bindings.add(binding);
+            }
+            for(Map.Entry<String, Object> entry : binding.getMatches().entrySet())
+            {
+                ConcurrentHashMap<Object, Set<HeadersBinding>> byValue = _byNameAndValue.get(entry.getKey());
+                if(byValue == null)
+                {
+                    byValue = new ConcurrentHashMap<Object, Set<HeadersBinding>>();
+                    _byNameAndValue.put(entry.getKey(), byValue);
+                }
+                Set<HeadersBinding> bindings = byValue.get(entry.getValue());
+                if(bindings == null)
+                {
+                    bindings = newBindingSet();
+                    byValue.put(entry.getValue(), bindings);
+                }
+                bindings.add(binding);
+            }
+        }
+    }
+
+    void remove(HeadersBinding binding)
+    {
+        if(binding.isUnconditional())
+        {
+            _unconditional.remove(binding);
+        }
+        else
+        {
+            for(String name : binding.getRequired())
+            {
+                Set<HeadersBinding> bindings = _byName.get(name);
+                if(bindings != null)
+                {
+                    bindings.remove(binding);
+                    if(bindings.isEmpty())
+                    {
+                        _byName.remove(name);
+                    }
+                }
+            }
+            for(Map.Entry<String, Object> entry : binding.getMatches().entrySet())
+            {
+                ConcurrentHashMap<Object, Set<HeadersBinding>> byValue = _byNameAndValue.get(entry.getKey());
+                if(byValue != null)
+                {
+                    Set<HeadersBinding> bindings = byValue.get(entry.getValue());
+                    if(bindings != null)
+                    {
+                        bindings.remove(binding);
+                        if(bindings.isEmpty())
+                        {
+                            byValue.remove(entry.getValue());
+                            if(byValue.isEmpty())
+                            {
+                                _byNameAndValue.remove(entry.getKey());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the bindings which could match a message with the given headers.
+     */
+    Collection<HeadersBinding> getCandidates(AMQMessageHeader headers)
+    {
+        if(headers == null || (_byName.isEmpty() && _byNameAndValue.isEmpty()))
+        {
+            return _unconditional;
+        }
+
+        // the number of header conditions of each binding satisfied by the message
+        Map<HeadersBinding, int[]> satisfied = new LinkedHashMap<HeadersBinding, int[]>();
+        for(String name : headers.getHeaderNames())
+        {
+            Set<HeadersBinding> bindings = _byName.get(name);
+            if(bindings != null)
+            {
+                countSatisfied(satisfied, bindings);
+            }
+
+            ConcurrentHashMap<Object, Set<HeadersBinding>> byValue = _byNameAndValue.get(name);
+            if(byValue != null)
+            {
+                Object value = headers.getHeader(name);
+                if(value != null)
+                {
+                    bindings = byValue.get(value);
+                    if(bindings != null)
+                    {
+                        countSatisfied(satisfied, bindings);
+                    }
+                }
+            }
+        }
+
+        if(satisfied.isEmpty())
+        {
+            return _unconditional;
+        }
+
+        // bindings without conditions are not in the name indexes, so the candidates are distinct
+        Collection<HeadersBinding> candidates = new ArrayList<HeadersBinding>(_unconditional);
+        for(Map.Entry<HeadersBinding, int[]> entry : satisfied.entrySet())
+        {
+            HeadersBinding binding = entry.getKey();
+            if(binding.isMatchAny()
+               || entry.getValue()[0] >= binding.getRequired().size() + binding.getMatches().size())
+            {
+                candidates.add(binding);
+            }
+        }
+        return candidates;
+    }
+
+    private static void countSatisfied(Map<HeadersBinding, int[]> satisfied, Set<HeadersBinding> bindings)
+    {
+        for(HeadersBinding binding : bindings)
+        {
+            int[] count = satisfied.get(binding);
+            if(count == null)
+            {
+                satisfied.put(binding, new int[] {1});
+            }
+            else
+            {
+                count[0]++;
+            }
+        }
+    }
+
+    private static Set<HeadersBinding> newBindingSet()
+    {
+        return Collections.newSetFromMap(new ConcurrentHashMap<HeadersBinding, Boolean>());
+    }
+}
@@ -22,10 +22,8 @@ package org.apache.qpid.server.exchange;
 
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.apache.log4j.Logger;
@@ -67,6 +65,9 @@ import org.apache.qpid.server.virtualhost.VirtualHostImpl;
  *
  *  amq.match - pub/sub on field content/value
  *  </pre>
+ *
+ * Bindings are indexed by the header names and values they refer to, so that routing a message only evaluates the
+ * bindings which could match its headers.
  */
 @ManagedObject( category = false, type = ExchangeDefaults.HEADERS_EXCHANGE_CLASS )
 public class HeadersExchange extends AbstractExchange<HeadersExchange>
@@ -77,8 +78,10 @@ public class HeadersExchange extends AbstractExchange<HeadersExchange>
     private final ConcurrentHashMap<String, CopyOnWriteArraySet<BindingImpl>> _bindingsByKey =
                             new ConcurrentHashMap<String, CopyOnWriteArraySet<BindingImpl>>();
 
-    private final CopyOnWriteArrayList<HeadersBinding> _bindingHeaderMatchers =
-                            new CopyOnWriteArrayList<HeadersBinding>();
+    private final ConcurrentHashMap<BindingImpl, HeadersBinding> _bindingHeaderMatchers =
+                            new ConcurrentHashMap<BindingImpl, HeadersBinding>();
+
+    private final HeadersBindingIndex _bindingIndex = new HeadersBindingIndex();
 
     @ManagedObjectFactoryConstructor
     public HeadersExchange(final Map<String, Object> attributes, final VirtualHostImpl vhost)
@@ -97,10 +100,11 @@ public class HeadersExchange extends AbstractExchange<HeadersExchange>
         }
 
         LinkedHashSet<BaseQueue> queues = new LinkedHashSet<BaseQueue>();
+        Filterable filterable = Filterable.Factory.newInstance(payload, instanceProperties);
 
-        for (HeadersBinding hb : _bindingHeaderMatchers)
+        for (HeadersBinding hb : _bindingIndex.getCandidates(payload.getMessageHeader()))
         {
-            if (hb.matches(Filterable.Factory.newInstance(payload,instanceProperties)))
+            if (hb.matches(filterable))
             {
                 BindingImpl b = hb.getBinding();
 
@@ -118,7 +122,7 @@ public class HeadersExchange extends AbstractExchange<HeadersExchange>
         return new ArrayList<BaseQueue>(queues);
     }
 
-    protected void onBind(final BindingImpl binding)
+    protected synchronized void onBind(final BindingImpl binding)
     {
         String bindingKey = binding.getBindingKey();
         AMQQueue queue = binding.getAMQQueue();
@@ -145,27 +149,32 @@ public class HeadersExchange extends AbstractExchange<HeadersExchange>
                           " with binding key '" +bindingKey + "' and args: " + args);
         }
 
-        _bindingHeaderMatchers.add(new HeadersBinding(binding));
+        HeadersBinding headersBinding = new HeadersBinding(binding);
+        HeadersBinding oldHeadersBinding = _bindingHeaderMatchers.put(binding, headersBinding);
+        if(oldHeadersBinding != null)
+        {
+            _bindingIndex.remove(oldHeadersBinding);
+        }
+        _bindingIndex.add(headersBinding);
         bindings.add(binding);
 
     }
 
     @Override
-    protected void onBindingUpdated(final BindingImpl binding, final Map<String, Object> oldArguments)
+    protected synchronized void onBindingUpdated(final BindingImpl binding, final Map<String, Object> oldArguments)
     {
-        HeadersBinding headersBinding = new HeadersBinding(binding);
-        ListIterator<HeadersBinding> iter = _bindingHeaderMatchers.listIterator();
-        while(iter.hasNext())
+        HeadersBinding oldHeadersBinding = _bindingHeaderMatchers.get(binding);
+        if(oldHeadersBinding != null)
         {
-            if(iter.next().equals(headersBinding))
-            {
-                iter.set(headersBinding);
-            }
+            HeadersBinding headersBinding = new HeadersBinding(binding);
+            _bindingIndex.remove(oldHeadersBinding);
+            _bindingHeaderMatchers.put(binding, headersBinding);
+            _bindingIndex.add(headersBinding);
         }
 
     }
 
-    protected void onUnbind(final BindingImpl binding)
+    protected synchronized void onUnbind(final BindingImpl binding)
     {
         assert binding != null;
 
@@ -175,7 +184,12 @@ public class HeadersExchange extends AbstractExchange<HeadersExchange>
             bindings.remove(binding);
         }
 
-        boolean removedBinding = _bindingHeaderMatchers.remove(new HeadersBinding(binding));
+        HeadersBinding headersBinding = _bindingHeaderMatchers.remove(binding);
+        boolean removedBinding = headersBinding != null;
+        if(removedBinding)
+        {
+            _bindingIndex.remove(headersBinding);
+        }
         if(_logger.isDebugEnabled())
         {
             _logger.debug("Removing Binding: " + removedBinding);
@@ -25,8 +25,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 
@@ -60,12 +62,27 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
 
     private final Map<BindingImpl, Map<String,Object>> _bindings = new HashMap<BindingImpl, Map<String,Object>>();
 
+    /**
+     * The results of matching recently seen routing keys against the bindings.  Each entry records the version of
+     * the bindings it was computed from, and is ignored once the bindings have changed.
+     */
+    private final ConcurrentHashMap<String, CachedRoute> _routeCache = new ConcurrentHashMap<String, CachedRoute>();
+    private final AtomicLong _bindingsVersion = new AtomicLong();
+    private volatile int _routeCacheSize = DEFAULT_TOPIC_ROUTING_CACHE_SIZE;
+
     @ManagedObjectFactoryConstructor
     public TopicExchange(final Map<String,Object> attributes, final VirtualHostImpl vhost)
     {
         super(attributes, vhost);
     }
 
+    @Override
+    protected void onOpen()
+    {
+        super.onOpen();
+        _routeCacheSize = getContextValue(Integer.class, TOPIC_ROUTING_CACHE_SIZE_CONTEXT_VAR);
+    }
+
     @Override
     protected synchronized void onBindingUpdated(final BindingImpl binding, final Map<String, Object> oldArguments)
     {
@@ -120,6 +137,7 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
                     }
                 }
 
+                bindingsChanged();
             }
         }
         catch (AMQInvalidArgumentException e)
@@ -180,7 +198,7 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
             }
 
             result.addBinding(binding);
-
+            bindingsChanged();
         }
         else
         {
@@ -214,6 +232,7 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
 
             result.addBinding(binding);
             _bindings.put(binding, args);
+            bindingsChanged();
         }
 
     }
@@ -228,24 +247,35 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
                                           ? ""
                                           : routingAddress;
 
-        final Collection<AMQQueue> matchedQueues =
-                getMatchedQueues(Filterable.Factory.newInstance(payload,instanceProperties), routingKey);
-
-        ArrayList<BaseQueue> queues;
-
-        if(matchedQueues.getClass() == ArrayList.class)
+        final CachedRoute route = getRoute(routingKey);
+        if(route._results.length > 1)
         {
-            queues = (ArrayList) matchedQueues;
+            for(TopicExchangeResult result : route._results)
+            {
+                result.incrementMatches();
+            }
         }
-        else
+
+        ArrayList<BaseQueue> queues = route._queues;
+        if(queues == null)
         {
-            queues = new ArrayList<BaseQueue>();
-            queues.addAll(matchedQueues);
+            final Collection<AMQQueue> matchedQueues =
+                    getMatchedQueues(Filterable.Factory.newInstance(payload, instanceProperties), route._results);
+
+            if(matchedQueues.getClass() == ArrayList.class)
+            {
+                queues = (ArrayList) matchedQueues;
+            }
+            else
+            {
+                queues = new ArrayList<BaseQueue>();
+                queues.addAll(matchedQueues);
+            }
         }
 
-        if(queues == null || queues.isEmpty())
+        if(queues.isEmpty() && _logger.isDebugEnabled())
         {
-            _logger.info("Message routing key: " + routingAddress + " No routes.");
+            _logger.debug("Message routing key: " + routingAddress + " No routes.");
         }
 
         return queues;
@@ -279,10 +309,15 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
                 {
                     return false;
                 }
+                finally
+                {
+                    bindingsChanged();
+                }
             }
             else
             {
                 result.removeUnfilteredQueue(binding.getAMQQueue());
+                bindingsChanged();
             }
             return true;
         }
@@ -292,35 +327,49 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
         }
     }
 
-    private Collection<AMQQueue> getMatchedQueues(Filterable message, String routingKey)
+    private CachedRoute getRoute(final String routingKey)
+    {
+        final long version = _bindingsVersion.get();
+        CachedRoute route = _routeCache.get(routingKey);
+        if(route == null || route._version != version)
+        {
+            Collection<TopicMatcherResult> results = _parser.parse(routingKey);
+            route = new CachedRoute(version, results.toArray(new TopicExchangeResult[results.size()]));
+
+            final int cacheSize = _routeCacheSize;
+            if(cacheSize > 0)
+            {
+                if(_routeCache.size() >= cacheSize)
+                {
+                    _routeCache.clear();
+                }
+                _routeCache.put(routingKey, route);
+            }
+        }
+        return route;
+    }
+
+    private void bindingsChanged()
     {
+        _bindingsVersion.incrementAndGet();
+    }
 
-        Collection<TopicMatcherResult> results = _parser.parse(routingKey);
-        switch(results.size())
+    private Collection<AMQQueue> getMatchedQueues(Filterable message, TopicExchangeResult[] results)
+    {
+        switch(results.length)
         {
             case 0:
                 return Collections.EMPTY_SET;
             case 1:
-                TopicMatcherResult[] resultQueues = new TopicMatcherResult[1];
-                results.toArray(resultQueues);
-                return ((TopicExchangeResult)resultQueues[0]).processMessage(message, null);
+                return results[0].processMessage(message, null);
             default:
                 Collection<AMQQueue> queues = new HashSet<AMQQueue>();
-                for(TopicMatcherResult result : results)
+                for(TopicExchangeResult result : results)
                 {
-                    TopicExchangeResult res = (TopicExchangeResult)result;
-
-                    for(BindingImpl b : res.getBindings())
-                    {
-                        b.incrementMatches();
-                    }
-
-                    queues = res.processMessage(message, queues);
+                    queues = result.processMessage(message, queues);
                 }
                 return queues;
         }
-
-
     }
 
     protected void onBind(final BindingImpl binding)
@@ -341,4 +390,32 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
         deregisterQueue(binding);
     }
 
+    /**
+     * The bindings matching a routing key.  If none of the bindings carry a filter, the set of queues to route to
+     * does not depend on the message, and is computed once.
+     */
+    private static final class CachedRoute
+    {
+        private final long _version;
+        private final TopicExchangeResult[] _results;
+        private final ArrayList<BaseQueue> _queues;
+
+        private CachedRoute(final long version, final TopicExchangeResult[] results)
+        {
+            _version = version;
+            _results = results;
+
+            Collection<AMQQueue> queues = new LinkedHashSet<AMQQueue>();
+            for(TopicExchangeResult result : results)
+            {
+                if(result.hasFilteredQueues())
+                {
+                    queues = null;
+                    break;
+                }
+                queues.addAll(result.getUnfilteredQueues());
+            }
+            _queues = queues == null ? null : new ArrayList<BaseQueue>(queues);
+        }
+    }
 }
@@ -20,8 +20,6 @@
  */
 package org.apache.qpid.server.exchange.topic;
 
-import java.util.Arrays;
-import java.util.Iterator;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -44,7 +42,7 @@ public class TopicMatcherDFAState
 
     private final Collection<TopicMatcherResult> _results;
     private final Map<TopicWord, TopicMatcherDFAState> _nextStateMap;
-    private static final String TOPIC_DELIMITER = "\\.";
+    private static final char TOPIC_DELIMITER = '.';
 
 
     public TopicMatcherDFAState(Map<TopicWord, TopicMatcherDFAState> nextStateMap,
@@ -67,36 +65,59 @@ public class TopicMatcherDFAState
     }
 
 
+    /**
+     * Walks the state machine over the words of the routing key, without splitting the key into strings.  Words are
+     * delimited as by {@link String#split(String)}, so trailing empty words are ignored.
+     */
     public Collection<TopicMatcherResult> parse(TopicWordDictionary dictionary, String routingKey)
     {
-        return parse(dictionary, Arrays.asList(routingKey.split(TOPIC_DELIMITER)).iterator());
-    }
-
-    private Collection<TopicMatcherResult> parse(final TopicWordDictionary dictionary,
-                                                 final Iterator<String> tokens)
-    {
-        if(!tokens.hasNext())
-        {
-            return _results;
-        }
-        TopicWord word = dictionary.getWord(tokens.next());
-        TopicMatcherDFAState nextState = _nextStateMap.get(word);
-        if(nextState == null && word != TopicWord.ANY_WORD)
-        {
-            nextState = _nextStateMap.get(TopicWord.ANY_WORD);
-        }
-        if(nextState == null)
+        int length = routingKey.length();
+        if(length != 0)
         {
-            return Collections.EMPTY_LIST;
+            while(length > 0 && routingKey.charAt(length - 1) == TOPIC_DELIMITER)
+            {
+                length--;
+            }
+            if(length == 0)
+            {
+                return _results;
+            }
         }
-        // Shortcut if we are at a looping terminal state
-        if((nextState == this) && (_nextStateMap.size() == 1) && _nextStateMap.containsKey(TopicWord.ANY_WORD))
+
+        TopicMatcherDFAState state = this;
+        int start = 0;
+        while(true)
         {
-            return _results;
-        }
+            int end = routingKey.indexOf(TOPIC_DELIMITER, start);
+            if(end == -1 || end > length)
+            {
+                end = length;
+            }
 
-        return nextState.parse(dictionary, tokens);
+            TopicWord word = dictionary.getWord(routingKey, start, end);
+            final Map<TopicWord, TopicMatcherDFAState> nextStateMap = state._nextStateMap;
+            TopicMatcherDFAState nextState = nextStateMap.get(word);
+            if(nextState == null && word != TopicWord.ANY_WORD)
+            {
+                nextState = nextStateMap.get(TopicWord.ANY_WORD);
+            }
+            if(nextState == null)
+            {
+                return Collections.EMPTY_LIST;
+            }
+            // Shortcut if we are at a looping terminal state
+            if((nextState == state) && (nextStateMap.size() == 1) && nextStateMap.containsKey(TopicWord.ANY_WORD))
+            {
+                return state._results;
+            }
 
+            state = nextState;
+            if(end == length)
+            {
+                return state._results;
+            }
+            start = end + 1;
+        }
     }
 
 
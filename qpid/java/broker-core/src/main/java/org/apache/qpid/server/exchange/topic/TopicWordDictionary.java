@@ -20,6 +20,7 @@
 */
 package org.apache.qpid.server.exchange.topic;
 
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class TopicWordDictionary
@@ -27,18 +28,31 @@ public class TopicWordDictionary
     private final ConcurrentHashMap<String,TopicWord> _dictionary =
             new ConcurrentHashMap<String,TopicWord>();
 
+    // an immutable copy of the dictionary which can be searched for a word within a routing key without first
+    // extracting the word as a string, rebuilt whenever a word is added
+    private volatile WordIndex _index;
+
     public TopicWordDictionary()
     {
         _dictionary.put("*", TopicWord.ANY_WORD);
         _dictionary.put("#", TopicWord.WILDCARD_WORD);
+        _index = new WordIndex(_dictionary);
     }
 
     public TopicWord getOrCreateWord(String name)
     {
-        TopicWord word = _dictionary.putIfAbsent(name, new TopicWord(name));
+        TopicWord word = _dictionary.get(name);
         if(word == null)
         {
-            word = _dictionary.get(name);
+            synchronized (this)
+            {
+                word = _dictionary.putIfAbsent(name, new TopicWord(name));
+                if(word == null)
+                {
+                    word = _dictionary.get(name);
+                    _index = new WordIndex(_dictionary);
+                }
+            }
         }
         return word;
     }
@@ -53,4 +67,67 @@ public class TopicWordDictionary
         }
         return word;
     }
+
+    /**
+     * Returns the word formed by the characters of the routing key from start (inclusive) to end (exclusive), or
+     * {@link TopicWord#ANY_WORD} if the dictionary does not contain it.  Does not allocate.
+     */
+    public TopicWord getWord(String routingKey, int start, int end)
+    {
+        TopicWord word = _index.get(routingKey, start, end);
+        return word == null ? TopicWord.ANY_WORD : word;
+    }
+
+    private static final class WordIndex
+    {
+        private final String[] _names;
+        private final TopicWord[] _words;
+        private final int _mask;
+
+        private WordIndex(Map<String, TopicWord> dictionary)
+        {
+            int capacity = Integer.highestOneBit(Math.max(2, dictionary.size()) * 2) << 1;
+            _names = new String[capacity];
+            _words = new TopicWord[capacity];
+            _mask = capacity - 1;
+            for(Map.Entry<String, TopicWord> entry : dictionary.entrySet())
+            {
+                int i = spread(entry.getKey().hashCode()) & _mask;
+                while(_names[i] != null)
+                {
+                    i = (i + 1) & _mask;
+                }
+                _names[i] = entry.getKey();
+                _words[i] = entry.getValue();
+            }
+        }
+
+        private TopicWord get(String routingKey, int start, int end)
+        {
+            // the same hash as String.hashCode() of the word
+            int hash = 0;
+            for(int c = start; c < end; c++)
+            {
+                hash = 31 * hash + routingKey.charAt(c);
+            }
+
+            final int length = end - start;
+            int i = spread(hash) & _mask;
+            String name;
+            while((name = _names[i]) != null)
+            {
+                if(name.length() == length && name.regionMatches(0, routingKey, start, length))
+                {
+                    return _words[i];
+                }
+                i = (i + 1) & _mask;
+            }
+            return null;
+        }
+
+        private static int spread(int hash)
+        {
+            return hash ^ (hash >>> 16);
+        }
+    }
 }
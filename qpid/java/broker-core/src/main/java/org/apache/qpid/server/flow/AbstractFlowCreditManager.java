@@ -71,4 +71,14 @@ public abstract class AbstractFlowCreditManager implements FlowCreditManager
     {
         notifyListeners(false);
     }
+
+    public synchronized int useCreditForMessages(final long[] msgSizes, final int count)
+    {
+        int used = 0;
+        while(used < count && useCreditForMessage(msgSizes[used]))
+        {
+            used++;
+        }
+        return used;
+    }
 }
@@ -43,4 +43,12 @@ public interface FlowCreditManager
 
     public boolean useCreditForMessage(long msgSize);
 
+    /**
+     * Uses credit for as many as possible of the first <code>count</code> message sizes, in order, stopping at the
+     * first message for which there is insufficient credit.
+     *
+     * @return the number of messages for which credit was used
+     */
+    public int useCreditForMessages(long[] msgSizes, int count);
+
 }
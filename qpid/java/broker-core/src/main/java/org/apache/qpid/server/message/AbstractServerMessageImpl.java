@@ -25,6 +25,8 @@ import org.apache.qpid.server.store.StoredMessage;
 import org.apache.qpid.server.util.ServerScopedRuntimeException;
 
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
@@ -38,6 +40,10 @@ public abstract class AbstractServerMessageImpl<X extends AbstractServerMessageI
     private final StoredMessage<T> _handle;
     private final Object _connectionReference;
 
+    // guarded by this
+    private Map<Class<? extends ServerMessage>, ServerMessage> _convertedMessages;
+    private MessageConversionCache _conversionCache;
+
 
     public AbstractServerMessageImpl(StoredMessage<T> handle, Object connectionReference)
     {
@@ -89,6 +95,8 @@ public abstract class AbstractServerMessageImpl<X extends AbstractServerMessageI
             {
                 _handle.remove();
             }
+
+            releaseConvertedMessages();
         }
         else
         {
@@ -100,6 +108,61 @@ public abstract class AbstractServerMessageImpl<X extends AbstractServerMessageI
         }
     }
 
+    @Override
+    public <N extends ServerMessage> N getConvertedMessage(final Class<N> messageClass)
+    {
+        synchronized (this)
+        {
+            return _convertedMessages == null ? null : messageClass.cast(_convertedMessages.get(messageClass));
+        }
+    }
+
+    @Override
+    public boolean holdConvertedMessage(final Class<? extends ServerMessage> messageClass,
+                                        final ServerMessage converted,
+                                        final MessageConversionCache cache)
+    {
+        synchronized (this)
+        {
+            // a message is only released once its count has fallen to zero, and releases its forms under this lock
+            if(getReferenceCount() <= 0 || (_conversionCache != null && _conversionCache != cache))
+            {
+                return false;
+            }
+            if(_convertedMessages == null)
+            {
+                _convertedMessages = new HashMap<Class<? extends ServerMessage>, ServerMessage>(2);
+                _conversionCache = cache;
+            }
+            else if(_convertedMessages.containsKey(messageClass))
+            {
+                return false;
+            }
+            _convertedMessages.put(messageClass, converted);
+            return true;
+        }
+    }
+
+    private void releaseConvertedMessages()
+    {
+        Map<Class<? extends ServerMessage>, ServerMessage> convertedMessages;
+        MessageConversionCache cache;
+        synchronized (this)
+        {
+            convertedMessages = _convertedMessages;
+            cache = _conversionCache;
+            _convertedMessages = null;
+            _conversionCache = null;
+        }
+        if(convertedMessages != null)
+        {
+            for(ServerMessage converted : convertedMessages.values())
+            {
+                cache.released(converted);
+            }
+        }
+    }
+
     public String debugIdentity()
     {
         return "(HC:" + System.identityHashCode(this) + " ID:" + getMessageNumber() + " Ref:" + getReferenceCount() + ")";
@@ -0,0 +1,137 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.message;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.qpid.server.plugin.MessageConverter;
+import org.apache.qpid.server.protocol.MessageConverterRegistry;
+import org.apache.qpid.server.virtualhost.VirtualHostImpl;
+
+/**
+ * Keeps the forms of the messages of a virtual host converted for the consumers of another protocol, so that a
+ * message delivered to many such consumers is converted once rather than for every delivery.
+ *
+ * Each message holds its own converted forms, one for each message class, until the last reference to the message
+ * is released.  The total size of the held forms is kept within a byte budget: once it is reached, messages are
+ * converted for each delivery again until held forms are released.  A budget of zero or less disables the cache.
+ */
+public class MessageConversionCache
+{
+    public static final MessageConversionCache DISABLED = new MessageConversionCache(0l);
+
+    private final long _maximumBytes;
+    private final MessageConverter _converter;
+
+    private final AtomicLong _heldBytes = new AtomicLong();
+    private final AtomicLong _conversions = new AtomicLong();
+    private final AtomicLong _hits = new AtomicLong();
+
+    public MessageConversionCache(final long maximumBytes)
+    {
+        this(maximumBytes, null);
+    }
+
+    /**
+     * Creates a cache which converts every message with the given converter, rather than with the one registered for
+     * the classes of the message and of its converted form.
+     */
+    MessageConversionCache(final long maximumBytes, final MessageConverter converter)
+    {
+        _maximumBytes = maximumBytes;
+        _converter = converter;
+    }
+
+    /**
+     * Returns the cache of the given virtual host, or {@link #DISABLED} if it has none.
+     */
+    public static MessageConversionCache getMessageConversionCache(final VirtualHostImpl<?, ?, ?> virtualHost)
+    {
+        MessageConversionCache cache = virtualHost == null ? null : virtualHost.getMessageConversionCache();
+        return cache == null ? DISABLED : cache;
+    }
+
+    public boolean isEnabled()
+    {
+        return _maximumBytes > 0l;
+    }
+
+    /**
+     * Returns the form of the message converted to the given class, converting the message only if it does not
+     * already hold such a form.
+     */
+    public <N extends ServerMessage> N convert(final ServerMessage<?> message,
+                                               final Class<N> messageClass,
+                                               final VirtualHostImpl<?, ?, ?> virtualHost)
+    {
+        N converted = message.getConvertedMessage(messageClass);
+        if(converted != null)
+        {
+            _hits.incrementAndGet();
+            return converted;
+        }
+
+        MessageConverter converter = _converter == null
+                ? MessageConverterRegistry.getConverter(message.getClass(), messageClass)
+                : _converter;
+        converted = messageClass.cast(converter.convert(message, virtualHost));
+        _conversions.incrementAndGet();
+
+        if(isEnabled())
+        {
+            long size = converted.getSize();
+            if(_heldBytes.addAndGet(size) > _maximumBytes
+               || !message.holdConvertedMessage(messageClass, converted, this))
+            {
+                _heldBytes.addAndGet(-size);
+            }
+        }
+        return converted;
+    }
+
+    /**
+     * Called by a message when it releases a converted form which it held for this cache.
+     */
+    void released(final ServerMessage<?> converted)
+    {
+        _heldBytes.addAndGet(-converted.getSize());
+    }
+
+    public long getMaximumBytes()
+    {
+        return _maximumBytes;
+    }
+
+    public long getHeldBytes()
+    {
+        return _heldBytes.get();
+    }
+
+    public long getConversions()
+    {
+        return _conversions.get();
+    }
+
+    public long getHits()
+    {
+        return _hits.get();
+    }
+}
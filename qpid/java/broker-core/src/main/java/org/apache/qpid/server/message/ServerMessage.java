@@ -50,4 +50,20 @@ public interface ServerMessage<T extends StorableMessageMetaData> extends Enqueu
     public ByteBuffer getContent(int offset, int size);
 
     Object getConnectionReference();
+
+    /**
+     * @return the form of this message converted to the given class which the message holds for a
+     * {@link MessageConversionCache}, or null if it holds none
+     */
+    <N extends ServerMessage> N getConvertedMessage(Class<N> messageClass);
+
+    /**
+     * Holds a converted form of this message until the last reference to the message is released, when the form is
+     * released back to the cache.
+     *
+     * @return false if the message already holds a form of the class, or is not referenced
+     */
+    boolean holdConvertedMessage(Class<? extends ServerMessage> messageClass,
+                                 ServerMessage converted,
+                                 MessageConversionCache cache);
 }
@@ -625,6 +625,18 @@ public abstract class AbstractConfiguredObject<X extends ConfiguredObject<X>> im
         }
     }
 
+    /**
+     * Resolves the value of an automated attribute again, for example once a context variable it refers to has been
+     * changed.
+     */
+    protected void resolveAutomatedAttribute(final String name)
+    {
+        synchronized (_attributes)
+        {
+            resolveAutomatedAttribute((ConfiguredAutomatedAttribute<?, ?>) _attributeTypes.get(name));
+        }
+    }
+
     private void attainStateIfResolved()
     {
         if(_openComplete)
@@ -22,6 +22,7 @@ package org.apache.qpid.server.model;
 
 import java.net.SocketAddress;
 import java.util.Collection;
+import java.util.Map;
 
 import org.apache.qpid.server.configuration.updater.TaskExecutor;
 import org.apache.qpid.server.logging.EventLogger;
@@ -51,6 +52,7 @@ public interface Broker<X extends Broker<X>> extends ConfiguredObject<X>, EventL
     String STORE_VERSION = "storeVersion";
     String STORE_PATH = "storePath";
     String MODEL_VERSION = "modelVersion";
+    String DELIVERY_SHARD_STATISTICS = "deliveryShardStatistics";
 
     String CONNECTION_SESSION_COUNT_LIMIT = "connection.sessionCountLimit";
     String CONNECTION_HEART_BEAT_DELAY = "connection.heartBeatDelay";
@@ -134,6 +136,14 @@ public interface Broker<X extends Broker<X>> extends ConfiguredObject<X>, EventL
     @ManagedStatistic
     long getMessagesOut();
 
+    /**
+     * Per delivery shard: the number of queues pinned to it, tasks executed and stolen, current backlog, helper
+     * threads running the backlog while the shard is stalled, the total time spent delivering, and the fraction of
+     * time spent delivering since the shard was started.
+     */
+    @DerivedAttribute
+    Map<String, Object> getDeliveryShardStatistics();
+
 
     //children
     Collection<VirtualHostNode<?>> getVirtualHostNodes();
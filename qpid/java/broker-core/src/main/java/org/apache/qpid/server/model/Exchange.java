@@ -30,6 +30,15 @@ public interface Exchange<X extends Exchange<X>> extends ConfiguredObject<X>, Me
 {
     String ALTERNATE_EXCHANGE                   = "alternateExchange";
 
+    String TOPIC_ROUTING_CACHE_SIZE_CONTEXT_VAR = "exchange.topicRoutingCacheSize";
+
+    /**
+     * The maximum number of routing keys for which a topic exchange remembers the matching bindings.  A value of
+     * zero or less disables the cache.
+     */
+    @ManagedContextDefault( name = TOPIC_ROUTING_CACHE_SIZE_CONTEXT_VAR)
+    int DEFAULT_TOPIC_ROUTING_CACHE_SIZE = 4096;
+
     // Attributes
 
     @ManagedAttribute
@@ -21,6 +21,7 @@
 package org.apache.qpid.server.model;
 
 import java.util.Collection;
+import java.util.Map;
 
 import org.apache.qpid.server.queue.QueueEntryVisitor;
 
@@ -124,6 +125,24 @@ public interface Queue<X extends Queue<X>> extends ConfiguredObject<X>
     long getAlertThresholdQueueDepthMessages();
 
 
+    String DELIVERY_TIME_SLICE_CONTEXT_VAR = "queue.deliveryTimeSlice";
+
+    /**
+     * The time in milliseconds for which asynchronous delivery from a queue may run before yielding its delivery
+     * shard to the other queues pinned to it.
+     */
+    @ManagedContextDefault( name = DELIVERY_TIME_SLICE_CONTEXT_VAR)
+    long DEFAULT_DELIVERY_TIME_SLICE = 5l;
+
+    String DELIVERY_BATCH_SIZE_CONTEXT_VAR = "queue.deliveryBatchSize";
+
+    /**
+     * The maximum number of entries claimed for a consumer, and handed to it together, in one asynchronous delivery
+     * attempt.  A value of 1 delivers entries one at a time.
+     */
+    @ManagedContextDefault( name = DELIVERY_BATCH_SIZE_CONTEXT_VAR)
+    int DEFAULT_DELIVERY_BATCH_SIZE = 16;
+
     @ManagedContextDefault( name = "queue.alertRepeatGap")
     long DEFAULT_ALERT_REPEAT_GAP = 30000l;
 
@@ -172,6 +191,13 @@ public interface Queue<X extends Queue<X>> extends ConfiguredObject<X>
     @ManagedStatistic
     long getQueueDepthBytes();
 
+    /**
+     * The number of messages put back on the queue from the message store when the virtual host was started.  Grows
+     * while the queue is being recovered.
+     */
+    @ManagedStatistic
+    long getRecoveredMessages();
+
     @ManagedStatistic
     int getQueueDepthMessages();
 
@@ -193,4 +219,14 @@ public interface Queue<X extends Queue<X>> extends ConfiguredObject<X>
     @ManagedStatistic
     long getUnacknowledgedMessages();
 
+    /**
+     * @return the count, mean, maximum and percentiles, in microseconds, of the time taken to enqueue a message
+     * ("enqueue"), from a message arriving to its first delivery to a consumer ("delivery") and from a message
+     * arriving to it being dequeued ("timeInQueue")
+     */
+    @DerivedAttribute
+    Map<String, Object> getLatencyHistograms();
+
+    void resetLatencyHistograms();
+
 }
@@ -44,6 +44,9 @@ public interface VirtualHost<X extends VirtualHost<X, Q, E>, Q extends Queue<?>,
     String SUPPORTED_QUEUE_TYPES                = "supportedQueueTypes";
     String HOUSE_KEEPING_THREAD_COUNT           = "houseKeepingThreadCount";
     String MODEL_VERSION                        = "modelVersion";
+    String FLOW_TO_DISK_THRESHOLD               = "flowToDiskThreshold";
+
+    String FLOW_TO_DISK_DIRECTORY_CONTEXT_VAR   = "virtualhost.flowToDiskDirectory";
 
     // TODO - this isn't really an attribute
     @DerivedAttribute
@@ -103,6 +106,48 @@ public interface VirtualHost<X extends VirtualHost<X, Q, E>, Q extends Queue<?>,
     @ManagedAttribute( defaultValue = "${virtualhost.housekeepingThreadCount}")
     int getHousekeepingThreadCount();
 
+    String RECOVERY_THREAD_COUNT_CONTEXT_VAR = "virtualhost.recoveryThreadCount";
+
+    /**
+     * The number of threads which recover the queues from the message store when the virtual host is started.
+     */
+    @ManagedContextDefault( name = RECOVERY_THREAD_COUNT_CONTEXT_VAR)
+    RuntimeDefault<Integer> DEFAULT_RECOVERY_THREAD_COUNT =
+            new RuntimeDefault<Integer>()
+            {
+                @Override
+                public Integer value()
+                {
+                    return Runtime.getRuntime().availableProcessors();
+                }
+            };
+
+    String RECOVERY_PAGE_SIZE_CONTEXT_VAR = "virtualhost.recoveryPageSize";
+
+    /**
+     * The number of messages at the head of each queue which are recovered before the rest of any queue, so that
+     * consumers of every queue can start while the deeper queues are still being recovered.
+     */
+    @ManagedContextDefault( name = RECOVERY_PAGE_SIZE_CONTEXT_VAR)
+    int DEFAULT_RECOVERY_PAGE_SIZE = 1000;
+
+    String MESSAGE_CONVERSION_CACHE_SIZE_CONTEXT_VAR = "virtualhost.messageConversionCacheSize";
+
+    /**
+     * The total size in bytes of the converted forms of messages held so that a message delivered to several
+     * consumers of another protocol is converted once.  Zero disables the cache.
+     */
+    @ManagedContextDefault( name = MESSAGE_CONVERSION_CACHE_SIZE_CONTEXT_VAR)
+    long DEFAULT_MESSAGE_CONVERSION_CACHE_SIZE = 32l * 1024l * 1024l;
+
+    String FLOW_TO_DISK_THRESHOLD_CONTEXT_VAR = "virtualhost.flowToDiskThreshold";
+
+    @ManagedContextDefault( name = FLOW_TO_DISK_THRESHOLD_CONTEXT_VAR)
+    public static final long DEFAULT_FLOW_TO_DISK_THRESHOLD = 0l;
+
+    @ManagedAttribute( defaultValue = "${virtualhost.flowToDiskThreshold}")
+    long getFlowToDiskThreshold();
+
     @DerivedAttribute( persist = true )
     String getModelVersion();
 
@@ -127,6 +172,43 @@ public interface VirtualHost<X extends VirtualHost<X, Q, E>, Q extends Queue<?>,
     @ManagedStatistic
     long getMessagesOut();
 
+    @ManagedStatistic
+    long getFlowToDiskInMemoryBytes();
+
+    @ManagedStatistic
+    long getFlowToDiskEvictedBytes();
+
+    @ManagedStatistic
+    long getFlowToDiskEvictedMessages();
+
+    @ManagedStatistic
+    long getFlowToDiskReloadCount();
+
+    @ManagedStatistic
+    long getFlowToDiskAverageReloadLatency();
+
+    @ManagedStatistic
+    long getMessageConversions();
+
+    @ManagedStatistic
+    long getMessageConversionCacheHits();
+
+    @ManagedStatistic
+    long getMessageConversionCacheBytes();
+
+    /**
+     * @return the count, mean, maximum and percentiles, in microseconds, of the time taken to route a message through
+     * an exchange of the virtual host ("route"), and of any further latencies recorded by the virtual host's message
+     * store
+     */
+    @DerivedAttribute
+    Map<String, Object> getLatencyHistograms();
+
+    /**
+     * Discards the latencies recorded by the virtual host and by each of its queues.
+     */
+    void resetLatencyHistograms();
+
     //children
     Collection<VirtualHostAlias> getAliases();
     Collection<Connection> getConnections();
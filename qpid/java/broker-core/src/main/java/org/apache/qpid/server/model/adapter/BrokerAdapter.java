@@ -47,6 +47,7 @@ import org.apache.qpid.server.logging.messages.BrokerMessages;
 import org.apache.qpid.server.logging.messages.VirtualHostMessages;
 import org.apache.qpid.server.model.*;
 import org.apache.qpid.server.model.port.AbstractPortWithAuthProvider;
+import org.apache.qpid.server.queue.ShardedDeliveryScheduler;
 import org.apache.qpid.server.security.SecurityManager;
 import org.apache.qpid.server.security.SubjectCreator;
 import org.apache.qpid.server.security.access.Operation;
@@ -459,6 +460,12 @@ public class BrokerAdapter extends AbstractConfiguredObject<BrokerAdapter> imple
         return getMessageDeliveryStatistics().getTotal();
     }
 
+    @Override
+    public Map<String, Object> getDeliveryShardStatistics()
+    {
+        return ShardedDeliveryScheduler.getInstance().getShardStatistics();
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public <C extends ConfiguredObject> C addChild(final Class<C> childClass, final Map<String, Object> attributes, final ConfiguredObject... otherParents)
@@ -22,7 +22,9 @@ package org.apache.qpid.server.model.port;
 
 import org.apache.qpid.server.model.AuthenticationProvider;
 import org.apache.qpid.server.model.ManagedAttribute;
+import org.apache.qpid.server.model.ManagedContextDefault;
 import org.apache.qpid.server.model.ManagedObject;
+import org.apache.qpid.server.model.ManagedStatistic;
 import org.apache.qpid.server.model.Port;
 import org.apache.qpid.server.virtualhost.VirtualHostImpl;
 
@@ -37,6 +39,10 @@ public interface AmqpPort<X extends AmqpPort<X>> extends Port<X>
     String DEFAULT_AMQP_WANT_CLIENT_AUTH = "false";
     String SEND_BUFFER_SIZE                     = "sendBufferSize";
     String RECEIVE_BUFFER_SIZE                  = "receiveBufferSize";
+    String NETWORK_TRANSPORT                    = "networkTransport";
+
+    @ManagedContextDefault( name = "port.amqp.networkTransport")
+    String DEFAULT_AMQP_NETWORK_TRANSPORT = "IO";
 
     @ManagedAttribute( defaultValue = AmqpPort.DEFAULT_AMQP_TCP_NO_DELAY )
     boolean isTcpNoDelay();
@@ -48,6 +54,13 @@ public interface AmqpPort<X extends AmqpPort<X>> extends Port<X>
     int getReceiveBufferSize();
 
 
+    /**
+     * The incoming network transport implementation used by this port: <code>IO</code> for a pair of threads per
+     * connection, or <code>NIO</code> for a small pool of selector threads shared by all connections.
+     */
+    @ManagedAttribute( defaultValue = "${port.amqp.networkTransport}" )
+    String getNetworkTransport();
+
     @ManagedAttribute( defaultValue = DEFAULT_AMQP_NEED_CLIENT_AUTH )
     boolean getNeedClientAuth();
 
@@ -57,5 +70,18 @@ public interface AmqpPort<X extends AmqpPort<X>> extends Port<X>
     @ManagedAttribute( mandatory = true )
     AuthenticationProvider getAuthenticationProvider();
 
+    /**
+     * The total number of bytes written to the connections accepted by this port.
+     */
+    @ManagedStatistic
+    long getBytesWritten();
+
+    /**
+     * The rate at which the port's connection writers have been woken to send queued data, averaged since the port
+     * was activated.  A high rate relative to {@link #getBytesWritten()} indicates many small writes.
+     */
+    @ManagedStatistic
+    long getWakeupsPerSecond();
+
     VirtualHostImpl getVirtualHost(String name);
 }
@@ -36,6 +36,7 @@ import org.apache.qpid.server.configuration.BrokerProperties;
 import org.apache.qpid.server.configuration.IllegalConfigurationException;
 import org.apache.qpid.server.logging.messages.BrokerMessages;
 import org.apache.qpid.server.model.Broker;
+import org.apache.qpid.server.model.ConfiguredObject;
 import org.apache.qpid.server.model.KeyStore;
 import org.apache.qpid.server.model.ManagedAttributeField;
 import org.apache.qpid.server.model.ManagedObjectFactoryConstructor;
@@ -64,8 +65,11 @@ public class AmqpPortImpl extends AbstractPortWithAuthProvider<AmqpPortImpl> imp
     @ManagedAttributeField
     private int _receiveBufferSize;
 
+    @ManagedAttributeField
+    private String _networkTransport;
+
     private final Broker<?> _broker;
-    private AcceptingTransport _transport;
+    private volatile AcceptingTransport _transport;
 
     @ManagedObjectFactoryConstructor
     public AmqpPortImpl(Map<String, Object> attributes, Broker<?> broker)
@@ -92,6 +96,26 @@ public class AmqpPortImpl extends AbstractPortWithAuthProvider<AmqpPortImpl> imp
         return _receiveBufferSize;
     }
 
+    @Override
+    public String getNetworkTransport()
+    {
+        return _networkTransport;
+    }
+
+    @Override
+    public long getBytesWritten()
+    {
+        final AcceptingTransport transport = _transport;
+        return transport == null ? 0l : transport.getBytesWritten();
+    }
+
+    @Override
+    public long getWakeupsPerSecond()
+    {
+        final AcceptingTransport transport = _transport;
+        return transport == null ? 0l : transport.getWakeupsPerSecond();
+    }
+
     @Override
     public VirtualHostImpl getVirtualHost(String name)
     {
@@ -104,6 +128,33 @@ public class AmqpPortImpl extends AbstractPortWithAuthProvider<AmqpPortImpl> imp
         return (VirtualHostImpl) _broker.findVirtualHostByName(name);
     }
 
+    @Override
+    public void onValidate()
+    {
+        super.onValidate();
+        validateNetworkTransport(getNetworkTransport());
+    }
+
+    @Override
+    protected void validateChange(final ConfiguredObject<?> proxyForValidation, final Set<String> changedAttributes)
+    {
+        super.validateChange(proxyForValidation, changedAttributes);
+        if (changedAttributes.contains(NETWORK_TRANSPORT))
+        {
+            validateNetworkTransport((String) proxyForValidation.getAttribute(NETWORK_TRANSPORT));
+        }
+    }
+
+    private void validateNetworkTransport(final String networkTransport)
+    {
+        if (!org.apache.qpid.transport.network.Transport.IO.equalsIgnoreCase(networkTransport)
+            && !org.apache.qpid.transport.network.Transport.NIO.equalsIgnoreCase(networkTransport))
+        {
+            throw new IllegalConfigurationException("Unknown network transport '" + networkTransport
+                                                    + "' on AMQP port '" + getName() + "'");
+        }
+    }
+
     protected Set<Protocol> getDefaultProtocols()
     {
         Set<Protocol> defaultProtocols = EnumSet.of(Protocol.AMQP_0_8, Protocol.AMQP_0_9, Protocol.AMQP_0_9_1,
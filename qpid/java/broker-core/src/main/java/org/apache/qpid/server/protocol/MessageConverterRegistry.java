@@ -23,9 +23,11 @@ package org.apache.qpid.server.protocol;
 
 import java.util.HashMap;
 import java.util.Map;
+import org.apache.qpid.server.message.MessageConversionCache;
 import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.plugin.MessageConverter;
 import org.apache.qpid.server.plugin.QpidServiceLoader;
+import org.apache.qpid.server.virtualhost.VirtualHostImpl;
 
 public class MessageConverterRegistry
 {
@@ -56,4 +58,13 @@ public class MessageConverterRegistry
         }
         return map == null ? null : map.get(to);
     }
+
+    /**
+     * Converts the message for delivery to a consumer of the given message class, reusing the form converted for an
+     * earlier delivery if the conversion cache of the virtual host holds one.
+     */
+    public static <N extends ServerMessage> N convert(ServerMessage message, Class<N> to, VirtualHostImpl vhost)
+    {
+        return MessageConversionCache.getMessageConversionCache(vhost).convert(message, to, vhost);
+    }
 }
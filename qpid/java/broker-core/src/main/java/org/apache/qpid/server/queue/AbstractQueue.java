@@ -35,6 +35,7 @@ import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -43,7 +44,6 @@ import javax.security.auth.Subject;
 
 import org.apache.log4j.Logger;
 
-import org.apache.qpid.pool.ReferenceCountingExecutorService;
 import org.apache.qpid.server.binding.BindingImpl;
 import org.apache.qpid.server.configuration.IllegalConfigurationException;
 import org.apache.qpid.server.connection.SessionPrincipal;
@@ -77,6 +77,7 @@ import org.apache.qpid.server.protocol.AMQConnectionModel;
 import org.apache.qpid.server.protocol.AMQSessionModel;
 import org.apache.qpid.server.security.SecurityManager;
 import org.apache.qpid.server.security.auth.AuthenticatedPrincipal;
+import org.apache.qpid.server.stats.LatencyHistogram;
 import org.apache.qpid.server.store.StorableMessageMetaData;
 import org.apache.qpid.server.txn.AutoCommitTransaction;
 import org.apache.qpid.server.txn.LocalTransaction;
@@ -130,6 +131,7 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
     private final AtomicInteger _activeSubscriberCount = new AtomicInteger();
 
     private final AtomicLong _totalMessagesReceived = new AtomicLong();
+    private final AtomicLong _recoveredMessages = new AtomicLong();
 
     private final AtomicLong _dequeueCount = new AtomicLong();
     private final AtomicLong _dequeueSize = new AtomicLong();
@@ -142,6 +144,10 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
     private final AtomicLong _unackedMsgCount = new AtomicLong(0);
     private final AtomicLong _unackedMsgBytes = new AtomicLong();
 
+    private final LatencyHistogram _enqueueLatency = new LatencyHistogram();
+    private final LatencyHistogram _deliveryLatency = new LatencyHistogram();
+    private final LatencyHistogram _timeInQueueLatency = new LatencyHistogram();
+
     private final AtomicInteger _bindingCountHigh = new AtomicInteger();
 
     /** max allowed size(KB) of a single message */
@@ -178,9 +184,15 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
     private final Set<NotificationCheck> _notificationChecks =
             Collections.synchronizedSet(EnumSet.noneOf(NotificationCheck.class));
 
+    private final QueueEntryExpiryIndex _expiryIndex = new QueueEntryExpiryIndex();
+
 
     static final int MAX_ASYNC_DELIVERIES = 80;
 
+    private volatile long _deliveryTimeSliceNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_DELIVERY_TIME_SLICE);
+
+    private volatile int _deliveryBatchSize = DEFAULT_DELIVERY_BATCH_SIZE;
+
 
     private final AtomicLong _stateChangeCount = new AtomicLong(Long.MIN_VALUE);
 
@@ -234,7 +246,7 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         super(parentsMap(virtualHost), attributes);
 
         _virtualHost = virtualHost;
-        _asyncDelivery = ReferenceCountingExecutorService.getInstance().acquireExecutorService();
+        _asyncDelivery = ShardedDeliveryScheduler.getInstance().acquireExecutor();
 
     }
 
@@ -267,6 +279,9 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
     {
         super.onOpen();
 
+        _deliveryTimeSliceNanos = TimeUnit.MILLISECONDS.toNanos(getContextValue(Long.class, DELIVERY_TIME_SLICE_CONTEXT_VAR));
+        _deliveryBatchSize = Math.max(1, getContextValue(Integer.class, DELIVERY_BATCH_SIZE_CONTEXT_VAR));
+
         Map<String,Object> attributes = getActualAttributes();
 
         final LinkedHashMap<String, Object> arguments = new LinkedHashMap<String, Object>(attributes);
@@ -867,6 +882,7 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
     public final void enqueue(ServerMessage message, Action<? super MessageInstance> action)
     {
+        final long startTime = System.nanoTime();
         incrementQueueCount();
         incrementQueueSize(message);
 
@@ -888,6 +904,7 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
             doEnqueue(message, action);
         }
 
+        _enqueueLatency.recordSince(startTime);
     }
 
     public final void recover(ServerMessage message)
@@ -896,6 +913,7 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         incrementQueueSize(message);
 
         _totalMessagesReceived.incrementAndGet();
+        _recoveredMessages.incrementAndGet();
 
         doEnqueue(message, null);
     }
@@ -931,6 +949,21 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         final QueueConsumer<?> exclusiveSub = _exclusiveSubscriber;
         final QueueEntry entry = getEntries().add(message);
 
+        if(entry instanceof QueueEntryImpl)
+        {
+            final QueueEntryImpl entryImpl = (QueueEntryImpl) entry;
+            final long expiration = message.getExpiration();
+            if(expiration != 0l)
+            {
+                _expiryIndex.add(entryImpl, expiration);
+            }
+            final MessageGroupManager messageGroupManager = _messageGroupManager;
+            if(messageGroupManager != null)
+            {
+                messageGroupManager.entryAdded(entryImpl);
+            }
+        }
+
         if(action != null || (exclusiveSub == null  && _queueRunner.isIdle()))
         {
             /*
@@ -1113,10 +1146,38 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
         _deliveredMessages.incrementAndGet();
         incrementUnackedMsgCount(entry);
+        recordDeliveryLatency(entry, System.currentTimeMillis());
 
         sub.send(entry, batch);
     }
 
+    private void deliverMessages(final QueueConsumer<?> sub, final List<QueueEntry> entries)
+    {
+        final long now = System.currentTimeMillis();
+        for(QueueEntry entry : entries)
+        {
+            setLastSeenEntry(sub, entry);
+            incrementUnackedMsgCount(entry);
+            recordDeliveryLatency(entry, now);
+        }
+        _deliveredMessages.addAndGet(entries.size());
+
+        sub.send(entries);
+    }
+
+    private void recordDeliveryLatency(final QueueEntry entry, final long now)
+    {
+        if(!entry.isRedelivered())
+        {
+            recordSinceArrival(_deliveryLatency, entry, now);
+        }
+    }
+
+    private void recordSinceArrival(final LatencyHistogram histogram, final QueueEntry entry, final long now)
+    {
+        histogram.record(TimeUnit.MILLISECONDS.toMicros(now - entry.getMessage().getArrivalTime()));
+    }
+
     private boolean consumerReadyAndHasInterest(final QueueConsumer<?> sub, final QueueEntry entry)
     {
         return sub.hasInterest(entry) && (getNextAvailableEntry(sub) == entry);
@@ -1184,6 +1245,7 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         {
             _deliveredMessages.decrementAndGet();
         }
+        recordSinceArrival(_timeInQueueLatency, entry, System.currentTimeMillis());
 
         checkCapacity();
 
@@ -1642,7 +1704,7 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         super.onClose();
         if (!_stopped.getAndSet(true))
         {
-            ReferenceCountingExecutorService.getInstance().releaseExecutorService();
+            ShardedDeliveryScheduler.getInstance().releaseExecutor(_asyncDelivery);
         }
     }
 
@@ -1809,6 +1871,11 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
      */
     private boolean attemptDelivery(QueueConsumer<?> sub, boolean batch)
     {
+        if (batch && _deliveryBatchSize > 1)
+        {
+            return attemptBatchDelivery(sub);
+        }
+
         boolean atTail = false;
 
         boolean subActive = sub.isActive() && !sub.isSuspended();
@@ -1850,6 +1917,101 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         return atTail || !subActive;
     }
 
+    /**
+     * Attempt delivery of a batch of entries for the given consumer.
+     *
+     * Claims up to {@link #_deliveryBatchSize} consecutive entries which are available to the consumer, allocates
+     * credit for all of them in one call, acquires those for which credit was allocated and hands them to the
+     * consumer together.  Each entry is checked again as it is claimed and before it is sent, so that an entry
+     * acquired, released or deleted by another thread meanwhile is left out of the batch and its credit restored.
+     *
+     * @param sub the consumer
+     * @return true if we have completed all possible deliveries for this sub.
+     */
+    private boolean attemptBatchDelivery(QueueConsumer<?> sub)
+    {
+        if (!sub.isActive() || sub.isSuspended())
+        {
+            return true;
+        }
+
+        QueueEntry node = getNextAvailableEntry(sub);
+        if (node == null)
+        {
+            return true;
+        }
+
+        final int batchSize = _deliveryBatchSize;
+        final List<QueueEntry> entries = new ArrayList<>(batchSize);
+        while (node != null
+               && entries.size() < batchSize
+               && !sub.isSuspended()
+               && node.isAvailable()
+               && !node.expired()
+               && sub.hasInterest(node)
+               && mightAssign(sub, node))
+        {
+            entries.add(node);
+            node = getEntries().next(node);
+        }
+        // node is now the entry following the batch, so there is no need for a separate look ahead
+        final boolean atTail = node == null;
+
+        if (entries.isEmpty())
+        {
+            return atTail;
+        }
+
+        final int allocated = sub.allocateCredit(entries);
+        final QueueEntry firstWithoutCredit = allocated < entries.size() ? entries.get(allocated) : null;
+
+        int acquired = 0;
+        for (int i = 0; i < allocated; i++)
+        {
+            QueueEntry entry = entries.get(i);
+            if (sub.acquires() ? !assign(sub, entry) : !entry.isAvailable())
+            {
+                // restore credit here that was allocated above since we didn't manage
+                // to acquire the entry for this consumer
+                sub.restoreCredit(entry);
+            }
+            else
+            {
+                entries.set(acquired++, entry);
+            }
+        }
+
+        // drop any entry released or deleted while the rest of the batch was being acquired
+        int deliverable = 0;
+        for (int i = 0; i < acquired; i++)
+        {
+            QueueEntry entry = entries.get(i);
+            if (entry.isDeleted() || (sub.acquires() ? !entry.isAcquiredBy(sub) : !entry.isAvailable()))
+            {
+                sub.restoreCredit(entry);
+            }
+            else
+            {
+                entries.set(deliverable++, entry);
+            }
+        }
+
+        if (deliverable != 0)
+        {
+            deliverMessages(sub, entries.subList(0, deliverable));
+        }
+
+        if (firstWithoutCredit != null)
+        {
+            //QPID-1187 - Treat the consumer as suspended for this message
+            // and wait for the message to be removed to continue delivery.
+            firstWithoutCredit.addStateChangeListener(new QueueEntryListener(sub));
+            return true;
+        }
+
+        return atTail;
+    }
+
     protected void advanceAllConsumers()
     {
         QueueConsumerList.ConsumerNodeIterator consumerNodeIterator = _consumerList.iterator();
@@ -1939,11 +2101,10 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
      * consumers capable of delivering the remaining messages on the queue
      * then processQueue should stop to prevent spinning.
      *
-     * Since processQueue is runs in a fixed size Executor, it should not run
-     * indefinitely to prevent starving other tasks of CPU (e.g jobs to process
-     * incoming messages may not be able to be scheduled in the thread pool
-     * because all threads are working on clearing down large queues). To solve
-     * this problem, after an arbitrary number of message deliveries the
+     * Since processQueue runs on a delivery shard shared with other queues, it
+     * should not run indefinitely to prevent starving the other queues pinned to
+     * the same shard. To solve this problem, once the queue's delivery time slice
+     * (the queue.deliveryTimeSlice context variable) has been used the
      * processQueue job stops iterating, resubmits itself to the executor, and
      * ends the current instance
      *
@@ -1957,18 +2118,20 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         boolean deliveryIncomplete = true;
 
         boolean lastLoop = false;
-        int iterations = MAX_ASYNC_DELIVERIES;
+        boolean timeSliceUsed = false;
+        final long deadline = System.nanoTime() + _deliveryTimeSliceNanos;
 
         final int numSubs = _consumerList.size();
 
-        final int perSub = Math.max(iterations / Math.max(numSubs,1), 1);
+        // the number of deliveries each consumer is offered per pass, so that consumers share the time slice fairly
+        final int perSub = Math.max(MAX_ASYNC_DELIVERIES / Math.max(numSubs,1), 1);
 
         // For every message enqueue/requeue the we fire deliveryAsync() which
         // increases _stateChangeCount. If _sCC changes whilst we are in our loop
         // (detected by setting previousStateChangeCount to stateChangeCount in the loop body)
-        // then we will continue to run for a maximum of iterations.
+        // then we will continue to run until the time slice is used.
         // So whilst delivery/rejection is going on a processQueue thread will be running
-        while (iterations != 0 && ((previousStateChangeCount != (stateChangeCount = _stateChangeCount.get())) || deliveryIncomplete))
+        while (!timeSliceUsed && ((previousStateChangeCount != (stateChangeCount = _stateChangeCount.get())) || deliveryIncomplete))
         {
             // we want to have one extra loop after every consumer has reached the point where it cannot move
             // further, just in case the advance of one consumer in the last loop allows a different consumer to
@@ -1990,6 +2153,10 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
             //iterate over the subscribers and try to advance their pointer
             while (consumerNodeIterator.advance())
             {
+                if (timeSliceUsed)
+                {
+                    break;
+                }
                 QueueConsumer<?> sub = consumerNodeIterator.getNode().getConsumer();
                 sub.getSendLock();
 
@@ -2011,11 +2178,12 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
                             else
                             {
                                 //this consumer can accept additional deliveries, so we must
-                                //keep going after this (if iteration slicing allows it)
+                                //keep going after this (if time slicing allows it)
                                 allConsumersDone = false;
                                 lastLoop = false;
-                                if(--iterations == 0)
+                                if(System.nanoTime() - deadline >= 0L)
                                 {
+                                    timeSliceUsed = true;
                                     sub.flushBatched();
                                     break;
                                 }
@@ -2049,16 +2217,16 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
             else
             {
                 //some consumers can still accept more messages,
-                //keep going if iteration count allows.
+                //keep going if the time slice allows.
                 lastLoop = false;
                 deliveryIncomplete = true;
             }
 
         }
 
-        // If iterations == 0 then the limiting factor was the time-slicing rather than available messages or credit
-        // therefore we should schedule this runner again (unless someone beats us to it :-) ).
-        if (iterations == 0)
+        // If the time slice was used then the limiting factor was the time-slicing rather than available messages or
+        // credit therefore we should schedule this runner again (unless someone beats us to it :-) ).
+        if (timeSliceUsed)
         {
             if (_logger.isDebugEnabled())
             {
@@ -2072,13 +2240,10 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
     public void checkMessageStatus()
     {
-        QueueEntryIterator queueListIterator = getEntries().iterator();
-
-        while (queueListIterator.advance())
+        _expiryIndex.expire(System.currentTimeMillis(), new QueueEntryVisitor()
         {
-            QueueEntry node = queueListIterator.getNode();
-            // Only process nodes that are not currently deleted and not dequeued
-            if (!node.isDeleted())
+            @Override
+            public boolean visit(final QueueEntry node)
             {
                 // If the node has expired then acquire it
                 if (node.expired() && node.acquire())
@@ -2090,20 +2255,13 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
                     // Then dequeue it.
                     dequeueEntry(node);
                 }
-                else
-                {
-                    // There is a chance that the node could be deleted by
-                    // the time the check actually occurs. So verify we
-                    // can actually get the message to perform the check.
-                    ServerMessage msg = node.getMessage();
-                    if (msg != null)
-                    {
-                        checkForNotification(msg);
-                    }
-                }
+                return false;
             }
-        }
+        });
 
+        // the message specific checks are made as each message is enqueued, the others depend only on the
+        // queue's counters and its oldest entry
+        checkForNotification(null);
     }
 
     public long getAlertRepeatGap()
@@ -2283,6 +2441,24 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         return _unackedMsgBytes.get();
     }
 
+    @Override
+    public Map<String, Object> getLatencyHistograms()
+    {
+        Map<String, Object> histograms = new LinkedHashMap<String, Object>();
+        histograms.put("enqueue", _enqueueLatency.getSummary());
+        histograms.put("delivery", _deliveryLatency.getSummary());
+        histograms.put("timeInQueue", _timeInQueueLatency.getSummary());
+        return histograms;
+    }
+
+    @Override
+    public void resetLatencyHistograms()
+    {
+        _enqueueLatency.reset();
+        _deliveryLatency.reset();
+        _timeInQueueLatency.reset();
+    }
+
     public void decrementUnackedMsgCount(QueueEntry queueEntry)
     {
         _unackedMsgCount.decrementAndGet();
@@ -2302,7 +2478,8 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
     }
 
     /**
-     * Checks if there is any notification to send to the listeners
+     * Checks if there is any notification to send to the listeners.  The message specific checks are only made if a
+     * message is given.
      */
     private void checkForNotification(ServerMessage<?> msg)
     {
@@ -2319,7 +2496,9 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
             for (NotificationCheck check : notificationChecks)
             {
-                if (check.isMessageSpecific() || (_lastNotificationTimes[check.ordinal()] < thresholdTime))
+                if (check.isMessageSpecific()
+                    ? msg != null
+                    : _lastNotificationTimes[check.ordinal()] < thresholdTime)
                 {
                     if (check.notifyIfNecessary(msg, this, listener))
                     {
@@ -2653,6 +2832,12 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         return _overfull.get();
     }
 
+    @Override
+    public long getRecoveredMessages()
+    {
+        return _recoveredMessages.get();
+    }
+
     @Override
     public State getState()
     {
@@ -23,7 +23,9 @@ package org.apache.qpid.server.queue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 
@@ -34,6 +36,9 @@ public class AssignedConsumerMessageGroupManager implements MessageGroupManager
 
     private final String _groupId;
     private final ConcurrentHashMap<Integer, QueueConsumer<?>> _groupMap = new ConcurrentHashMap<Integer, QueueConsumer<?>>();
+    private final ConcurrentHashMap<QueueConsumer<?>, Set<Integer>> _consumerGroups =
+            new ConcurrentHashMap<QueueConsumer<?>, Set<Integer>>();
+    private final MessageGroupEntryIndex _entryIndex = new MessageGroupEntryIndex();
     private final int _groupMask;
 
     public AssignedConsumerMessageGroupManager(final String groupId, final int maxGroups)
@@ -58,6 +63,15 @@ public class AssignedConsumerMessageGroupManager implements MessageGroupManager
         return groupVal == null ? null : _groupMap.get(groupVal.hashCode() & _groupMask);
     }
 
+    public void entryAdded(final QueueEntryImpl entry)
+    {
+        Object groupVal = entry.getMessage().getMessageHeader().getHeader(_groupId);
+        if(groupVal != null)
+        {
+            _entryIndex.add(groupVal.hashCode() & _groupMask, entry);
+        }
+    }
+
     public boolean acceptMessage(QueueConsumer<?> sub, QueueEntry entry)
     {
         return assignMessage(sub, entry) && entry.acquire(sub);
@@ -87,7 +101,12 @@ public class AssignedConsumerMessageGroupManager implements MessageGroupManager
                         _logger.debug("Assigning group " + groupVal + " to sub " + sub);
                     }
                     assignedSub = _groupMap.putIfAbsent(group, sub);
-                    return assignedSub == null || assignedSub == sub;
+                    if(assignedSub == null)
+                    {
+                        assigned(sub, group);
+                        return true;
+                    }
+                    return assignedSub == sub;
                 }
                 else
                 {
@@ -99,55 +118,28 @@ public class AssignedConsumerMessageGroupManager implements MessageGroupManager
     
     public QueueEntry findEarliestAssignedAvailableEntry(QueueConsumer<?> sub)
     {
-        EntryFinder visitor = new EntryFinder(sub);
-        sub.getQueue().visit(visitor);
-        return visitor.getEntry();
+        Set<Integer> groups = _consumerGroups.get(sub);
+        return groups == null ? null : _entryIndex.findEarliestAvailableEntry(groups);
     }
 
-    private class EntryFinder implements QueueEntryVisitor
+    private void assigned(final QueueConsumer<?> sub, final Integer group)
     {
-        private QueueEntry _entry;
-        private QueueConsumer<?> _sub;
-
-        public EntryFinder(final QueueConsumer<?> sub)
-        {
-            _sub = sub;
-        }
-
-        public boolean visit(final QueueEntry entry)
+        Set<Integer> groups = _consumerGroups.get(sub);
+        if(groups == null)
         {
-            if(!entry.isAvailable())
+            Set<Integer> newGroups = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+            groups = _consumerGroups.putIfAbsent(sub, newGroups);
+            if(groups == null)
             {
-                return false;
+                groups = newGroups;
             }
-
-            Object groupId = entry.getMessage().getMessageHeader().getHeader(_groupId);
-            if(groupId == null)
-            {
-                return false;
-            }
-
-            Integer group = groupId.hashCode() & _groupMask;
-            QueueConsumer<?> assignedSub = _groupMap.get(group);
-            if(assignedSub == _sub)
-            {
-                _entry = entry;
-                return true;
-            }
-            else
-            {
-                return false;
-            }
-        }
-
-        public QueueEntry getEntry()
-        {
-            return _entry;
         }
+        groups.add(group);
     }
 
     public void clearAssignments(QueueConsumer<?> sub)
     {
+        _consumerGroups.remove(sub);
         Iterator<QueueConsumer<?>> subIter = _groupMap.values().iterator();
         while(subIter.hasNext())
         {
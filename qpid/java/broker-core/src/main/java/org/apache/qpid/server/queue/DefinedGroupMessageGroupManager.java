@@ -20,31 +20,40 @@
  */
 package org.apache.qpid.server.queue;
 
-import org.apache.qpid.server.consumer.ConsumerImpl;
-import org.apache.qpid.server.message.MessageInstance;
-import org.apache.qpid.server.util.StateChangeListener;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.qpid.server.message.AMQMessageHeader;
+import org.apache.qpid.server.message.MessageInstance;
 import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.server.util.StateChangeListener;
 
-import java.util.HashMap;
-import java.util.Map;
-
+/**
+ * Assigns each message group to a consumer for as long as the consumer holds acquired messages from the group.
+ *
+ * Each group has its own lock, and the available entries of each group are indexed, so finding the next entry for
+ * a consumer depends on the number of groups it is assigned rather than on the depth of the queue.
+ */
 public class DefinedGroupMessageGroupManager implements MessageGroupManager
 {
     private static final Logger _logger = LoggerFactory.getLogger(DefinedGroupMessageGroupManager.class);
 
     private final String _groupId;
     private final String _defaultGroup;
-    private final Map<Object, Group> _groupMap = new HashMap<Object, Group>();
+    private final ConcurrentHashMap<Object, Group> _groupMap = new ConcurrentHashMap<Object, Group>();
+    private final ConcurrentHashMap<QueueConsumer<?>, Set<Object>> _consumerGroups =
+            new ConcurrentHashMap<QueueConsumer<?>, Set<Object>>();
+    private final MessageGroupEntryIndex _entryIndex = new MessageGroupEntryIndex();
     private final ConsumerResetHelper _resetHelper;
 
     private final class Group
     {
         private final Object _group;
-        private QueueConsumer<?> _consumer;
+        private volatile QueueConsumer<?> _consumer;
         private int _activeCount;
 
         private Group(final Object key, final QueueConsumer<?> consumer)
@@ -53,7 +62,7 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
             _consumer = consumer;
         }
         
-        public boolean add()
+        public synchronized boolean add()
         {
             if(_consumer != null)
             {
@@ -66,13 +75,14 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
             }
         }
         
-        public void subtract()
+        public synchronized void subtract()
         {
             if(--_activeCount == 0)
             {
                 _resetHelper.resetSubPointersForGroups(_consumer, false);
+                unassigned(this);
                 _consumer = null;
-                _groupMap.remove(_group);
+                _groupMap.remove(_group, this);
             }
         }
 
@@ -99,7 +109,7 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
             return _group.hashCode();
         }
 
-        public boolean isValid()
+        public synchronized boolean isValid()
         {
             return !(_consumer == null || (_activeCount == 0 && _consumer.isClosed()));
         }
@@ -110,7 +120,7 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
         }
 
         @Override
-        public String toString()
+        public synchronized String toString()
         {
             return "Group{" +
                     "_group=" + _group +
@@ -127,7 +137,7 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
         _resetHelper = resetHelper;
     }
     
-    public synchronized QueueConsumer<?> getAssignedConsumer(final QueueEntry entry)
+    public QueueConsumer<?> getAssignedConsumer(final QueueEntry entry)
     {
         Object groupId = getKey(entry);
 
@@ -135,91 +145,97 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
         return group == null || !group.isValid() ? null : group.getConsumer();
     }
 
-    public synchronized boolean acceptMessage(final QueueConsumer<?> sub, final QueueEntry entry)
+    public void entryAdded(final QueueEntryImpl entry)
     {
-        return assignMessage(sub, entry) && entry.acquire(sub);
+        _entryIndex.add(getKey(entry), entry);
     }
 
-    private boolean assignMessage(final QueueConsumer<?> sub, final QueueEntry entry)
+    public boolean acceptMessage(final QueueConsumer<?> sub, final QueueEntry entry)
     {
         Object groupId = getKey(entry);
-        Group group = _groupMap.get(groupId);
-
-        if(group == null || !group.isValid())
+        while(true)
         {
-            group = new Group(groupId, sub);
-
-            _groupMap.put(groupId, group);
+            Group group = _groupMap.get(groupId);
 
-            // there's a small change that the group became empty between the point at which getNextAvailable() was
-            // called on the consumer, and when accept message is called... in that case we want to avoid delivering
-            // out of order
-            if(_resetHelper.isEntryAheadOfConsumer(entry, sub))
+            if(group == null || !group.isValid())
             {
-                return false;
-            }
-        }
+                Group newGroup = new Group(groupId, sub);
+                if(group == null ? _groupMap.putIfAbsent(groupId, newGroup) != null
+                                 : !_groupMap.replace(groupId, group, newGroup))
+                {
+                    // another consumer got there first
+                    continue;
+                }
+                if(group != null)
+                {
+                    unassigned(group);
+                }
+                group = newGroup;
+                assigned(group);
 
-        ConsumerImpl assignedSub = group.getConsumer();
+                // there's a small change that the group became empty between the point at which getNextAvailable() was
+                // called on the consumer, and when accept message is called... in that case we want to avoid delivering
+                // out of order
+                if(_resetHelper.isEntryAheadOfConsumer(entry, sub))
+                {
+                    return false;
+                }
+            }
 
-        if(assignedSub == sub)
-        {
-            entry.addStateChangeListener(new GroupStateChangeListener(group));
-            return true;
-        }
-        else
-        {
-            return false;            
+            // the group's lock is held while acquiring, so that the group cannot be released before the state change
+            // listener has counted the acquired entry
+            synchronized (group)
+            {
+                if(group.getConsumer() != sub || _groupMap.get(groupId) != group)
+                {
+                    return false;
+                }
+                entry.addStateChangeListener(new GroupStateChangeListener(group));
+                return entry.acquire(sub);
+            }
         }
     }
 
-    public synchronized QueueEntry findEarliestAssignedAvailableEntry(final QueueConsumer<?> sub)
+    public QueueEntry findEarliestAssignedAvailableEntry(final QueueConsumer<?> sub)
     {
-        EntryFinder visitor = new EntryFinder(sub);
-        sub.getQueue().visit(visitor);
-        return visitor.getEntry();
+        Set<Object> groups = _consumerGroups.get(sub);
+        return groups == null ? null : _entryIndex.findEarliestAvailableEntry(groups);
     }
 
-    private class EntryFinder implements QueueEntryVisitor
+    public void clearAssignments(final QueueConsumer<?> sub)
     {
-        private QueueEntry _entry;
-        private QueueConsumer _sub;
-
-        public EntryFinder(final QueueConsumer<?> sub)
-        {
-            _sub = sub;
-        }
+        // groups remain assigned to a closed consumer until their acquired entries are gone, so that the pointers of
+        // the other consumers can then be reset to the entries of those groups
+    }
 
-        public boolean visit(final QueueEntry entry)
+    private void assigned(final Group group)
+    {
+        QueueConsumer<?> consumer = group.getConsumer();
+        Set<Object> groups = consumer == null ? null : _consumerGroups.get(consumer);
+        if(groups == null)
         {
-            if(!entry.isAvailable())
+            Set<Object> newGroups = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+            groups = _consumerGroups.putIfAbsent(consumer, newGroups);
+            if(groups == null)
             {
-                return false;
-            }
-
-            Object groupId = getKey(entry);
-
-            Group group = _groupMap.get(groupId);
-            if(group != null && group.getConsumer() == _sub)
-            {
-                _entry = entry;
-                return true;
+                groups = newGroups;
             }
-            else
-            {
-                return false;
-            }
-        }
-
-        public QueueEntry getEntry()
-        {
-            return _entry;
         }
+        groups.add(group._group);
     }
 
-    
-    public void clearAssignments(final QueueConsumer<?> sub)
+    private void unassigned(final Group group)
     {
+        QueueConsumer<?> consumer = group.getConsumer();
+        Set<Object> groups = consumer == null ? null : _consumerGroups.get(consumer);
+        if(groups != null)
+        {
+            groups.remove(group._group);
+            if(groups.isEmpty() && consumer.isClosed())
+            {
+                _consumerGroups.remove(consumer, groups);
+            }
+        }
     }
     
     private Object getKey(QueueEntry entry)
@@ -247,7 +263,7 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
                                  final MessageInstance.State oldState,
                                  final MessageInstance.State newState)
         {
-            synchronized (DefinedGroupMessageGroupManager.this)
+            synchronized (_group)
             {
                 if(_group.isValid())
                 {
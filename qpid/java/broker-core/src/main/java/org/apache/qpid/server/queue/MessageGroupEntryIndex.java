@@ -0,0 +1,137 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Indexes the entries of a queue by message group, so that the earliest available entry in a set of groups can be
+ * found without walking the whole queue.
+ *
+ * The entries of each group are held in queue order, and an entry leaves the index as soon as it is deleted from the
+ * queue.  A group is dropped from the index when its last entry leaves it.  Each group is guarded by its own lock,
+ * so publishers and consumers working on different groups do not contend.
+ */
+final class MessageGroupEntryIndex
+{
+    private final ConcurrentHashMap<Object, GroupEntries> _groups = new ConcurrentHashMap<>();
+
+    void add(final Object group, final QueueEntryImpl entry)
+    {
+        while(true)
+        {
+            GroupEntries entries = _groups.get(group);
+            if(entries == null)
+            {
+                GroupEntries newEntries = new GroupEntries(group);
+                entries = _groups.putIfAbsent(group, newEntries);
+                if(entries == null)
+                {
+                    entries = newEntries;
+                }
+            }
+            if(entries.add(entry))
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the earliest entry, in queue order, which belongs to one of the given groups and is available, or null
+     * if there is none
+     */
+    QueueEntry findEarliestAvailableEntry(final Iterable<?> groups)
+    {
+        QueueEntry earliest = null;
+        for(Object group : groups)
+        {
+            GroupEntries entries = _groups.get(group);
+            if(entries != null)
+            {
+                QueueEntry entry = entries.firstAvailable();
+                if(entry != null && (earliest == null || entry.compareTo(earliest) < 0))
+                {
+                    earliest = entry;
+                }
+            }
+        }
+        return earliest;
+    }
+
+    int getGroupCount()
+    {
+        return _groups.size();
+    }
+
+    final class GroupEntries
+    {
+        private final Object _group;
+        private final TreeSet<QueueEntryImpl> _entries = new TreeSet<>();
+        private boolean _removed;
+
+        private GroupEntries(final Object group)
+        {
+            _group = group;
+        }
+
+        /**
+         * @return false if the group has left the index, in which case the entry must be added to its replacement
+         */
+        private synchronized boolean add(final QueueEntryImpl entry)
+        {
+            if(_removed)
+            {
+                return false;
+            }
+            _entries.add(entry);
+            entry.setGroupEntries(this);
+            if(entry.isDeleted())
+            {
+                entryDeleted(entry);
+            }
+            return true;
+        }
+
+        synchronized void entryDeleted(final QueueEntryImpl entry)
+        {
+            if(_entries.remove(entry) && _entries.isEmpty())
+            {
+                _removed = true;
+                _groups.remove(_group, this);
+            }
+        }
+
+        private synchronized QueueEntry firstAvailable()
+        {
+            // entries which are acquired but not yet deleted are the only ones skipped
+            for(QueueEntryImpl entry : _entries)
+            {
+                if(entry.isAvailable())
+                {
+                    return entry;
+                }
+            }
+            return null;
+        }
+    }
+}
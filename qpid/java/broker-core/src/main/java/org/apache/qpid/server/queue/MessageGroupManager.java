@@ -31,6 +31,11 @@ public interface MessageGroupManager
 
     QueueConsumer getAssignedConsumer(QueueEntry entry);
 
+    /**
+     * Called as each entry is added to the queue, before it can be delivered.
+     */
+    void entryAdded(QueueEntryImpl entry);
+
     boolean acceptMessage(QueueConsumer<?> sub, QueueEntry entry);
 
     QueueEntry findEarliestAssignedAvailableEntry(QueueConsumer<?> sub);
@@ -20,6 +20,8 @@
  */
 package org.apache.qpid.server.queue;
 
+import java.util.List;
+
 import org.apache.qpid.server.consumer.ConsumerImpl;
 import org.apache.qpid.server.message.MessageInstance;
 import org.apache.qpid.server.model.Consumer;
@@ -39,6 +41,10 @@ public interface QueueConsumer<X extends QueueConsumer<X>> extends ConsumerImpl,
 
     void send(QueueEntry entry, boolean batch);
 
+    int allocateCredit(List<QueueEntry> entries);
+
+    void send(List<QueueEntry> entries);
+
     void queueDeleted();
 
     SubFlushRunner getRunner();
@@ -27,6 +27,7 @@ import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -279,6 +280,11 @@ class QueueConsumerImpl
         return !_target.allocateCredit(msg.getMessage());
     }
 
+    public int allocateCredit(final List<QueueEntry> entries)
+    {
+        return _target.allocateCredit(entries);
+    }
+
     public void restoreCredit(final QueueEntry queueEntry)
     {
         _target.restoreCredit(queueEntry.getMessage());
@@ -476,6 +482,18 @@ class QueueConsumerImpl
         _target.send(entry, batch);
     }
 
+    public final void send(final List<QueueEntry> entries)
+    {
+        long bytes = 0l;
+        for(QueueEntry entry : entries)
+        {
+            bytes += entry.getMessage().getSize();
+        }
+        _deliveredCount.addAndGet(entries.size());
+        _deliveredBytes.addAndGet(bytes);
+        _target.send(entries);
+    }
+
     @Override
     public String getDistributionMode()
     {
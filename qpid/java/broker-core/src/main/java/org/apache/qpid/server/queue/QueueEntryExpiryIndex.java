@@ -0,0 +1,268 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Indexes the entries of a queue which have an expiration time, so that expired entries can be found without
+ * scanning the whole queue.
+ *
+ * The index is a timing wheel: time is divided into ticks, and an entry is put in the slot of the wheel for the
+ * tick in which it expires.  Entries which expire beyond the last tick covered by the wheel are held in a sorted
+ * overflow set, and are moved onto the wheel as it turns.  Each call to {@link #expire(long, QueueEntryVisitor)}
+ * only visits the slots for the ticks which have elapsed since the previous call.
+ *
+ * Entries are added concurrently by publishers, while only one thread at a time processes the index.  When an entry
+ * is deleted from its queue before it expires the index lets go of it at once, though the slot keeps a small
+ * placeholder until it is next processed.
+ */
+final class QueueEntryExpiryIndex
+{
+    static final long TICK_MILLIS = Long.getLong("qpid.broker.queueExpiryTick", 1000l);
+    static final int WHEEL_SIZE = 512;
+
+    private final long _tickMillis;
+    private final ConcurrentLinkedQueue<Node>[] _slots;
+    private final int _mask;
+    private final ConcurrentSkipListSet<Node> _overflow = new ConcurrentSkipListSet<>();
+    private final ConcurrentLinkedQueue<Node> _late = new ConcurrentLinkedQueue<>();
+    private final AtomicLong _sequence = new AtomicLong();
+
+    // every tick before this one has been processed
+    private volatile long _currentTick;
+
+    QueueEntryExpiryIndex()
+    {
+        this(TICK_MILLIS, WHEEL_SIZE, System.currentTimeMillis());
+    }
+
+    @SuppressWarnings("unchecked")
+    QueueEntryExpiryIndex(final long tickMillis, final int wheelSize, final long startTime)
+    {
+        if(wheelSize <= 0 || (wheelSize & (wheelSize - 1)) != 0)
+        {
+            throw new IllegalArgumentException("Wheel size must be a power of two: " + wheelSize);
+        }
+        _tickMillis = Math.max(1l, tickMillis);
+        _slots = new ConcurrentLinkedQueue[wheelSize];
+        for(int i = 0; i < wheelSize; i++)
+        {
+            _slots[i] = new ConcurrentLinkedQueue<>();
+        }
+        _mask = wheelSize - 1;
+        _currentTick = startTime / _tickMillis;
+    }
+
+    /**
+     * Adds an entry which expires at the given time.
+     */
+    void add(final QueueEntryImpl entry, final long expiration)
+    {
+        Node node = new Node(this, entry, expiration / _tickMillis, _sequence.incrementAndGet());
+        entry.setExpiryNode(node);
+        if(entry.isDeleted())
+        {
+            node.entryDeleted();
+        }
+        else
+        {
+            add(node);
+        }
+    }
+
+    private void add(final Node node)
+    {
+        final long currentTick = _currentTick;
+        if(node._tick < currentTick)
+        {
+            _late.offer(node);
+        }
+        else if(node._tick < currentTick + _slots.length)
+        {
+            _slots[(int) (node._tick & _mask)].offer(node);
+            if(node._tick < _currentTick)
+            {
+                // the wheel turned while we were adding, so the slot may already have been processed
+                _late.offer(node);
+            }
+        }
+        else
+        {
+            _overflow.add(node);
+        }
+    }
+
+    /**
+     * Visits the entries which expired before the start of the current tick and have not been deleted.  The
+     * visitor is responsible for removing expired entries from the queue; those it leaves on the queue are visited
+     * again on the next call.
+     */
+    synchronized void expire(final long now, final QueueEntryVisitor visitor)
+    {
+        final long nowTick = now / _tickMillis;
+        final long firstTick = _currentTick;
+        // entries left on the queue are only looked at again on the next call, so they are held back until the end
+        final List<Node> leftOnQueue = new ArrayList<>();
+        if(nowTick <= firstTick)
+        {
+            processLate(nowTick, visitor, leftOnQueue);
+            _late.addAll(leftOnQueue);
+            return;
+        }
+        _currentTick = nowTick;
+
+        // after one full turn every slot has been visited
+        final long lastTick = Math.min(nowTick, firstTick + _slots.length);
+        for(long tick = firstTick; tick < lastTick; tick++)
+        {
+            ConcurrentLinkedQueue<Node> slot = _slots[(int) (tick & _mask)];
+            // entries which are not yet due are put back, possibly into this same slot, so only take those
+            // which were there to begin with
+            for(int count = slot.size(); count > 0; count--)
+            {
+                Node node = slot.poll();
+                if(node == null)
+                {
+                    break;
+                }
+                process(node, nowTick, visitor, leftOnQueue);
+            }
+        }
+
+        Node node;
+        while((node = _overflow.pollFirst()) != null)
+        {
+            if(node._tick >= nowTick + _slots.length)
+            {
+                if(node._entry != null)
+                {
+                    _overflow.add(node);
+                }
+                break;
+            }
+            if(node._entry != null)
+            {
+                add(node);
+            }
+        }
+
+        processLate(nowTick, visitor, leftOnQueue);
+        _late.addAll(leftOnQueue);
+    }
+
+    private void processLate(final long nowTick, final QueueEntryVisitor visitor, final List<Node> leftOnQueue)
+    {
+        for(int count = _late.size(); count > 0; count--)
+        {
+            Node node = _late.poll();
+            if(node == null)
+            {
+                break;
+            }
+            process(node, nowTick, visitor, leftOnQueue);
+        }
+    }
+
+    private void process(final Node node,
+                         final long nowTick,
+                         final QueueEntryVisitor visitor,
+                         final List<Node> leftOnQueue)
+    {
+        QueueEntryImpl entry = node._entry;
+        if(entry != null && !entry.isDeleted())
+        {
+            if(node._tick < nowTick)
+            {
+                visitor.visit(entry);
+                if(!entry.isDeleted())
+                {
+                    // most likely acquired by a consumer, so look again next time in case it is released
+                    leftOnQueue.add(node);
+                }
+            }
+            else
+            {
+                add(node);
+            }
+        }
+    }
+
+    private void remove(final Node node)
+    {
+        if(node._tick >= _currentTick + _slots.length)
+        {
+            _overflow.remove(node);
+        }
+    }
+
+    /**
+     * @return the number of entries held by the index, including those deleted since they were last visited
+     */
+    int size()
+    {
+        int size = _overflow.size() + _late.size();
+        for(ConcurrentLinkedQueue<Node> slot : _slots)
+        {
+            size += slot.size();
+        }
+        return size;
+    }
+
+    static final class Node implements Comparable<Node>
+    {
+        private final QueueEntryExpiryIndex _index;
+        private final long _tick;
+        private final long _sequence;
+        private volatile QueueEntryImpl _entry;
+
+        private Node(final QueueEntryExpiryIndex index, final QueueEntryImpl entry, final long tick, final long sequence)
+        {
+            _index = index;
+            _entry = entry;
+            _tick = tick;
+            _sequence = sequence;
+        }
+
+        /**
+         * Called when the entry is deleted from its queue, so that the index no longer holds on to it.
+         */
+        void entryDeleted()
+        {
+            _entry = null;
+            _index.remove(this);
+        }
+
+        @Override
+        public int compareTo(final Node other)
+        {
+            if(_tick != other._tick)
+            {
+                return _tick < other._tick ? -1 : 1;
+            }
+            return _sequence < other._sequence ? -1 : (_sequence == other._sequence ? 0 : 1);
+        }
+    }
+}
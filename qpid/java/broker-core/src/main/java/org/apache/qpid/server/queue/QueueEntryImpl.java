@@ -88,6 +88,9 @@ public abstract class QueueEntryImpl implements QueueEntry
                     .newUpdater(QueueEntryImpl.class, "_deliveryCount");
     private boolean _deliveredToConsumer;
 
+    private volatile QueueEntryExpiryIndex.Node _expiryNode;
+    private volatile MessageGroupEntryIndex.GroupEntries _groupEntries;
+
 
     public QueueEntryImpl(QueueEntryList queueEntryList)
     {
@@ -344,6 +347,18 @@ public abstract class QueueEntryImpl implements QueueEntry
         if(state != DELETED_STATE && _stateUpdater.compareAndSet(this,state,DELETED_STATE))
         {
             _queueEntryList.entryDeleted(this);
+            final QueueEntryExpiryIndex.Node expiryNode = _expiryNode;
+            if(expiryNode != null)
+            {
+                _expiryNode = null;
+                expiryNode.entryDeleted();
+            }
+            final MessageGroupEntryIndex.GroupEntries groupEntries = _groupEntries;
+            if(groupEntries != null)
+            {
+                _groupEntries = null;
+                groupEntries.entryDeleted(this);
+            }
             onDelete();
             _message.release();
 
@@ -447,6 +462,16 @@ public abstract class QueueEntryImpl implements QueueEntry
     {
     }
 
+    void setExpiryNode(final QueueEntryExpiryIndex.Node expiryNode)
+    {
+        _expiryNode = expiryNode;
+    }
+
+    void setGroupEntries(final MessageGroupEntryIndex.GroupEntries groupEntries)
+    {
+        _groupEntries = groupEntries;
+    }
+
     public QueueEntryList getQueueEntryList()
     {
         return _queueEntryList;
@@ -0,0 +1,522 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.security.PrivilegedAction;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.security.auth.Subject;
+
+import org.apache.log4j.Logger;
+
+import org.apache.qpid.server.security.SecurityManager;
+import org.apache.qpid.server.util.DaemonThreadFactory;
+
+/**
+ * Runs the asynchronous delivery work of queues ({@link QueueRunner}s and {@link SubFlushRunner}s) on a fixed set of
+ * shards, one thread per core.
+ *
+ * Each queue is pinned to a home shard when it is created, and all of its delivery tasks are submitted to that
+ * shard, so a busy queue keeps being processed on the same thread while it has work.  A shard that runs out of work
+ * of its own steals from the tail of another shard's task list, so that one very busy shard does not leave
+ * the others idle.
+ *
+ * A task which blocks, such as a delivery to a consumer whose connection cannot take any more data, would hold up
+ * every other queue on its shard.  A monitor therefore checks the shards periodically, and when a shard with a
+ * backlog has been running the same task for longer than <code>qpid.broker.deliveryShardStallThreshold</code>
+ * milliseconds (default 100), it starts a helper thread which runs the backlog until the shard is free again.
+ *
+ * Like the executor it replaces, the shard threads are started when the first queue acquires the scheduler and
+ * stopped when the last queue releases it.  They are created as the system, so that they do not inherit the security
+ * context of whoever happened to create the first queue.
+ */
+public class ShardedDeliveryScheduler
+{
+    private static final Logger _logger = Logger.getLogger(ShardedDeliveryScheduler.class);
+
+    private static final int NUM_CPUS = Runtime.getRuntime().availableProcessors();
+
+    private static final ShardedDeliveryScheduler _instance = new ShardedDeliveryScheduler();
+
+    private final Object _lock = new Object();
+
+    private final int _shardCount = Integer.getInteger("qpid.broker.deliveryShards", NUM_CPUS);
+
+    private static final long STALL_THRESHOLD_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("qpid.broker.deliveryShardStallThreshold", 100l));
+
+    private final AtomicInteger _nextShard = new AtomicInteger();
+
+    private volatile DeliveryShard[] _shards;
+
+    private StallMonitor _stallMonitor;
+
+    private int _refCount = 0;
+
+    public static ShardedDeliveryScheduler getInstance()
+    {
+        return _instance;
+    }
+
+    private ShardedDeliveryScheduler()
+    {
+    }
+
+    /**
+     * Acquires a reference to the scheduler, starting the shards if necessary, and returns the home shard on which
+     * the caller's delivery tasks should be executed.
+     */
+    public Executor acquireExecutor()
+    {
+        synchronized (_lock)
+        {
+            if (_refCount++ == 0)
+            {
+                Subject.doAs(SecurityManager.getSystemTaskSubject("Delivery Shards"), new PrivilegedAction<Object>()
+                {
+                    @Override
+                    public Object run()
+                    {
+                        startShards();
+                        return null;
+                    }
+                });
+            }
+
+            DeliveryShard[] shards = _shards;
+            DeliveryShard shard = shards[(_nextShard.getAndIncrement() & Integer.MAX_VALUE) % shards.length];
+            shard.queueAssigned();
+            return shard;
+        }
+    }
+
+    private void startShards()
+    {
+        DeliveryShard[] shards = new DeliveryShard[Math.max(1, _shardCount)];
+        for (int i = 0; i < shards.length; i++)
+        {
+            shards[i] = new DeliveryShard(this, i);
+        }
+        _shards = shards;
+        for (DeliveryShard shard : shards)
+        {
+            shard.start();
+        }
+        _stallMonitor = new StallMonitor(shards);
+        _stallMonitor.start();
+    }
+
+    public void releaseExecutor(Executor executor)
+    {
+        synchronized (_lock)
+        {
+            if (executor instanceof DeliveryShard)
+            {
+                ((DeliveryShard) executor).queueUnassigned();
+            }
+            if (--_refCount == 0)
+            {
+                _stallMonitor.stop();
+                for (DeliveryShard shard : _shards)
+                {
+                    shard.stop();
+                }
+            }
+        }
+    }
+
+    public int getReferenceCount()
+    {
+        synchronized (_lock)
+        {
+            return _refCount;
+        }
+    }
+
+    public int getShardCount()
+    {
+        return Math.max(1, _shardCount);
+    }
+
+    /**
+     * Returns, for each shard, the number of queues pinned to it, the number of tasks it has executed and stolen,
+     * its current backlog and helpers, the total time in milliseconds it has spent running tasks, and its utilisation
+     * (the fraction of time spent running tasks) since it was started.  Reading the statistics does not change them, so
+     * the utilisation over an interval is found from the difference between two readings of the busy time.
+     */
+    public Map<String, Object> getShardStatistics()
+    {
+        Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+        DeliveryShard[] shards = _shards;
+        if (shards != null)
+        {
+            for (DeliveryShard shard : shards)
+            {
+                statistics.put(shard.getName(), shard.getStatistics());
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Takes a task from the tail of any other shard's backlog, or returns null if there is none.
+     */
+    private Runnable steal(DeliveryShard thief)
+    {
+        DeliveryShard[] shards = _shards;
+        for (int i = 1; i < shards.length; i++)
+        {
+            DeliveryShard victim = shards[(thief.getIndex() + i) % shards.length];
+            Runnable task = victim.pollLast();
+            if (task != null)
+            {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Called when work is submitted to a shard which is already busy, so that an idle shard can steal it.
+     */
+    private void signalIdleShard(DeliveryShard busy)
+    {
+        DeliveryShard[] shards = _shards;
+        for (int i = 1; i < shards.length; i++)
+        {
+            DeliveryShard shard = shards[(busy.getIndex() + i) % shards.length];
+            if (shard.unparkIfIdle())
+            {
+                return;
+            }
+        }
+    }
+
+    static final class DeliveryShard implements Executor, Runnable
+    {
+        private final ShardedDeliveryScheduler _scheduler;
+        private final int _index;
+        private final String _name;
+        private final Thread _thread;
+        private final ConcurrentLinkedDeque<Runnable> _tasks = new ConcurrentLinkedDeque<Runnable>();
+        private final AtomicInteger _assignedQueues = new AtomicInteger();
+        private final AtomicLong _stolen = new AtomicLong();
+        private final AtomicLong _executed = new AtomicLong();
+        private final AtomicLong _busyNanos = new AtomicLong();
+        private final CopyOnWriteArrayList<Helper> _helpers = new CopyOnWriteArrayList<Helper>();
+        private final AtomicInteger _helperCount = new AtomicInteger();
+
+        private volatile boolean _running = true;
+        private volatile boolean _parked;
+
+        // when the shard thread started its current task, or zero if it is not running one
+        private volatile long _taskStartTime;
+
+        private final long _startTime = System.nanoTime();
+
+        private DeliveryShard(ShardedDeliveryScheduler scheduler, int index)
+        {
+            _scheduler = scheduler;
+            _index = index;
+            _name = "DeliveryShard-" + index;
+            _thread = new DaemonThreadFactory(_name).newThread(this);
+        }
+
+        private void start()
+        {
+            _thread.start();
+        }
+
+        private void stop()
+        {
+            _running = false;
+            _tasks.clear();
+            _thread.interrupt();
+            LockSupport.unpark(_thread);
+        }
+
+        int getIndex()
+        {
+            return _index;
+        }
+
+        String getName()
+        {
+            return _name;
+        }
+
+        void queueAssigned()
+        {
+            _assignedQueues.incrementAndGet();
+        }
+
+        void queueUnassigned()
+        {
+            _assignedQueues.decrementAndGet();
+        }
+
+        @Override
+        public void execute(Runnable task)
+        {
+            if (!_running)
+            {
+                throw new RejectedExecutionException(_name + " has been stopped");
+            }
+            _tasks.offerLast(task);
+            final boolean parked = _parked;
+            if (parked)
+            {
+                LockSupport.unpark(_thread);
+            }
+            if (!parked || _tasks.peekFirst() != task)
+            {
+                // this shard is busy or already has a backlog, so give an idle shard the chance to steal
+                _scheduler.signalIdleShard(this);
+            }
+        }
+
+        private Runnable pollLast()
+        {
+            return _running ? _tasks.pollLast() : null;
+        }
+
+        private boolean unparkIfIdle()
+        {
+            if (_parked && _running)
+            {
+                LockSupport.unpark(_thread);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void run()
+        {
+            while (_running)
+            {
+                Runnable task = _tasks.pollFirst();
+                boolean stolen = false;
+                if (task == null)
+                {
+                    task = _scheduler.steal(this);
+                    stolen = task != null;
+                }
+
+                if (task == null)
+                {
+                    // a submitter writes the task before reading _parked, and we write _parked before re-checking
+                    // the task list, so no wakeup is lost
+                    _parked = true;
+                    if (_running && _tasks.isEmpty())
+                    {
+                        LockSupport.park(this);
+                    }
+                    _parked = false;
+                    continue;
+                }
+
+                final long start = System.nanoTime();
+                _taskStartTime = start;
+                try
+                {
+                    runTask(task, start);
+                }
+                finally
+                {
+                    _taskStartTime = 0l;
+                    if (stolen)
+                    {
+                        _stolen.incrementAndGet();
+                    }
+                }
+            }
+        }
+
+        private void runTask(Runnable task, long start)
+        {
+            try
+            {
+                task.run();
+            }
+            catch (RuntimeException e)
+            {
+                _logger.error("Unexpected exception running delivery task " + task + " on " + _name, e);
+            }
+            finally
+            {
+                _busyNanos.addAndGet(System.nanoTime() - start);
+                _executed.incrementAndGet();
+            }
+        }
+
+        /**
+         * Starts a helper thread to run the backlog if the shard thread, and any helper already started, have each
+         * been running the same task for longer than the stall threshold.
+         */
+        private void checkStalled(long now)
+        {
+            if (!_running || _tasks.isEmpty() || !isStalled(_taskStartTime, now))
+            {
+                return;
+            }
+            for (Helper helper : _helpers)
+            {
+                if (!isStalled(helper._taskStartTime, now))
+                {
+                    return;
+                }
+            }
+
+            Helper helper = new Helper();
+            _helpers.add(helper);
+            if (_logger.isDebugEnabled())
+            {
+                _logger.debug(_name + " has been running a task for longer than the stall threshold,"
+                              + " starting a helper to run its backlog");
+            }
+            new DaemonThreadFactory(_name + "-Helper-" + _helperCount.incrementAndGet()).newThread(helper).start();
+        }
+
+        private boolean isStalled(long taskStartTime, long now)
+        {
+            return taskStartTime != 0l && now - taskStartTime > STALL_THRESHOLD_NANOS;
+        }
+
+        /**
+         * Runs the backlog of a stalled shard, ending once the backlog is empty or the shard thread is free again.
+         */
+        private final class Helper implements Runnable
+        {
+            private volatile long _taskStartTime;
+
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Runnable task;
+                    while (_running
+                           && isStalled(DeliveryShard.this._taskStartTime, System.nanoTime())
+                           && (task = _tasks.pollFirst()) != null)
+                    {
+                        final long start = System.nanoTime();
+                        _taskStartTime = start;
+                        try
+                        {
+                            runTask(task, start);
+                        }
+                        finally
+                        {
+                            _taskStartTime = 0l;
+                        }
+                    }
+                }
+                finally
+                {
+                    _helpers.remove(this);
+                }
+            }
+        }
+
+        Map<String, Object> getStatistics()
+        {
+            final long busyNanos = _busyNanos.get();
+            final long elapsed = System.nanoTime() - _startTime;
+            final double utilisation = elapsed <= 0 ? 0d : Math.min(1d, (double) busyNanos / elapsed);
+
+            Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+            statistics.put("queues", _assignedQueues.get());
+            statistics.put("tasksExecuted", _executed.get());
+            statistics.put("tasksStolen", _stolen.get());
+            statistics.put("backlog", _tasks.size());
+            statistics.put("helpers", _helpers.size());
+            statistics.put("busyTime", TimeUnit.NANOSECONDS.toMillis(busyNanos));
+            statistics.put("utilisation", utilisation);
+            return statistics;
+        }
+
+        @Override
+        public String toString()
+        {
+            return _name;
+        }
+    }
+
+    /**
+     * Periodically checks the shards for a task which has been running for longer than the stall threshold.
+     */
+    private static final class StallMonitor implements Runnable
+    {
+        private final DeliveryShard[] _shards;
+        private final Thread _thread;
+        private volatile boolean _running = true;
+
+        private StallMonitor(DeliveryShard[] shards)
+        {
+            _shards = shards;
+            _thread = new DaemonThreadFactory("DeliveryShard-Monitor").newThread(this);
+        }
+
+        private void start()
+        {
+            _thread.start();
+        }
+
+        private void stop()
+        {
+            _running = false;
+            _thread.interrupt();
+        }
+
+        @Override
+        public void run()
+        {
+            final long interval = Math.max(1l, TimeUnit.NANOSECONDS.toMillis(STALL_THRESHOLD_NANOS) / 2);
+            while (_running)
+            {
+                try
+                {
+                    Thread.sleep(interval);
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+
+                final long now = System.nanoTime();
+                for (DeliveryShard shard : _shards)
+                {
+                    shard.checkStalled(now);
+                }
+            }
+        }
+    }
+}
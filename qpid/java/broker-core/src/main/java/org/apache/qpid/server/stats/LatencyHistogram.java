@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.qpid.server.stats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the distribution of a latency, in microseconds, so that percentiles can be reported.
+ *
+ * Values are counted in buckets whose width grows with the value: every power of two is split into
+ * {@link #SUB_BUCKETS} equal buckets, so a reported percentile is never more than 1/16th above the true value,
+ * whatever its magnitude.  Values of {@link #MAX_VALUE} or more are counted in the last bucket.
+ *
+ * Recording a value does not take a lock.  The buckets are only allocated when the first value is recorded, so
+ * a histogram which is never used costs little.
+ */
+public final class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** The largest value distinguished by the histogram, a little over 19 hours */
+    public static final long MAX_VALUE = (1l << 36) - 1l;
+
+    private static final int BUCKETS = getBucket(MAX_VALUE) + 1;
+
+    private static final double[] SUMMARY_PERCENTILES = { 50d, 90d, 99d, 99.9d };
+    private static final String[] SUMMARY_NAMES = { "p50", "p90", "p99", "p999" };
+
+    private volatile AtomicLongArray _buckets;
+    private final AtomicLong _sum = new AtomicLong();
+    private final AtomicLong _max = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param micros the latency in microseconds; negative values, which the clock can produce when it is adjusted,
+     * are recorded as zero
+     */
+    public void record(long micros)
+    {
+        if (micros < 0l)
+        {
+            micros = 0l;
+        }
+        else if (micros > MAX_VALUE)
+        {
+            micros = MAX_VALUE;
+        }
+        getBuckets().incrementAndGet(getBucket(micros));
+        _sum.addAndGet(micros);
+
+        long max = _max.get();
+        while (micros > max && !_max.compareAndSet(max, micros))
+        {
+            max = _max.get();
+        }
+    }
+
+    /**
+     * Records the time elapsed since the given value of {@link System#nanoTime()}.
+     */
+    public void recordSince(final long startNanos)
+    {
+        record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    private AtomicLongArray getBuckets()
+    {
+        AtomicLongArray buckets = _buckets;
+        if (buckets == null)
+        {
+            synchronized (this)
+            {
+                buckets = _buckets;
+                if (buckets == null)
+                {
+                    buckets = new AtomicLongArray(BUCKETS);
+                    _buckets = buckets;
+                }
+            }
+        }
+        return buckets;
+    }
+
+    static int getBucket(final long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return the largest value counted in the given bucket
+     */
+    static long getBucketUpperBound(final int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long lower = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+        return lower + (1l << shift) - 1l;
+    }
+
+    public long getCount()
+    {
+        AtomicLongArray buckets = _buckets;
+        long count = 0l;
+        if (buckets != null)
+        {
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                count += buckets.get(i);
+            }
+        }
+        return count;
+    }
+
+    public long getMax()
+    {
+        return _max.get();
+    }
+
+    public long getMean()
+    {
+        long count = getCount();
+        return count == 0l ? 0l : _sum.get() / count;
+    }
+
+    /**
+     * @param percentile the percentage of recorded values, between 0 and 100
+     * @return the value which the given percentage of recorded values do not exceed, or zero if none have been
+     * recorded
+     */
+    public long getValueAtPercentile(final double percentile)
+    {
+        return getValuesAtPercentiles(new double[] { percentile })[0];
+    }
+
+    private long[] getValuesAtPercentiles(final double[] percentiles)
+    {
+        long[] values = new long[percentiles.length];
+        AtomicLongArray buckets = _buckets;
+        if (buckets == null)
+        {
+            return values;
+        }
+
+        long[] counts = new long[BUCKETS];
+        long total = 0l;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0l)
+        {
+            return values;
+        }
+
+        long max = _max.get();
+        for (int p = 0; p < percentiles.length; p++)
+        {
+            long target = Math.max(1l, (long) Math.ceil(Math.min(100d, percentiles[p]) * total / 100d));
+            long cumulative = 0l;
+            int bucket = 0;
+            while (bucket < BUCKETS - 1)
+            {
+                cumulative += counts[bucket];
+                if (cumulative >= target)
+                {
+                    break;
+                }
+                bucket++;
+            }
+            values[p] = Math.min(getBucketUpperBound(bucket), max);
+        }
+        return values;
+    }
+
+    /**
+     * Adds the values recorded by another histogram to this one.
+     */
+    public void add(final LatencyHistogram other)
+    {
+        AtomicLongArray otherBuckets = other._buckets;
+        if (otherBuckets != null)
+        {
+            AtomicLongArray buckets = getBuckets();
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                long count = otherBuckets.get(i);
+                if (count != 0l)
+                {
+                    buckets.addAndGet(i, count);
+                }
+            }
+            _sum.addAndGet(other._sum.get());
+
+            long otherMax = other._max.get();
+            long max = _max.get();
+            while (otherMax > max && !_max.compareAndSet(max, otherMax))
+            {
+                max = _max.get();
+            }
+        }
+    }
+
+    /**
+     * Discards the recorded values.  Values recorded while the histogram is being reset may or may not be kept.
+     */
+    public void reset()
+    {
+        AtomicLongArray buckets = _buckets;
+        if (buckets != null)
+        {
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                buckets.set(i, 0l);
+            }
+        }
+        _sum.set(0l);
+        _max.set(0l);
+    }
+
+    /**
+     * @return the number of recorded values, and their mean, maximum and the 50th, 90th, 99th and 99.9th
+     * percentiles in microseconds
+     */
+    public Map<String, Object> getSummary()
+    {
+        long[] values = getValuesAtPercentiles(SUMMARY_PERCENTILES);
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", getCount());
+        summary.put("mean", getMean());
+        for (int i = 0; i < values.length; i++)
+        {
+            summary.put(SUMMARY_NAMES[i], values[i]);
+        }
+        summary.put("max", getMax());
+        return summary;
+    }
+}
@@ -23,10 +23,17 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Date;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * This class collects statistics and counts the total, rate per second and
  * peak rate per second values for the events that are registered with it. 
+ *
+ * Registering an event does not take a lock.  The total is kept in a single
+ * atomic value until two threads are seen to contend for it, after which each
+ * thread adds to one of a set of cells on separate cache lines, and the cells
+ * are summed on read.  The rate and peak are worked out from the total once
+ * per sample period, by the first event or read of the new period.
  */
 public class StatisticsCounter
 {
@@ -36,14 +43,20 @@ public class StatisticsCounter
 
     private static final String COUNTER = "counter";
     private static final AtomicLong _counterIds = new AtomicLong(0L);
-    
-    private long _peak = 0L;
-    private long _total = 0L;
-    private long _temp = 0L;
-    private long _last = 0L;
-    private long _rate = 0L;
 
-    private long _start;
+    // number of longs in a cache line, so that each cell has a line of its own
+    private static final int CELL_SPACING = 8;
+    private static final int CELLS = cellCount(Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLong _base = new AtomicLong();
+    private volatile AtomicLongArray _cells;
+
+    private volatile long _peak = 0L;
+    private volatile long _rate = 0L;
+    private volatile long _last = 0L;
+    private long _totalAtLastSample = 0L;
+
+    private volatile long _start;
     
     private final long _period;
     private final String _name;
@@ -64,6 +77,16 @@ public class StatisticsCounter
         _name = name + "-" + + _counterIds.incrementAndGet();
         reset();
     }
+
+    private static int cellCount(final int processors)
+    {
+        int count = 1;
+        while(count < processors)
+        {
+            count <<= 1;
+        }
+        return count;
+    }
     
     public void registerEvent()
     {
@@ -78,21 +101,61 @@ public class StatisticsCounter
     public void registerEvent(long value, long timestamp)
     {
         long thisSample = (timestamp / _period);
-        synchronized (this)
+        if (thisSample > _last)
+        {
+            sample(thisSample);
+        }
+
+        if (value != 0L)
+        {
+            add(value);
+        }
+    }
+
+    private void add(long value)
+    {
+        AtomicLongArray cells = _cells;
+        if (cells == null)
+        {
+            long current = _base.get();
+            if (_base.compareAndSet(current, current + value))
+            {
+                return;
+            }
+            cells = createCells();
+        }
+        // thread ids are handed out in sequence, so concurrent threads mostly land on different cells
+        int cell = (int) Thread.currentThread().getId() & (CELLS - 1);
+        cells.getAndAdd((cell + 1) * CELL_SPACING, value);
+    }
+
+    private synchronized AtomicLongArray createCells()
+    {
+        if (_cells == null)
+        {
+            // the first line is left empty, as it is shared with the array header
+            _cells = new AtomicLongArray((CELLS + 1) * CELL_SPACING);
+        }
+        return _cells;
+    }
+
+    /**
+     * Starts a new sample period, setting the rate to the amount registered
+     * during the previous one.
+     */
+    private synchronized void sample(long thisSample)
+    {
+        if (thisSample > _last)
         {
-            if (thisSample > _last)
+            long total = getTotal();
+            long rate = total - _totalAtLastSample;
+            _totalAtLastSample = total;
+            _rate = rate;
+            if (rate > _peak)
             {
-                _last = thisSample;
-                _rate = _temp;
-                _temp = 0L;
-                if (_rate > _peak)
-                {
-                    _peak = _rate;
-                }
+                _peak = rate;
             }
-            
-            _total += value;
-            _temp += value;
+            _last = thisSample;
         }
     }
     
@@ -108,12 +171,21 @@ public class StatisticsCounter
     /**
      * Reset 
      */
-    public void reset()
+    public synchronized void reset()
     {
         _log.info("Resetting statistics for counter: " + _name);
         _peak = 0L;
         _rate = 0L;
-        _total = 0L;
+        _base.set(0L);
+        AtomicLongArray cells = _cells;
+        if (cells != null)
+        {
+            for (int i = 0; i < cells.length(); i += CELL_SPACING)
+            {
+                cells.set(i, 0L);
+            }
+        }
+        _totalAtLastSample = 0L;
         _start = System.currentTimeMillis();
         _last = _start / _period;
     }
@@ -132,7 +204,16 @@ public class StatisticsCounter
 
     public long getTotal()
     {
-        return _total;
+        long total = _base.get();
+        AtomicLongArray cells = _cells;
+        if (cells != null)
+        {
+            for (int i = CELL_SPACING; i < cells.length(); i += CELL_SPACING)
+            {
+                total += cells.get(i);
+            }
+        }
+        return total;
     }
 
     public long getStart()
@@ -21,7 +21,6 @@
 package org.apache.qpid.server.store;
 
 import java.io.ByteArrayInputStream;
-import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.nio.ByteBuffer;
 import java.sql.Connection;
@@ -31,7 +30,9 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
@@ -53,7 +54,8 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
     private static final String QUEUE_ENTRY_TABLE_NAME = "QPID_QUEUE_ENTRIES";
 
     private static final String META_DATA_TABLE_NAME = "QPID_MESSAGE_METADATA";
-    private static final String MESSAGE_CONTENT_TABLE_NAME = "QPID_MESSAGE_CONTENT";
+    private static final String MESSAGE_CONTENT_TABLE_NAME = "QPID_MESSAGE_CONTENT_CHUNKS";
+    private static final String V8_MESSAGE_CONTENT_TABLE_NAME = "QPID_MESSAGE_CONTENT";
 
 
     private static final String XID_TABLE_NAME = "QPID_XIDS";
@@ -64,10 +66,12 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
                                                                                                   QUEUE_ENTRY_TABLE_NAME,
                                                                                                   XID_TABLE_NAME, XID_ACTIONS_TABLE_NAME));
 
-    private static final int DB_VERSION = 8;
+    private static final int DB_VERSION = 9;
 
     private final AtomicLong _messageId = new AtomicLong(0);
 
+    private volatile FlowToDiskManager _flowToDiskManager = FlowToDiskManager.DISABLED;
+
     private static final String CREATE_DB_VERSION_TABLE = "CREATE TABLE "+ DB_VERSION_TABLE_NAME + " ( version int not null )";
     private static final String INSERT_INTO_DB_VERSION = "INSERT INTO "+ DB_VERSION_TABLE_NAME + " ( version ) VALUES ( ? )";
     private static final String SELECT_FROM_DB_VERSION = "SELECT version FROM " + DB_VERSION_TABLE_NAME;
@@ -80,9 +84,9 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
     private static final String SELECT_FROM_QUEUE_ENTRY_FOR_QUEUE = "SELECT queue_id, message_id FROM " + QUEUE_ENTRY_TABLE_NAME + " WHERE queue_id = ? ORDER BY queue_id, message_id";
 
     private static final String INSERT_INTO_MESSAGE_CONTENT = "INSERT INTO " + MESSAGE_CONTENT_TABLE_NAME
-                                                              + "( message_id, content ) values (?, ?)";
-    private static final String SELECT_FROM_MESSAGE_CONTENT = "SELECT content FROM " + MESSAGE_CONTENT_TABLE_NAME
-                                                              + " WHERE message_id = ?";
+                                                              + "( message_id, chunk_index, content ) values (?, ?, ?)";
+    private static final String SELECT_FROM_MESSAGE_CONTENT = "SELECT chunk_index, content FROM " + MESSAGE_CONTENT_TABLE_NAME
+                                                              + " WHERE message_id = ? AND chunk_index >= ? ORDER BY chunk_index";
     private static final String DELETE_FROM_MESSAGE_CONTENT = "DELETE FROM " + MESSAGE_CONTENT_TABLE_NAME
                                                               + " WHERE message_id = ?";
 
@@ -109,6 +113,8 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
 
     protected final EventManager _eventManager = new EventManager();
 
+    private volatile JDBCCommitter<JDBCTransaction> _committer;
+
     protected abstract boolean isMessageStoreOpen();
 
     protected abstract void checkMessageStoreOpen();
@@ -212,6 +218,8 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
                             upgradeFromV6();
                         case 7:
                             upgradeFromV7();
+                        case 8:
+                            upgradeFromV8();
                         case DB_VERSION:
                             return;
                         default:
@@ -235,6 +243,75 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
 
     }
 
+    /**
+     * Moves the content of each message from a single row of the v8 content table into rows of at most
+     * {@link ChunkedContent#CHUNK_SIZE} bytes, keyed by message id and chunk index.
+     */
+    private void upgradeFromV8() throws SQLException
+    {
+        Connection conn = newConnection();
+        try
+        {
+            if(tableExists(V8_MESSAGE_CONTENT_TABLE_NAME, conn))
+            {
+                createMessageContentTable(conn);
+
+                PreparedStatement select = conn.prepareStatement("SELECT message_id, content FROM "
+                                                                 + V8_MESSAGE_CONTENT_TABLE_NAME);
+                try
+                {
+                    ResultSet rs = select.executeQuery();
+                    try
+                    {
+                        while(rs.next())
+                        {
+                            long messageId = rs.getLong(1);
+                            ChunkedContent content = new ChunkedContent();
+                            content.append(ByteBuffer.wrap(getBlobAsBytes(rs, 2)));
+                            insertContent(conn, messageId, content);
+                        }
+                    }
+                    finally
+                    {
+                        rs.close();
+                    }
+                }
+                finally
+                {
+                    select.close();
+                }
+
+                Statement stmt = conn.createStatement();
+                try
+                {
+                    stmt.execute("DROP TABLE " + V8_MESSAGE_CONTENT_TABLE_NAME);
+                }
+                finally
+                {
+                    stmt.close();
+                }
+            }
+            conn.commit();
+        }
+        catch(SQLException e)
+        {
+            try
+            {
+                conn.rollback();
+            }
+            catch(SQLException t)
+            {
+                // ignore - we are re-throwing underlying exception
+            }
+            throw e;
+        }
+        finally
+        {
+            conn.close();
+        }
+        updateDbVersion(9);
+    }
+
     private void upgradeFromV7() throws SQLException
     {
         updateDbVersion(8);
@@ -379,9 +456,9 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
                              + MESSAGE_CONTENT_TABLE_NAME
                              + " ( message_id "
                              + getSqlBigIntType()
-                             + " not null, content "
+                             + " not null, chunk_index int not null, content "
                              + getSqlBlobType()
-                             + ", PRIMARY KEY (message_id) )");
+                             + ", PRIMARY KEY (message_id, chunk_index) )");
             }
             finally
             {
@@ -453,74 +530,22 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
         }
         else
         {
-            return new StoredMemoryMessage(getNextMessageId(), metaData);
+            return new StoredMemoryMessage(getNextMessageId(), metaData, _flowToDiskManager);
         }
     }
 
-    @Override
-    public long getNextMessageId()
+    /**
+     * Called by the concrete store when it is opened, with the flow to disk manager of its parent.
+     */
+    protected void setFlowToDiskManager(final FlowToDiskManager flowToDiskManager)
     {
-        return _messageId.incrementAndGet();
+        _flowToDiskManager = flowToDiskManager;
     }
 
-    private void removeMessage(long messageId)
+    @Override
+    public long getNextMessageId()
     {
-        try
-        {
-            Connection conn = newConnection();
-            try
-            {
-                PreparedStatement stmt = conn.prepareStatement(DELETE_FROM_META_DATA);
-                try
-                {
-                    stmt.setLong(1,messageId);
-                    int results = stmt.executeUpdate();
-                    stmt.close();
-
-                    if (results == 0)
-                    {
-                        getLogger().warn("Message metadata not found for message id " + messageId);
-                    }
-
-                    if (getLogger().isDebugEnabled())
-                    {
-                        getLogger().debug("Deleted metadata for message " + messageId);
-                    }
-
-                    stmt = conn.prepareStatement(DELETE_FROM_MESSAGE_CONTENT);
-                    stmt.setLong(1,messageId);
-                    results = stmt.executeUpdate();
-                }
-                finally
-                {
-                    stmt.close();
-                }
-                conn.commit();
-            }
-            catch(SQLException e)
-            {
-                try
-                {
-                    conn.rollback();
-                }
-                catch(SQLException t)
-                {
-                    // ignore - we are re-throwing underlying exception
-                }
-
-                throw e;
-
-            }
-            finally
-            {
-                conn.close();
-            }
-        }
-        catch (SQLException e)
-        {
-            throw new StoreException("Error removing message with id " + messageId + " from database: " + e.getMessage(), e);
-        }
-
+        return _messageId.incrementAndGet();
     }
 
     /**
@@ -586,96 +611,279 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
         return new JDBCTransaction();
     }
 
-    private void enqueueMessage(ConnectionWrapper connWrapper, final TransactionLogResource queue, Long messageId) throws StoreException
+    /**
+     * Starts the thread which commits the transactions of this store.  Called once the store has been opened.
+     */
+    protected void startCommitter(final String name)
     {
-        Connection conn = connWrapper.getConnection();
+        _committer = new JDBCCommitter<JDBCTransaction>(name, new TransactionWriter());
+        _committer.start();
+    }
 
+    /**
+     * Stops the commit thread once the transactions already committed have been written.
+     */
+    protected void stopCommitter()
+    {
+        JDBCCommitter<JDBCTransaction> committer = _committer;
+        if(committer != null)
+        {
+            _committer = null;
+            committer.stop();
+        }
+    }
 
-        try
+    private StoreFuture commit(final JDBCTransaction transaction)
+    {
+        JDBCCommitter<JDBCTransaction> committer = _committer;
+        if(committer == null)
         {
-            if (getLogger().isDebugEnabled())
+            throw new StoreException("Message store is not open for commits");
+        }
+        return committer.commit(transaction);
+    }
+
+    /**
+     * Writes the work of many transactions in one database transaction, using a batched statement for each kind of
+     * change.  Queue entries are deleted before any are inserted, as a queue entry cannot be dequeued in the same
+     * batch as it is enqueued: it is not delivered until its enqueue has been committed.  Messages are deleted last,
+     * as a message may be removed while the transaction storing it is still waiting to be written.
+     */
+    private class TransactionWriter implements JDBCCommitter.Writer<JDBCTransaction>
+    {
+        @Override
+        public Connection newConnection() throws SQLException
+        {
+            return AbstractJDBCMessageStore.this.newConnection();
+        }
+
+        @Override
+        public void write(final Connection conn, final List<JDBCTransaction> transactions) throws SQLException
+        {
+            for(JDBCTransaction transaction : transactions)
+            {
+                for(XidRecord xidRecord : transaction._xidRecords)
+                {
+                    if(xidRecord._remove)
+                    {
+                        removeXid(conn, xidRecord._format, xidRecord._globalId, xidRecord._branchId);
+                    }
+                    else
+                    {
+                        recordXid(conn, xidRecord._format, xidRecord._globalId, xidRecord._branchId,
+                                  xidRecord._enqueues, xidRecord._dequeues);
+                    }
+                }
+            }
+
+            deleteQueueEntries(conn, transactions);
+            storeMessages(conn, transactions);
+            insertQueueEntries(conn, transactions);
+            deleteMessages(conn, transactions);
+        }
+
+        @Override
+        public void committed(final List<JDBCTransaction> transactions)
+        {
+            for(JDBCTransaction transaction : transactions)
+            {
+                for(StoredJDBCMessage message : transaction._messages)
+                {
+                    message.storeCommitted();
+                }
+            }
+        }
+
+        private void deleteQueueEntries(final Connection conn, final List<JDBCTransaction> transactions)
+                throws SQLException
+        {
+            List<QueueEntry> entries = new ArrayList<QueueEntry>();
+            for(JDBCTransaction transaction : transactions)
+            {
+                entries.addAll(transaction._dequeues);
+            }
+            if(entries.isEmpty())
             {
-                getLogger().debug("Enqueuing message "
-                                  + messageId
-                                  + " on queue "
-                                  + queue.getName()
-                                  + " with id " + queue.getId()
-                                  + " [Connection"
-                                  + conn
-                                  + "]");
+                return;
             }
 
-            PreparedStatement stmt = conn.prepareStatement(INSERT_INTO_QUEUE_ENTRY);
+            PreparedStatement stmt = conn.prepareStatement(DELETE_FROM_QUEUE_ENTRY);
             try
             {
-                stmt.setString(1, queue.getId().toString());
-                stmt.setLong(2,messageId);
-                stmt.executeUpdate();
+                for(QueueEntry entry : entries)
+                {
+                    stmt.setString(1, entry._queue.getId().toString());
+                    stmt.setLong(2, entry._messageId);
+                    stmt.addBatch();
+                }
+                int[] results = stmt.executeBatch();
+                for(int i = 0; i < results.length; i++)
+                {
+                    if(results[i] == 0)
+                    {
+                        QueueEntry entry = entries.get(i);
+                        throw new StoreException("Unable to find message with id " + entry._messageId + " on queue "
+                                                 + entry._queue.getName() + " with id " + entry._queue.getId());
+                    }
+                }
             }
             finally
             {
-                stmt.close();
+                JdbcUtils.closePreparedStatement(stmt, getLogger());
             }
-
-        }
-        catch (SQLException e)
-        {
-            getLogger().error("Failed to enqueue: " + e.getMessage(), e);
-            throw new StoreException("Error writing enqueued message with id " + messageId + " for queue " + queue.getName() + " with id " + queue.getId()
-                                     + " to database", e);
         }
 
-    }
-
-    private void dequeueMessage(ConnectionWrapper connWrapper, final TransactionLogResource  queue, Long messageId) throws StoreException
-    {
+        private void storeMessages(final Connection conn, final List<JDBCTransaction> transactions)
+                throws SQLException
+        {
+            // a message enqueued by several of the transactions is stored once
+            Set<StoredJDBCMessage> messages =
+                    Collections.newSetFromMap(new IdentityHashMap<StoredJDBCMessage, Boolean>());
+            for(JDBCTransaction transaction : transactions)
+            {
+                messages.addAll(transaction._messages);
+            }
+            if(messages.isEmpty())
+            {
+                return;
+            }
 
-        Connection conn = connWrapper.getConnection();
+            PreparedStatement metaDataStmt = conn.prepareStatement(INSERT_INTO_META_DATA);
+            try
+            {
+                PreparedStatement contentStmt = conn.prepareStatement(INSERT_INTO_MESSAGE_CONTENT);
+                try
+                {
+                    int metaDataCount = 0;
+                    int chunkCount = 0;
+                    for(StoredJDBCMessage message : messages)
+                    {
+                        int chunks = message.addToBatch(metaDataStmt, contentStmt);
+                        if(chunks >= 0)
+                        {
+                            metaDataCount++;
+                            chunkCount += chunks;
+                        }
+                    }
 
+                    if(metaDataCount != 0)
+                    {
+                        for(int result : metaDataStmt.executeBatch())
+                        {
+                            if(result == 0)
+                            {
+                                throw new StoreException("Unable to add meta data for message");
+                            }
+                        }
+                    }
+                    if(chunkCount != 0)
+                    {
+                        contentStmt.executeBatch();
+                    }
+                }
+                finally
+                {
+                    JdbcUtils.closePreparedStatement(contentStmt, getLogger());
+                }
+            }
+            finally
+            {
+                JdbcUtils.closePreparedStatement(metaDataStmt, getLogger());
+            }
+        }
 
-        try
+        private void deleteMessages(final Connection conn, final List<JDBCTransaction> transactions)
+                throws SQLException
         {
-            PreparedStatement stmt = conn.prepareStatement(DELETE_FROM_QUEUE_ENTRY);
-            try
+            List<Long> messageIds = new ArrayList<Long>();
+            for(JDBCTransaction transaction : transactions)
             {
-                stmt.setString(1, queue.getId().toString());
-                stmt.setLong(2, messageId);
-                int results = stmt.executeUpdate();
+                messageIds.addAll(transaction._removedMessages);
+            }
+            if(messageIds.isEmpty())
+            {
+                return;
+            }
 
+            PreparedStatement metaDataStmt = conn.prepareStatement(DELETE_FROM_META_DATA);
+            try
+            {
+                PreparedStatement contentStmt = conn.prepareStatement(DELETE_FROM_MESSAGE_CONTENT);
+                try
+                {
+                    for(Long messageId : messageIds)
+                    {
+                        metaDataStmt.setLong(1, messageId);
+                        metaDataStmt.addBatch();
+                        contentStmt.setLong(1, messageId);
+                        contentStmt.addBatch();
+                    }
 
+                    int[] results = metaDataStmt.executeBatch();
+                    for(int i = 0; i < results.length; i++)
+                    {
+                        if(results[i] == 0)
+                        {
+                            getLogger().warn("Message metadata not found for message id " + messageIds.get(i));
+                        }
+                    }
+                    contentStmt.executeBatch();
 
-                if(results != 1)
-                {
-                    throw new StoreException("Unable to find message with id " + messageId + " on queue " + queue.getName()
-                                             + " with id " + queue.getId());
+                    if (getLogger().isDebugEnabled())
+                    {
+                        getLogger().debug("Deleted " + messageIds.size() + " messages");
+                    }
                 }
-
-                if (getLogger().isDebugEnabled())
+                finally
                 {
-                    getLogger().debug("Dequeuing message " + messageId + " on queue " + queue.getName()
-                                      + " with id " + queue.getId());
+                    JdbcUtils.closePreparedStatement(contentStmt, getLogger());
                 }
             }
             finally
             {
-                stmt.close();
+                JdbcUtils.closePreparedStatement(metaDataStmt, getLogger());
             }
-
         }
-        catch (SQLException e)
+
+        private void insertQueueEntries(final Connection conn, final List<JDBCTransaction> transactions)
+                throws SQLException
         {
-            getLogger().error("Failed to dequeue: " + e.getMessage(), e);
-            throw new StoreException("Error deleting enqueued message with id " + messageId + " for queue " + queue.getName()
-                                     + " with id " + queue.getId() + " from database", e);
+            PreparedStatement stmt = null;
+            try
+            {
+                for(JDBCTransaction transaction : transactions)
+                {
+                    for(QueueEntry entry : transaction._enqueues)
+                    {
+                        if (getLogger().isDebugEnabled())
+                        {
+                            getLogger().debug("Enqueuing message " + entry._messageId + " on queue "
+                                              + entry._queue.getName() + " with id " + entry._queue.getId());
+                        }
+                        if(stmt == null)
+                        {
+                            stmt = conn.prepareStatement(INSERT_INTO_QUEUE_ENTRY);
+                        }
+                        stmt.setString(1, entry._queue.getId().toString());
+                        stmt.setLong(2, entry._messageId);
+                        stmt.addBatch();
+                    }
+                }
+                if(stmt != null)
+                {
+                    stmt.executeBatch();
+                }
+            }
+            finally
+            {
+                JdbcUtils.closePreparedStatement(stmt, getLogger());
+            }
         }
-
     }
 
-    private void removeXid(ConnectionWrapper connWrapper, long format, byte[] globalId, byte[] branchId)
+    private void removeXid(Connection conn, long format, byte[] globalId, byte[] branchId)
             throws StoreException
     {
-        Connection conn = connWrapper.getConnection();
-
 
         try
         {
@@ -722,11 +930,9 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
 
     }
 
-    private void recordXid(ConnectionWrapper connWrapper, long format, byte[] globalId, byte[] branchId,
+    private void recordXid(Connection conn, long format, byte[] globalId, byte[] branchId,
                            Transaction.Record[] enqueues, Transaction.Record[] dequeues) throws StoreException
     {
-        Connection conn = connWrapper.getConnection();
-
 
         try
         {
@@ -789,79 +995,7 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
 
     }
 
-    private static final class ConnectionWrapper
-    {
-        private final Connection _connection;
-
-        public ConnectionWrapper(Connection conn)
-        {
-            _connection = conn;
-        }
-
-        public Connection getConnection()
-        {
-            return _connection;
-        }
-    }
-
-
-    private void commitTran(ConnectionWrapper connWrapper) throws StoreException
-    {
-
-        try
-        {
-            Connection conn = connWrapper.getConnection();
-            conn.commit();
-
-            if (getLogger().isDebugEnabled())
-            {
-                getLogger().debug("commit tran completed");
-            }
-
-            conn.close();
-        }
-        catch (SQLException e)
-        {
-            throw new StoreException("Error commit tx: " + e.getMessage(), e);
-        }
-        finally
-        {
-
-        }
-    }
-
-    private StoreFuture commitTranAsync(ConnectionWrapper connWrapper) throws StoreException
-    {
-        commitTran(connWrapper);
-        return StoreFuture.IMMEDIATE_FUTURE;
-    }
-
-    private void abortTran(ConnectionWrapper connWrapper) throws StoreException
-    {
-        if (connWrapper == null)
-        {
-            throw new StoreException("Fatal internal error: transactional context is empty at abortTran");
-        }
-
-        if (getLogger().isDebugEnabled())
-        {
-            getLogger().debug("abort tran called: " + connWrapper.getConnection());
-        }
-
-        try
-        {
-            Connection conn = connWrapper.getConnection();
-            conn.rollback();
-            conn.close();
-        }
-        catch (SQLException e)
-        {
-            throw new StoreException("Error aborting transaction: " + e.getMessage(), e);
-        }
-
-    }
-
-    private void storeMetaData(Connection conn, long messageId, StorableMessageMetaData metaData)
+    private void addMetaDataToBatch(PreparedStatement stmt, long messageId, StorableMessageMetaData metaData)
             throws SQLException
     {
         if(getLogger().isDebugEnabled())
@@ -869,49 +1003,18 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
             getLogger().debug("Adding metadata for message " + messageId);
         }
 
-        PreparedStatement stmt = conn.prepareStatement(INSERT_INTO_META_DATA);
-        try
-        {
-            stmt.setLong(1,messageId);
-
-            final int bodySize = 1 + metaData.getStorableSize();
-            byte[] underlying = new byte[bodySize];
-            underlying[0] = (byte) metaData.getType().ordinal();
-            ByteBuffer buf = ByteBuffer.wrap(underlying);
-            buf.position(1);
-            buf = buf.slice();
+        stmt.setLong(1,messageId);
 
-            metaData.writeToBuffer(buf);
-            ByteArrayInputStream bis = new ByteArrayInputStream(underlying);
-            try
-            {
-                stmt.setBinaryStream(2,bis,underlying.length);
-                int result = stmt.executeUpdate();
-
-                if(result == 0)
-                {
-                    throw new StoreException("Unable to add meta data for message " +messageId);
-                }
-            }
-            finally
-            {
-                try
-                {
-                    bis.close();
-                }
-                catch (IOException e)
-                {
-
-                    throw new SQLException(e);
-                }
-            }
-
-        }
-        finally
-        {
-            stmt.close();
-        }
+        final int bodySize = 1 + metaData.getStorableSize();
+        byte[] underlying = new byte[bodySize];
+        underlying[0] = (byte) metaData.getType().ordinal();
+        ByteBuffer buf = ByteBuffer.wrap(underlying);
+        buf.position(1);
+        buf = buf.slice();
 
+        metaData.writeToBuffer(buf);
+        stmt.setBinaryStream(2, new ByteArrayInputStream(underlying), underlying.length);
+        stmt.addBatch();
     }
 
 
@@ -1024,40 +1127,44 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
 
     protected abstract byte[] getBlobAsBytes(ResultSet rs, int col) throws SQLException;
 
-    private void addContent(Connection conn, long messageId, ByteBuffer src)
+    private void insertContent(Connection conn, long messageId, ChunkedContent content) throws SQLException
     {
-        if(getLogger().isDebugEnabled())
-        {
-            getLogger().debug("Adding content for message " + messageId);
-        }
-        PreparedStatement stmt = null;
-
+        PreparedStatement stmt = conn.prepareStatement(INSERT_INTO_MESSAGE_CONTENT);
         try
         {
-            src = src.slice();
-
-            byte[] chunkData = new byte[src.limit()];
-            src.duplicate().get(chunkData);
-
-            stmt = conn.prepareStatement(INSERT_INTO_MESSAGE_CONTENT);
-            stmt.setLong(1,messageId);
-
-            ByteArrayInputStream bis = new ByteArrayInputStream(chunkData);
-            stmt.setBinaryStream(2, bis, chunkData.length);
-            stmt.executeUpdate();
-        }
-        catch (SQLException e)
-        {
-            JdbcUtils.closeConnection(conn, getLogger());
-            throw new StoreException("Error adding content for message " + messageId + ": " + e.getMessage(), e);
+            addContentToBatch(stmt, messageId, content);
+            if(content.getChunkCount() != 0)
+            {
+                stmt.executeBatch();
+            }
         }
         finally
         {
             JdbcUtils.closePreparedStatement(stmt, getLogger());
         }
+    }
+
+    private void addContentToBatch(PreparedStatement stmt, long messageId, ChunkedContent content) throws SQLException
+    {
+        if(getLogger().isDebugEnabled())
+        {
+            getLogger().debug("Adding content for message " + messageId);
+        }
 
+        for(int i = 0; i < content.getChunkCount(); i++)
+        {
+            ByteBuffer chunk = content.getChunk(i);
+            stmt.setLong(1, messageId);
+            stmt.setInt(2, i);
+            stmt.setBinaryStream(3, new ByteArrayInputStream(chunk.array(), chunk.arrayOffset() + chunk.position(),
+                                                             chunk.remaining()), chunk.remaining());
+            stmt.addBatch();
+        }
     }
 
+    /**
+     * Reads content starting at the given offset, selecting only the chunks from the one holding the offset onwards.
+     */
     private int getContent(long messageId, int offset, ByteBuffer dst)
     {
         Connection conn = null;
@@ -1069,30 +1176,35 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
 
             stmt = conn.prepareStatement(SELECT_FROM_MESSAGE_CONTENT);
             stmt.setLong(1,messageId);
+            stmt.setInt(2, ChunkedContent.getChunkIndex(offset));
             ResultSet rs = stmt.executeQuery();
 
             int written = 0;
-
-            if (rs.next())
+            try
             {
-
-                byte[] dataAsBytes = getBlobAsBytes(rs, 1);
-                int size = dataAsBytes.length;
-
-                if (offset > size)
+                int offsetInChunk = ChunkedContent.getOffsetInChunk(offset);
+                while (dst.hasRemaining() && rs.next())
                 {
-                    throw new StoreException("Offset " + offset + " is greater than message size " + size
-                                             + " for message id " + messageId + "!");
+                    int chunkIndex = rs.getInt(1);
+                    byte[] dataAsBytes = getBlobAsBytes(rs, 2);
+                    int size = dataAsBytes.length;
 
-                }
+                    if (offsetInChunk > size)
+                    {
+                        throw new StoreException("Offset " + offset + " is greater than message size "
+                                                 + (chunkIndex * ChunkedContent.CHUNK_SIZE + size)
+                                                 + " for message id " + messageId + "!");
+                    }
 
-                written = size - offset;
-                if(written > dst.remaining())
-                {
-                    written = dst.remaining();
+                    int length = Math.min(size - offsetInChunk, dst.remaining());
+                    dst.put(dataAsBytes, offsetInChunk, length);
+                    written += length;
+                    offsetInChunk = 0;
                 }
-
-                dst.put(dataAsBytes, offset, written);
+            }
+            finally
+            {
+                rs.close();
             }
 
             return written;
@@ -1118,22 +1230,23 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
     }
 
 
+    /**
+     * Records the changes made by a transaction, which are written to the database by the commit thread when the
+     * transaction is committed.  No connection is held while the transaction is open.
+     */
     protected class JDBCTransaction implements Transaction
     {
-        private final ConnectionWrapper _connWrapper;
+        private final List<StoredJDBCMessage> _messages = new ArrayList<StoredJDBCMessage>();
+        private final List<QueueEntry> _enqueues = new ArrayList<QueueEntry>();
+        private final List<QueueEntry> _dequeues = new ArrayList<QueueEntry>();
+        private final List<XidRecord> _xidRecords = new ArrayList<XidRecord>(0);
+        private final List<Long> _removedMessages = new ArrayList<Long>(0);
         private int _storeSizeIncrease;
+        private volatile StoreFuture _future;
 
 
         protected JDBCTransaction()
         {
-            try
-            {
-                _connWrapper = new ConnectionWrapper(newConnection());
-            }
-            catch (SQLException e)
-            {
-                throw new StoreException(e);
-            }
         }
 
         @Override
@@ -1144,18 +1257,12 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
             final StoredMessage storedMessage = message.getStoredMessage();
             if(storedMessage instanceof StoredJDBCMessage)
             {
-                try
-                {
-                    ((StoredJDBCMessage) storedMessage).store(_connWrapper.getConnection());
-                }
-                catch (SQLException e)
-                {
-                    throw new StoreException("Exception on enqueuing message into message store" + _messageId, e);
-                }
+                StoredJDBCMessage jdbcMessage = (StoredJDBCMessage) storedMessage;
+                _messages.add(jdbcMessage);
+                jdbcMessage.storingTransaction(this);
             }
             _storeSizeIncrease += storedMessage.getMetaData().getContentSize();
-            AbstractJDBCMessageStore.this.enqueueMessage(_connWrapper, queue, message.getMessageNumber());
-
+            _enqueues.add(new QueueEntry(queue, message.getMessageNumber()));
         }
 
         @Override
@@ -1163,7 +1270,7 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
         {
             checkMessageStoreOpen();
 
-            AbstractJDBCMessageStore.this.dequeueMessage(_connWrapper, queue, message.getMessageNumber());
+            _dequeues.add(new QueueEntry(queue, message.getMessageNumber()));
         }
 
         @Override
@@ -1171,7 +1278,8 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
         {
             checkMessageStoreOpen();
 
-            AbstractJDBCMessageStore.this.commitTran(_connWrapper);
+            _future = commit(this);
+            _future.waitForCompletion();
             storedSizeChange(_storeSizeIncrease);
         }
 
@@ -1180,7 +1288,8 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
         {
             checkMessageStoreOpen();
 
-            StoreFuture storeFuture = AbstractJDBCMessageStore.this.commitTranAsync(_connWrapper);
+            StoreFuture storeFuture = commit(this);
+            _future = storeFuture;
             storedSizeChange(_storeSizeIncrease);
             return storeFuture;
         }
@@ -1190,7 +1299,18 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
         {
             checkMessageStoreOpen();
 
-            AbstractJDBCMessageStore.this.abortTran(_connWrapper);
+            if (getLogger().isDebugEnabled())
+            {
+                getLogger().debug("abort tran called");
+            }
+            for(StoredJDBCMessage message : _messages)
+            {
+                message.transactionAborted(this);
+            }
+            _messages.clear();
+            _enqueues.clear();
+            _dequeues.clear();
+            _xidRecords.clear();
         }
 
         @Override
@@ -1198,7 +1318,7 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
         {
             checkMessageStoreOpen();
 
-            AbstractJDBCMessageStore.this.removeXid(_connWrapper, format, globalId, branchId);
+            _xidRecords.add(new XidRecord(format, globalId, branchId, null, null, true));
         }
 
         @Override
@@ -1206,20 +1326,65 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
         {
             checkMessageStoreOpen();
 
-            AbstractJDBCMessageStore.this.recordXid(_connWrapper, format, globalId, branchId, enqueues, dequeues);
+            _xidRecords.add(new XidRecord(format, globalId, branchId, enqueues, dequeues, false));
+        }
+    }
+
+    private static final class QueueEntry
+    {
+        private final TransactionLogResource _queue;
+        private final long _messageId;
+
+        private QueueEntry(final TransactionLogResource queue, final long messageId)
+        {
+            _queue = queue;
+            _messageId = messageId;
         }
     }
 
-    private class StoredJDBCMessage implements StoredMessage
+    private static final class XidRecord
+    {
+        private final long _format;
+        private final byte[] _globalId;
+        private final byte[] _branchId;
+        private final Transaction.Record[] _enqueues;
+        private final Transaction.Record[] _dequeues;
+        private final boolean _remove;
+
+        private XidRecord(final long format, final byte[] globalId, final byte[] branchId,
+                          final Transaction.Record[] enqueues, final Transaction.Record[] dequeues,
+                          final boolean remove)
+        {
+            _format = format;
+            _globalId = globalId;
+            _branchId = branchId;
+            _enqueues = enqueues;
+            _dequeues = dequeues;
+            _remove = remove;
+        }
+    }
+
+    private class StoredJDBCMessage implements StoredMessage, FlowToDiskManager.FlowableMessage
     {
 
         private final long _messageId;
         private final boolean _isRecovered;
+        private final FlowToDiskManager _flowToDiskManager = AbstractJDBCMessageStore.this._flowToDiskManager;
 
         private StorableMessageMetaData _metaData;
         private volatile SoftReference<StorableMessageMetaData> _metaDataRef;
-        private byte[] _data;
-        private volatile SoftReference<byte[]> _dataRef;
+        private ChunkedContent _data;
+        private volatile SoftReference<ChunkedContent> _dataRef;
+
+        // when flowing to disk, stored content is held here until the flow to disk manager releases it
+        private volatile ChunkedContent _heldData;
+
+        private boolean _storing;
+        private boolean _removed;
+        private boolean _registered;
+
+        // the last transaction to enqueue the message, which stores the message when it is committed
+        private JDBCTransaction _storingTransaction;
 
 
         StoredJDBCMessage(long messageId, StorableMessageMetaData metaData)
@@ -1271,47 +1436,72 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
         @Override
         public void addContent(int offsetInMessage, ByteBuffer src)
         {
-            src = src.slice();
-
             if(_data == null)
             {
-                _data = new byte[src.remaining()];
-                _dataRef = new SoftReference<byte[]>(_data);
-                src.duplicate().get(_data);
+                _data = new ChunkedContent(getMetaData().getContentSize());
+                _dataRef = new SoftReference<ChunkedContent>(_data);
             }
-            else
-            {
-                byte[] oldData = _data;
-                _data = new byte[oldData.length + src.remaining()];
-                _dataRef = new SoftReference<byte[]>(_data);
+            _data.append(src.slice());
 
-                System.arraycopy(oldData,0,_data,0,oldData.length);
-                src.duplicate().get(_data, oldData.length, src.remaining());
+            if(_flowToDiskManager.isEnabled() && registerCompleteContent())
+            {
+                // registered before it is stored, as a message which is only enqueued on non-durable queues never is
+                _flowToDiskManager.contentInMemory(this, _data.getLength());
             }
+        }
 
+        private synchronized boolean registerCompleteContent()
+        {
+            if(_registered || stored() || _data.getLength() < getMetaData().getContentSize())
+            {
+                return false;
+            }
+            _registered = true;
+            return true;
         }
 
         @Override
         public int getContent(int offsetInMessage, ByteBuffer dst)
         {
-            byte[] data = _dataRef == null ? null : _dataRef.get();
+            ChunkedContent data = getDataInMemory();
             if(data != null)
             {
-                int length = Math.min(dst.remaining(), data.length - offsetInMessage);
-                dst.put(data, offsetInMessage, length);
-                return length;
+                return data.read(offsetInMessage, dst);
             }
             else
             {
                 checkMessageStoreOpen();
+                if(_flowToDiskManager.isEnabled())
+                {
+                    final long startTime = System.nanoTime();
+                    int length = AbstractJDBCMessageStore.this.getContent(_messageId, offsetInMessage, dst);
+                    _flowToDiskManager.contentReloaded(startTime);
+                    return length;
+                }
                 return AbstractJDBCMessageStore.this.getContent(_messageId, offsetInMessage, dst);
             }
         }
 
+        private ChunkedContent getDataInMemory()
+        {
+            ChunkedContent data = _heldData;
+            if(data == null)
+            {
+                data = _dataRef == null ? null : _dataRef.get();
+            }
+            return data;
+        }
+
 
         @Override
         public ByteBuffer getContent(int offsetInMessage, int size)
         {
+            ChunkedContent data = getDataInMemory();
+            if(data != null)
+            {
+                return data.read(offsetInMessage, size);
+            }
+
             ByteBuffer buf = ByteBuffer.allocate(size);
             int length = getContent(offsetInMessage, buf);
             buf.position(0);
@@ -1320,36 +1510,43 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
         }
 
         @Override
-        public synchronized StoreFuture flushToStore()
+        public StoreFuture flushToStore()
         {
             checkMessageStoreOpen();
 
-            Connection conn = null;
-            try
+            synchronized (this)
             {
-                if(!stored())
+                if(stored())
                 {
-                    conn = newConnection();
-
-                    store(conn);
-
-                    conn.commit();
-                    storedSizeChange(getMetaData().getContentSize());
+                    return StoreFuture.IMMEDIATE_FUTURE;
                 }
-            }
-            catch (SQLException e)
-            {
-                if(getLogger().isDebugEnabled())
+                if(_storingTransaction != null)
                 {
-                    getLogger().debug("Error when trying to flush message " + _messageId + " to store: " + e);
+                    // the message is stored, and its size counted, by the transaction which enqueued it, so there
+                    // is no need for a commit of its own
+                    StoreFuture future = _storingTransaction._future;
+                    return future == null ? StoreFuture.IMMEDIATE_FUTURE : future;
                 }
-                throw new StoreException(e);
             }
-            finally
+
+            JDBCTransaction transaction = new JDBCTransaction();
+            transaction._messages.add(this);
+            commit(transaction).waitForCompletion();
+            storedSizeChange(getMetaData().getContentSize());
+            return StoreFuture.IMMEDIATE_FUTURE;
+        }
+
+        private synchronized void storingTransaction(final JDBCTransaction transaction)
+        {
+            _storingTransaction = transaction;
+        }
+
+        private synchronized void transactionAborted(final JDBCTransaction transaction)
+        {
+            if(_storingTransaction == transaction)
             {
-                JdbcUtils.closeConnection(conn, AbstractJDBCMessageStore.this.getLogger());
+                _storingTransaction = null;
             }
-            return StoreFuture.IMMEDIATE_FUTURE;
         }
 
         @Override
@@ -1357,35 +1554,114 @@ public abstract class AbstractJDBCMessageStore implements MessageStore
         {
             checkMessageStoreOpen();
 
+            _flowToDiskManager.contentReleased(this);
+            _heldData = null;
+
             int delta = getMetaData().getContentSize();
-            AbstractJDBCMessageStore.this.removeMessage(_messageId);
+            if(markRemoved())
+            {
+                // committed after any transaction which is still storing the message, so that nothing is left behind
+                JDBCTransaction transaction = new JDBCTransaction();
+                transaction._removedMessages.add(_messageId);
+                commit(transaction).waitForCompletion();
+            }
             storedSizeChange(-delta);
         }
 
-        private synchronized void store(final Connection conn) throws SQLException
+        /**
+         * Marks the message as removed, so that it is not stored by any transaction which has yet to be written.
+         *
+         * @return true if the message has been, or is being, written to the database, and so has to be deleted
+         */
+        private synchronized boolean markRemoved()
         {
-            if (!stored())
+            _removed = true;
+            return _storing || stored();
+        }
+
+        @Override
+        public void flowToDisk()
+        {
+            if(!isStoredOrRemoved())
             {
-                try
+                flushToStore().waitForCompletion();
+            }
+
+            synchronized (this)
+            {
+                if(stored())
                 {
-                    storeMetaData(conn, _messageId, _metaData);
-                    AbstractJDBCMessageStore.this.addContent(conn, _messageId,
-                                                                   _data == null ? ByteBuffer.allocate(0) : ByteBuffer.wrap(_data));
+                    _heldData = null;
                 }
-                finally
+                else
+                {
+                    // still waiting for the transaction which enqueued it, the content is registered again on commit
+                    _registered = false;
+                }
+            }
+        }
+
+        private synchronized boolean isStoredOrRemoved()
+        {
+            return stored() || _removed;
+        }
+
+        /**
+         * Adds the meta data and content of this message to the given batches, unless it has already been stored or
+         * has been removed.
+         *
+         * @return the number of content chunks added, or -1 if the message has already been stored or removed
+         */
+        private synchronized int addToBatch(final PreparedStatement metaDataStmt,
+                                            final PreparedStatement contentStmt) throws SQLException
+        {
+            if(stored() || _removed)
+            {
+                return -1;
+            }
+
+            _storing = true;
+
+            addMetaDataToBatch(metaDataStmt, _messageId, _metaData);
+            if(_data == null)
+            {
+                return 0;
+            }
+            addContentToBatch(contentStmt, _messageId, _data);
+            return _data.getChunkCount();
+        }
+
+        /**
+         * Called once the transaction which stored the message has been committed.
+         */
+        private synchronized void storeCommitted()
+        {
+            if (!stored())
+            {
+                if(_flowToDiskManager.isEnabled() && _data != null && !_removed)
                 {
-                    _metaData = null;
-                    _data = null;
+                    // hold the content until it is explicitly flowed to disk, rather than leaving it to the GC
+                    _heldData = _data;
+                    _dataRef = null;
+                    if(!_registered)
+                    {
+                        // called on the commit thread, which cannot wait for other messages to be stored
+                        _registered = true;
+                        _flowToDiskManager.contentInMemoryDeferringRelease(this, _data.getLength());
+                    }
                 }
+                _metaData = null;
+                _data = null;
+                _storingTransaction = null;
 
                 if(getLogger().isDebugEnabled())
                 {
-                    getLogger().debug("Storing message " + _messageId + " to store");
+                    getLogger().debug("Stored message " + _messageId + " to store");
                 }
             }
         }
 
-        private boolean stored()
+        private synchronized boolean stored()
         {
             return _metaData == null || _isRecovered;
         }
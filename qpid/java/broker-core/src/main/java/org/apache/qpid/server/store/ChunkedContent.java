@@ -0,0 +1,187 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Message content held as a sequence of fixed size chunks, as it is laid out by the persistent message stores.
+ *
+ * Every chunk except the last holds exactly {@link #CHUNK_SIZE} bytes, so the chunk holding any offset in the
+ * content can be found without reading the chunks before it.  Appending content copies each byte once: new chunks
+ * are allocated as the content grows, rather than the whole content being copied into a larger array.
+ *
+ * Content is appended by a single thread before the message is made visible to others; once complete it may be
+ * read concurrently.
+ */
+public final class ChunkedContent
+{
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    private final List<byte[]> _chunks = new ArrayList<>();
+    private final int _expectedLength;
+    private int _length;
+
+    public ChunkedContent()
+    {
+        this(0);
+    }
+
+    /**
+     * @param expectedLength the length the content is expected to have once complete, used to size the chunks of
+     *                       content smaller than a single chunk
+     */
+    public ChunkedContent(int expectedLength)
+    {
+        _expectedLength = expectedLength;
+    }
+
+    public static int getChunkIndex(int offset)
+    {
+        return offset / CHUNK_SIZE;
+    }
+
+    public static int getOffsetInChunk(int offset)
+    {
+        return offset % CHUNK_SIZE;
+    }
+
+    /**
+     * Copies the remaining bytes of the buffer onto the end of the content, without changing its position.
+     */
+    public void append(ByteBuffer src)
+    {
+        src = src.duplicate();
+        while(src.hasRemaining())
+        {
+            int offsetInChunk = getOffsetInChunk(_length);
+            byte[] chunk;
+            if(offsetInChunk == 0)
+            {
+                chunk = new byte[Math.min(CHUNK_SIZE, Math.max(src.remaining(), _expectedLength - _length))];
+                _chunks.add(chunk);
+            }
+            else
+            {
+                chunk = _chunks.get(_chunks.size() - 1);
+                if(chunk.length == offsetInChunk)
+                {
+                    // the content has grown beyond its expected length, so the last chunk must be enlarged
+                    byte[] enlarged = new byte[Math.min(CHUNK_SIZE, Math.max(offsetInChunk + src.remaining(),
+                                                                             2 * offsetInChunk))];
+                    System.arraycopy(chunk, 0, enlarged, 0, offsetInChunk);
+                    chunk = enlarged;
+                    _chunks.set(_chunks.size() - 1, chunk);
+                }
+            }
+            int length = Math.min(src.remaining(), chunk.length - offsetInChunk);
+            src.get(chunk, offsetInChunk, length);
+            _length += length;
+        }
+    }
+
+    /**
+     * Adds a complete chunk, as read back from a store, onto the end of the content.  The array is not copied.
+     */
+    public void addChunk(byte[] chunk)
+    {
+        if(getOffsetInChunk(_length) != 0)
+        {
+            throw new IllegalStateException("Cannot add a chunk after a partial chunk");
+        }
+        if(chunk.length > CHUNK_SIZE)
+        {
+            throw new IllegalArgumentException("Chunk of " + chunk.length + " bytes exceeds the chunk size " + CHUNK_SIZE);
+        }
+        _chunks.add(chunk);
+        _length += chunk.length;
+    }
+
+    public int getLength()
+    {
+        return _length;
+    }
+
+    public int getChunkCount()
+    {
+        return _chunks.size();
+    }
+
+    /**
+     * Returns a buffer over the bytes of the given chunk.  The buffer shares the content, so must not be modified.
+     */
+    public ByteBuffer getChunk(int index)
+    {
+        return ByteBuffer.wrap(_chunks.get(index), 0, getChunkLength(index));
+    }
+
+    private int getChunkLength(int index)
+    {
+        return Math.min(CHUNK_SIZE, _length - index * CHUNK_SIZE);
+    }
+
+    /**
+     * Copies content, starting at the given offset, into the destination buffer.
+     *
+     * @return the number of bytes copied
+     */
+    public int read(int offset, ByteBuffer dst)
+    {
+        if(offset > _length)
+        {
+            throw new IllegalArgumentException("Offset " + offset + " is greater than content length " + _length);
+        }
+        int written = 0;
+        int index = getChunkIndex(offset);
+        int offsetInChunk = getOffsetInChunk(offset);
+        while(dst.hasRemaining() && index < _chunks.size())
+        {
+            int length = Math.min(dst.remaining(), getChunkLength(index) - offsetInChunk);
+            dst.put(_chunks.get(index), offsetInChunk, length);
+            written += length;
+            index++;
+            offsetInChunk = 0;
+        }
+        return written;
+    }
+
+    /**
+     * Returns up to size bytes of content starting at the given offset.  A range lying within a single chunk is
+     * returned as a view of the chunk rather than being copied.
+     */
+    public ByteBuffer read(int offset, int size)
+    {
+        int length = Math.max(0, Math.min(size, _length - offset));
+        int index = getChunkIndex(offset);
+        int offsetInChunk = getOffsetInChunk(offset);
+        if(length > 0 && offsetInChunk + length <= CHUNK_SIZE)
+        {
+            return ByteBuffer.wrap(_chunks.get(index), offsetInChunk, length).slice();
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        read(offset, buf);
+        buf.flip();
+        return buf;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import org.apache.qpid.server.model.ConfiguredObject;
+import org.apache.qpid.server.virtualhost.VirtualHostImpl;
+
+/**
+ * Keeps the message content held in memory by the message store of a virtual host within a byte budget.
+ *
+ * Stored messages register their content once it is complete.  When the total registered content exceeds the
+ * budget, the content of the most recently registered messages (those furthest from the head of their queues) is
+ * released: persistent messages write their content to the store if it is not already there and drop their copy,
+ * while transient messages first spool their content to an overflow file.  Released content is read back from disk
+ * whenever it is needed, and is not registered with the manager again.
+ *
+ * A threshold of zero or less disables flow to disk.  The threshold may be changed while messages are held; content
+ * completed while flow to disk was disabled is not registered, and so is never released.
+ */
+public class FlowToDiskManager
+{
+    private static final Logger _logger = Logger.getLogger(FlowToDiskManager.class);
+
+    public static final FlowToDiskManager DISABLED = new FlowToDiskManager(0l, null);
+
+    /**
+     * A stored message whose content can be released from memory.
+     */
+    public interface FlowableMessage
+    {
+        long getMessageNumber();
+
+        /**
+         * Releases the in memory copy of the content, writing it to disk first if the store does not hold it.
+         * Does nothing if the message has already been removed.
+         */
+        void flowToDisk();
+    }
+
+    private volatile long _threshold;
+    private final File _overflowDirectory;
+
+    private final ConcurrentSkipListMap<Long, Registration> _inMemory = new ConcurrentSkipListMap<Long, Registration>();
+    private final AtomicLong _inMemoryBytes = new AtomicLong();
+    private final AtomicBoolean _evicting = new AtomicBoolean();
+
+    private final AtomicLong _evictedBytes = new AtomicLong();
+    private final AtomicLong _evictedMessages = new AtomicLong();
+    private final AtomicLong _reloadCount = new AtomicLong();
+    private final AtomicLong _reloadNanos = new AtomicLong();
+
+    private OverflowFileSpool _spool;
+
+    public FlowToDiskManager(final long threshold, final File overflowDirectory)
+    {
+        _threshold = threshold;
+        _overflowDirectory = overflowDirectory;
+    }
+
+    /**
+     * Returns the manager of the virtual host which opened a message store, or {@link #DISABLED} if the parent is
+     * not a virtual host.
+     */
+    public static FlowToDiskManager getFlowToDiskManager(final ConfiguredObject<?> parent)
+    {
+        if(parent instanceof VirtualHostImpl)
+        {
+            FlowToDiskManager manager = ((VirtualHostImpl<?, ?, ?>) parent).getFlowToDiskManager();
+            if(manager != null)
+            {
+                return manager;
+            }
+        }
+        return DISABLED;
+    }
+
+    public boolean isEnabled()
+    {
+        return _threshold > 0l;
+    }
+
+    public long getThreshold()
+    {
+        return _threshold;
+    }
+
+    /**
+     * Changes the budget, releasing registered content at once if it exceeds the new threshold.
+     */
+    public void setThreshold(final long threshold)
+    {
+        _threshold = threshold;
+        if(isEnabled() && _inMemoryBytes.get() > threshold)
+        {
+            evict();
+        }
+    }
+
+    /**
+     * Registers the complete content of a message as held in memory, releasing the content of other messages if
+     * the budget is exceeded as a result.
+     */
+    public void contentInMemory(final FlowableMessage message, final long size)
+    {
+        if(register(message, size))
+        {
+            evict();
+        }
+    }
+
+    /**
+     * Registers the complete content of a message as {@link #contentInMemory} does, but leaves releasing content to
+     * the next registration or change of threshold.  For callers, such as the commit thread of a store, which must
+     * not wait for content to be written.
+     */
+    public void contentInMemoryDeferringRelease(final FlowableMessage message, final long size)
+    {
+        register(message, size);
+    }
+
+    /**
+     * @return true if the budget is exceeded once the content is registered
+     */
+    private boolean register(final FlowableMessage message, final long size)
+    {
+        return isEnabled()
+               && _inMemory.putIfAbsent(message.getMessageNumber(), new Registration(message, size)) == null
+               && _inMemoryBytes.addAndGet(size) > _threshold;
+    }
+
+    /**
+     * Called when a message is removed, or its content is otherwise no longer held in memory.
+     */
+    public void contentReleased(final FlowableMessage message)
+    {
+        Registration registration = _inMemory.remove(message.getMessageNumber());
+        if(registration != null)
+        {
+            _inMemoryBytes.addAndGet(-registration._size);
+        }
+    }
+
+    public void contentReloaded(final long startTime)
+    {
+        _reloadCount.incrementAndGet();
+        _reloadNanos.addAndGet(System.nanoTime() - startTime);
+    }
+
+    private void evict()
+    {
+        // only one thread evicts at a time, the others carry on as if the budget had been met
+        if(_evicting.compareAndSet(false, true))
+        {
+            try
+            {
+                while(isEnabled() && _inMemoryBytes.get() > _threshold)
+                {
+                    Map.Entry<Long, Registration> entry = _inMemory.pollLastEntry();
+                    if(entry == null)
+                    {
+                        break;
+                    }
+                    Registration registration = entry.getValue();
+                    _inMemoryBytes.addAndGet(-registration._size);
+                    try
+                    {
+                        registration._message.flowToDisk();
+                        _evictedBytes.addAndGet(registration._size);
+                        _evictedMessages.incrementAndGet();
+                    }
+                    catch(StoreException e)
+                    {
+                        _logger.warn("Unable to flow content of message " + entry.getKey() + " to disk", e);
+                    }
+                }
+            }
+            finally
+            {
+                _evicting.set(false);
+            }
+        }
+    }
+
+    synchronized OverflowFileSpool getSpool()
+    {
+        if(_spool == null)
+        {
+            _spool = new OverflowFileSpool(_overflowDirectory);
+        }
+        return _spool;
+    }
+
+    public long getInMemoryBytes()
+    {
+        return _inMemoryBytes.get();
+    }
+
+    public long getEvictedBytes()
+    {
+        return _evictedBytes.get();
+    }
+
+    public long getEvictedMessages()
+    {
+        return _evictedMessages.get();
+    }
+
+    public long getReloadCount()
+    {
+        return _reloadCount.get();
+    }
+
+    /**
+     * @return the average time taken to read released content back from disk, in microseconds
+     */
+    public long getAverageReloadLatency()
+    {
+        long count = _reloadCount.get();
+        return count == 0l ? 0l : TimeUnit.NANOSECONDS.toMicros(_reloadNanos.get() / count);
+    }
+
+    /**
+     * Forgets all registered content and deletes the overflow files.  Called once the message store has been closed.
+     */
+    public synchronized void close()
+    {
+        _inMemory.clear();
+        _inMemoryBytes.set(0l);
+        if(_spool != null)
+        {
+            _spool.close();
+            _spool = null;
+        }
+    }
+
+    private static final class Registration
+    {
+        private final FlowableMessage _message;
+        private final long _size;
+
+        private Registration(final FlowableMessage message, final long size)
+        {
+            _message = message;
+            _size = size;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Commits the transactions of a JDBC message store on a single thread, writing all of the transactions which are
+ * waiting when the thread becomes free in one database transaction (group commit).
+ *
+ * The work of the waiting transactions is written in batched statements by a {@link Writer}.  If the combined
+ * transaction fails, each of the transactions is retried on its own, so that only those which fail by themselves
+ * are reported as failed.  Transactions are written in the order in which they are committed.
+ *
+ * @param <J> the type describing the work of one transaction
+ */
+class JDBCCommitter<J>
+{
+    private static final Logger _logger = Logger.getLogger(JDBCCommitter.class);
+
+    /** The largest number of transactions written in one database transaction */
+    static final int MAX_BATCH_SIZE = Integer.getInteger("qpid.jdbc.commit.maxBatchSize", 256);
+
+    interface Writer<J>
+    {
+        Connection newConnection() throws SQLException;
+
+        /**
+         * Writes the work of the given transactions using the given connection, without committing.  Must not change
+         * any state other than that of the database, as the database transaction may yet be rolled back.
+         */
+        void write(Connection connection, List<J> jobs) throws SQLException;
+
+        /**
+         * Called once the database transaction which wrote the given transactions has been committed.
+         */
+        void committed(List<J> jobs);
+    }
+
+    private final Writer<J> _writer;
+    private final Thread _thread;
+    private final Object _lock = new Object();
+    private final List<JDBCCommitFuture<J>> _jobs = new ArrayList<>();
+    private boolean _stopped;
+
+    JDBCCommitter(final String name, final Writer<J> writer)
+    {
+        _writer = writer;
+        _thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                processJobs();
+            }
+        }, "JDBC-Commit-Thread-" + name);
+        _thread.setDaemon(true);
+    }
+
+    void start()
+    {
+        _thread.start();
+    }
+
+    /**
+     * Stops the commit thread once it has written the transactions already committed.
+     */
+    void stop()
+    {
+        synchronized (_lock)
+        {
+            _stopped = true;
+            _lock.notifyAll();
+        }
+        try
+        {
+            _thread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new StoreException("Interrupted waiting for the commit thread to stop", e);
+        }
+    }
+
+    StoreFuture commit(final J job)
+    {
+        JDBCCommitFuture<J> future = new JDBCCommitFuture<>(job);
+        synchronized (_lock)
+        {
+            if(_stopped)
+            {
+                throw new StoreException("Unable to commit transaction as the commit thread has been stopped");
+            }
+            _jobs.add(future);
+            if(_jobs.size() == 1)
+            {
+                _lock.notifyAll();
+            }
+        }
+        return future;
+    }
+
+    private void processJobs()
+    {
+        final List<JDBCCommitFuture<J>> batch = new ArrayList<>();
+        while(true)
+        {
+            synchronized (_lock)
+            {
+                while(_jobs.isEmpty() && !_stopped)
+                {
+                    try
+                    {
+                        _lock.wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // only stop() ends the thread, so that no committed transaction is left unwritten
+                    }
+                }
+                if(_jobs.isEmpty())
+                {
+                    return;
+                }
+                List<JDBCCommitFuture<J>> waiting = _jobs.subList(0, Math.min(_jobs.size(), MAX_BATCH_SIZE));
+                batch.addAll(waiting);
+                waiting.clear();
+            }
+
+            try
+            {
+                if(!write(batch, batch.size() == 1))
+                {
+                    for(JDBCCommitFuture<J> future : batch)
+                    {
+                        write(Collections.singletonList(future), true);
+                    }
+                }
+            }
+            finally
+            {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes the given transactions in one database transaction, completing their futures if it commits.  If it
+     * fails, the futures are aborted when <code>abortOnFailure</code> is set, and otherwise left incomplete.
+     *
+     * @return true if the futures have been completed or aborted
+     */
+    private boolean write(final List<JDBCCommitFuture<J>> futures, final boolean abortOnFailure)
+    {
+        List<J> jobs = new ArrayList<>(futures.size());
+        for(JDBCCommitFuture<J> future : futures)
+        {
+            jobs.add(future.getJob());
+        }
+
+        Connection connection = null;
+        try
+        {
+            connection = _writer.newConnection();
+            _writer.write(connection, jobs);
+            connection.commit();
+        }
+        catch (SQLException | RuntimeException e)
+        {
+            rollback(connection);
+            if(!abortOnFailure)
+            {
+                if(_logger.isDebugEnabled())
+                {
+                    _logger.debug("Failed to commit " + jobs.size() + " transactions together, retrying separately", e);
+                }
+                return false;
+            }
+
+            StoreException storeException = e instanceof StoreException
+                    ? (StoreException) e
+                    : new StoreException("Error commit tx: " + e.getMessage(), e);
+            for(JDBCCommitFuture<J> future : futures)
+            {
+                future.abort(storeException);
+            }
+            return true;
+        }
+        finally
+        {
+            JdbcUtils.closeConnection(connection, _logger);
+        }
+
+        if(_logger.isDebugEnabled())
+        {
+            _logger.debug("commit of " + jobs.size() + " transactions completed");
+        }
+
+        try
+        {
+            _writer.committed(jobs);
+        }
+        catch (RuntimeException e)
+        {
+            _logger.error("Unexpected exception completing the commit of " + jobs.size() + " transactions", e);
+        }
+
+        for(JDBCCommitFuture<J> future : futures)
+        {
+            future.complete();
+        }
+        return true;
+    }
+
+    private void rollback(final Connection connection)
+    {
+        if(connection != null)
+        {
+            try
+            {
+                connection.rollback();
+            }
+            catch (SQLException e)
+            {
+                _logger.warn("Failed to roll back transaction", e);
+            }
+        }
+    }
+
+    private static final class JDBCCommitFuture<J> implements StoreFuture
+    {
+        private final J _job;
+        private boolean _complete;
+        private StoreException _exception;
+
+        private JDBCCommitFuture(final J job)
+        {
+            _job = job;
+        }
+
+        J getJob()
+        {
+            return _job;
+        }
+
+        synchronized void complete()
+        {
+            _complete = true;
+            notifyAll();
+        }
+
+        synchronized void abort(final StoreException exception)
+        {
+            _exception = exception;
+            _complete = true;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized boolean isComplete()
+        {
+            return _complete;
+        }
+
+        /**
+         * @throws StoreException if the transaction could not be committed
+         */
+        @Override
+        public synchronized void waitForCompletion()
+        {
+            boolean interrupted = false;
+            while(!_complete)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+            if(interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+            if(_exception != null)
+            {
+                throw _exception;
+            }
+        }
+    }
+}
@@ -20,13 +20,18 @@
  */
 package org.apache.qpid.server.store;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -35,7 +40,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
+import org.apache.log4j.Logger;
 import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.JsonParseException;
 import org.codehaus.jackson.JsonProcessingException;
@@ -52,12 +61,32 @@ import org.apache.qpid.server.model.ConfiguredObject;
 import org.apache.qpid.server.model.Model;
 import org.apache.qpid.server.model.VirtualHost;
 import org.apache.qpid.server.store.handler.ConfiguredObjectRecordHandler;
+import org.apache.qpid.server.util.DaemonThreadFactory;
+import org.apache.qpid.server.virtualhostnode.JsonVirtualHostNode;
 
+/**
+ * Stores the configuration as a single JSON file, which is rewritten on each change.
+ *
+ * When {@link JsonVirtualHostNode#JOURNAL_ENABLED_CONTEXT_VAR} is set, each change is instead appended as a line to a
+ * journal next to the configuration file.  Once the journal holds more changes than the configuration holds objects
+ * (and at least {@link JsonVirtualHostNode#JOURNAL_COMPACTION_THRESHOLD_CONTEXT_VAR}), a background thread writes the
+ * configuration file afresh and starts a new journal.  The configuration is read back by replaying the journal over
+ * the configuration file, after which the two are compacted.
+ */
 public class JsonFileConfigStore implements DurableConfigurationStore
 {
+    private static final Logger _logger = Logger.getLogger(JsonFileConfigStore.class);
+
+    private static final String JOURNAL_OPERATION = "op";
+    private static final String JOURNAL_UPDATE = "update";
+    private static final String JOURNAL_REMOVE = "remove";
+    private static final String JOURNAL_RECORDS = "records";
+    private static final String JOURNAL_IDS = "ids";
+
     private final Map<UUID, ConfiguredObjectRecord> _objectsById = new HashMap<UUID, ConfiguredObjectRecord>();
     private final Map<String, List<UUID>> _idsByType = new HashMap<String, List<UUID>>();
     private final ObjectMapper _objectMapper = new ObjectMapper();
+    private final ObjectMapper _journalMapper = new ObjectMapper();
     private final Class<? extends ConfiguredObject> _rootClass;
 
     private Map<String,Class<? extends ConfiguredObject>> _classNameMapping;
@@ -66,6 +95,17 @@ public class JsonFileConfigStore implements DurableConfigurationStore
     private FileLock _fileLock;
     private String _configFileName;
     private String _backupFileName;
+    private String _journalFileName;
+    private String _compactingJournalFileName;
+
+    private boolean _journalEnabled;
+    private int _journalCompactionThreshold;
+    private FileOutputStream _journal;
+    private int _journalRecordCount;
+    private ExecutorService _compactor;
+    private boolean _compactionScheduled;
+    private boolean _compactionFailed;
+    private final Object _snapshotLock = new Object();
 
     private static final Module _module;
     static
@@ -99,6 +139,7 @@ public class JsonFileConfigStore implements DurableConfigurationStore
     {
         _objectMapper.registerModule(_module);
         _objectMapper.enable(SerializationConfig.Feature.INDENT_OUTPUT);
+        _journalMapper.registerModule(_module);
         _rootClass = rootClass;
     }
 
@@ -117,6 +158,19 @@ public class JsonFileConfigStore implements DurableConfigurationStore
         FileBasedSettings fileBasedSettings = (FileBasedSettings)_parent;
         setup(fileBasedSettings);
         load();
+        recoverJournal();
+        if (Boolean.TRUE.equals(_parent.getContextValue(Boolean.class,
+                                                        JsonVirtualHostNode.JOURNAL_ENABLED_CONTEXT_VAR)))
+        {
+            Integer threshold = _parent.getContextValue(Integer.class,
+                                                        JsonVirtualHostNode.JOURNAL_COMPACTION_THRESHOLD_CONTEXT_VAR);
+            _journalCompactionThreshold = threshold == null
+                    ? JsonVirtualHostNode.DEFAULT_JOURNAL_COMPACTION_THRESHOLD
+                    : threshold;
+            _journalEnabled = true;
+            openJournal();
+            _compactor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("JsonConfigStore-Compactor-" + _name));
+        }
     }
 
     @Override
@@ -145,6 +199,8 @@ public class JsonFileConfigStore implements DurableConfigurationStore
         _directoryName = configurationStoreSettings.getStorePath();
         _configFileName = _name + ".json";
         _backupFileName = _name + ".bak";
+        _journalFileName = _name + ".jnl";
+        _compactingJournalFileName = _name + ".jnl.old";
         checkDirectoryIsWritable(_directoryName);
         getFileLock();
 
@@ -356,23 +412,23 @@ public class JsonFileConfigStore implements DurableConfigurationStore
         }
         else
         {
-            record = new ConfiguredObjectRecordImpl(record);
-            _objectsById.put(record.getId(), record);
-            List<UUID> idsForType = _idsByType.get(record.getType());
+            ConfiguredObjectRecordImpl newRecord = new ConfiguredObjectRecordImpl(record);
+            _objectsById.put(newRecord.getId(), newRecord);
+            List<UUID> idsForType = _idsByType.get(newRecord.getType());
             if(idsForType == null)
             {
                 idsForType = new ArrayList<UUID>();
-                _idsByType.put(record.getType(), idsForType);
+                _idsByType.put(newRecord.getType(), idsForType);
             }
 
-            if (_rootClass.getSimpleName().equals(record.getType()) && idsForType.size() > 0)
+            if (_rootClass.getSimpleName().equals(newRecord.getType()) && idsForType.size() > 0)
             {
                 throw new IllegalStateException("Only a single root entry of type " + _rootClass.getSimpleName() + " can exist in the store.");
             }
 
-            idsForType.add(record.getId());
+            idsForType.add(newRecord.getId());
 
-            save();
+            persistUpdate(Collections.singletonList(newRecord));
         }
     }
 
@@ -392,18 +448,24 @@ public class JsonFileConfigStore implements DurableConfigurationStore
 
     private void save()
     {
-        UUID rootId = getRootId();
-        Map<String, Object> data = null;
+        writeSnapshot(buildSnapshot());
+    }
 
+    private Map<String, Object> buildSnapshot()
+    {
+        UUID rootId = getRootId();
         if (rootId == null)
         {
-            data = Collections.emptyMap();
+            return Collections.emptyMap();
         }
         else
         {
-            data = build(_rootClass, rootId);
+            return build(_rootClass, rootId);
         }
+    }
 
+    private void writeSnapshot(Map<String, Object> data)
+    {
         try
         {
             File tmpFile = File.createTempFile("cfg","tmp", new File(_directoryName));
@@ -490,14 +552,13 @@ public class JsonFileConfigStore implements DurableConfigurationStore
         List<UUID> removedIds = new ArrayList<UUID>();
         for(ConfiguredObjectRecord requestedRecord : objects)
         {
-            ConfiguredObjectRecord record = _objectsById.remove(requestedRecord.getId());
+            ConfiguredObjectRecord record = removeRecord(requestedRecord.getId());
             if(record != null)
             {
                 removedIds.add(record.getId());
-                _idsByType.get(record.getType()).remove(record.getId());
             }
         }
-        save();
+        persistRemoval(removedIds);
         return removedIds.toArray(new UUID[removedIds.size()]);
     }
 
@@ -535,24 +596,353 @@ public class JsonFileConfigStore implements DurableConfigurationStore
                 throw new StoreException("Cannot update record of unknown type " + type);
             }
         }
+        List<ConfiguredObjectRecordImpl> updatedRecords = new ArrayList<ConfiguredObjectRecordImpl>(records.length);
         for(ConfiguredObjectRecord record : records)
         {
-            record = new ConfiguredObjectRecordImpl(record);
-            final UUID id = record.getId();
-            final String type = record.getType();
-            if(_objectsById.put(id, record) == null)
+            ConfiguredObjectRecordImpl updatedRecord = new ConfiguredObjectRecordImpl(record);
+            putRecord(updatedRecord);
+            updatedRecords.add(updatedRecord);
+        }
+
+        persistUpdate(updatedRecords);
+    }
+
+    private void putRecord(final ConfiguredObjectRecord record)
+    {
+        final UUID id = record.getId();
+        final String type = record.getType();
+        if(_objectsById.put(id, record) == null)
+        {
+            List<UUID> idsForType = _idsByType.get(type);
+            if(idsForType == null)
+            {
+                idsForType = new ArrayList<UUID>();
+                _idsByType.put(type, idsForType);
+            }
+            idsForType.add(id);
+        }
+    }
+
+    private ConfiguredObjectRecord removeRecord(final UUID id)
+    {
+        ConfiguredObjectRecord record = _objectsById.remove(id);
+        if(record != null)
+        {
+            _idsByType.get(record.getType()).remove(id);
+        }
+        return record;
+    }
+
+    private void persistUpdate(final List<ConfiguredObjectRecordImpl> records)
+    {
+        if (_journalEnabled)
+        {
+            List<Map<String, Object>> journalRecords = new ArrayList<Map<String, Object>>(records.size());
+            for (ConfiguredObjectRecordImpl record : records)
+            {
+                Map<String, Object> journalRecord = new LinkedHashMap<String, Object>();
+                journalRecord.put("id", record.getId());
+                journalRecord.put("type", record.getType());
+                journalRecord.put("attributes", record.getAttributes());
+                journalRecord.put("parents", record._parents);
+                journalRecords.add(journalRecord);
+            }
+            Map<String, Object> entry = new LinkedHashMap<String, Object>();
+            entry.put(JOURNAL_OPERATION, JOURNAL_UPDATE);
+            entry.put(JOURNAL_RECORDS, journalRecords);
+            appendToJournal(entry);
+        }
+        else
+        {
+            save();
+        }
+    }
+
+    private void persistRemoval(final List<UUID> ids)
+    {
+        if (_journalEnabled)
+        {
+            if (!ids.isEmpty())
+            {
+                Map<String, Object> entry = new LinkedHashMap<String, Object>();
+                entry.put(JOURNAL_OPERATION, JOURNAL_REMOVE);
+                entry.put(JOURNAL_IDS, ids);
+                appendToJournal(entry);
+            }
+        }
+        else
+        {
+            save();
+        }
+    }
+
+    private void appendToJournal(final Map<String, Object> entry)
+    {
+        if (_journal == null)
+        {
+            throw new StoreException("The configuration journal of " + _name + " is not open");
+        }
+        try
+        {
+            byte[] encoded = _journalMapper.writeValueAsBytes(entry);
+            // written in one go, so that a failure can leave no more than an incomplete last line
+            byte[] line = Arrays.copyOf(encoded, encoded.length + 1);
+            line[encoded.length] = '\n';
+            _journal.write(line);
+        }
+        catch (IOException e)
+        {
+            throw new StoreException("Cannot write to the configuration journal of " + _name, e);
+        }
+
+        _journalRecordCount++;
+        if (_journalRecordCount >= Math.max(_journalCompactionThreshold, _objectsById.size()))
+        {
+            scheduleCompaction();
+        }
+    }
+
+    private void scheduleCompaction()
+    {
+        if (!_compactionScheduled && !_compactionFailed && _compactor != null)
+        {
+            _compactionScheduled = true;
+            try
+            {
+                _compactor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        compactJournal();
+                    }
+                });
+            }
+            catch (RejectedExecutionException e)
+            {
+                // the store is closing, which compacts the journal anyway
+                _compactionScheduled = false;
+            }
+        }
+    }
+
+    /**
+     * Writes the configuration file afresh and empties the journal.  The journal is switched to a new file first, so
+     * that changes can continue while the configuration file is written.  Until the old journal is deleted, replaying
+     * it over either the old or the new configuration file gives the same result.
+     */
+    private void compactJournal()
+    {
+        try
+        {
+            synchronized (_snapshotLock)
+            {
+                Map<String, Object> data;
+                synchronized (this)
+                {
+                    if (!_journalEnabled)
+                    {
+                        return;
+                    }
+                    data = buildSnapshot();
+                    closeJournal();
+                    renameFile(_journalFileName, _compactingJournalFileName);
+                    openJournal();
+                }
+                writeSnapshot(data);
+                deleteFile(_compactingJournalFileName);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            _logger.error("Failed to compact the configuration journal of " + _name
+                          + ", it will not be compacted again until the store is closed", e);
+            synchronized (this)
+            {
+                _compactionFailed = true;
+            }
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                _compactionScheduled = false;
+            }
+        }
+    }
+
+    private void openJournal()
+    {
+        File journalFile = new File(_directoryName, _journalFileName);
+        try
+        {
+            _journal = new FileOutputStream(journalFile, true);
+        }
+        catch (IOException e)
+        {
+            throw new StoreException("Cannot open the configuration journal " + journalFile, e);
+        }
+        _journalRecordCount = 0;
+    }
+
+    private void closeJournal()
+    {
+        if (_journal != null)
+        {
+            try
+            {
+                _journal.close();
+            }
+            catch (IOException e)
+            {
+                throw new StoreException("Cannot close the configuration journal of " + _name, e);
+            }
+            finally
+            {
+                _journal = null;
+            }
+        }
+    }
+
+    /**
+     * Stops journalling, leaving the whole configuration in the configuration file.
+     */
+    private void shutdownJournal()
+    {
+        ExecutorService compactor;
+        synchronized (this)
+        {
+            compactor = _compactor;
+            _compactor = null;
+        }
+        if (compactor != null)
+        {
+            compactor.shutdown();
+        }
+
+        synchronized (_snapshotLock)
+        {
+            Map<String, Object> data = null;
+            synchronized (this)
+            {
+                if (!_journalEnabled)
+                {
+                    return;
+                }
+                _journalEnabled = false;
+                closeJournal();
+                if (_journalRecordCount > 0 || fileExists(_compactingJournalFileName))
+                {
+                    data = buildSnapshot();
+                }
+            }
+            if (data != null)
+            {
+                writeSnapshot(data);
+            }
+            deleteFile(_compactingJournalFileName);
+            deleteFile(_journalFileName);
+        }
+    }
+
+    /**
+     * Applies any changes left in journals by a previous run to the loaded configuration, then writes the result to
+     * the configuration file and deletes the journals.
+     */
+    private void recoverJournal()
+    {
+        boolean replayed = replayJournal(_compactingJournalFileName);
+        replayed = replayJournal(_journalFileName) || replayed;
+        if (replayed)
+        {
+            save();
+        }
+        deleteFile(_compactingJournalFileName);
+        deleteFile(_journalFileName);
+    }
+
+    private boolean replayJournal(final String fileName)
+    {
+        final File journalFile = new File(_directoryName, fileName);
+        if (!journalFile.exists())
+        {
+            return false;
+        }
+
+        boolean replayed = false;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile),
+                                                                              StandardCharsets.UTF_8)))
+        {
+            String line = reader.readLine();
+            while (line != null)
+            {
+                String nextLine = reader.readLine();
+                if (!line.isEmpty())
+                {
+                    replayed = true;
+                    try
+                    {
+                        replayJournalEntry(_journalMapper.readValue(line, Map.class));
+                    }
+                    catch (JsonProcessingException e)
+                    {
+                        if (nextLine != null)
+                        {
+                            throw new StoreException("Cannot parse the configuration journal " + journalFile, e);
+                        }
+                        // the broker stopped while appending the last change, which was therefore never confirmed
+                        _logger.warn("Ignoring incomplete last entry of configuration journal " + journalFile);
+                    }
+                }
+                line = nextLine;
+            }
+        }
+        catch (IOException e)
+        {
+            throw new StoreException("Could not read the configuration journal " + journalFile, e);
+        }
+        return replayed;
+    }
+
+    private void replayJournalEntry(final Map<String, Object> entry)
+    {
+        Object operation = entry.get(JOURNAL_OPERATION);
+        if (JOURNAL_UPDATE.equals(operation))
+        {
+            for (Object recordData : (Collection) entry.get(JOURNAL_RECORDS))
             {
-                List<UUID> idsForType = _idsByType.get(type);
-                if(idsForType == null)
+                Map<String, Object> journalRecord = (Map<String, Object>) recordData;
+                Map<String, UUID> parents = new HashMap<>();
+                for (Map.Entry<String, Object> parent : ((Map<String, Object>) journalRecord.get("parents")).entrySet())
                 {
-                    idsForType = new ArrayList<UUID>();
-                    _idsByType.put(type, idsForType);
+                    parents.put(parent.getKey(), UUID.fromString((String) parent.getValue()));
                 }
-                idsForType.add(id);
+                putRecord(new ConfiguredObjectRecordImpl(UUID.fromString((String) journalRecord.get("id")),
+                                                         (String) journalRecord.get("type"),
+                                                         (Map<String, Object>) journalRecord.get("attributes"),
+                                                         parents));
             }
         }
+        else if (JOURNAL_REMOVE.equals(operation))
+        {
+            for (Object id : (Collection) entry.get(JOURNAL_IDS))
+            {
+                removeRecord(UUID.fromString((String) id));
+            }
+        }
+        else
+        {
+            throw new StoreException("Unknown operation '" + operation + "' in configuration journal of " + _name);
+        }
+    }
 
-        save();
+    private void deleteFile(final String fileName)
+    {
+        File file = new File(_directoryName, fileName);
+        if (file.exists() && !file.delete())
+        {
+            throw new StoreException("Cannot delete file " + file.getAbsolutePath());
+        }
     }
 
     @Override
@@ -560,12 +950,19 @@ public class JsonFileConfigStore implements DurableConfigurationStore
     {
         try
         {
-            releaseFileLock();
+            shutdownJournal();
         }
         finally
         {
-            _idsByType.clear();
-            _objectsById.clear();
+            try
+            {
+                releaseFileLock();
+            }
+            finally
+            {
+                _idsByType.clear();
+                _objectsById.clear();
+            }
         }
     }
 
@@ -575,6 +972,8 @@ public class JsonFileConfigStore implements DurableConfigurationStore
         if (_configFileName != null && _backupFileName != null)
         {
             renameFile(_configFileName,_backupFileName);
+            deleteFile(_compactingJournalFileName);
+            deleteFile(_journalFileName);
             _configFileName = null;
             _backupFileName = null;
         }
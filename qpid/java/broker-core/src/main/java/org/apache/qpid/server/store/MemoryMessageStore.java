@@ -24,6 +24,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
@@ -46,6 +47,8 @@ public class MemoryMessageStore implements MessageStore
     private final Map<UUID, Set<Long>> _messageInstances = new HashMap<UUID, Set<Long>>();
     private final Map<Xid, DistributedTransactionRecords> _distributedTransactions = new HashMap<Xid, DistributedTransactionRecords>();
 
+    private volatile FlowToDiskManager _flowToDiskManager = FlowToDiskManager.DISABLED;
+
 
     private final class MemoryMessageStoreTransaction implements Transaction
     {
@@ -145,7 +148,7 @@ public class MemoryMessageStore implements MessageStore
                 Set<Long> messageIds = _messageInstances.get(localEnqueuedEntry.getKey());
                 if (messageIds == null)
                 {
-                    messageIds = new HashSet<Long>();
+                    messageIds = new TreeSet<Long>();
                     _messageInstances.put(localEnqueuedEntry.getKey(), messageIds);
                 }
                 messageIds.addAll(localEnqueuedEntry.getValue());
@@ -183,6 +186,7 @@ public class MemoryMessageStore implements MessageStore
     @Override
     public void openMessageStore(final ConfiguredObject<?> parent)
     {
+        _flowToDiskManager = FlowToDiskManager.getFlowToDiskManager(parent);
     }
 
     @Override
@@ -198,7 +202,7 @@ public class MemoryMessageStore implements MessageStore
 
         if(metaData.isPersistent())
         {
-            return new StoredMemoryMessage<T>(id, metaData)
+            return new StoredMemoryMessage<T>(id, metaData, _flowToDiskManager)
             {
 
                 @Override
@@ -219,7 +223,7 @@ public class MemoryMessageStore implements MessageStore
         }
         else
         {
-            return new StoredMemoryMessage<T>(id, metaData);
+            return new StoredMemoryMessage<T>(id, metaData, _flowToDiskManager);
         }
     }
 
@@ -58,6 +58,15 @@ public interface MessageStore
     void visitMessages(MessageHandler handler) throws StoreException;
 
     void visitMessageInstances(MessageInstanceHandler handler) throws StoreException;
+
+    /**
+     * Visits the message instances enqueued on the given queue. Implementations must visit them in ascending
+     * message id order, as recovery relies on this to restore the queue in its original order.
+     *
+     * @param queue the queue whose message instances are visited
+     * @param handler the handler, which may return false to stop the visit
+     * @throws StoreException signals that a problem was encountered reading the store.
+     */
     void visitMessageInstances(TransactionLogResource queue, MessageInstanceHandler handler) throws StoreException;
 
     void visitDistributedTransactions(DistributedTransactionHandler handler) throws StoreException;
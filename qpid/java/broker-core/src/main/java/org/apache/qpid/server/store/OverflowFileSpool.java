@@ -0,0 +1,234 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import org.apache.qpid.util.FileUtils;
+
+/**
+ * Holds the content of transient messages which has been flowed to disk.
+ *
+ * Content is appended to a sequence of segment files.  Each segment counts the spooled contents it holds which have
+ * not yet been released, and is deleted once it is no longer being written to and all of its contents have been
+ * released, so the space used on disk follows the number of messages flowed to disk rather than growing forever.
+ */
+class OverflowFileSpool
+{
+    private static final Logger _logger = Logger.getLogger(OverflowFileSpool.class);
+
+    static final long MAX_SEGMENT_SIZE = Long.getLong("qpid.broker.flowToDiskSegmentSize", 64l * 1024l * 1024l);
+
+    private final File _directory;
+    private Segment _currentSegment;
+    private int _nextSegmentNumber;
+    private boolean _closed;
+
+    OverflowFileSpool(final File directory)
+    {
+        _directory = directory;
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffer to the spool, without changing its position.
+     */
+    synchronized SpooledContent spool(final ByteBuffer content)
+    {
+        if(_closed)
+        {
+            throw new StoreException("Overflow spool in " + _directory + " has been closed");
+        }
+
+        final int length = content.remaining();
+        if(_currentSegment == null || _currentSegment._size + length > MAX_SEGMENT_SIZE)
+        {
+            if(_currentSegment != null)
+            {
+                _currentSegment.writingComplete();
+            }
+            _currentSegment = new Segment(new File(_directory, "overflow-" + (_nextSegmentNumber++) + ".dat"));
+        }
+
+        return _currentSegment.append(content.duplicate());
+    }
+
+    synchronized void close()
+    {
+        _closed = true;
+        if(_currentSegment != null)
+        {
+            _currentSegment.writingComplete();
+            _currentSegment = null;
+        }
+        FileUtils.delete(_directory, true);
+    }
+
+    /**
+     * The location of content which has been written to the spool.
+     */
+    static final class SpooledContent
+    {
+        private final Segment _segment;
+        private final long _position;
+        private final int _length;
+
+        private SpooledContent(final Segment segment, final long position, final int length)
+        {
+            _segment = segment;
+            _position = position;
+            _length = length;
+        }
+
+        int getLength()
+        {
+            return _length;
+        }
+
+        /**
+         * Reads content into the destination buffer, starting at the given offset within the spooled content.
+         *
+         * @return the number of bytes read
+         */
+        int read(final int offset, final ByteBuffer dst)
+        {
+            if(offset >= _length)
+            {
+                return 0;
+            }
+            final int length = Math.min(dst.remaining(), _length - offset);
+            ByteBuffer target = dst.duplicate();
+            target.limit(target.position() + length);
+            try
+            {
+                long position = _position + offset;
+                while(target.hasRemaining())
+                {
+                    int read = _segment._channel.read(target, position);
+                    if(read < 0)
+                    {
+                        throw new StoreException("Unexpected end of overflow file " + _segment._file);
+                    }
+                    position += read;
+                }
+            }
+            catch (IOException e)
+            {
+                throw new StoreException("Unable to read content from overflow file " + _segment._file, e);
+            }
+            dst.position(dst.position() + length);
+            return length;
+        }
+
+        void release()
+        {
+            _segment.release();
+        }
+    }
+
+    private static final class Segment
+    {
+        private final File _file;
+        private final RandomAccessFile _randomAccessFile;
+        private final FileChannel _channel;
+        private final AtomicInteger _liveCount = new AtomicInteger();
+        private volatile boolean _writingComplete;
+        private long _size;
+
+        private Segment(final File file)
+        {
+            _file = file;
+            try
+            {
+                file.getParentFile().mkdirs();
+                _randomAccessFile = new RandomAccessFile(file, "rw");
+            }
+            catch (IOException e)
+            {
+                throw new StoreException("Unable to create overflow file " + file, e);
+            }
+            _channel = _randomAccessFile.getChannel();
+        }
+
+        private SpooledContent append(final ByteBuffer content)
+        {
+            final long position = _size;
+            final int length = content.remaining();
+            try
+            {
+                long writePosition = position;
+                while(content.hasRemaining())
+                {
+                    writePosition += _channel.write(content, writePosition);
+                }
+            }
+            catch (IOException e)
+            {
+                throw new StoreException("Unable to write content to overflow file " + _file, e);
+            }
+            _size += length;
+            _liveCount.incrementAndGet();
+            return new SpooledContent(this, position, length);
+        }
+
+        private void release()
+        {
+            if(_liveCount.decrementAndGet() == 0 && _writingComplete)
+            {
+                delete();
+            }
+        }
+
+        private void writingComplete()
+        {
+            _writingComplete = true;
+            if(_liveCount.get() == 0)
+            {
+                delete();
+            }
+        }
+
+        private synchronized void delete()
+        {
+            if(_channel.isOpen())
+            {
+                try
+                {
+                    _randomAccessFile.close();
+                }
+                catch (IOException e)
+                {
+                    _logger.warn("Unable to close overflow file " + _file, e);
+                }
+                if(!_file.delete())
+                {
+                    _logger.warn("Unable to delete overflow file " + _file);
+                }
+            }
+        }
+    }
+}
@@ -23,16 +23,26 @@ package org.apache.qpid.server.store;
 
 import java.nio.ByteBuffer;
 
-public class StoredMemoryMessage<T extends StorableMessageMetaData> implements StoredMessage<T>
+public class StoredMemoryMessage<T extends StorableMessageMetaData> implements StoredMessage<T>, FlowToDiskManager.FlowableMessage
 {
     private final long _messageNumber;
-    private ByteBuffer _content;
+    private volatile ByteBuffer _content;
     private final T _metaData;
+    private final FlowToDiskManager _flowToDiskManager;
+
+    private volatile OverflowFileSpool.SpooledContent _spooledContent;
+    private boolean _removed;
 
     public StoredMemoryMessage(long messageNumber, T metaData)
+    {
+        this(messageNumber, metaData, FlowToDiskManager.DISABLED);
+    }
+
+    public StoredMemoryMessage(long messageNumber, T metaData, FlowToDiskManager flowToDiskManager)
     {
         _messageNumber = messageNumber;
         _metaData = metaData;
+        _flowToDiskManager = flowToDiskManager;
     }
 
     public long getMessageNumber()
@@ -41,6 +51,16 @@ public class StoredMemoryMessage<T extends StorableMessageMetaData> implements S
     }
 
     public void addContent(int offsetInMessage, ByteBuffer src)
+    {
+        appendContent(offsetInMessage, src);
+
+        if(_flowToDiskManager.isEnabled() && _content.limit() >= _metaData.getContentSize())
+        {
+            _flowToDiskManager.contentInMemory(this, _content.limit());
+        }
+    }
+
+    private void appendContent(int offsetInMessage, ByteBuffer src)
     {
         if(_content == null)
         {
@@ -55,7 +75,7 @@ public class StoredMemoryMessage<T extends StorableMessageMetaData> implements S
                         ? offsetInMessage + src.remaining()
                         : contentSize;
                 _content = ByteBuffer.allocate(size);
-                addContent(offsetInMessage, src);
+                appendContent(offsetInMessage, src);
             }
         }
         else
@@ -76,7 +96,7 @@ public class StoredMemoryMessage<T extends StorableMessageMetaData> implements S
                 _content = ByteBuffer.allocate(size);
                 _content.put(oldContent);
                 _content.position(0);
-                addContent(offsetInMessage, src);
+                appendContent(offsetInMessage, src);
             }
 
         }
@@ -84,11 +104,12 @@ public class StoredMemoryMessage<T extends StorableMessageMetaData> implements S
 
     public int getContent(int offset, ByteBuffer dst)
     {
-        if(_content == null)
+        final ByteBuffer content = _content;
+        if(content == null)
         {
-            return 0;
+            return _spooledContent == null ? 0 : readSpooledContent(offset, dst);
         }
-        ByteBuffer src = _content.duplicate();
+        ByteBuffer src = content.duplicate();
 
         int oldPosition = src.position();
 
@@ -106,11 +127,20 @@ public class StoredMemoryMessage<T extends StorableMessageMetaData> implements S
 
     public ByteBuffer getContent(int offsetInMessage, int size)
     {
-        if(_content == null)
+        final ByteBuffer content = _content;
+        if(content == null)
         {
-            return null;
+            if(_spooledContent == null)
+            {
+                return null;
+            }
+            ByteBuffer buf = ByteBuffer.allocate(size);
+            int length = readSpooledContent(offsetInMessage, buf);
+            buf.limit(length);
+            buf.position(0);
+            return buf;
         }
-        ByteBuffer buf = _content.duplicate();
+        ByteBuffer buf = content.duplicate();
 
         if(offsetInMessage != 0)
         {
@@ -135,5 +165,41 @@ public class StoredMemoryMessage<T extends StorableMessageMetaData> implements S
 
     public void remove()
     {
+        // the threshold may have been lowered to zero since the content was registered or spooled
+        _flowToDiskManager.contentReleased(this);
+        synchronized (this)
+        {
+            _removed = true;
+            if(_spooledContent != null)
+            {
+                _spooledContent.release();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void flowToDisk()
+    {
+        final ByteBuffer content = _content;
+        if(!_removed && content != null)
+        {
+            ByteBuffer src = content.duplicate();
+            src.position(0);
+            // the spooled content must be visible before the in memory content is dropped
+            _spooledContent = _flowToDiskManager.getSpool().spool(src);
+            _content = null;
+        }
+    }
+
+    private synchronized int readSpooledContent(int offsetInMessage, ByteBuffer dst)
+    {
+        if(_removed)
+        {
+            return 0;
+        }
+        final long startTime = System.nanoTime();
+        int length = _spooledContent.read(offsetInMessage, dst);
+        _flowToDiskManager.contentReloaded(startTime);
+        return length;
     }
 }
@@ -24,4 +24,15 @@ public interface AcceptingTransport
 {
     public void start();
     public void close();
+
+    /**
+     * Returns the total number of bytes written to the connections accepted by this transport.
+     */
+    public long getBytesWritten();
+
+    /**
+     * Returns the rate, averaged since the transport was created, at which writers were woken to send data queued on
+     * its connections.
+     */
+    public long getWakeupsPerSecond();
 }
@@ -38,7 +38,7 @@ import org.apache.qpid.transport.network.IncomingNetworkTransport;
 
 class TCPandSSLTransport implements AcceptingTransport
 {
-    private IncomingNetworkTransport _networkTransport;
+    private volatile IncomingNetworkTransport _networkTransport;
     private Set<Transport> _transports;
     private SSLContext _sslContext;
     private InetSocketAddress _bindingSocketAddress;
@@ -78,7 +78,8 @@ class TCPandSSLTransport implements AcceptingTransport
         }
 
         final NetworkTransportConfiguration settings = new ServerNetworkTransportConfiguration();
-        _networkTransport = org.apache.qpid.transport.network.Transport.getIncomingTransportInstance();
+        _networkTransport = org.apache.qpid.transport.network.Transport.getIncomingTransportInstance(
+                (String) _port.getAttribute(AmqpPort.NETWORK_TRANSPORT));
         final MultiVersionProtocolEngineFactory protocolEngineFactory =
                 new MultiVersionProtocolEngineFactory(
                 _port.getParent(Broker.class), _transports.contains(Transport.TCP) ? _sslContext : null,
@@ -97,6 +98,20 @@ class TCPandSSLTransport implements AcceptingTransport
         _networkTransport.close();
     }
 
+    @Override
+    public long getBytesWritten()
+    {
+        final IncomingNetworkTransport networkTransport = _networkTransport;
+        return networkTransport == null ? 0l : networkTransport.getWriteStatistics().getBytesWritten();
+    }
+
+    @Override
+    public long getWakeupsPerSecond()
+    {
+        final IncomingNetworkTransport networkTransport = _networkTransport;
+        return networkTransport == null ? 0l : networkTransport.getWriteStatistics().getWakeupsPerSecond();
+    }
+
     class ServerNetworkTransportConfiguration implements NetworkTransportConfiguration
     {
         public ServerNetworkTransportConfiguration()
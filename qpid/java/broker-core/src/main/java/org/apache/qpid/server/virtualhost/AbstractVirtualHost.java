@@ -20,6 +20,7 @@
  */
 package org.apache.qpid.server.virtualhost;
 
+import java.io.File;
 import java.security.AccessControlException;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
@@ -43,6 +44,7 @@ import javax.security.auth.Subject;
 import org.apache.log4j.Logger;
 
 import org.apache.qpid.exchange.ExchangeDefaults;
+import org.apache.qpid.server.BrokerOptions;
 import org.apache.qpid.server.configuration.BrokerProperties;
 import org.apache.qpid.server.configuration.IllegalConfigurationException;
 import org.apache.qpid.server.connection.ConnectionRegistry;
@@ -53,6 +55,7 @@ import org.apache.qpid.server.logging.EventLogger;
 import org.apache.qpid.server.logging.messages.MessageStoreMessages;
 import org.apache.qpid.server.logging.messages.VirtualHostMessages;
 import org.apache.qpid.server.logging.subjects.MessageStoreLogSubject;
+import org.apache.qpid.server.message.MessageConversionCache;
 import org.apache.qpid.server.message.MessageDestination;
 import org.apache.qpid.server.message.MessageInstance;
 import org.apache.qpid.server.message.MessageNode;
@@ -69,12 +72,14 @@ import org.apache.qpid.server.protocol.LinkRegistry;
 import org.apache.qpid.server.queue.AMQQueue;
 import org.apache.qpid.server.security.SecurityManager;
 import org.apache.qpid.server.security.access.Operation;
+import org.apache.qpid.server.stats.LatencyHistogram;
 import org.apache.qpid.server.stats.StatisticsCounter;
 import org.apache.qpid.server.store.ConfiguredObjectRecord;
 import org.apache.qpid.server.store.ConfiguredObjectRecordImpl;
 import org.apache.qpid.server.store.DurableConfigurationStore;
 import org.apache.qpid.server.store.Event;
 import org.apache.qpid.server.store.EventListener;
+import org.apache.qpid.server.store.FlowToDiskManager;
 import org.apache.qpid.server.store.MessageStore;
 import org.apache.qpid.server.store.MessageStoreProvider;
 import org.apache.qpid.server.store.StoreException;
@@ -101,6 +106,8 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
 
     private ScheduledThreadPoolExecutor _houseKeepingTasks;
 
+    private volatile MessageStoreRecoverer _messageStoreRecoverer;
+
     private final Broker<?> _broker;
 
     private final ConnectionRegistry _connectionRegistry;
@@ -151,6 +158,13 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
     @ManagedAttributeField
     private int _housekeepingThreadCount;
 
+    @ManagedAttributeField
+    private long _flowToDiskThreshold;
+
+    private volatile FlowToDiskManager _flowToDiskManager = FlowToDiskManager.DISABLED;
+    private final ConfigurationChangeListener _flowToDiskThresholdListener = new FlowToDiskThresholdListener();
+
+    private volatile MessageConversionCache _messageConversionCache = MessageConversionCache.DISABLED;
 
     private boolean _useAsyncRecoverer;
 
@@ -647,12 +661,22 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
         //Stop Connections
         _connectionRegistry.close();
         _dtxRegistry.close();
+        cancelRecovery();
         closeMessageStore();
         shutdownHouseKeeping();
 
         _eventLogger.message(VirtualHostMessages.CLOSED(getName()));
     }
 
+    private void cancelRecovery()
+    {
+        MessageStoreRecoverer messageStoreRecoverer = _messageStoreRecoverer;
+        if (messageStoreRecoverer != null)
+        {
+            messageStoreRecoverer.cancel();
+        }
+    }
+
     private void closeMessageStore()
     {
         if (getMessageStore() != null)
@@ -667,6 +691,12 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
             }
         }
 
+        removeChangeListener(_flowToDiskThresholdListener);
+        _virtualHostNode.removeChangeListener(_flowToDiskThresholdListener);
+        _broker.removeChangeListener(_flowToDiskThresholdListener);
+        _flowToDiskManager.close();
+        _flowToDiskManager = FlowToDiskManager.DISABLED;
+
         if (!(_virtualHostNode.getConfigurationStore() instanceof MessageStoreProvider))
         {
             getEventLogger().message(getMessageStoreLogSubject(), MessageStoreMessages.CLOSED());
@@ -718,6 +748,8 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
         {
             connection.resetStatistics();
         }
+
+        resetLatencyHistograms();
     }
 
     public synchronized LinkRegistry getLinkRegistry(String remoteContainerId)
@@ -1130,9 +1162,117 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
         return _housekeepingThreadCount;
     }
 
+    @Override
+    public long getFlowToDiskThreshold()
+    {
+        return _flowToDiskThreshold;
+    }
+
+    @Override
+    public FlowToDiskManager getFlowToDiskManager()
+    {
+        return _flowToDiskManager;
+    }
+
+    @Override
+    public long getFlowToDiskInMemoryBytes()
+    {
+        return _flowToDiskManager.getInMemoryBytes();
+    }
+
+    @Override
+    public long getFlowToDiskEvictedBytes()
+    {
+        return _flowToDiskManager.getEvictedBytes();
+    }
+
+    @Override
+    public long getFlowToDiskEvictedMessages()
+    {
+        return _flowToDiskManager.getEvictedMessages();
+    }
+
+    @Override
+    public long getFlowToDiskReloadCount()
+    {
+        return _flowToDiskManager.getReloadCount();
+    }
+
+    @Override
+    public long getFlowToDiskAverageReloadLatency()
+    {
+        return _flowToDiskManager.getAverageReloadLatency();
+    }
+
+    @Override
+    public MessageConversionCache getMessageConversionCache()
+    {
+        return _messageConversionCache;
+    }
+
+    @Override
+    public long getMessageConversions()
+    {
+        return _messageConversionCache.getConversions();
+    }
+
+    @Override
+    public long getMessageConversionCacheHits()
+    {
+        return _messageConversionCache.getHits();
+    }
+
+    @Override
+    public long getMessageConversionCacheBytes()
+    {
+        return _messageConversionCache.getHeldBytes();
+    }
+
+    @Override
+    public Map<String, Object> getLatencyHistograms()
+    {
+        LatencyHistogram routeLatency = new LatencyHistogram();
+        for (ExchangeImpl<?> exchange : getExchanges())
+        {
+            routeLatency.add(exchange.getRouteLatency());
+        }
+        Map<String, Object> histograms = new LinkedHashMap<String, Object>();
+        histograms.put("route", routeLatency.getSummary());
+        return histograms;
+    }
+
+    @Override
+    public void resetLatencyHistograms()
+    {
+        for (ExchangeImpl<?> exchange : getExchanges())
+        {
+            exchange.getRouteLatency().reset();
+        }
+        for (AMQQueue<?> queue : getQueues())
+        {
+            queue.resetLatencyHistograms();
+        }
+    }
+
+    private File getFlowToDiskDirectory()
+    {
+        String directory = getContextValue(String.class, FLOW_TO_DISK_DIRECTORY_CONTEXT_VAR);
+        if(directory == null || directory.contains("${"))
+        {
+            String workDir = getContextValue(String.class, BrokerOptions.QPID_WORK_DIR);
+            if(workDir == null || workDir.contains("${"))
+            {
+                workDir = System.getProperty("java.io.tmpdir");
+            }
+            return new File(new File(workDir, "flowToDisk"), getName());
+        }
+        return new File(directory);
+    }
+
     @StateTransition( currentState = { State.UNINITIALIZED, State.ACTIVE, State.ERRORED }, desiredState = State.STOPPED )
     protected void doStop()
     {
+        cancelRecovery();
         closeChildren();
         shutdownHouseKeeping();
         closeMessageStore();
@@ -1322,6 +1462,15 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
     {
         _houseKeepingTasks = new ScheduledThreadPoolExecutor(getHousekeepingThreadCount());
 
+        // created even when disabled, as the stores keep the manager and the threshold may be set later
+        _flowToDiskManager = new FlowToDiskManager(getFlowToDiskThreshold(), getFlowToDiskDirectory());
+        addChangeListener(_flowToDiskThresholdListener);
+        _virtualHostNode.addChangeListener(_flowToDiskThresholdListener);
+        _broker.addChangeListener(_flowToDiskThresholdListener);
+
+        _messageConversionCache =
+                new MessageConversionCache(getContextValue(Long.class, MESSAGE_CONVERSION_CACHE_SIZE_CONTEXT_VAR));
+
         MessageStore messageStore = getMessageStore();
         messageStore.openMessageStore(this);
 
@@ -1350,6 +1499,7 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
         {
            messageStoreRecoverer = new SynchronousMessageStoreRecoverer();
         }
+        _messageStoreRecoverer = messageStoreRecoverer;
         messageStoreRecoverer.recover(this);
 
 
@@ -1367,6 +1517,53 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
 
     }
 
+    /**
+     * Applies changes to the flow to disk threshold, whether made to the attribute or to a context variable it
+     * refers to, which may be set on this host, its node or the broker.
+     */
+    private class FlowToDiskThresholdListener implements ConfigurationChangeListener
+    {
+        @Override
+        public void stateChanged(final ConfiguredObject<?> object, final State oldState, final State newState)
+        {
+
+        }
+
+        @Override
+        public void childAdded(final ConfiguredObject<?> object, final ConfiguredObject<?> child)
+        {
+
+        }
+
+        @Override
+        public void childRemoved(final ConfiguredObject<?> object, final ConfiguredObject<?> child)
+        {
+
+        }
+
+        @Override
+        public void attributeSet(final ConfiguredObject<?> object,
+                                 final String attributeName,
+                                 final Object oldAttributeValue,
+                                 final Object newAttributeValue)
+        {
+            boolean contextChanged = CONTEXT.equals(attributeName);
+            if(contextChanged || (object == AbstractVirtualHost.this && FLOW_TO_DISK_THRESHOLD.equals(attributeName)))
+            {
+                if(contextChanged)
+                {
+                    resolveAutomatedAttribute(FLOW_TO_DISK_THRESHOLD);
+                }
+
+                FlowToDiskManager manager = _flowToDiskManager;
+                if(manager != FlowToDiskManager.DISABLED)
+                {
+                    manager.setThreshold(getFlowToDiskThreshold());
+                }
+            }
+        }
+    }
+
     private class StoreUpdatingChangeListener implements ConfigurationChangeListener
     {
         @Override
@@ -20,11 +20,18 @@
  */
 package org.apache.qpid.server.virtualhost;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.log4j.Logger;
@@ -35,6 +42,7 @@ import org.apache.qpid.server.logging.subjects.MessageStoreLogSubject;
 import org.apache.qpid.server.message.EnqueueableMessage;
 import org.apache.qpid.server.message.MessageReference;
 import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.server.model.VirtualHost;
 import org.apache.qpid.server.plugin.MessageMetaDataType;
 import org.apache.qpid.server.queue.AMQQueue;
 import org.apache.qpid.server.queue.QueueEntry;
@@ -47,21 +55,48 @@ import org.apache.qpid.server.store.handler.MessageInstanceHandler;
 import org.apache.qpid.server.txn.DtxBranch;
 import org.apache.qpid.server.txn.DtxRegistry;
 import org.apache.qpid.server.txn.ServerTransaction;
+import org.apache.qpid.server.util.DaemonThreadFactory;
 import org.apache.qpid.transport.Xid;
 import org.apache.qpid.transport.util.Functions;
 
+/**
+ * Recovers the queues of a virtual host from its message store in the background, on a pool of
+ * {@link VirtualHost#RECOVERY_THREAD_COUNT_CONTEXT_VAR} threads.
+ *
+ * The first {@link VirtualHost#RECOVERY_PAGE_SIZE_CONTEXT_VAR} messages of every queue are recovered before the
+ * remainder of any queue, so consumers of every queue can be served while the deepest queues are still being read.
+ * Messages enqueued on more than one queue are shared through a concurrent index.  As each queue visits its messages
+ * in the order of their ids, a message is released from the index once every queue still being recovered has gone
+ * past it.
+ */
 public class AsynchronousMessageStoreRecoverer implements MessageStoreRecoverer
 {
     private static final Logger _logger = Logger.getLogger(AsynchronousMessageStoreRecoverer.class);
 
+    private static final int MESSAGE_LOCK_COUNT = 64;
+    private static final int CANCEL_TIMEOUT = 5;
+
+    private volatile AsynchronousRecoverer _asynchronousRecoverer;
+
     @Override
     public void recover(final VirtualHostImpl virtualHost)
     {
         AsynchronousRecoverer asynchronousRecoverer = new AsynchronousRecoverer(virtualHost);
+        _asynchronousRecoverer = asynchronousRecoverer;
 
         asynchronousRecoverer.recover();
     }
 
+    @Override
+    public void cancel()
+    {
+        AsynchronousRecoverer asynchronousRecoverer = _asynchronousRecoverer;
+        if (asynchronousRecoverer != null)
+        {
+            asynchronousRecoverer.cancel();
+        }
+    }
+
     private static class AsynchronousRecoverer
     {
         private final VirtualHostImpl<?, ?, ?> _virtualHost;
@@ -69,9 +104,20 @@ public class AsynchronousMessageStoreRecoverer implements MessageStoreRecoverer
         private final MessageStore _store;
         private final MessageStoreLogSubject _logSubject;
         private final long _maxMessageId;
-        private final Set<AMQQueue<?>> _recoveringQueues = new CopyOnWriteArraySet<>();
+        private final int _pageSize;
+        private final ExecutorService _queueRecoveryExecutor;
+        private final List<AMQQueue<?>> _queues;
+        // remainders of queues whose heads were recovered before the heads of all queues had been submitted
+        private final List<QueueRecoveringTask> _deferredRemainders = new ArrayList<>();
+        private boolean _headsSubmitted;
+        // the id of the last message visited by each queue still being recovered
+        private final ConcurrentMap<AMQQueue<?>, Long> _recoveringQueues = new ConcurrentHashMap<>();
         private final AtomicBoolean _recoveryComplete = new AtomicBoolean();
-        private final Map<Long, MessageReference<? extends ServerMessage<?>>> _recoveredMessages = new HashMap<>();
+        private volatile boolean _transactionsRecovered;
+        private volatile boolean _cancelled;
+        private final ConcurrentNavigableMap<Long, MessageReference<? extends ServerMessage<?>>> _recoveredMessages =
+                new ConcurrentSkipListMap<>();
+        private final Object[] _messageLocks = new Object[MESSAGE_LOCK_COUNT];
 
 
         private AsynchronousRecoverer(final VirtualHostImpl<?, ?, ?> virtualHost)
@@ -82,18 +128,76 @@ public class AsynchronousMessageStoreRecoverer implements MessageStoreRecoverer
             _logSubject = new MessageStoreLogSubject(virtualHost.getName(), _store.getClass().getSimpleName());
 
             _maxMessageId = _store.getNextMessageId();
-            _recoveringQueues.addAll(_virtualHost.getQueues());
+            _queues = new ArrayList<AMQQueue<?>>(_virtualHost.getQueues());
+            for (AMQQueue<?> queue : _queues)
+            {
+                _recoveringQueues.put(queue, -1L);
+            }
 
+            _pageSize = Math.max(1, virtualHost.getContextValue(Integer.class,
+                                                                VirtualHost.RECOVERY_PAGE_SIZE_CONTEXT_VAR));
+            int threadCount = Math.max(1, virtualHost.getContextValue(Integer.class,
+                                                                      VirtualHost.RECOVERY_THREAD_COUNT_CONTEXT_VAR));
+            _queueRecoveryExecutor = new ThreadPoolExecutor(threadCount, threadCount,
+                                                            0L, TimeUnit.MILLISECONDS,
+                                                            new LinkedBlockingQueue<Runnable>(),
+                                                            new DaemonThreadFactory("Queue Recoverer (vh: "
+                                                                                    + virtualHost.getName() + ")"));
+            for (int i = 0; i < _messageLocks.length; i++)
+            {
+                _messageLocks[i] = new Object();
+            }
         }
 
         public void recover()
         {
             getStore().visitDistributedTransactions(new DistributedTransactionVisitor());
+            _transactionsRecovered = true;
 
-            for(AMQQueue<?> queue : _recoveringQueues)
+            if (_recoveringQueues.isEmpty())
             {
-                Thread queueThread = new Thread(new QueueRecoveringTask(queue), "Queue Recoverer : " + queue.getName() + " (vh: " + getVirtualHost().getName() + ")");
-                queueThread.start();
+                if (_recoveryComplete.compareAndSet(false, true))
+                {
+                    completeRecovery();
+                }
+            }
+            else
+            {
+                for (AMQQueue<?> queue : _queues)
+                {
+                    if (isRecovering(queue))
+                    {
+                        _queueRecoveryExecutor.execute(new QueueRecoveringTask(queue));
+                    }
+                }
+                synchronized (_deferredRemainders)
+                {
+                    _headsSubmitted = true;
+                    for (QueueRecoveringTask task : _deferredRemainders)
+                    {
+                        _queueRecoveryExecutor.execute(task);
+                    }
+                    _deferredRemainders.clear();
+                }
+            }
+        }
+
+        private void cancel()
+        {
+            _cancelled = true;
+            _queueRecoveryExecutor.shutdownNow();
+            try
+            {
+                if (!_queueRecoveryExecutor.awaitTermination(CANCEL_TIMEOUT, TimeUnit.SECONDS))
+                {
+                    _logger.warn("Recovery of the queues of virtual host '" + _virtualHost.getName()
+                                 + "' did not stop within " + CANCEL_TIMEOUT + " seconds");
+                }
+            }
+            catch (InterruptedException e)
+            {
+                _logger.warn("Interrupted while cancelling recovery:", e);
+                Thread.currentThread().interrupt();
             }
         }
 
@@ -119,53 +223,119 @@ public class AsynchronousMessageStoreRecoverer implements MessageStoreRecoverer
 
         private boolean isRecovering(AMQQueue<?> queue)
         {
-            return _recoveringQueues.contains(queue);
+            return _recoveringQueues.containsKey(queue);
         }
 
         private void recoverQueue(AMQQueue<?> queue)
         {
-            MessageInstanceVisitor handler = new MessageInstanceVisitor(queue);
-            _store.visitMessageInstances(queue, handler);
+            QueueRecoveringTask task = new QueueRecoveringTask(queue);
+            task.recoverRemainder();
+        }
 
-            getEventLogger().message(getLogSubject(), TransactionLogMessages.RECOVERED(handler.getRecoveredCount(), queue.getName()));
+        private void queueRecovered(AMQQueue<?> queue, long recoveredCount)
+        {
+            getEventLogger().message(getLogSubject(), TransactionLogMessages.RECOVERED(recoveredCount, queue.getName()));
             getEventLogger().message(getLogSubject(), TransactionLogMessages.RECOVERY_COMPLETE(queue.getName(), true));
+            queueRecoveryFinished(queue);
+        }
+
+        private void queueRecoveryFailed(AMQQueue<?> queue, RuntimeException e)
+        {
+            if (!_cancelled)
+            {
+                _logger.error("Failed to recover queue '" + queue.getName() + "'", e);
+            }
+            queueRecoveryFinished(queue);
+        }
+
+        private void queueRecoveryFinished(AMQQueue<?> queue)
+        {
             queue.completeRecovery();
 
             _recoveringQueues.remove(queue);
-            if (_recoveringQueues.isEmpty() && _recoveryComplete.compareAndSet(false, true))
+            // the transactions may still need recovered messages from the index
+            if (_transactionsRecovered)
+            {
+                if (_recoveringQueues.isEmpty())
+                {
+                    if (_recoveryComplete.compareAndSet(false, true))
+                    {
+                        completeRecovery();
+                    }
+                }
+                else
+                {
+                    releaseRecoveredMessages();
+                }
+            }
+        }
+
+        private void recoveryProgressed(AMQQueue<?> queue, long lastMessageId)
+        {
+            _recoveringQueues.replace(queue, lastMessageId);
+            if (_transactionsRecovered)
             {
-                completeRecovery();
+                releaseRecoveredMessages();
             }
         }
 
-        private synchronized void completeRecovery()
+        /**
+         * Releases the recovered messages which no queue still being recovered can ask for, as every such queue has
+         * visited a message with a greater or equal id.
+         */
+        private void releaseRecoveredMessages()
         {
-            // at this point nothing should be writing to the map of recovered messages
-            for (MessageReference<? extends ServerMessage<?>> entry : _recoveredMessages.values())
+            long lowestMessageId = Long.MAX_VALUE;
+            for (Long lastMessageId : _recoveringQueues.values())
+            {
+                lowestMessageId = Math.min(lowestMessageId, lastMessageId);
+            }
+
+            for (Map.Entry<Long, MessageReference<? extends ServerMessage<?>>> entry
+                    : _recoveredMessages.headMap(lowestMessageId, true).entrySet())
             {
-                entry.release();
+                if (_recoveredMessages.remove(entry.getKey(), entry.getValue()))
+                {
+                    entry.getValue().release();
+                }
             }
-            _recoveredMessages.clear();
         }
 
-        private synchronized ServerMessage<?> getRecoveredMessage(final long messageId)
+        private void completeRecovery()
+        {
+            _queueRecoveryExecutor.shutdown();
+
+            // at this point nothing should be writing to the map of recovered messages
+            releaseRecoveredMessages();
+        }
+
+        private ServerMessage<?> getRecoveredMessage(final long messageId)
         {
             MessageReference<? extends ServerMessage<?>> ref = _recoveredMessages.get(messageId);
             if (ref == null)
             {
-                StoredMessage<?> message = _store.getMessage(messageId);
-                if(message != null)
+                // a message must only be created once, however many queues it is on, so that there is only one
+                // reference count deciding when it is removed from the store
+                synchronized (_messageLocks[(int) (messageId & (MESSAGE_LOCK_COUNT - 1))])
                 {
-                    StorableMessageMetaData metaData = message.getMetaData();
+                    ref = _recoveredMessages.get(messageId);
+                    if (ref == null)
+                    {
+                        StoredMessage<?> message = _store.getMessage(messageId);
+                        if(message != null)
+                        {
+                            StorableMessageMetaData metaData = message.getMetaData();
 
-                    @SuppressWarnings("rawtypes")
-                    MessageMetaDataType type = metaData.getType();
+                            @SuppressWarnings("rawtypes")
+                            MessageMetaDataType type = metaData.getType();
 
-                    @SuppressWarnings("unchecked")
-                    ServerMessage<?> serverMessage = type.createMessage(message);
+                            @SuppressWarnings("unchecked")
+                            ServerMessage<?> serverMessage = type.createMessage(message);
 
-                    ref = serverMessage.newReference();
-                    _recoveredMessages.put(messageId, ref);
+                            ref = serverMessage.newReference();
+                            _recoveredMessages.put(messageId, ref);
+                        }
+                    }
                 }
             }
             return ref == null ? null : ref.getMessage();
@@ -328,6 +498,9 @@ public class AsynchronousMessageStoreRecoverer implements MessageStoreRecoverer
         private class QueueRecoveringTask implements Runnable
         {
             private final AMQQueue<?> _queue;
+            private long _lastMessageId = -1L;
+            private long _recoveredCount;
+            private boolean _headRecovered;
 
             public QueueRecoveringTask(final AMQQueue<?> queue)
             {
@@ -337,18 +510,88 @@ public class AsynchronousMessageStoreRecoverer implements MessageStoreRecoverer
             @Override
             public void run()
             {
-                recoverQueue(_queue);
+                try
+                {
+                    if (_headRecovered)
+                    {
+                        recoverRemainder();
+                    }
+                    else
+                    {
+                        _headRecovered = true;
+                        if (recoverPage(_pageSize))
+                        {
+                            queueRecovered(_queue, _recoveredCount);
+                        }
+                        else if (!_cancelled)
+                        {
+                            recoverRemainderLater();
+                        }
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    queueRecoveryFailed(_queue, e);
+                }
+            }
+
+            /**
+             * Submits the rest of the queue behind the heads of the queues not yet started.
+             */
+            private void recoverRemainderLater()
+            {
+                synchronized (_deferredRemainders)
+                {
+                    if (_headsSubmitted)
+                    {
+                        _queueRecoveryExecutor.execute(this);
+                    }
+                    else
+                    {
+                        _deferredRemainders.add(this);
+                    }
+                }
+            }
+
+            private void recoverRemainder()
+            {
+                if (recoverPage(Long.MAX_VALUE))
+                {
+                    queueRecovered(_queue, _recoveredCount);
+                }
+            }
+
+            /**
+             * Recovers up to the given number of the messages following those already recovered.
+             *
+             * @return true if there are no more messages to recover, or false if there are or recovery was cancelled
+             */
+            private boolean recoverPage(long limit)
+            {
+                MessageInstanceVisitor handler = new MessageInstanceVisitor(_queue, _lastMessageId, limit);
+                _store.visitMessageInstances(_queue, handler);
+
+                _recoveredCount += handler.getRecoveredCount();
+                _lastMessageId = handler.getLastMessageId();
+                recoveryProgressed(_queue, _lastMessageId);
+                return !handler.isLimitReached() && !_cancelled;
             }
         }
 
         private class MessageInstanceVisitor implements MessageInstanceHandler
         {
             private final AMQQueue<?> _queue;
+            private final long _limit;
+            private long _lastMessageId;
             long _recoveredCount;
+            private long _visitedSinceProgress;
+            private boolean _limitReached;
 
-            private MessageInstanceVisitor(AMQQueue<?> queue)
+            private MessageInstanceVisitor(AMQQueue<?> queue, long lastMessageId, long limit)
             {
                 _queue = queue;
+                _lastMessageId = lastMessageId;
+                _limit = limit;
             }
 
             @Override
@@ -356,7 +599,16 @@ public class AsynchronousMessageStoreRecoverer implements MessageStoreRecoverer
             {
                 String queueName = _queue.getName();
 
-                if(messageId < _maxMessageId)
+                if(_cancelled)
+                {
+                    return false;
+                }
+                else if(messageId <= _lastMessageId)
+                {
+                    // recovered by an earlier page
+                    return true;
+                }
+                else if(messageId < _maxMessageId)
                 {
                     ServerMessage<?> message = getRecoveredMessage(messageId);
 
@@ -381,6 +633,19 @@ public class AsynchronousMessageStoreRecoverer implements MessageStoreRecoverer
                         txn.dequeueMessage(_queue, new DummyMessage(messageId));
                         txn.commitTranAsync();
                     }
+                    _lastMessageId = messageId;
+
+                    if (++_visitedSinceProgress >= _pageSize)
+                    {
+                        _visitedSinceProgress = 0;
+                        recoveryProgressed(_queue, messageId);
+                    }
+
+                    if (_recoveredCount >= _limit)
+                    {
+                        _limitReached = true;
+                        return false;
+                    }
                     return true;
                 }
                 else
@@ -394,6 +659,16 @@ public class AsynchronousMessageStoreRecoverer implements MessageStoreRecoverer
             {
                 return _recoveredCount;
             }
+
+            public long getLastMessageId()
+            {
+                return _lastMessageId;
+            }
+
+            public boolean isLimitReached()
+            {
+                return _limitReached;
+            }
         }
     }
 
@@ -23,4 +23,9 @@ package org.apache.qpid.server.virtualhost;
 public interface MessageStoreRecoverer
 {
     void recover(VirtualHostImpl virtualHost);
+
+    /**
+     * Stops any recovery still running in the background, as the virtual host is closing.
+     */
+    void cancel();
 }
@@ -112,6 +112,12 @@ public class SynchronousMessageStoreRecoverer implements MessageStoreRecoverer
 
     }
 
+    @Override
+    public void cancel()
+    {
+        // recovery is complete by the time recover returns
+    }
+
     private static class MessageVisitor implements MessageHandler
     {
 
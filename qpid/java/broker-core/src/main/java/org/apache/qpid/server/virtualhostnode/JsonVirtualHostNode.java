@@ -20,12 +20,30 @@
 package org.apache.qpid.server.virtualhostnode;
 
 import org.apache.qpid.server.model.ManagedAttribute;
+import org.apache.qpid.server.model.ManagedContextDefault;
 
 public interface JsonVirtualHostNode<X extends JsonVirtualHostNode<X>> extends org.apache.qpid.server.model.VirtualHostNode<X>, org.apache.qpid.server.store.FileBasedSettings
 {
 
     String STORE_PATH = "storePath";
 
+    String JOURNAL_ENABLED_CONTEXT_VAR = "jsonvirtualhostnode.journalEnabled";
+    String JOURNAL_COMPACTION_THRESHOLD_CONTEXT_VAR = "jsonvirtualhostnode.journalCompactionThreshold";
+
+    /**
+     * Whether changes to the configuration are appended to a journal, rather than rewriting the whole configuration
+     * file on each change.
+     */
+    @ManagedContextDefault( name = JOURNAL_ENABLED_CONTEXT_VAR)
+    boolean DEFAULT_JOURNAL_ENABLED = false;
+
+    /**
+     * The least number of changes the journal holds before they are compacted into the configuration file.  The
+     * journal is also allowed to hold as many changes as there are objects in the configuration.
+     */
+    @ManagedContextDefault( name = JOURNAL_COMPACTION_THRESHOLD_CONTEXT_VAR)
+    int DEFAULT_JOURNAL_COMPACTION_THRESHOLD = 1000;
+
     @ManagedAttribute(mandatory = true)
     String getStorePath();
 }
@@ -176,6 +176,14 @@ public class MockConsumer implements ConsumerTarget
         messages.add(entry);
     }
 
+    public void send(final List<? extends MessageInstance> entries)
+    {
+        for(MessageInstance entry : entries)
+        {
+            send(entry, true);
+        }
+    }
+
     public void flushBatched()
     {
 
@@ -229,6 +237,11 @@ public class MockConsumer implements ConsumerTarget
         return true;
     }
 
+    public int allocateCredit(final List<? extends MessageInstance> entries)
+    {
+        return entries.size();
+    }
+
     public void setActive(final boolean isActive)
     {
         _isActive = isActive;
@@ -31,6 +31,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
 
@@ -234,6 +235,66 @@ public class HeadersExchangeTest extends TestCase
 
     }
 
+    public void testRouteWithManyBindings() throws Exception
+    {
+        Random random = new Random(getClass().getName().hashCode());
+        Map<AMQQueue, Map<String, Object>> bindingArguments = new HashMap<AMQQueue, Map<String, Object>>();
+        for(int i = 0; i < 500; i++)
+        {
+            Map<String, Object> arguments = new HashMap<String, Object>();
+            int conditions = random.nextInt(4);
+            for(int j = 0; j < conditions; j++)
+            {
+                arguments.put("F" + random.nextInt(6), random.nextBoolean() ? null : "V" + random.nextInt(3));
+            }
+            if(random.nextBoolean())
+            {
+                arguments.put("X-match", random.nextBoolean() ? "any" : "all");
+            }
+            bindingArguments.put(createAndBind("Q" + i, arguments), arguments);
+        }
+
+        for(int i = 0; i < 200; i++)
+        {
+            Map<String, Object> headers = new HashMap<String, Object>();
+            int headerCount = random.nextInt(5);
+            for(int j = 0; j < headerCount; j++)
+            {
+                headers.put("F" + random.nextInt(6), "V" + random.nextInt(3));
+            }
+
+            List<AMQQueue> expected = new ArrayList<AMQQueue>();
+            for(Map.Entry<AMQQueue, Map<String, Object>> entry : bindingArguments.entrySet())
+            {
+                if(matches(entry.getValue(), headers))
+                {
+                    expected.add(entry.getKey());
+                }
+            }
+            routeAndTest(mockMessage(headers), expected.toArray(new AMQQueue[expected.size()]));
+        }
+    }
+
+    private boolean matches(Map<String, Object> arguments, Map<String, Object> headers)
+    {
+        boolean any = "any".equals(arguments.get("X-match"));
+        int conditions = 0;
+        int satisfied = 0;
+        for(Map.Entry<String, Object> argument : arguments.entrySet())
+        {
+            if(!argument.getKey().startsWith("X-"))
+            {
+                conditions++;
+                if(headers.containsKey(argument.getKey())
+                   && (argument.getValue() == null || argument.getValue().equals(headers.get(argument.getKey()))))
+                {
+                    satisfied++;
+                }
+            }
+        }
+        return conditions == 0 || (any ? satisfied > 0 : satisfied == conditions);
+    }
+
     private ServerMessage mockMessage(final Map<String, Object> headerValues)
     {
         final AMQMessageHeader header = mock(AMQMessageHeader.class);
@@ -357,6 +357,54 @@ public class TopicExchangeTest extends QpidTestCase
 
     }
 
+    public void testRouteCacheInvalidatedByBind() throws Exception
+    {
+        AMQQueue<?> queue1 = createQueue("queue1");
+        createBinding(UUID.randomUUID(), "a.*", queue1, _exchange, null);
+
+        Assert.assertEquals(1, routeMessage("a.b", 0l));
+
+        AMQQueue<?> queue2 = createQueue("queue2");
+        createBinding(UUID.randomUUID(), "a.#", queue2, _exchange, null);
+
+        Assert.assertEquals("Routing key cached before the binding was added should route to the new queue",
+                            2, routeMessage("a.b", 1l));
+        Assert.assertEquals(2, queue1.getQueueDepthMessages());
+        Assert.assertEquals(1, queue2.getQueueDepthMessages());
+    }
+
+    public void testRouteCacheInvalidatedByUnbind() throws Exception
+    {
+        AMQQueue<?> queue1 = createQueue("queue1");
+        createBinding(UUID.randomUUID(), "a.b", queue1, _exchange, null);
+        AMQQueue<?> queue2 = createQueue("queue2");
+        createBinding(UUID.randomUUID(), "a.#", queue2, _exchange, null);
+
+        Assert.assertEquals(2, routeMessage("a.b", 0l));
+
+        _exchange.deleteBinding("a.b", queue1);
+
+        Assert.assertEquals("Routing key cached before the binding was removed should not route to the queue",
+                            1, routeMessage("a.b", 1l));
+        Assert.assertEquals(1, queue1.getQueueDepthMessages());
+        Assert.assertEquals(2, queue2.getQueueDepthMessages());
+
+        _exchange.deleteBinding("a.#", queue2);
+
+        Assert.assertEquals(0, routeMessage("a.b", 2l));
+    }
+
+    public void testRoutingKeysWithEmptyWords() throws Exception
+    {
+        AMQQueue<?> queue = createQueue("a*b");
+        createBinding(UUID.randomUUID(), "a.*.b", queue, _exchange, null);
+
+        Assert.assertEquals(1, routeMessage("a..b", 0l));
+        Assert.assertEquals(1, routeMessage("a.c.b.", 1l));
+        Assert.assertEquals(0, routeMessage("a.b", 2l));
+        Assert.assertEquals(0, routeMessage(".a.c.b", 3l));
+    }
+
     public void testRouteWithJMSSelector() throws Exception
     {
         AMQQueue<?> queue = createQueue("queue1");
@@ -0,0 +1,226 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.message;
+
+import static org.mockito.Mockito.mock;
+
+import org.apache.qpid.server.plugin.MessageConverter;
+import org.apache.qpid.server.store.StorableMessageMetaData;
+import org.apache.qpid.server.store.StoredMessage;
+import org.apache.qpid.server.virtualhost.VirtualHostImpl;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class MessageConversionCacheTest extends QpidTestCase
+{
+    private static final long CONVERTED_SIZE = 10l;
+
+    public void testMessageConvertedOncePerClass()
+    {
+        MessageConversionCache cache = createCache(1000l);
+        TestMessage message = createMessage();
+        message.newReference();
+
+        ConvertedMessage first = cache.convert(message, ConvertedMessage.class, null);
+        ConvertedMessage second = cache.convert(message, ConvertedMessage.class, null);
+
+        assertSame(first, second);
+        assertEquals(1, cache.getConversions());
+        assertEquals(1, cache.getHits());
+        assertEquals(CONVERTED_SIZE, cache.getHeldBytes());
+    }
+
+    public void testConvertedFormsReleasedWithLastReference()
+    {
+        MessageConversionCache cache = createCache(1000l);
+        TestMessage message = createMessage();
+        MessageReference<TestMessage> reference1 = message.newReference();
+        MessageReference<TestMessage> reference2 = message.newReference();
+
+        cache.convert(message, ConvertedMessage.class, null);
+
+        reference1.release();
+        assertNotNull(message.getConvertedMessage(ConvertedMessage.class));
+        assertEquals(CONVERTED_SIZE, cache.getHeldBytes());
+
+        reference2.release();
+        assertNull(message.getConvertedMessage(ConvertedMessage.class));
+        assertEquals(0l, cache.getHeldBytes());
+    }
+
+    public void testMessagesConvertedForEachDeliveryOnceBudgetReached()
+    {
+        MessageConversionCache cache = createCache(CONVERTED_SIZE + 5l);
+        TestMessage message1 = createMessage();
+        message1.newReference();
+        TestMessage message2 = createMessage();
+        message2.newReference();
+
+        cache.convert(message1, ConvertedMessage.class, null);
+        cache.convert(message2, ConvertedMessage.class, null);
+        cache.convert(message2, ConvertedMessage.class, null);
+
+        assertEquals(3, cache.getConversions());
+        assertEquals(0, cache.getHits());
+        assertEquals(CONVERTED_SIZE, cache.getHeldBytes());
+        assertNull(message2.getConvertedMessage(ConvertedMessage.class));
+    }
+
+    public void testDisabledCacheHoldsNothing()
+    {
+        MessageConversionCache cache = createCache(0l);
+        TestMessage message = createMessage();
+        message.newReference();
+
+        ConvertedMessage first = cache.convert(message, ConvertedMessage.class, null);
+        ConvertedMessage second = cache.convert(message, ConvertedMessage.class, null);
+
+        assertNotSame(first, second);
+        assertEquals(2, cache.getConversions());
+        assertEquals(0, cache.getHits());
+        assertEquals(0l, cache.getHeldBytes());
+    }
+
+    public void testUnreferencedMessageHoldsNothing()
+    {
+        MessageConversionCache cache = createCache(1000l);
+        TestMessage message = createMessage();
+
+        cache.convert(message, ConvertedMessage.class, null);
+
+        assertNull(message.getConvertedMessage(ConvertedMessage.class));
+        assertEquals(0l, cache.getHeldBytes());
+    }
+
+    private MessageConversionCache createCache(final long maximumBytes)
+    {
+        return new MessageConversionCache(maximumBytes, new TestMessageConverter());
+    }
+
+    private TestMessage createMessage()
+    {
+        @SuppressWarnings("unchecked")
+        StoredMessage<StorableMessageMetaData> storedMessage = mock(StoredMessage.class);
+        return new TestMessage(storedMessage);
+    }
+
+    private static class TestMessageConverter implements MessageConverter<TestMessage, ConvertedMessage>
+    {
+        @Override
+        public Class<TestMessage> getInputClass()
+        {
+            return TestMessage.class;
+        }
+
+        @Override
+        public Class<ConvertedMessage> getOutputClass()
+        {
+            return ConvertedMessage.class;
+        }
+
+        @Override
+        public ConvertedMessage convert(final TestMessage message, final VirtualHostImpl vhost)
+        {
+            return new ConvertedMessage(message.getStoredMessage());
+        }
+
+        @Override
+        public String getType()
+        {
+            return "Test to Converted";
+        }
+    }
+
+    private static class TestMessage extends AbstractServerMessageImpl<TestMessage, StorableMessageMetaData>
+    {
+        TestMessage(final StoredMessage<StorableMessageMetaData> storedMessage)
+        {
+            super(storedMessage, null);
+        }
+
+        @Override
+        public String getInitialRoutingAddress()
+        {
+            return "";
+        }
+
+        @Override
+        public AMQMessageHeader getMessageHeader()
+        {
+            return null;
+        }
+
+        @Override
+        public long getSize()
+        {
+            return 100l;
+        }
+
+        @Override
+        public long getExpiration()
+        {
+            return 0l;
+        }
+
+        @Override
+        public long getArrivalTime()
+        {
+            return 0l;
+        }
+    }
+
+    private static class ConvertedMessage extends AbstractServerMessageImpl<ConvertedMessage, StorableMessageMetaData>
+    {
+        ConvertedMessage(final StoredMessage<StorableMessageMetaData> storedMessage)
+        {
+            super(storedMessage, null);
+        }
+
+        @Override
+        public String getInitialRoutingAddress()
+        {
+            return "";
+        }
+
+        @Override
+        public AMQMessageHeader getMessageHeader()
+        {
+            return null;
+        }
+
+        @Override
+        public long getSize()
+        {
+            return CONVERTED_SIZE;
+        }
+
+        @Override
+        public long getExpiration()
+        {
+            return 0l;
+        }
+
+        @Override
+        public long getArrivalTime()
+        {
+            return 0l;
+        }
+    }
+}
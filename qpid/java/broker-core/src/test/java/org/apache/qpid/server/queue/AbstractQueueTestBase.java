@@ -221,6 +221,70 @@ abstract class AbstractQueueTestBase extends QpidTestCase
                    _consumer.getQueueContext().getReleasedEntry());
     }
 
+    /**
+     * Tests that more messages than fit in a single delivery batch are all delivered, in order.
+     */
+    public void testEnqueueManyMessagesThenRegisterConsumer() throws Exception
+    {
+        final int messageCount = 3 * Queue.DEFAULT_DELIVERY_BATCH_SIZE + 1;
+        List<ServerMessage> messages = new ArrayList<ServerMessage>();
+        for(int i = 0; i < messageCount; i++)
+        {
+            ServerMessage message = createMessage(new Long(i));
+            messages.add(message);
+            _queue.enqueue(message, null);
+        }
+        _consumer = (QueueConsumer<?>) _queue.addConsumer(_consumerTarget, null, messages.get(0).getClass(), "test",
+                                       EnumSet.of(ConsumerImpl.Option.ACQUIRES,
+                                                  ConsumerImpl.Option.SEES_REQUEUES));
+        Thread.sleep(150);
+
+        List<MessageInstance> delivered = _consumerTarget.getMessages();
+        assertEquals("Unexpected number of messages delivered", messageCount, delivered.size());
+        for(int i = 0; i < messageCount; i++)
+        {
+            assertEquals("Message delivered out of order", messages.get(i), delivered.get(i).getMessage());
+        }
+        assertEquals(messages.get(messageCount - 1), _consumer.getQueueContext().getLastSeenEntry().getMessage());
+    }
+
+    /**
+     * Tests that an entry deleted after it was claimed for a delivery batch is left out of the batch.
+     */
+    public void testEntryDeletedWhileBatchIsClaimedIsNotDelivered() throws Exception
+    {
+        final int messageCount = 3;
+        List<ServerMessage> messages = new ArrayList<ServerMessage>();
+        for(int i = 0; i < messageCount; i++)
+        {
+            ServerMessage message = createMessage(new Long(i));
+            messages.add(message);
+            _queue.enqueue(message, null);
+        }
+
+        MockConsumer browserTarget = new MockConsumer()
+        {
+            @Override
+            public int allocateCredit(final List<? extends MessageInstance> entries)
+            {
+                // another consumer takes and deletes the second entry once the batch has been claimed
+                if(entries.size() > 1 && entries.get(1).acquire())
+                {
+                    entries.get(1).delete();
+                }
+                return super.allocateCredit(entries);
+            }
+        };
+        _queue.addConsumer(browserTarget, null, messages.get(0).getClass(), "test",
+                           EnumSet.noneOf(ConsumerImpl.Option.class));
+        Thread.sleep(150);
+
+        List<MessageInstance> delivered = browserTarget.getMessages();
+        assertEquals("Unexpected number of messages delivered", messageCount - 1, delivered.size());
+        assertEquals("Unexpected first message", messages.get(0), delivered.get(0).getMessage());
+        assertEquals("Unexpected second message", messages.get(2), delivered.get(1).getMessage());
+    }
+
     /**
      * Tests that a released queue entry is resent to the subscriber.  Verifies also that the
      * QueueContext._releasedEntry is reset to null after the entry has been reset.
@@ -0,0 +1,104 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.qpid.server.message.MessageReference;
+import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class MessageGroupEntryIndexTest extends QpidTestCase
+{
+    private final MessageGroupEntryIndex _index = new MessageGroupEntryIndex();
+    private final QueueEntryList _queueEntryList = mock(QueueEntryList.class);
+    private long _entryId;
+
+    public void testEarliestAvailableEntryOfGroups()
+    {
+        QueueEntryImpl a1 = createEntry();
+        QueueEntryImpl b1 = createEntry();
+        QueueEntryImpl a2 = createEntry();
+        QueueEntryImpl c1 = createEntry();
+        _index.add("A", a1);
+        _index.add("B", b1);
+        _index.add("A", a2);
+        _index.add("C", c1);
+
+        assertSame(a1, _index.findEarliestAvailableEntry(Arrays.asList("A", "C")));
+        assertSame(b1, _index.findEarliestAvailableEntry(Arrays.asList("B", "C")));
+        assertSame(c1, _index.findEarliestAvailableEntry(Collections.singleton("C")));
+        assertNull(_index.findEarliestAvailableEntry(Collections.singleton("D")));
+
+        assertTrue(a1.acquire());
+        assertSame("Acquired entries should be skipped", a2,
+                   _index.findEarliestAvailableEntry(Collections.singleton("A")));
+    }
+
+    public void testDeletedEntriesLeaveTheIndex()
+    {
+        QueueEntryImpl a1 = createEntry();
+        QueueEntryImpl a2 = createEntry();
+        QueueEntryImpl b1 = createEntry();
+        _index.add("A", a1);
+        _index.add("A", a2);
+        _index.add("B", b1);
+        assertEquals(2, _index.getGroupCount());
+
+        a1.delete();
+        assertSame(a2, _index.findEarliestAvailableEntry(Collections.singleton("A")));
+
+        a2.delete();
+        assertNull(_index.findEarliestAvailableEntry(Collections.singleton("A")));
+        assertEquals("Empty group should have been removed", 1, _index.getGroupCount());
+
+        QueueEntryImpl a3 = createEntry();
+        _index.add("A", a3);
+        assertSame(a3, _index.findEarliestAvailableEntry(Collections.singleton("A")));
+    }
+
+    private QueueEntryImpl createEntry()
+    {
+        ServerMessage message = mock(ServerMessage.class);
+        MessageReference reference = mock(MessageReference.class);
+        when(reference.getMessage()).thenReturn(message);
+        when(message.newReference()).thenReturn(reference);
+
+        return new QueueEntryImpl(_queueEntryList, message, _entryId++)
+        {
+            @Override
+            public QueueEntryImpl getNextNode()
+            {
+                return null;
+            }
+
+            @Override
+            public QueueEntryImpl getNextValidEntry()
+            {
+                return null;
+            }
+        };
+    }
+}
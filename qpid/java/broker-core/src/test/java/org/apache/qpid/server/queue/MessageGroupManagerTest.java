@@ -0,0 +1,191 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.qpid.server.message.AMQMessageHeader;
+import org.apache.qpid.server.message.MessageInstance;
+import org.apache.qpid.server.message.MessageReference;
+import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class MessageGroupManagerTest extends QpidTestCase
+{
+    private static final String GROUP_HEADER = "group";
+
+    private final QueueEntryList _queueEntryList = mock(QueueEntryList.class);
+    private final List<QueueEntry> _resetEntries = new ArrayList<QueueEntry>();
+    private MessageGroupManager _manager;
+    private long _entryId;
+
+    private final MessageGroupManager.ConsumerResetHelper _resetHelper = new MessageGroupManager.ConsumerResetHelper()
+    {
+        @Override
+        public void resetSubPointersForGroups(final QueueConsumer<?> consumer, final boolean clearAssignments)
+        {
+            // as the queue does, find the entry to reset the consumers to before clearing the assignments
+            QueueEntry entry = _manager.findEarliestAssignedAvailableEntry(consumer);
+            if(clearAssignments)
+            {
+                _manager.clearAssignments(consumer);
+            }
+            if(entry != null)
+            {
+                _resetEntries.add(entry);
+            }
+        }
+
+        @Override
+        public boolean isEntryAheadOfConsumer(final QueueEntry entry, final QueueConsumer<?> sub)
+        {
+            return false;
+        }
+    };
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        when(_queueEntryList.getQueue()).thenReturn(mock(AMQQueue.class));
+    }
+
+    public void testDefinedGroupReassignedWhenAcquiredEntriesDequeued()
+    {
+        _manager = new DefinedGroupMessageGroupManager(GROUP_HEADER, "default", _resetHelper);
+        QueueConsumer<?> consumer1 = createConsumer();
+        QueueConsumer<?> consumer2 = createConsumer();
+        QueueEntryImpl a1 = createEntry("A");
+        QueueEntryImpl a2 = createEntry("A");
+
+        assertTrue(_manager.acceptMessage(consumer1, a1));
+        assertFalse("Group is assigned to another consumer", _manager.acceptMessage(consumer2, a2));
+        assertSame(consumer1, _manager.getAssignedConsumer(a2));
+
+        a1.delete();
+
+        assertEquals("Consumers should be reset to the skipped entry of the released group",
+                     a2, getOnlyResetEntry());
+        assertTrue(_manager.acceptMessage(consumer2, a2));
+        assertSame(consumer2, _manager.getAssignedConsumer(a2));
+    }
+
+    public void testDefinedGroupOfClosedConsumerReleasedWhenAcquiredEntriesDequeued()
+    {
+        _manager = new DefinedGroupMessageGroupManager(GROUP_HEADER, "default", _resetHelper);
+        QueueConsumer<?> consumer1 = createConsumer();
+        QueueConsumer<?> consumer2 = createConsumer();
+        QueueEntryImpl a1 = createEntry("A");
+        QueueEntryImpl a2 = createEntry("A");
+        QueueEntryImpl b1 = createEntry("B");
+
+        assertTrue(_manager.acceptMessage(consumer1, a1));
+        assertTrue(_manager.acceptMessage(consumer1, b1));
+        b1.release();
+
+        when(consumer1.isClosed()).thenReturn(true);
+        _resetHelper.resetSubPointersForGroups(consumer1, true);
+        _resetEntries.clear();
+
+        assertFalse("Group with an acquired entry should remain assigned to the closed consumer",
+                    _manager.acceptMessage(consumer2, a2));
+        assertTrue("Group without acquired entries should be released from the closed consumer",
+                   _manager.acceptMessage(consumer2, b1));
+
+        a1.delete();
+
+        assertEquals("Consumers should be reset to the skipped entry of the released group",
+                     a2, getOnlyResetEntry());
+        assertTrue(_manager.acceptMessage(consumer2, a2));
+        assertNull(_manager.findEarliestAssignedAvailableEntry(consumer1));
+    }
+
+    public void testAssignedConsumerGroupReleasedWhenConsumerCloses()
+    {
+        _manager = new AssignedConsumerMessageGroupManager(GROUP_HEADER, 100);
+        QueueConsumer<?> consumer1 = createConsumer();
+        QueueConsumer<?> consumer2 = createConsumer();
+        QueueEntryImpl a1 = createEntry("A");
+        QueueEntryImpl a2 = createEntry("A");
+
+        assertTrue(_manager.acceptMessage(consumer1, a1));
+        assertFalse("Group is assigned to another consumer", _manager.acceptMessage(consumer2, a2));
+        assertSame(consumer1, _manager.getAssignedConsumer(a2));
+
+        a1.delete();
+        assertTrue("Group should remain assigned while its consumer is open", _resetEntries.isEmpty());
+        assertFalse(_manager.acceptMessage(consumer2, a2));
+
+        when(consumer1.isClosed()).thenReturn(true);
+        _resetHelper.resetSubPointersForGroups(consumer1, true);
+
+        assertEquals("Consumers should be reset to the skipped entry of the released group",
+                     a2, getOnlyResetEntry());
+        assertNull(_manager.getAssignedConsumer(a2));
+        assertNull(_manager.findEarliestAssignedAvailableEntry(consumer1));
+        assertTrue(_manager.acceptMessage(consumer2, a2));
+    }
+
+    private QueueEntry getOnlyResetEntry()
+    {
+        assertEquals("Unexpected resets " + _resetEntries, 1, _resetEntries.size());
+        return _resetEntries.get(0);
+    }
+
+    private QueueConsumer<?> createConsumer()
+    {
+        QueueConsumer consumer = mock(QueueConsumer.class);
+        when(consumer.getOwningState()).thenReturn(new MessageInstance.ConsumerAcquiredState(consumer));
+        return consumer;
+    }
+
+    private QueueEntryImpl createEntry(final String group)
+    {
+        AMQMessageHeader header = mock(AMQMessageHeader.class);
+        when(header.getHeader(GROUP_HEADER)).thenReturn(group);
+        ServerMessage message = mock(ServerMessage.class);
+        when(message.getMessageHeader()).thenReturn(header);
+        MessageReference reference = mock(MessageReference.class);
+        when(reference.getMessage()).thenReturn(message);
+        when(message.newReference()).thenReturn(reference);
+
+        QueueEntryImpl entry = new QueueEntryImpl(_queueEntryList, message, _entryId++)
+        {
+            @Override
+            public QueueEntryImpl getNextNode()
+            {
+                return null;
+            }
+
+            @Override
+            public QueueEntryImpl getNextValidEntry()
+            {
+                return null;
+            }
+        };
+        _manager.entryAdded(entry);
+        return entry;
+    }
+}
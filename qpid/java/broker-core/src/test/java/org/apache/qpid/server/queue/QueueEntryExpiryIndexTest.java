@@ -0,0 +1,147 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class QueueEntryExpiryIndexTest extends QpidTestCase
+{
+    private static final long TICK = 100l;
+    private static final int WHEEL_SIZE = 8;
+
+    private QueueEntryExpiryIndex _index;
+    private final List<QueueEntry> _visited = new ArrayList<QueueEntry>();
+    private final QueueEntryVisitor _visitor = new QueueEntryVisitor()
+    {
+        @Override
+        public boolean visit(final QueueEntry entry)
+        {
+            _visited.add(entry);
+            // the queue would dequeue the expired entry
+            when(((QueueEntryImpl) entry).isDeleted()).thenReturn(true);
+            return false;
+        }
+    };
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _index = new QueueEntryExpiryIndex(TICK, WHEEL_SIZE, 0l);
+    }
+
+    public void testEntriesVisitedOnceTheirTickHasElapsed()
+    {
+        QueueEntryImpl soon = mock(QueueEntryImpl.class);
+        QueueEntryImpl later = mock(QueueEntryImpl.class);
+        _index.add(soon, 250l);
+        _index.add(later, 450l);
+
+        _index.expire(250l, _visitor);
+        assertTrue("No entry should have been visited", _visited.isEmpty());
+
+        _index.expire(300l, _visitor);
+        assertEquals(Collections.<QueueEntry>singletonList(soon), _visited);
+
+        _visited.clear();
+        _index.expire(500l, _visitor);
+        assertEquals(Collections.<QueueEntry>singletonList(later), _visited);
+        assertEquals(0, _index.size());
+    }
+
+    public void testEntriesBeyondTheWheelAreVisited()
+    {
+        QueueEntryImpl overflow = mock(QueueEntryImpl.class);
+        QueueEntryImpl wrapped = mock(QueueEntryImpl.class);
+        _index.add(overflow, TICK * WHEEL_SIZE * 3 + 10l);
+        _index.add(wrapped, TICK * WHEEL_SIZE + 10l);
+
+        _index.expire(TICK * WHEEL_SIZE, _visitor);
+        assertTrue("No entry should have been visited", _visited.isEmpty());
+
+        _index.expire(TICK * (WHEEL_SIZE + 1), _visitor);
+        assertEquals(Collections.<QueueEntry>singletonList(wrapped), _visited);
+
+        _visited.clear();
+        _index.expire(TICK * WHEEL_SIZE * 2, _visitor);
+        assertTrue("No entry should have been visited", _visited.isEmpty());
+
+        _index.expire(TICK * (WHEEL_SIZE * 3 + 1), _visitor);
+        assertEquals(Collections.<QueueEntry>singletonList(overflow), _visited);
+        assertEquals(0, _index.size());
+    }
+
+    public void testEntryAlreadyExpiredWhenAdded()
+    {
+        _index.expire(1000l, _visitor);
+
+        QueueEntryImpl entry = mock(QueueEntryImpl.class);
+        _index.add(entry, 500l);
+
+        _index.expire(1000l, _visitor);
+        assertEquals(Collections.<QueueEntry>singletonList(entry), _visited);
+    }
+
+    public void testDeletedEntriesAreNotVisited()
+    {
+        QueueEntryImpl deleted = mock(QueueEntryImpl.class);
+        QueueEntryImpl live = mock(QueueEntryImpl.class);
+        _index.add(deleted, 150l);
+        _index.add(live, 150l);
+        when(deleted.isDeleted()).thenReturn(true);
+
+        _index.expire(200l, _visitor);
+        assertEquals(Collections.<QueueEntry>singletonList(live), _visited);
+        assertEquals(0, _index.size());
+    }
+
+    public void testEntryLeftOnTheQueueIsVisitedAgain()
+    {
+        QueueEntryImpl acquired = mock(QueueEntryImpl.class);
+        _index.add(acquired, 150l);
+
+        QueueEntryVisitor visitor = new QueueEntryVisitor()
+        {
+            @Override
+            public boolean visit(final QueueEntry entry)
+            {
+                _visited.add(entry);
+                return false;
+            }
+        };
+
+        _index.expire(200l, visitor);
+        _index.expire(300l, visitor);
+        assertEquals(2, _visited.size());
+
+        when(acquired.isDeleted()).thenReturn(true);
+        _index.expire(400l, visitor);
+        assertEquals(2, _visited.size());
+        assertEquals(0, _index.size());
+    }
+}
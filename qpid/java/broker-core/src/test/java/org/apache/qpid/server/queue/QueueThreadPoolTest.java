@@ -23,7 +23,6 @@ package org.apache.qpid.server.queue;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.apache.qpid.pool.ReferenceCountingExecutorService;
 import org.apache.qpid.server.model.Queue;
 import org.apache.qpid.server.model.UUIDGenerator;
 import org.apache.qpid.server.util.BrokerTestHelper;
@@ -49,7 +48,7 @@ public class QueueThreadPoolTest extends QpidTestCase
 
     public void test() throws Exception
     {
-        int initialCount = ReferenceCountingExecutorService.getInstance().getReferenceCount();
+        int initialCount = ShardedDeliveryScheduler.getInstance().getReferenceCount();
         VirtualHostImpl test = BrokerTestHelper.createVirtualHost("test");
 
         try
@@ -59,13 +58,15 @@ public class QueueThreadPoolTest extends QpidTestCase
             attributes.put(Queue.NAME, "test");
             AMQQueue queue = test.createQueue(attributes);
 
-            assertFalse("Creation did not start Pool.", ReferenceCountingExecutorService.getInstance().getPool().isShutdown());
+            assertEquals("Creation did not start the delivery shards.",
+                         ShardedDeliveryScheduler.getInstance().getShardCount(),
+                         ShardedDeliveryScheduler.getInstance().getShardStatistics().size());
 
-            assertEquals("References not increased", initialCount + 1, ReferenceCountingExecutorService.getInstance().getReferenceCount());
+            assertEquals("References not increased", initialCount + 1, ShardedDeliveryScheduler.getInstance().getReferenceCount());
 
             queue.close();
 
-            assertEquals("References not decreased", initialCount , ReferenceCountingExecutorService.getInstance().getReferenceCount());
+            assertEquals("References not decreased", initialCount , ShardedDeliveryScheduler.getInstance().getReferenceCount());
         }
         finally
         {
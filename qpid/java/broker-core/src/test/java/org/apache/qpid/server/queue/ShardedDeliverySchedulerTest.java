@@ -0,0 +1,312 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.security.auth.Subject;
+
+import org.apache.qpid.server.security.auth.UsernamePrincipal;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class ShardedDeliverySchedulerTest extends QpidTestCase
+{
+    private final ShardedDeliveryScheduler _scheduler = ShardedDeliveryScheduler.getInstance();
+
+    public void testTasksExecuted() throws Exception
+    {
+        Executor executor = _scheduler.acquireExecutor();
+        try
+        {
+            final CountDownLatch latch = new CountDownLatch(100);
+            for (int i = 0; i < 100; i++)
+            {
+                executor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        latch.countDown();
+                    }
+                });
+            }
+
+            assertTrue("Not all tasks were executed", latch.await(5, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            _scheduler.releaseExecutor(executor);
+        }
+    }
+
+    public void testIdleShardStealsFromBusyShard() throws Exception
+    {
+        if (_scheduler.getShardCount() < 2)
+        {
+            return;
+        }
+
+        Executor executor = _scheduler.acquireExecutor();
+        try
+        {
+            final CountDownLatch blocked = new CountDownLatch(1);
+            final CountDownLatch stolen = new CountDownLatch(1);
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        stolen.await(5, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    blocked.countDown();
+                }
+            });
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    stolen.countDown();
+                }
+            });
+
+            assertTrue("Task queued behind a busy shard was not stolen", stolen.await(5, TimeUnit.SECONDS));
+            assertTrue("Blocking task did not complete", blocked.await(5, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            _scheduler.releaseExecutor(executor);
+        }
+    }
+
+    public void testBlockedTaskDoesNotDelayOtherTasksOnItsShard() throws Exception
+    {
+        Executor executor = _scheduler.acquireExecutor();
+        final int shardCount = _scheduler.getShardCount();
+        final CountDownLatch blockedStarted = new CountDownLatch(shardCount);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        try
+        {
+            // like a delivery to a consumer whose send blocks, one on every shard, so that none can steal
+            for (int i = 0; i < shardCount; i++)
+            {
+                executor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        blockedStarted.countDown();
+                        try
+                        {
+                            unblock.await(10, TimeUnit.SECONDS);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+            assertTrue("Blocking tasks did not start on every shard", blockedStarted.await(5, TimeUnit.SECONDS));
+
+            final CountDownLatch otherRun = new CountDownLatch(1);
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    otherRun.countDown();
+                }
+            });
+
+            assertTrue("Task was held up by a blocked task on its shard", otherRun.await(5, TimeUnit.SECONDS));
+            assertEquals("Blocked tasks should still be blocked", 1, unblock.getCount());
+        }
+        finally
+        {
+            unblock.countDown();
+            _scheduler.releaseExecutor(executor);
+        }
+    }
+
+    public void testStatisticsReported() throws Exception
+    {
+        Executor executor = _scheduler.acquireExecutor();
+        try
+        {
+            Map<String, Object> statistics = _scheduler.getShardStatistics();
+            assertEquals("Unexpected number of shards", _scheduler.getShardCount(), statistics.size());
+            for (Object shardStatistics : statistics.values())
+            {
+                Map<?, ?> values = (Map<?, ?>) shardStatistics;
+                assertTrue("Utilisation missing", values.containsKey("utilisation"));
+                assertTrue("Queue count missing", values.containsKey("queues"));
+            }
+        }
+        finally
+        {
+            _scheduler.releaseExecutor(executor);
+        }
+    }
+
+    public void testStatisticsUnchangedByReading() throws Exception
+    {
+        Executor executor = _scheduler.acquireExecutor();
+        try
+        {
+            final CountDownLatch latch = new CountDownLatch(1);
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        Thread.sleep(20l);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    latch.countDown();
+                }
+            });
+            assertTrue("Task was not executed", latch.await(5, TimeUnit.SECONDS));
+
+            // the busy time is counted once the task has returned, just after it counts down the latch
+            final long deadline = System.currentTimeMillis() + 5000l;
+            while (getTotalBusyTime(_scheduler.getShardStatistics()) < 20l && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10l);
+            }
+
+            Map<String, Object> first = _scheduler.getShardStatistics();
+            Map<String, Object> second = _scheduler.getShardStatistics();
+            for (String shard : first.keySet())
+            {
+                Map<?, ?> firstValues = (Map<?, ?>) first.get(shard);
+                Map<?, ?> secondValues = (Map<?, ?>) second.get(shard);
+                assertEquals("Busy time of " + shard + " changed by reading the statistics",
+                             firstValues.get("busyTime"), secondValues.get("busyTime"));
+            }
+            assertTrue("Time spent running the task was not counted", getTotalBusyTime(second) >= 20l);
+        }
+        finally
+        {
+            _scheduler.releaseExecutor(executor);
+        }
+    }
+
+    public void testShardThreadsDoNotInheritSecurityContext() throws Exception
+    {
+        if (_scheduler.getReferenceCount() != 0)
+        {
+            return;
+        }
+
+        final Subject subject = new Subject();
+        subject.getPrincipals().add(new UsernamePrincipal("user"));
+        Executor executor = Subject.doAs(subject, new PrivilegedAction<Executor>()
+        {
+            @Override
+            public Executor run()
+            {
+                return _scheduler.acquireExecutor();
+            }
+        });
+        try
+        {
+            final AtomicReference<Thread> thread = new AtomicReference<Thread>();
+            final AtomicReference<Subject> inheritedSubject = new AtomicReference<Subject>();
+            final CountDownLatch latch = new CountDownLatch(1);
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    thread.set(Thread.currentThread());
+                    inheritedSubject.set(Subject.getSubject(AccessController.getContext()));
+                    latch.countDown();
+                }
+            });
+            assertTrue("Task was not executed", latch.await(5, TimeUnit.SECONDS));
+
+            assertTrue("Shard thread should be a daemon", thread.get().isDaemon());
+            assertTrue("Unexpected shard thread name " + thread.get().getName(),
+                       thread.get().getName().startsWith("DeliveryShard-"));
+            assertNotSame("Shard thread inherited the subject of the creator of the first queue",
+                          subject, inheritedSubject.get());
+        }
+        finally
+        {
+            _scheduler.releaseExecutor(executor);
+        }
+    }
+
+    public void testExecutionRejectedOnceReleased() throws Exception
+    {
+        int initialCount = _scheduler.getReferenceCount();
+        Executor executor = _scheduler.acquireExecutor();
+        _scheduler.releaseExecutor(executor);
+
+        if (initialCount == 0)
+        {
+            try
+            {
+                executor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                    }
+                });
+                fail("Execution should be rejected once the scheduler has been stopped");
+            }
+            catch (RejectedExecutionException e)
+            {
+                // pass
+            }
+        }
+    }
+
+    private long getTotalBusyTime(Map<String, Object> statistics)
+    {
+        long busyTime = 0l;
+        for (Object shardStatistics : statistics.values())
+        {
+            busyTime += (Long) ((Map<?, ?>) shardStatistics).get("busyTime");
+        }
+        return busyTime;
+    }
+}
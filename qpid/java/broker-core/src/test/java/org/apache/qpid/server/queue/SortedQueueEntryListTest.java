@@ -28,6 +28,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.qpid.server.configuration.updater.CurrentThreadTaskExecutor;
 import org.apache.qpid.server.logging.EventLogger;
@@ -415,6 +417,78 @@ public class SortedQueueEntryListTest extends QueueEntryListTestBase
         validateEntry(entry, "D", 2);
     }
 
+    public void testConcurrentAddAndDelete() throws Exception
+    {
+        final SortedQueueEntryList list = new SortedQueueEntryList(_testQueue);
+        final int threadCount = 4;
+        final int messagesPerThread = 250;
+
+        final ServerMessage[][] messages = new ServerMessage[threadCount][messagesPerThread];
+        long messageId = 0L;
+        for(int i = 0; i < threadCount; i++)
+        {
+            for(int j = 0; j < messagesPerThread; j++)
+            {
+                messages[i][j] = generateTestMessage(messageId++, keys[(int) (messageId % keys.length)]);
+            }
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[threadCount];
+        for(int i = 0; i < threadCount; i++)
+        {
+            final ServerMessage[] threadMessages = messages[i];
+            threads[i] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        for(int j = 0; j < threadMessages.length; j++)
+                        {
+                            QueueEntry entry = list.add(threadMessages[j]);
+                            if(j % 2 == 0)
+                            {
+                                entry.acquire();
+                                entry.delete();
+                            }
+                        }
+                    }
+                    catch(Throwable t)
+                    {
+                        failure.set(t);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for(Thread thread : threads)
+        {
+            thread.join(10000L);
+        }
+        assertNull("Unexpected failure", failure.get());
+
+        final QueueEntryIterator iter = list.iterator();
+        QueueEntry previous = null;
+        int count = 0;
+        while(iter.advance())
+        {
+            QueueEntry entry = iter.getNode();
+            assertFalse("Deleted entry returned by iterator", entry.isDeleted());
+            if(previous != null)
+            {
+                assertTrue("Entries out of order", previous.compareTo(entry) < 0);
+            }
+            previous = entry;
+            count++;
+        }
+        assertEquals("Unexpected number of entries", threadCount * messagesPerThread / 2, count);
+    }
+
     private void validateEntry(final SortedQueueEntry entry, final String expectedSortKey, final long expectedMessageId)
     {
         assertEquals("Sorted queue entry value is not as expected",
@@ -0,0 +1,133 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.stats;
+
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the {@link LatencyHistogram} class.
+ */
+public class LatencyHistogramTest extends TestCase
+{
+    public void testBuckets()
+    {
+        for (long value = 0; value < 16; value++)
+        {
+            assertEquals(value, LatencyHistogram.getBucketUpperBound(LatencyHistogram.getBucket(value)));
+        }
+        assertEquals(16, LatencyHistogram.getBucket(16));
+        assertEquals(31, LatencyHistogram.getBucket(31));
+        assertEquals(32, LatencyHistogram.getBucket(32));
+        assertEquals(32, LatencyHistogram.getBucket(33));
+        assertEquals(33, LatencyHistogram.getBucketUpperBound(32));
+
+        long previousUpperBound = -1;
+        for (int bucket = 0; bucket <= LatencyHistogram.getBucket(LatencyHistogram.MAX_VALUE); bucket++)
+        {
+            long upperBound = LatencyHistogram.getBucketUpperBound(bucket);
+            assertEquals(previousUpperBound + 1, lowerBound(bucket));
+            assertEquals(bucket, LatencyHistogram.getBucket(upperBound));
+            assertTrue("Bucket " + bucket + " is too wide", upperBound - lowerBound(bucket) <= upperBound / 16);
+            previousUpperBound = upperBound;
+        }
+        assertEquals(LatencyHistogram.MAX_VALUE, previousUpperBound);
+    }
+
+    private long lowerBound(int bucket)
+    {
+        return bucket == 0 ? 0 : LatencyHistogram.getBucketUpperBound(bucket - 1) + 1;
+    }
+
+    public void testPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+
+        for (long value = 1; value <= 1000; value++)
+        {
+            histogram.record(value);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500, histogram.getMean());
+        assertEquals(1000, histogram.getMax());
+        assertWithinBucket(500, histogram.getValueAtPercentile(50));
+        assertWithinBucket(900, histogram.getValueAtPercentile(90));
+        assertWithinBucket(990, histogram.getValueAtPercentile(99));
+        assertEquals("Percentiles should not exceed the maximum", 1000, histogram.getValueAtPercentile(100));
+    }
+
+    private void assertWithinBucket(long expected, long actual)
+    {
+        assertTrue("Expected about " + expected + " but was " + actual,
+                   actual >= expected && actual <= expected + expected / 16);
+    }
+
+    public void testOutOfRangeValues()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getValueAtPercentile(100));
+    }
+
+    public void testAddAndReset()
+    {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(10);
+        second.record(20);
+        second.record(30);
+
+        LatencyHistogram total = new LatencyHistogram();
+        total.add(first);
+        total.add(second);
+        total.add(new LatencyHistogram());
+        assertEquals(3, total.getCount());
+        assertEquals(20, total.getMean());
+        assertEquals(30, total.getMax());
+
+        total.reset();
+        assertEquals(0, total.getCount());
+        assertEquals(0, total.getMax());
+        assertEquals(0, total.getValueAtPercentile(50));
+        assertEquals("Reset should not affect the added histograms", 2, second.getCount());
+    }
+
+    public void testSummary()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(7);
+
+        Map<String, Object> summary = histogram.getSummary();
+        assertEquals(1l, summary.get("count"));
+        assertEquals(7l, summary.get("mean"));
+        assertEquals(7l, summary.get("p50"));
+        assertEquals(7l, summary.get("p999"));
+        assertEquals(7l, summary.get("max"));
+    }
+}
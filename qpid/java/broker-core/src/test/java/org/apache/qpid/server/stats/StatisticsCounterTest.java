@@ -146,4 +146,37 @@ public class StatisticsCounterTest extends TestCase
         Thread.sleep(1000);
         assertEquals(0.0, counter.getRate());
     }
+
+    /**
+     * Test that no events are lost when many threads register them at once.
+     */
+    public void testConcurrentTotal() throws Exception
+    {
+        final StatisticsCounter counter = new StatisticsCounter("test", 1000L);
+        final int threadCount = 8;
+        final int eventsPerThread = 100000;
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++)
+        {
+            threads[i] = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    for (int j = 0; j < eventsPerThread; j++)
+                    {
+                        counter.registerEvent(2L);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        assertEquals(2L * threadCount * eventsPerThread, counter.getTotal());
+
+        counter.reset();
+        assertEquals(0L, counter.getTotal());
+    }
 }
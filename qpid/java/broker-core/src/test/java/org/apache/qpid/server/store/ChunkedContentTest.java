@@ -0,0 +1,132 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class ChunkedContentTest extends QpidTestCase
+{
+    private static final int CONTENT_SIZE = 2 * ChunkedContent.CHUNK_SIZE + 100;
+
+    private byte[] _bytes;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _bytes = new byte[CONTENT_SIZE];
+        for (int i = 0; i < _bytes.length; i++)
+        {
+            _bytes[i] = (byte) i;
+        }
+    }
+
+    public void testAppendInFramesSplitsIntoFixedSizeChunks()
+    {
+        ChunkedContent content = new ChunkedContent(CONTENT_SIZE);
+        for (int offset = 0; offset < CONTENT_SIZE; offset += 1000)
+        {
+            content.append(ByteBuffer.wrap(_bytes, offset, Math.min(1000, CONTENT_SIZE - offset)));
+        }
+
+        assertEquals("Unexpected length", CONTENT_SIZE, content.getLength());
+        assertEquals("Unexpected number of chunks", 3, content.getChunkCount());
+        assertEquals("Unexpected size of first chunk", ChunkedContent.CHUNK_SIZE, content.getChunk(0).remaining());
+        assertEquals("Unexpected size of last chunk", 100, content.getChunk(2).remaining());
+        assertContent(content);
+    }
+
+    public void testAppendBeyondExpectedLength()
+    {
+        ChunkedContent content = new ChunkedContent(10);
+        content.append(ByteBuffer.wrap(_bytes, 0, 10));
+        content.append(ByteBuffer.wrap(_bytes, 10, CONTENT_SIZE - 10));
+
+        assertEquals("Unexpected length", CONTENT_SIZE, content.getLength());
+        assertEquals("Unexpected number of chunks", 3, content.getChunkCount());
+        assertContent(content);
+    }
+
+    public void testAddChunk()
+    {
+        ChunkedContent content = new ChunkedContent();
+        content.addChunk(Arrays.copyOfRange(_bytes, 0, ChunkedContent.CHUNK_SIZE));
+        content.addChunk(Arrays.copyOfRange(_bytes, ChunkedContent.CHUNK_SIZE, 2 * ChunkedContent.CHUNK_SIZE));
+        content.addChunk(Arrays.copyOfRange(_bytes, 2 * ChunkedContent.CHUNK_SIZE, CONTENT_SIZE));
+
+        assertContent(content);
+
+        try
+        {
+            content.addChunk(new byte[1]);
+            fail("Should not be able to add a chunk after a partial chunk");
+        }
+        catch (IllegalStateException e)
+        {
+            // pass
+        }
+    }
+
+    public void testReadAcrossChunkBoundary()
+    {
+        ChunkedContent content = new ChunkedContent(CONTENT_SIZE);
+        content.append(ByteBuffer.wrap(_bytes));
+
+        int offset = ChunkedContent.CHUNK_SIZE - 10;
+        ByteBuffer dst = ByteBuffer.allocate(20);
+        assertEquals("Unexpected number of bytes read", 20, content.read(offset, dst));
+        assertTrue("Unexpected content", Arrays.equals(Arrays.copyOfRange(_bytes, offset, offset + 20), dst.array()));
+
+        ByteBuffer buf = content.read(offset, 20);
+        assertEquals("Unexpected buffer size", 20, buf.remaining());
+        byte[] read = new byte[20];
+        buf.get(read);
+        assertTrue("Unexpected content", Arrays.equals(Arrays.copyOfRange(_bytes, offset, offset + 20), read));
+    }
+
+    public void testReadPastEnd()
+    {
+        ChunkedContent content = new ChunkedContent(CONTENT_SIZE);
+        content.append(ByteBuffer.wrap(_bytes));
+
+        assertEquals("Unexpected buffer size", 10, content.read(CONTENT_SIZE - 10, 100).remaining());
+        assertEquals("Unexpected number of bytes read", 0, content.read(CONTENT_SIZE, ByteBuffer.allocate(10)));
+        try
+        {
+            content.read(CONTENT_SIZE + 1, ByteBuffer.allocate(10));
+            fail("Should not be able to read beyond the end of the content");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // pass
+        }
+    }
+
+    private void assertContent(final ChunkedContent content)
+    {
+        ByteBuffer dst = ByteBuffer.allocate(CONTENT_SIZE);
+        assertEquals("Unexpected number of bytes read", CONTENT_SIZE, content.read(0, dst));
+        assertTrue("Unexpected content", Arrays.equals(_bytes, dst.array()));
+    }
+}
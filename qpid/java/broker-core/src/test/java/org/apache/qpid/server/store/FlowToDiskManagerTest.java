@@ -0,0 +1,200 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+import org.apache.qpid.test.utils.TestFileUtils;
+import org.apache.qpid.util.FileUtils;
+
+public class FlowToDiskManagerTest extends QpidTestCase
+{
+    private static final int CONTENT_SIZE = 100;
+
+    private File _overflowDirectory;
+    private FlowToDiskManager _flowToDiskManager;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _overflowDirectory = TestFileUtils.createTestDirectory("flowToDisk", true);
+        _flowToDiskManager = new FlowToDiskManager(2 * CONTENT_SIZE + CONTENT_SIZE / 2, _overflowDirectory);
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            _flowToDiskManager.close();
+            super.tearDown();
+        }
+        finally
+        {
+            FileUtils.delete(_overflowDirectory, true);
+        }
+    }
+
+    public void testDisabledManagerDoesNotRegisterContent()
+    {
+        StoredMemoryMessage<TestMessageMetaData> message = createMessage(FlowToDiskManager.DISABLED, 1l);
+
+        assertFalse("Manager should be disabled", FlowToDiskManager.DISABLED.isEnabled());
+        assertEquals("Unexpected in memory bytes", 0l, FlowToDiskManager.DISABLED.getInMemoryBytes());
+        assertContent(message, 1l);
+    }
+
+    public void testContentWithinThresholdIsHeldInMemory()
+    {
+        createMessage(_flowToDiskManager, 1l);
+        createMessage(_flowToDiskManager, 2l);
+
+        assertEquals("Unexpected in memory bytes", 2l * CONTENT_SIZE, _flowToDiskManager.getInMemoryBytes());
+        assertEquals("Unexpected evicted messages", 0l, _flowToDiskManager.getEvictedMessages());
+    }
+
+    public void testNewestContentIsFlowedToDiskAndReadBack()
+    {
+        StoredMemoryMessage<TestMessageMetaData> first = createMessage(_flowToDiskManager, 1l);
+        StoredMemoryMessage<TestMessageMetaData> second = createMessage(_flowToDiskManager, 2l);
+        StoredMemoryMessage<TestMessageMetaData> third = createMessage(_flowToDiskManager, 3l);
+
+        assertEquals("Unexpected in memory bytes", 2l * CONTENT_SIZE, _flowToDiskManager.getInMemoryBytes());
+        assertEquals("Unexpected evicted messages", 1l, _flowToDiskManager.getEvictedMessages());
+        assertEquals("Unexpected evicted bytes", (long) CONTENT_SIZE, _flowToDiskManager.getEvictedBytes());
+
+        assertContent(first, 1l);
+        assertContent(second, 2l);
+        assertEquals("Content should not have been reloaded", 0l, _flowToDiskManager.getReloadCount());
+
+        assertContent(third, 3l);
+        assertEquals("Unexpected reload count", 2l, _flowToDiskManager.getReloadCount());
+    }
+
+    public void testRemoveReleasesContent()
+    {
+        StoredMemoryMessage<TestMessageMetaData> first = createMessage(_flowToDiskManager, 1l);
+        StoredMemoryMessage<TestMessageMetaData> second = createMessage(_flowToDiskManager, 2l);
+
+        first.remove();
+        assertEquals("Unexpected in memory bytes", (long) CONTENT_SIZE, _flowToDiskManager.getInMemoryBytes());
+
+        createMessage(_flowToDiskManager, 3l);
+        assertEquals("No message should have been evicted", 0l, _flowToDiskManager.getEvictedMessages());
+
+        second.remove();
+        assertEquals("Unexpected in memory bytes", (long) CONTENT_SIZE, _flowToDiskManager.getInMemoryBytes());
+    }
+
+    public void testLoweringThresholdFlowsContentToDisk()
+    {
+        StoredMemoryMessage<TestMessageMetaData> first = createMessage(_flowToDiskManager, 1l);
+        StoredMemoryMessage<TestMessageMetaData> second = createMessage(_flowToDiskManager, 2l);
+
+        _flowToDiskManager.setThreshold(CONTENT_SIZE);
+
+        assertEquals("Unexpected in memory bytes", (long) CONTENT_SIZE, _flowToDiskManager.getInMemoryBytes());
+        assertEquals("Unexpected evicted messages", 1l, _flowToDiskManager.getEvictedMessages());
+        assertContent(first, 1l);
+        assertContent(second, 2l);
+        assertEquals("Unexpected reload count", 2l, _flowToDiskManager.getReloadCount());
+    }
+
+    public void testThresholdSetAfterCreationEnablesFlowToDisk()
+    {
+        FlowToDiskManager manager = new FlowToDiskManager(0l, _overflowDirectory);
+        try
+        {
+            StoredMemoryMessage<TestMessageMetaData> unregistered = createMessage(manager, 1l);
+            assertEquals("Content should not be registered while disabled", 0l, manager.getInMemoryBytes());
+
+            manager.setThreshold(CONTENT_SIZE);
+            assertTrue("Manager should be enabled", manager.isEnabled());
+
+            StoredMemoryMessage<TestMessageMetaData> second = createMessage(manager, 2l);
+            StoredMemoryMessage<TestMessageMetaData> third = createMessage(manager, 3l);
+
+            assertEquals("Unexpected in memory bytes", (long) CONTENT_SIZE, manager.getInMemoryBytes());
+            assertEquals("Unexpected evicted messages", 1l, manager.getEvictedMessages());
+            assertContent(unregistered, 1l);
+            assertContent(third, 3l);
+
+            manager.setThreshold(0l);
+            second.remove();
+            assertEquals("Content registered before disabling should be released", 0l, manager.getInMemoryBytes());
+        }
+        finally
+        {
+            manager.close();
+        }
+    }
+
+    public void testCloseDeletesOverflowFiles()
+    {
+        createMessage(_flowToDiskManager, 1l);
+        createMessage(_flowToDiskManager, 2l);
+        createMessage(_flowToDiskManager, 3l);
+
+        assertEquals("Unexpected number of overflow files", 1, _overflowDirectory.list().length);
+
+        _flowToDiskManager.close();
+
+        assertFalse("Overflow directory should have been deleted", _overflowDirectory.exists());
+        assertEquals("Unexpected in memory bytes", 0l, _flowToDiskManager.getInMemoryBytes());
+    }
+
+    private StoredMemoryMessage<TestMessageMetaData> createMessage(final FlowToDiskManager manager,
+                                                                   final long messageNumber)
+    {
+        StoredMemoryMessage<TestMessageMetaData> message =
+                new StoredMemoryMessage<TestMessageMetaData>(messageNumber,
+                                                             new TestMessageMetaData(messageNumber, CONTENT_SIZE),
+                                                             manager);
+        message.addContent(0, createContent(messageNumber));
+        return message;
+    }
+
+    private ByteBuffer createContent(final long messageNumber)
+    {
+        ByteBuffer content = ByteBuffer.allocate(CONTENT_SIZE);
+        while(content.hasRemaining())
+        {
+            content.put((byte) messageNumber);
+        }
+        content.flip();
+        return content;
+    }
+
+    private void assertContent(final StoredMessage<?> message, final long messageNumber)
+    {
+        ByteBuffer content = ByteBuffer.allocate(CONTENT_SIZE);
+        assertEquals("Unexpected content length", CONTENT_SIZE, message.getContent(0, content));
+        content.flip();
+        assertEquals("Unexpected content", createContent(messageNumber), content);
+
+        ByteBuffer slice = message.getContent(CONTENT_SIZE / 2, CONTENT_SIZE / 2);
+        assertEquals("Unexpected partial content length", CONTENT_SIZE / 2, slice.remaining());
+        assertEquals("Unexpected partial content", (byte) messageNumber, slice.get(0));
+    }
+}
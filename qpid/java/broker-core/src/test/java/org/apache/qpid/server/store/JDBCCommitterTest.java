@@ -0,0 +1,190 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store;
+
+import static org.mockito.Mockito.mock;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class JDBCCommitterTest extends QpidTestCase
+{
+    private static final String FAILING_JOB = "failing";
+
+    private final List<List<String>> _written = Collections.synchronizedList(new ArrayList<List<String>>());
+    private final List<String> _committed = Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch _firstWriteStarted = new CountDownLatch(1);
+    private final CountDownLatch _firstWriteAllowed = new CountDownLatch(1);
+
+    private JDBCCommitter<String> _committer;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _committer = new JDBCCommitter<String>(getTestName(), new TestWriter());
+        _committer.start();
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            _firstWriteAllowed.countDown();
+            _committer.stop();
+        }
+        finally
+        {
+            super.tearDown();
+        }
+    }
+
+    public void testWaitingTransactionsAreWrittenTogether() throws Exception
+    {
+        StoreFuture first = _committer.commit("1");
+        assertTrue("First write did not start", _firstWriteStarted.await(5, TimeUnit.SECONDS));
+
+        StoreFuture second = _committer.commit("2");
+        StoreFuture third = _committer.commit("3");
+        assertFalse("Commit should not be complete before it is written", second.isComplete());
+
+        _firstWriteAllowed.countDown();
+        first.waitForCompletion();
+        second.waitForCompletion();
+        third.waitForCompletion();
+
+        assertEquals("Unexpected writes", 2, _written.size());
+        assertEquals("Unexpected first write", Collections.singletonList("1"), _written.get(0));
+        assertEquals("Waiting transactions should be written in one database transaction",
+                     Arrays.asList("2", "3"), _written.get(1));
+        assertEquals("Unexpected committed transactions", Arrays.asList("1", "2", "3"), _committed);
+    }
+
+    public void testTransactionsAreWrittenInCommitOrder() throws Exception
+    {
+        // a message store relies on this to delete a message after the waiting transaction which stores it
+        StoreFuture first = _committer.commit("1");
+        assertTrue("First write did not start", _firstWriteStarted.await(5, TimeUnit.SECONDS));
+
+        StoreFuture store = _committer.commit("store");
+        StoreFuture remove = _committer.commit("remove");
+
+        _firstWriteAllowed.countDown();
+        first.waitForCompletion();
+        remove.waitForCompletion();
+        assertTrue("Earlier transaction should be complete", store.isComplete());
+
+        assertEquals("Unexpected writes", 2, _written.size());
+        assertEquals("Transactions should be written in the order they were committed",
+                     Arrays.asList("store", "remove"), _written.get(1));
+        assertEquals("Unexpected committed transactions", Arrays.asList("1", "store", "remove"), _committed);
+    }
+
+    public void testFailingTransactionIsRetriedAlone() throws Exception
+    {
+        StoreFuture first = _committer.commit("1");
+        assertTrue("First write did not start", _firstWriteStarted.await(5, TimeUnit.SECONDS));
+
+        StoreFuture second = _committer.commit("2");
+        StoreFuture failing = _committer.commit(FAILING_JOB);
+        StoreFuture third = _committer.commit("3");
+
+        _firstWriteAllowed.countDown();
+        first.waitForCompletion();
+        second.waitForCompletion();
+        third.waitForCompletion();
+        try
+        {
+            failing.waitForCompletion();
+            fail("Exception not thrown");
+        }
+        catch (StoreException e)
+        {
+            // pass
+        }
+
+        assertEquals("Unexpected committed transactions", Arrays.asList("1", "2", "3"), _committed);
+    }
+
+    public void testCommitAfterStopIsRejected() throws Exception
+    {
+        _firstWriteAllowed.countDown();
+        StoreFuture future = _committer.commit("1");
+        _committer.stop();
+
+        assertTrue("Transaction committed before stop should be written", future.isComplete());
+        try
+        {
+            _committer.commit("2");
+            fail("Exception not thrown");
+        }
+        catch (StoreException e)
+        {
+            // pass
+        }
+    }
+
+    private class TestWriter implements JDBCCommitter.Writer<String>
+    {
+        @Override
+        public Connection newConnection() throws SQLException
+        {
+            return mock(Connection.class);
+        }
+
+        @Override
+        public void write(final Connection connection, final List<String> jobs) throws SQLException
+        {
+            if(_firstWriteStarted.getCount() != 0)
+            {
+                _firstWriteStarted.countDown();
+                try
+                {
+                    _firstWriteAllowed.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            _written.add(new ArrayList<String>(jobs));
+            if(jobs.contains(FAILING_JOB))
+            {
+                throw new SQLException("Test failure");
+            }
+        }
+
+        @Override
+        public void committed(final List<String> jobs)
+        {
+            _committed.addAll(jobs);
+        }
+    }
+}
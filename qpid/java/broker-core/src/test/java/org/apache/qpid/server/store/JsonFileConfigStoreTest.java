@@ -29,6 +29,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -366,6 +367,144 @@ public class JsonFileConfigStoreTest extends QpidTestCase
     }
 
 
+    public void testJournalReplayedAfterUnexpectedStop() throws Exception
+    {
+        enableJournal(1000);
+        _store.openConfigurationStore(_parent);
+        createRootRecord();
+
+        final UUID queueId = new UUID(0, 1);
+        final UUID queue2Id = new UUID(1, 1);
+        Map<String,Object> queueAttr = new HashMap<String, Object>();
+        queueAttr.put("name", "q1");
+        _store.create(new ConfiguredObjectRecordImpl(queueId, "Queue", queueAttr, getRootAsParentMap()));
+        queueAttr.put("owner", "theowner");
+        _store.update(false, new ConfiguredObjectRecordImpl(queueId, "Queue", queueAttr, getRootAsParentMap()));
+        final ConfiguredObjectRecordImpl queue2Record =
+                new ConfiguredObjectRecordImpl(queue2Id, "Queue", Collections.<String, Object>singletonMap("name", "q2"), getRootAsParentMap());
+        _store.create(queue2Record);
+        _store.remove(queue2Record);
+
+        File jsonFile = new File(_storeLocation, _parent.getName() + ".json");
+        File journalFile = new File(_storeLocation, _parent.getName() + ".jnl");
+        assertTrue("Journal should hold the changes", journalFile.length() > 0);
+
+        // copy the files as a broker which stopped without closing the store would leave them
+        File copyLocation = TestFileUtils.createTestDirectory("json", true);
+        try
+        {
+            FileUtils.copy(jsonFile, new File(copyLocation, jsonFile.getName()));
+            FileUtils.copy(journalFile, new File(copyLocation, journalFile.getName()));
+            _store.closeConfigurationStore();
+
+            when(_parent.getStorePath()).thenReturn(copyLocation.getAbsolutePath());
+            _store.openConfigurationStore(_parent);
+            _store.visitConfiguredObjectRecords(_handler);
+            verify(_handler).handle(matchesRecord(queueId, "Queue", queueAttr));
+            verify(_handler).handle(matchesRecord(_rootRecord.getId(), VIRTUAL_HOST_TYPE, ANY_MAP));
+            verify(_handler, times(2)).handle(any(ConfiguredObjectRecord.class));
+            assertEquals("Journal should have been compacted on open",
+                         0, new File(copyLocation, journalFile.getName()).length());
+            _store.closeConfigurationStore();
+        }
+        finally
+        {
+            FileUtils.delete(copyLocation, true);
+        }
+    }
+
+    public void testJournalCompactedOnClose() throws Exception
+    {
+        enableJournal(1000);
+        _store.openConfigurationStore(_parent);
+        createRootRecord();
+
+        final UUID queueId = new UUID(0, 1);
+        final Map<String,Object> queueAttr = Collections.singletonMap("name", (Object) "q1");
+        _store.create(new ConfiguredObjectRecordImpl(queueId, "Queue", queueAttr, getRootAsParentMap()));
+        _store.closeConfigurationStore();
+
+        assertFalse("Journal should not exist after close",
+                    new File(_storeLocation, _parent.getName() + ".jnl").exists());
+
+        when(_parent.getContextValue(Boolean.class, JsonVirtualHostNode.JOURNAL_ENABLED_CONTEXT_VAR)).thenReturn(false);
+        _store.openConfigurationStore(_parent);
+        _store.visitConfiguredObjectRecords(_handler);
+        verify(_handler).handle(matchesRecord(queueId, "Queue", queueAttr));
+        verify(_handler).handle(matchesRecord(_rootRecord.getId(), VIRTUAL_HOST_TYPE, ANY_MAP));
+        _store.closeConfigurationStore();
+    }
+
+    public void testJournalCompactedInBackground() throws Exception
+    {
+        enableJournal(2);
+        _store.openConfigurationStore(_parent);
+        createRootRecord();
+
+        final UUID[] queueIds = new UUID[5];
+        for (int i = 0; i < queueIds.length; i++)
+        {
+            queueIds[i] = new UUID(i, 1);
+            _store.create(new ConfiguredObjectRecordImpl(queueIds[i], "Queue",
+                                                         Collections.<String, Object>singletonMap("name", "q" + i),
+                                                         getRootAsParentMap()));
+        }
+
+        File jsonFile = new File(_storeLocation, _parent.getName() + ".json");
+        long timeout = System.currentTimeMillis() + 10000l;
+        while (!FileUtils.readFileAsString(jsonFile).contains(queueIds[0].toString())
+               && System.currentTimeMillis() < timeout)
+        {
+            Thread.sleep(10l);
+        }
+        assertTrue("Configuration file should have been rewritten by the compaction",
+                   FileUtils.readFileAsString(jsonFile).contains(queueIds[0].toString()));
+        _store.closeConfigurationStore();
+
+        _store.openConfigurationStore(_parent);
+        _store.visitConfiguredObjectRecords(_handler);
+        for (UUID queueId : queueIds)
+        {
+            verify(_handler).handle(matchesRecord(queueId, "Queue", ANY_MAP));
+        }
+        verify(_handler, times(queueIds.length + 1)).handle(any(ConfiguredObjectRecord.class));
+        _store.closeConfigurationStore();
+    }
+
+    public void testIncompleteLastJournalEntryIgnored() throws Exception
+    {
+        _store.openConfigurationStore(_parent);
+        createRootRecord();
+        _store.closeConfigurationStore();
+
+        final UUID queueId = new UUID(0, 1);
+        File journalFile = new File(_storeLocation, _parent.getName() + ".jnl");
+        FileWriter writer = new FileWriter(journalFile);
+        try
+        {
+            writer.write("{\"op\":\"update\",\"records\":[{\"id\":\"" + queueId + "\",\"type\":\"Queue\","
+                         + "\"attributes\":{\"name\":\"q1\"},\"parents\":{\"VirtualHost\":\"" + _rootRecord.getId() + "\"}}]}\n");
+            writer.write("{\"op\":\"remove\",\"ids\":[\"" + queueId);
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        _store.openConfigurationStore(_parent);
+        _store.visitConfiguredObjectRecords(_handler);
+        verify(_handler).handle(matchesRecord(queueId, "Queue", Collections.<String, Object>singletonMap("name", "q1")));
+        assertFalse("Journal should have been compacted on open", journalFile.exists());
+        _store.closeConfigurationStore();
+    }
+
+    private void enableJournal(int compactionThreshold)
+    {
+        when(_parent.getContextValue(Boolean.class, JsonVirtualHostNode.JOURNAL_ENABLED_CONTEXT_VAR)).thenReturn(true);
+        when(_parent.getContextValue(Integer.class, JsonVirtualHostNode.JOURNAL_COMPACTION_THRESHOLD_CONTEXT_VAR))
+                .thenReturn(compactionThreshold);
+    }
+
     private void createRootRecord()
     {
         UUID rootRecordId = UUID.randomUUID();
@@ -28,8 +28,11 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -188,6 +191,33 @@ public abstract class MessageStoreTestCase extends QpidTestCase
         verify(handler, times(1)).handle(queueId, messageId);
     }
 
+    public void testVisitMessageInstancesForQueueInAscendingMessageIdOrder() throws Exception
+    {
+        final UUID queueId = UUIDGenerator.generateRandomUUID();
+        TransactionLogResource queue = createTransactionLogResource(queueId);
+
+        // enqueued out of order, with ids that share a bucket in a small hash table
+        for (long messageId : new long[] { 17L, 1L, 33L })
+        {
+            Transaction txn = _store.newTransaction();
+            txn.enqueueMessage(queue, createEnqueueableMessage(messageId));
+            txn.commitTran();
+        }
+
+        final List<Long> visitedIds = new ArrayList<Long>();
+        _store.visitMessageInstances(queue, new MessageInstanceHandler()
+        {
+            @Override
+            public boolean handle(final UUID id, final long messageId)
+            {
+                visitedIds.add(messageId);
+                return true;
+            }
+        });
+
+        assertEquals("Unexpected visit order", Arrays.asList(1L, 17L, 33L), visitedIds);
+    }
+
     public void testVisitDistributedTransactions() throws Exception
     {
         long format = 1l;
@@ -354,6 +384,23 @@ public abstract class MessageStoreTestCase extends QpidTestCase
         assertNull(retrievedMessageRef.get());
     }
 
+    public void testRemoveMessageWhileEnqueueIsBeingCommitted() throws Exception
+    {
+        long messageId = 1;
+        final StoredMessage<TestMessageMetaData> message = _store.addMessage(new TestMessageMetaData(messageId, 0));
+        EnqueueableMessage enqueueableMessage = createMockEnqueueableMessage(messageId, message);
+
+        Transaction transaction = _store.newTransaction();
+        transaction.enqueueMessage(createTransactionLogResource(UUIDGenerator.generateRandomUUID()), enqueueableMessage);
+        StoreFuture commitFuture = transaction.commitTranAsync();
+        message.remove();
+        commitFuture.waitForCompletion();
+
+        MessageHandler handler = mock(MessageHandler.class);
+        _store.visitMessages(handler);
+
+        verify(handler, never()).handle(argThat(new MessageMetaDataMatcher(messageId)));
+    }
 
     private TransactionLogResource createTransactionLogResource(UUID queueId)
     {
@@ -23,6 +23,7 @@ package org.apache.qpid.server.store;
 import java.nio.ByteBuffer;
 
 import org.apache.qpid.server.message.AMQMessageHeader;
+import org.apache.qpid.server.message.MessageConversionCache;
 import org.apache.qpid.server.message.MessageReference;
 import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.plugin.MessageMetaDataType;
@@ -115,6 +116,20 @@ public class TestMessageMetaDataType implements MessageMetaDataType<TestMessageM
             return null;
         }
 
+        @Override
+        public <N extends ServerMessage> N getConvertedMessage(final Class<N> messageClass)
+        {
+            return null;
+        }
+
+        @Override
+        public boolean holdConvertedMessage(final Class<? extends ServerMessage> messageClass,
+                                            final ServerMessage converted,
+                                            final MessageConversionCache cache)
+        {
+            return false;
+        }
+
         @Override
         public long getExpiration()
         {
@@ -23,6 +23,7 @@ package org.apache.qpid.server.txn;
 import org.apache.commons.lang.NotImplementedException;
 
 import org.apache.qpid.server.message.AMQMessageHeader;
+import org.apache.qpid.server.message.MessageConversionCache;
 import org.apache.qpid.server.message.MessageReference;
 import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.store.StoredMessage;
@@ -113,4 +114,18 @@ class MockServerMessage implements ServerMessage
     {
         return 0L;
     }
+
+    @Override
+    public ServerMessage getConvertedMessage(final Class messageClass)
+    {
+        return null;
+    }
+
+    @Override
+    public boolean holdConvertedMessage(final Class messageClass,
+                                        final ServerMessage converted,
+                                        final MessageConversionCache cache)
+    {
+        return false;
+    }
 }
\ No newline at end of file
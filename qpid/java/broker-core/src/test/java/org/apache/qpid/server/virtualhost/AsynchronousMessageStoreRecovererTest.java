@@ -0,0 +1,338 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.virtualhost;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import org.apache.qpid.server.logging.EventLogger;
+import org.apache.qpid.server.message.MessageReference;
+import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.server.model.VirtualHost;
+import org.apache.qpid.server.plugin.MessageMetaDataType;
+import org.apache.qpid.server.queue.AMQQueue;
+import org.apache.qpid.server.store.NullMessageStore;
+import org.apache.qpid.server.store.StorableMessageMetaData;
+import org.apache.qpid.server.store.StoreException;
+import org.apache.qpid.server.store.StoredMessage;
+import org.apache.qpid.server.store.TransactionLogResource;
+import org.apache.qpid.server.store.handler.MessageInstanceHandler;
+
+public class AsynchronousMessageStoreRecovererTest extends TestCase
+{
+    private VirtualHostImpl _virtualHost;
+    private final Map<Long, StoredMessage<StorableMessageMetaData>> _storedMessages = new HashMap<>();
+    private final Map<UUID, List<Long>> _messageInstances = new HashMap<>();
+    private final List<String> _recovered = Collections.synchronizedList(new ArrayList<String>());
+    private final List<ServerMessage<?>> _recoveredMessages = Collections.synchronizedList(new ArrayList<ServerMessage<?>>());
+    private final List<String> _events = Collections.synchronizedList(new ArrayList<String>());
+    private final Set<UUID> _failingQueues = new HashSet<>();
+    private CountDownLatch _queuesRecovered;
+    private AsynchronousMessageStoreRecoverer _recoverer;
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        try
+        {
+            if (_recoverer != null)
+            {
+                _recoverer.cancel();
+            }
+        }
+        finally
+        {
+            super.tearDown();
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        _virtualHost = mock(VirtualHostImpl.class);
+        when(_virtualHost.getEventLogger()).thenReturn(new EventLogger());
+        when(_virtualHost.getName()).thenReturn("test");
+        when(_virtualHost.getContextValue(Integer.class, VirtualHost.RECOVERY_THREAD_COUNT_CONTEXT_VAR)).thenReturn(1);
+        when(_virtualHost.getContextValue(Integer.class, VirtualHost.RECOVERY_PAGE_SIZE_CONTEXT_VAR)).thenReturn(2);
+        when(_virtualHost.getMessageStore()).thenReturn(new NullMessageStore()
+        {
+            @Override
+            public long getNextMessageId()
+            {
+                return 100;
+            }
+
+            @Override
+            public StoredMessage<?> getMessage(final long messageId)
+            {
+                return _storedMessages.get(messageId);
+            }
+
+            @Override
+            public void visitMessageInstances(TransactionLogResource queue, MessageInstanceHandler handler)
+                    throws StoreException
+            {
+                if (_failingQueues.contains(queue.getId()))
+                {
+                    throw new StoreException("Cannot read queue " + queue.getId());
+                }
+                for (long messageId : _messageInstances.get(queue.getId()))
+                {
+                    if (!handler.handle(queue.getId(), messageId))
+                    {
+                        break;
+                    }
+                }
+            }
+        });
+    }
+
+    public void testHeadOfEveryQueueRecoveredFirst() throws Exception
+    {
+        AMQQueue<?> queueA = createQueue("A", 1, 2, 3, 4);
+        AMQQueue<?> queueB = createQueue("B", 5, 6, 7);
+        when(_virtualHost.getQueues()).thenReturn(Arrays.asList(queueA, queueB));
+
+        recover(2);
+
+        assertEquals(Arrays.asList("A:1", "A:2", "B:5", "B:6", "A:3", "A:4", "B:7"), _recovered);
+    }
+
+    public void testMessageOnSeveralQueuesRecoveredOnce() throws Exception
+    {
+        AMQQueue<?> queueA = createQueue("A", 1);
+        AMQQueue<?> queueB = createQueue("B", 1);
+        when(_virtualHost.getQueues()).thenReturn(Arrays.asList(queueA, queueB));
+
+        recover(2);
+
+        assertEquals(2, _recoveredMessages.size());
+        assertSame(_recoveredMessages.get(0), _recoveredMessages.get(1));
+    }
+
+    public void testMessagesReleasedOnceEveryQueueHasPassedThem() throws Exception
+    {
+        AMQQueue<?> queueA = createQueue("A", 1, 2, 3, 4);
+        AMQQueue<?> queueB = createQueue("B", 5, 6, 7);
+        when(_virtualHost.getQueues()).thenReturn(Arrays.asList(queueA, queueB));
+
+        recover(2);
+        awaitRecoveryThreadsStopped();
+
+        assertEquals(Arrays.asList("A:1", "A:2",
+                                   "B:5", "B:6", "release:1", "release:2",
+                                   "A:3", "A:4", "release:3", "release:4", "release:5", "release:6",
+                                   "B:7", "release:7"),
+                     _events);
+    }
+
+    public void testMessageOnSeveralQueuesHeldUntilLastQueuePassesIt() throws Exception
+    {
+        AMQQueue<?> queueA = createQueue("A", 1, 2, 3);
+        AMQQueue<?> queueB = createQueue("B", 3, 4);
+        when(_virtualHost.getQueues()).thenReturn(Arrays.asList(queueA, queueB));
+
+        recover(2);
+        awaitRecoveryThreadsStopped();
+
+        assertEquals(Arrays.asList("A:1", "A:2", "B:3", "B:4", "release:1", "release:2",
+                                   "A:3", "release:3", "release:4"),
+                     _events);
+        assertEquals(5, _recoveredMessages.size());
+        assertSame(_recoveredMessages.get(2), _recoveredMessages.get(4));
+    }
+
+    public void testFailedQueueRecoveryCompletesRecovery() throws Exception
+    {
+        AMQQueue<?> queueA = createQueue("A", 1, 2);
+        AMQQueue<?> queueB = createQueue("B", 3, 4, 5);
+        _failingQueues.add(queueA.getId());
+        when(_virtualHost.getQueues()).thenReturn(Arrays.asList(queueA, queueB));
+
+        recover(2);
+        awaitRecoveryThreadsStopped();
+
+        assertEquals(Arrays.asList("B:3", "B:4", "B:5"), _recovered);
+        assertTrue("Recovered messages were not released", _events.contains("release:5"));
+    }
+
+    public void testCancelStopsRecovery() throws Exception
+    {
+        final CountDownLatch recoveryStarted = new CountDownLatch(1);
+        final CountDownLatch blockRecovery = new CountDownLatch(1);
+        AMQQueue<?> queueA = createQueue("A", 1, 2, 3);
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(final InvocationOnMock invocation)
+            {
+                ServerMessage<?> message = (ServerMessage<?>) invocation.getArguments()[0];
+                _recovered.add("A:" + message.getMessageNumber());
+                recoveryStarted.countDown();
+                try
+                {
+                    blockRecovery.await(10, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+        }).when(queueA).recover(any(ServerMessage.class));
+        when(_virtualHost.getQueues()).thenReturn(Collections.<AMQQueue<?>>singletonList(queueA));
+
+        _queuesRecovered = new CountDownLatch(1);
+        _recoverer = new AsynchronousMessageStoreRecoverer();
+        _recoverer.recover(_virtualHost);
+        assertTrue("Recovery did not start", recoveryStarted.await(10, TimeUnit.SECONDS));
+
+        _recoverer.cancel();
+        awaitRecoveryThreadsStopped();
+
+        assertEquals(Arrays.asList("A:1"), _recovered);
+        verify(queueA, never()).completeRecovery();
+    }
+
+    private void recover(int queueCount) throws InterruptedException
+    {
+        _queuesRecovered = new CountDownLatch(queueCount);
+        _recoverer = new AsynchronousMessageStoreRecoverer();
+        _recoverer.recover(_virtualHost);
+        assertTrue("Queues were not recovered", _queuesRecovered.await(10, TimeUnit.SECONDS));
+    }
+
+    private void awaitRecoveryThreadsStopped() throws InterruptedException
+    {
+        long endTime = System.currentTimeMillis() + 10000l;
+        while (isRecoveryThreadAlive() && System.currentTimeMillis() < endTime)
+        {
+            Thread.sleep(10l);
+        }
+        assertFalse("Recovery threads should have stopped", isRecoveryThreadAlive());
+    }
+
+    private boolean isRecoveryThreadAlive()
+    {
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+        {
+            if (thread.getName().equals("Queue Recoverer (vh: test)") && thread.isAlive())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private AMQQueue<?> createQueue(final String name, long... messageIds)
+    {
+        AMQQueue<?> queue = mock(AMQQueue.class);
+        UUID queueId = UUID.randomUUID();
+        when(queue.getId()).thenReturn(queueId);
+        when(queue.getName()).thenReturn(name);
+
+        List<Long> instances = new ArrayList<>();
+        for (long messageId : messageIds)
+        {
+            instances.add(messageId);
+            if (!_storedMessages.containsKey(messageId))
+            {
+                _storedMessages.put(messageId, createMockStoredMessage(messageId));
+            }
+        }
+        _messageInstances.put(queueId, instances);
+
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(final InvocationOnMock invocation)
+            {
+                ServerMessage<?> message = (ServerMessage<?>) invocation.getArguments()[0];
+                _recovered.add(name + ":" + message.getMessageNumber());
+                _events.add(name + ":" + message.getMessageNumber());
+                _recoveredMessages.add(message);
+                return null;
+            }
+        }).when(queue).recover(any(ServerMessage.class));
+
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(final InvocationOnMock invocation)
+            {
+                _queuesRecovered.countDown();
+                return null;
+            }
+        }).when(queue).completeRecovery();
+        return queue;
+    }
+
+    @SuppressWarnings("unchecked")
+    private StoredMessage<StorableMessageMetaData> createMockStoredMessage(final long messageId)
+    {
+        final StoredMessage<StorableMessageMetaData> storedMessage = mock(StoredMessage.class);
+        when(storedMessage.getMessageNumber()).thenReturn(messageId);
+
+        ServerMessage<StorableMessageMetaData> message = mock(ServerMessage.class);
+        when(message.getMessageNumber()).thenReturn(messageId);
+        MessageReference reference = mock(MessageReference.class);
+        when(reference.getMessage()).thenReturn(message);
+        when(message.newReference()).thenReturn(reference);
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(final InvocationOnMock invocation)
+            {
+                _events.add("release:" + messageId);
+                return null;
+            }
+        }).when(reference).release();
+
+        MessageMetaDataType type = mock(MessageMetaDataType.class);
+        when(type.createMessage(storedMessage)).thenReturn(message);
+        StorableMessageMetaData metaData = mock(StorableMessageMetaData.class);
+        when(metaData.getType()).thenReturn(type);
+        when(storedMessage.getMetaData()).thenReturn(metaData);
+        return storedMessage;
+    }
+}
@@ -21,6 +21,7 @@
 package org.apache.qpid.server.protocol.v0_10;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -33,7 +34,6 @@ import org.apache.qpid.server.logging.messages.ChannelMessages;
 import org.apache.qpid.server.message.MessageInstance;
 import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.model.Exchange;
-import org.apache.qpid.server.plugin.MessageConverter;
 import org.apache.qpid.server.protocol.MessageConverterRegistry;
 import org.apache.qpid.server.queue.AMQQueue;
 import org.apache.qpid.server.store.TransactionLogResource;
@@ -218,11 +218,7 @@ public class ConsumerTarget_0_10 extends AbstractConsumerTarget implements FlowC
         }
         else
         {
-            MessageConverter converter =
-                    MessageConverterRegistry.getConverter(serverMsg.getClass(), MessageTransferMessage.class);
-
-
-            msg = (MessageTransferMessage) converter.convert(serverMsg, _session.getVirtualHost());
+            msg = MessageConverterRegistry.convert(serverMsg, MessageTransferMessage.class, _session.getVirtualHost());
         }
         DeliveryProperties origDeliveryProps = msg.getHeader() == null ? null : msg.getHeader().getDeliveryProperties();
         messageProps = msg.getHeader() == null ? null : msg.getHeader().getMessageProperties();
@@ -452,6 +448,18 @@ public class ConsumerTarget_0_10 extends AbstractConsumerTarget implements FlowC
         return _creditManager.useCreditForMessage(message.getSize());
     }
 
+    @Override
+    public int allocateCredit(final List<? extends MessageInstance> entries)
+    {
+        final int count = entries.size();
+        final long[] sizes = new long[count];
+        for(int i = 0; i < count; i++)
+        {
+            sizes[i] = entries.get(i).getMessage().getSize();
+        }
+        return _creditManager.useCreditForMessages(sizes, count);
+    }
+
     public void restoreCredit(ServerMessage message)
     {
         _creditManager.restoreCredit(1, message.getSize());
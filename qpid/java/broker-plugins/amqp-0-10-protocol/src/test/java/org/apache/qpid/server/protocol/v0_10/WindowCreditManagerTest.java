@@ -81,4 +81,23 @@ public class WindowCreditManagerTest extends QpidTestCase
         assertEquals("unexpected credit value", 1, _creditManager.getMessageCredit());
         assertTrue("Manager should 'haveCredit'", _creditManager.hasCredit());
     }
+
+    /**
+     * Tests that credit is used for a batch of messages up to, but not including, the first message for which there
+     * is insufficient credit.
+     */
+    public void testUseCreditForMessagesStopsAtFirstMessageWithoutCredit()
+    {
+        _creditManager.addCredit(3, 10);
+
+        assertEquals("unexpected number of messages credited", 2,
+                     _creditManager.useCreditForMessages(new long[] {3, 3, 5, 1}, 4));
+        assertEquals("unexpected credit value", 1, _creditManager.getMessageCredit());
+        assertEquals("unexpected credit value", 4, _creditManager.getBytesCredit());
+
+        assertEquals("unexpected number of messages credited", 1,
+                     _creditManager.useCreditForMessages(new long[] {1, 1}, 2));
+        assertEquals("unexpected credit value", 0, _creditManager.getMessageCredit());
+        assertFalse("Manager should not 'haveCredit'", _creditManager.hasCredit());
+    }
 }
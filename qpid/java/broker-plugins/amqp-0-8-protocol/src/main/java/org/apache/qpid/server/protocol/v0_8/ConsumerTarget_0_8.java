@@ -39,6 +39,7 @@ import org.apache.qpid.server.txn.AutoCommitTransaction;
 import org.apache.qpid.server.txn.ServerTransaction;
 import org.apache.qpid.server.util.StateChangeListener;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -126,12 +127,31 @@ public abstract class ConsumerTarget_0_8 extends AbstractConsumerTarget implemen
 
         }
 
+        @Override
+        public void send(final List<? extends MessageInstance> entries)
+        {
+            synchronized (getChannel())
+            {
+                getChannel().getProtocolSession().setDeferFlush(true);
+                for(MessageInstance entry : entries)
+                {
+                    send(entry, true);
+                }
+            }
+        }
+
         @Override
         public boolean allocateCredit(ServerMessage msg)
         {
             return true;
         }
 
+        @Override
+        public int allocateCredit(final List<? extends MessageInstance> entries)
+        {
+            return entries.size();
+        }
+
     }
 
     public static ConsumerTarget_0_8 createNoAckTarget(AMQChannel channel,
@@ -213,6 +233,12 @@ public abstract class ConsumerTarget_0_8 extends AbstractConsumerTarget implemen
             return true;
         }
 
+        @Override
+        public int allocateCredit(final List<? extends MessageInstance> entries)
+        {
+            return entries.size();
+        }
+
         private static final ServerTransaction.Action NOOP =
                 new ServerTransaction.Action()
                 {
@@ -248,6 +274,12 @@ public abstract class ConsumerTarget_0_8 extends AbstractConsumerTarget implemen
             return getCreditManager().useCreditForMessage(msg.getSize());
         }
 
+        @Override
+        public int allocateCredit(final List<? extends MessageInstance> entries)
+        {
+            return useCreditForEntries(entries);
+        }
+
     }
 
 
@@ -310,6 +342,22 @@ public abstract class ConsumerTarget_0_8 extends AbstractConsumerTarget implemen
             }
         }
 
+        /**
+         * Sends the whole batch under a single acquisition of the channel lock, deferring the flush until
+         * {@link #flushBatched()}.
+         */
+        @Override
+        public void send(final List<? extends MessageInstance> entries)
+        {
+            synchronized (getChannel())
+            {
+                for(MessageInstance entry : entries)
+                {
+                    send(entry, true);
+                }
+            }
+        }
+
 
 
     }
@@ -461,6 +509,23 @@ public abstract class ConsumerTarget_0_8 extends AbstractConsumerTarget implemen
         return _creditManager.useCreditForMessage(msg.getSize());
     }
 
+    @Override
+    public int allocateCredit(final List<? extends MessageInstance> entries)
+    {
+        return useCreditForEntries(entries);
+    }
+
+    protected final int useCreditForEntries(final List<? extends MessageInstance> entries)
+    {
+        final int count = entries.size();
+        final long[] sizes = new long[count];
+        for(int i = 0; i < count; i++)
+        {
+            sizes[i] = entries.get(i).getMessage().getSize();
+        }
+        return _creditManager.useCreditForMessages(sizes, count);
+    }
+
     public AMQChannel getChannel()
     {
         return _channel;
@@ -35,7 +35,6 @@ import org.apache.qpid.framing.abstraction.MessagePublishInfo;
 import org.apache.qpid.protocol.AMQVersionAwareProtocolSession;
 import org.apache.qpid.server.message.InstanceProperties;
 import org.apache.qpid.server.message.ServerMessage;
-import org.apache.qpid.server.plugin.MessageConverter;
 import org.apache.qpid.server.protocol.MessageConverterRegistry;
 import org.apache.qpid.server.protocol.v0_8.AMQMessage;
 import org.apache.qpid.server.message.MessageContentSource;
@@ -83,16 +82,10 @@ class ProtocolOutputConverterImpl implements ProtocolOutputConverter
         }
         else
         {
-            return getMessageConverter(serverMessage).convert(serverMessage, _protocolSession.getVirtualHost());
+            return MessageConverterRegistry.convert(serverMessage, AMQMessage.class, _protocolSession.getVirtualHost());
         }
     }
 
-    private <M extends ServerMessage> MessageConverter<M, AMQMessage> getMessageConverter(M message)
-    {
-        Class<M> clazz = (Class<M>) message.getClass();
-        return MessageConverterRegistry.getConverter(clazz, AMQMessage.class);
-    }
-
     private void writeMessageDelivery(AMQMessage message, int channelId, AMQBody deliverBody)
     {
         writeMessageDelivery(message, message.getContentHeaderBody(), channelId, deliverBody);
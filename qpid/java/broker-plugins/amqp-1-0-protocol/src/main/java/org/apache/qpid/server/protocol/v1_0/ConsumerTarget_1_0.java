@@ -40,7 +40,6 @@ import org.apache.qpid.amqp_1_0.type.transport.Transfer;
 import org.apache.qpid.server.consumer.ConsumerImpl;
 import org.apache.qpid.server.message.MessageInstance;
 import org.apache.qpid.server.message.ServerMessage;
-import org.apache.qpid.server.plugin.MessageConverter;
 import org.apache.qpid.server.protocol.AMQSessionModel;
 import org.apache.qpid.server.protocol.MessageConverterRegistry;
 import org.apache.qpid.server.consumer.AbstractConsumerTarget;
@@ -125,45 +124,59 @@ class ConsumerTarget_1_0 extends AbstractConsumerTarget
 
     public void send(final MessageInstance queueEntry)
     {
-        ServerMessage serverMessage = queueEntry.getMessage();
-        Message_1_0 message;
-        if(serverMessage instanceof Message_1_0)
+        final Message_1_0 message = convert(queueEntry.getMessage());
+        final Transfer transfer = createTransfer(queueEntry, message);
+
+        synchronized(_link.getLock())
         {
-            message = (Message_1_0) serverMessage;
+            transfer(queueEntry, message, transfer);
         }
-        else
+    }
+
+    /**
+     * Converts and encodes the whole batch before taking the link lock, and then transfers it under a single
+     * acquisition of the lock.
+     */
+    @Override
+    public void send(final List<? extends MessageInstance> entries)
+    {
+        final int count = entries.size();
+        final Message_1_0[] messages = new Message_1_0[count];
+        final Transfer[] transfers = new Transfer[count];
+        for(int i = 0; i < count; i++)
         {
-            final MessageConverter converter = MessageConverterRegistry.getConverter(serverMessage.getClass(), Message_1_0.class);
-            message = (Message_1_0) converter.convert(serverMessage, _link.getVirtualHost());
+            messages[i] = convert(entries.get(i).getMessage());
+            transfers[i] = createTransfer(entries.get(i), messages[i]);
         }
 
-        Transfer transfer = new Transfer();
-        //TODO
-
+        synchronized(_link.getLock())
+        {
+            for(int i = 0; i < count; i++)
+            {
+                transfer(entries.get(i), messages[i], transfers[i]);
+            }
+        }
+    }
 
-        List<ByteBuffer> fragments = message.getFragments();
-        ByteBuffer payload;
-        if(fragments.size() == 1)
+    private Message_1_0 convert(final ServerMessage serverMessage)
+    {
+        if(serverMessage instanceof Message_1_0)
         {
-            payload = fragments.get(0);
+            return (Message_1_0) serverMessage;
         }
         else
         {
-            int size = 0;
-            for(ByteBuffer fragment : fragments)
-            {
-                size += fragment.remaining();
-            }
+            return MessageConverterRegistry.convert(serverMessage, Message_1_0.class, _link.getVirtualHost());
+        }
+    }
 
-            payload = ByteBuffer.allocate(size);
+    private Transfer createTransfer(final MessageInstance queueEntry, final Message_1_0 message)
+    {
+        Transfer transfer = new Transfer();
+        //TODO
 
-            for(ByteBuffer fragment : fragments)
-            {
-                payload.put(fragment.duplicate());
-            }
 
-            payload.flip();
-        }
+        ByteBuffer payload = message.getPayload();
 
         if(queueEntry.getDeliveryCount() != 0)
         {
@@ -216,65 +229,68 @@ class ConsumerTarget_1_0 extends AbstractConsumerTarget
 
         transfer.setDeliveryTag(tag);
 
-        synchronized(_link.getLock())
+        return transfer;
+    }
+
+    private void transfer(final MessageInstance queueEntry, final Message_1_0 message, final Transfer transfer)
+    {
+        final Binary tag = transfer.getDeliveryTag();
+
+        if(_link.isAttached())
         {
-            if(_link.isAttached())
+            if(SenderSettleMode.SETTLED.equals(getEndpoint().getSendingSettlementMode()))
             {
-                if(SenderSettleMode.SETTLED.equals(getEndpoint().getSendingSettlementMode()))
-                {
-                    transfer.setSettled(true);
-                }
-                else
-                {
-                    UnsettledAction action = _acquires
-                                             ? new DispositionAction(tag, queueEntry)
-                                             : new DoNothingAction(tag, queueEntry);
+                transfer.setSettled(true);
+            }
+            else
+            {
+                UnsettledAction action = _acquires
+                                         ? new DispositionAction(tag, queueEntry)
+                                         : new DoNothingAction(tag, queueEntry);
 
-                    _link.addUnsettled(tag, action, queueEntry);
-                }
+                _link.addUnsettled(tag, action, queueEntry);
+            }
 
-                if(_transactionId != null)
-                {
-                    TransactionalState state = new TransactionalState();
-                    state.setTxnId(_transactionId);
-                    transfer.setState(state);
-                }
-                // TODO - need to deal with failure here
-                if(_acquires && _transactionId != null)
+            if(_transactionId != null)
+            {
+                TransactionalState state = new TransactionalState();
+                state.setTxnId(_transactionId);
+                transfer.setState(state);
+            }
+            // TODO - need to deal with failure here
+            if(_acquires && _transactionId != null)
+            {
+                ServerTransaction txn = _link.getTransaction(_transactionId);
+                if(txn != null)
                 {
-                    ServerTransaction txn = _link.getTransaction(_transactionId);
-                    if(txn != null)
-                    {
-                        txn.addPostTransactionAction(new ServerTransaction.Action(){
+                    txn.addPostTransactionAction(new ServerTransaction.Action(){
 
-                            public void postCommit()
-                            {
-                                //To change body of implemented methods use File | Settings | File Templates.
-                            }
+                        public void postCommit()
+                        {
+                            //To change body of implemented methods use File | Settings | File Templates.
+                        }
 
-                            public void onRollback()
+                        public void onRollback()
+                        {
+                            if(queueEntry.isAcquiredBy(getConsumer()))
                             {
-                                if(queueEntry.isAcquiredBy(getConsumer()))
-                                {
-                                    queueEntry.release();
-                                    _link.getEndpoint().updateDisposition(tag, (DeliveryState)null, true);
+                                queueEntry.release();
+                                _link.getEndpoint().updateDisposition(tag, (DeliveryState)null, true);
 
 
-                                }
                             }
-                        });
-                    }
-
+                        }
+                    });
                 }
-                getSession().getConnectionModel().registerMessageDelivered(message.getSize());
-                getEndpoint().transfer(transfer);
-            }
-            else
-            {
-                queueEntry.release();
+
             }
+            getSession().getConnectionModel().registerMessageDelivered(message.getSize());
+            getEndpoint().transfer(transfer);
+        }
+        else
+        {
+            queueEntry.release();
         }
-
     }
 
     public void queueDeleted()
@@ -298,6 +314,28 @@ class ConsumerTarget_1_0 extends AbstractConsumerTarget
         }
     }
 
+    /**
+     * The link and session credit are only used when a transfer is made, so limit the batch to the credit which is
+     * currently available on both the link and its session rather than checking each message in turn.
+     */
+    @Override
+    public int allocateCredit(final List<? extends MessageInstance> entries)
+    {
+        synchronized (_link.getLock())
+        {
+            int allocated = 0;
+            if(_link.isAttached() && getEndpoint().hasCreditToSend())
+            {
+                allocated = Math.min(entries.size(), getEndpoint().getCreditToSend());
+            }
+            if(allocated < entries.size() && getState() == State.ACTIVE)
+            {
+                suspend();
+            }
+            return allocated;
+        }
+    }
+
 
     public void suspend()
     {
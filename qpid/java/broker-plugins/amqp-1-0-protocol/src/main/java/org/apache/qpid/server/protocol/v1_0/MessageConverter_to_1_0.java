@@ -64,14 +64,13 @@ public abstract class MessageConverter_to_1_0<M extends ServerMessage> implement
     {
 
         SectionEncoder sectionEncoder = new SectionEncoderImpl(_typeRegistry);
-        return new Message_1_0(convertToStoredMessage(message, sectionEncoder));
-    }
-
+        final MessageMetaData_1_0 metaData = convertMetaData(message, sectionEncoder);
+        final String mimeType = message.getMessageHeader().getMimeType();
+        Section bodySection = getBodySection(message, mimeType);
 
-    private StoredMessage<MessageMetaData_1_0> convertToStoredMessage(final M serverMessage, SectionEncoder sectionEncoder)
-    {
-        final MessageMetaData_1_0 metaData = convertMetaData(serverMessage, sectionEncoder);
-        return convertServerMessage(metaData, serverMessage, sectionEncoder);
+        // the metadata holds only the sections which precede the body, so its content size is not that of the message
+        final ByteBuffer allData = encodeConvertedMessage(metaData, bodySection, sectionEncoder);
+        return new Message_1_0(convertServerMessage(metaData, message, allData), allData.duplicate());
     }
 
     abstract protected MessageMetaData_1_0 convertMetaData(final M serverMessage, SectionEncoder sectionEncoder);
@@ -200,13 +199,8 @@ public abstract class MessageConverter_to_1_0<M extends ServerMessage> implement
 
     private StoredMessage<MessageMetaData_1_0> convertServerMessage(final MessageMetaData_1_0 metaData,
                                                                       final M serverMessage,
-                                                                      SectionEncoder sectionEncoder)
+                                                                      final ByteBuffer allData)
     {
-        final String mimeType = serverMessage.getMessageHeader().getMimeType();
-        Section bodySection = getBodySection(serverMessage, mimeType);
-
-        final ByteBuffer allData = encodeConvertedMessage(metaData, bodySection, sectionEncoder);
-
         return new StoredMessage<MessageMetaData_1_0>()
                     {
                         @Override
@@ -293,6 +287,7 @@ public abstract class MessageConverter_to_1_0<M extends ServerMessage> implement
         final ByteBuffer allData = ByteBuffer.allocate(headerSize + dataEncoding.getLength());
         metaData.writeToBuffer(allData);
         allData.put(dataEncoding.getArray(),dataEncoding.getArrayOffset(),dataEncoding.getLength());
+        allData.flip();
         return allData;
     }
 }
@@ -24,8 +24,8 @@ import java.nio.ByteBuffer;
 import java.util.*;
 
 import org.apache.log4j.Logger;
-import org.apache.qpid.amqp_1_0.codec.ValueHandler;
 import org.apache.qpid.amqp_1_0.messaging.SectionDecoder;
+import org.apache.qpid.amqp_1_0.messaging.SectionDecoderImpl;
 import org.apache.qpid.amqp_1_0.messaging.SectionEncoder;
 import org.apache.qpid.amqp_1_0.type.AmqpErrorException;
 import org.apache.qpid.amqp_1_0.type.Section;
@@ -36,14 +36,12 @@ import org.apache.qpid.amqp_1_0.type.messaging.AmqpValue;
 import org.apache.qpid.amqp_1_0.type.messaging.ApplicationProperties;
 import org.apache.qpid.amqp_1_0.type.messaging.Data;
 import org.apache.qpid.amqp_1_0.type.messaging.DeliveryAnnotations;
-import org.apache.qpid.amqp_1_0.type.messaging.Footer;
 import org.apache.qpid.amqp_1_0.type.messaging.Header;
 import org.apache.qpid.amqp_1_0.type.messaging.MessageAnnotations;
 import org.apache.qpid.amqp_1_0.type.messaging.Properties;
 import org.apache.qpid.server.message.AMQMessageHeader;
 import org.apache.qpid.server.plugin.MessageMetaDataType;
 import org.apache.qpid.server.store.StorableMessageMetaData;
-import org.apache.qpid.server.util.ConnectionScopedRuntimeException;
 
 public class MessageMetaData_1_0 implements StorableMessageMetaData
 {
@@ -54,17 +52,25 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
     private static final MessageMetaDataType_1_0 TYPE = new MessageMetaDataType_1_0();
 
 
+    private static final byte DESCRIBED_TYPE = (byte)0;
+    private static final byte SMALL_ULONG = (byte)0x53;
+    private static final byte ULONG = (byte)0x80;
+    private static final long DATA_DESCRIPTOR = 0x75L;
+    private static final long AMQP_VALUE_DESCRIPTOR = 0x77L;
+
+    private final List<ByteBuffer> _encodedSections;
+
+    // the sections are only decoded when first needed, and the body never is
+    private SectionDecoder _decoder;
+    private volatile boolean _decoded;
+
     private Header _header;
     private Properties _properties;
     private Map _deliveryAnnotations;
     private Map _messageAnnotations;
     private Map _appProperties;
-    private Map _footer;
-
-    private List<ByteBuffer> _encodedSections = new ArrayList<ByteBuffer>(3);
 
-    private volatile ByteBuffer _encoded;
-    private MessageHeader_1_0 _messageHeader;
+    private final MessageHeader_1_0 _messageHeader = new MessageHeader_1_0();
 
 
     public MessageMetaData_1_0(List<Section> sections, SectionEncoder encoder)
@@ -91,13 +97,23 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
 
     public MessageMetaData_1_0(ByteBuffer[] fragments, SectionDecoder decoder, List<ByteBuffer> immutableSections)
     {
-        this(constructSections(fragments, decoder,immutableSections), immutableSections);
+        for(ByteBuffer buf : fragments)
+        {
+            immutableSections.add(buf.duplicate());
+        }
+        _encodedSections = immutableSections;
+        _decoder = decoder;
     }
 
     private MessageMetaData_1_0(List<Section> sections, List<ByteBuffer> encodedSections)
     {
         _encodedSections = encodedSections;
+        setSections(sections);
+        _decoded = true;
+    }
 
+    private void setSections(final List<Section> sections)
+    {
         Iterator<Section> sectIter = sections.iterator();
 
         Section section = sectIter.hasNext() ? sectIter.next() : null;
@@ -128,153 +144,63 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
         if(section instanceof ApplicationProperties)
         {
             _appProperties = ((ApplicationProperties) section).getValue();
-            section = sectIter.hasNext() ? sectIter.next() : null;
         }
+    }
 
-        if(section instanceof Footer)
+    private void ensureDecoded()
+    {
+        if(!_decoded)
         {
-            _footer = ((Footer) section).getValue();
-            section = sectIter.hasNext() ? sectIter.next() : null;
+            synchronized (this)
+            {
+                if(!_decoded)
+                {
+                    setSections(decodeSections());
+                    _decoder = null;
+                    _decoded = true;
+                }
+            }
         }
-
-        _messageHeader = new MessageHeader_1_0();
-
     }
 
-    private static List<Section> constructSections(final ByteBuffer[] fragments, final SectionDecoder decoder, List<ByteBuffer> encodedSections)
+    /**
+     * Decodes the sections which precede the body.  The body, and the footer which follows it, are left encoded.
+     */
+    private List<Section> decodeSections()
     {
         List<Section> sections = new ArrayList<Section>(3);
 
         ByteBuffer src;
-        if(fragments.length == 1)
+        if(_encodedSections.size() == 1)
         {
-            src = fragments[0].duplicate();
+            src = _encodedSections.get(0).duplicate();
         }
         else
         {
             int size = 0;
-            for(ByteBuffer buf : fragments)
+            for(ByteBuffer buf : _encodedSections)
             {
                 size += buf.remaining();
             }
             src = ByteBuffer.allocate(size);
-            for(ByteBuffer buf : fragments)
+            for(ByteBuffer buf : _encodedSections)
             {
                 src.put(buf.duplicate());
             }
             src.flip();
-
         }
 
         try
         {
-            int startBarePos = -1;
-            int lastPos = src.position();
-            Section s = decoder.readSection(src);
-
-
-
-            if(s instanceof Header)
-            {
-                sections.add(s);
-                lastPos = src.position();
-                s = src.hasRemaining() ? decoder.readSection(src) : null;
-            }
-
-            if(s instanceof DeliveryAnnotations)
-            {
-                sections.add(s);
-                lastPos = src.position();
-                s = src.hasRemaining() ? decoder.readSection(src) : null;
-            }
-
-            if(s instanceof MessageAnnotations)
-            {
-                sections.add(s);
-                lastPos = src.position();
-                s = src.hasRemaining() ? decoder.readSection(src) : null;
-            }
-
-            if(s instanceof Properties)
-            {
-                sections.add(s);
-                if(startBarePos == -1)
-                {
-                    startBarePos = lastPos;
-                }
-                s = src.hasRemaining() ? decoder.readSection(src) : null;
-            }
-
-            if(s instanceof ApplicationProperties)
-            {
-                sections.add(s);
-                if(startBarePos == -1)
-                {
-                    startBarePos = lastPos;
-                }
-                s = src.hasRemaining() ? decoder.readSection(src) : null;
-            }
-
-            if(s instanceof AmqpValue)
-            {
-                if(startBarePos == -1)
-                {
-                    startBarePos = lastPos;
-                }
-                s = src.hasRemaining() ? decoder.readSection(src) : null;
-            }
-            else if(s instanceof Data)
-            {
-                if(startBarePos == -1)
-                {
-                    startBarePos = lastPos;
-                }
-                do
-                {
-                    s = src.hasRemaining() ? decoder.readSection(src) : null;
-                } while(s instanceof Data);
-            }
-            else if(s instanceof AmqpSequence)
+            while(src.hasRemaining() && !isBodySection(src))
             {
-                if(startBarePos == -1)
-                {
-                    startBarePos = lastPos;
-                }
-                do
+                Section section = _decoder.readSection(src);
+                if(section instanceof AmqpValue || section instanceof Data || section instanceof AmqpSequence)
                 {
-                    s = src.hasRemaining() ? decoder.readSection(src) : null;
+                    break;
                 }
-                while(s instanceof AmqpSequence);
+                sections.add(section);
             }
-
-            if(s instanceof Footer)
-            {
-                sections.add(s);
-            }
-
-
-            int pos = 0;
-            for(ByteBuffer buf : fragments)
-            {
-/*
-                if(pos < startBarePos)
-                {
-                    if(pos + buf.remaining() > startBarePos)
-                    {
-                        ByteBuffer dup = buf.duplicate();
-                        dup.position(dup.position()+startBarePos-pos);
-                        dup.slice();
-                        encodedSections.add(dup);
-                    }
-                }
-                else
-*/
-                {
-                    encodedSections.add(buf.duplicate());
-                }
-                pos += buf.remaining();
-            }
-
             return sections;
         }
         catch (AmqpErrorException e)
@@ -284,74 +210,106 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
         }
     }
 
+    /**
+     * Returns whether the section at the position of the buffer is a data, amqp-sequence or amqp-value section,
+     * judging only from its numeric descriptor.  Sections described by symbol are not recognised.
+     */
+    private static boolean isBodySection(ByteBuffer src)
+    {
+        int pos = src.position();
+        if(src.remaining() < 3 || src.get(pos) != DESCRIBED_TYPE)
+        {
+            return false;
+        }
 
-    public MessageMetaDataType getType()
+        long descriptor;
+        if(src.get(pos + 1) == SMALL_ULONG)
+        {
+            descriptor = src.get(pos + 2) & 0xFFL;
+        }
+        else if(src.get(pos + 1) == ULONG && src.remaining() >= 10)
+        {
+            descriptor = src.getLong(pos + 2);
+        }
+        else
+        {
+            return false;
+        }
+        return descriptor >= DATA_DESCRIPTOR && descriptor <= AMQP_VALUE_DESCRIPTOR;
+    }
+
+    private Header getHeaderSection()
     {
-        return TYPE;
+        ensureDecoded();
+        return _header;
     }
 
+    private Properties getPropertiesSection()
+    {
+        ensureDecoded();
+        return _properties;
+    }
 
-    public int getStorableSize()
+    private Map getMessageAnnotations()
     {
-        int size = 0;
+        ensureDecoded();
+        return _messageAnnotations;
+    }
 
-        for(ByteBuffer bin : _encodedSections)
-        {
-            size += bin.limit();
-        }
+    private Map getApplicationProperties()
+    {
+        ensureDecoded();
+        return _appProperties;
+    }
 
-        return size;
+
+    public MessageMetaDataType getType()
+    {
+        return TYPE;
     }
 
-    private ByteBuffer encodeAsBuffer()
+
+    public int getStorableSize()
     {
-        ByteBuffer buf = ByteBuffer.allocate(getStorableSize());
+        int size = 0;
 
         for(ByteBuffer bin : _encodedSections)
         {
-            buf.put(bin.duplicate());
+            size += bin.remaining();
         }
 
-        return buf;
+        return size;
     }
 
     public int writeToBuffer(ByteBuffer dest)
     {
-        ByteBuffer buf = _encoded;
-
-        if(buf == null)
-        {
-            buf = encodeAsBuffer();
-            _encoded = buf;
-        }
-
-        buf = buf.duplicate();
-
-        buf.position(0);
-
-        if(dest.remaining() < buf.limit())
+        int written = 0;
+        for(ByteBuffer bin : _encodedSections)
         {
-            buf.limit(dest.remaining());
+            if(!dest.hasRemaining())
+            {
+                break;
+            }
+            ByteBuffer buf = bin.duplicate();
+            if(dest.remaining() < buf.remaining())
+            {
+                buf.limit(buf.position() + dest.remaining());
+            }
+            written += buf.remaining();
+            dest.put(buf);
         }
-        dest.put(buf);
-        return buf.limit();
+        return written;
     }
 
     public int getContentSize()
     {
-        ByteBuffer buf = _encoded;
-
-        if(buf == null)
-        {
-            buf = encodeAsBuffer();
-            _encoded = buf;
-        }
-        return buf.remaining();
+        return getStorableSize();
     }
 
     public boolean isPersistent()
     {
-        return _header != null && Boolean.TRUE.equals(_header.getDurable());
+        Header header = getHeaderSection();
+        return header != null && Boolean.TRUE.equals(header.getDurable());
     }
 
     public MessageHeader_1_0 getMessageHeader()
@@ -365,6 +323,7 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
     private static class MetaDataFactory implements MessageMetaDataType.Factory<MessageMetaData_1_0>
     {
         private final AMQPDescribedTypeRegistry _typeRegistry = AMQPDescribedTypeRegistry.newInstance();
+        private final SectionDecoder _sectionDecoder;
 
         private MetaDataFactory()
         {
@@ -372,36 +331,14 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
             _typeRegistry.registerMessagingLayer();
             _typeRegistry.registerTransactionLayer();
             _typeRegistry.registerSecurityLayer();
+            _sectionDecoder = new SectionDecoderImpl(_typeRegistry);
         }
 
         public MessageMetaData_1_0 createMetaData(ByteBuffer buf)
         {
-            ValueHandler valueHandler = new ValueHandler(_typeRegistry);
-
-            ArrayList<Section> sections = new ArrayList<Section>(3);
-            ArrayList<ByteBuffer> encodedSections = new ArrayList<ByteBuffer>(3);
-
-            while(buf.hasRemaining())
-            {
-                try
-                {
-                    ByteBuffer encodedBuf = buf.duplicate();
-                    Object parse = valueHandler.parse(buf);
-                    sections.add((Section) parse);
-                    encodedBuf.limit(buf.position());
-                    encodedSections.add(encodedBuf);
-
-                }
-                catch (AmqpErrorException e)
-                {
-                    //TODO
-                    throw new ConnectionScopedRuntimeException(e);
-                }
-
-            }
-
-            return new MessageMetaData_1_0(sections,encodedSections);
-
+            ByteBuffer encoded = buf.slice();
+            buf.position(buf.limit());
+            return new MessageMetaData_1_0(new ByteBuffer[] { encoded }, _sectionDecoder);
         }
     }
 
@@ -410,13 +347,14 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
 
         public String getCorrelationId()
         {
-            if(_properties == null || _properties.getCorrelationId() == null)
+            Properties properties = getPropertiesSection();
+            if(properties == null || properties.getCorrelationId() == null)
             {
                 return null;
             }
             else
             {
-                return _properties.getCorrelationId().toString();
+                return properties.getCorrelationId().toString();
             }
         }
 
@@ -427,26 +365,27 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
 
         public String getMessageId()
         {
-            if(_properties == null || _properties.getMessageId() == null)
+            Properties properties = getPropertiesSection();
+            if(properties == null || properties.getMessageId() == null)
             {
                 return null;
             }
             else
             {
-                return _properties.getMessageId().toString();
+                return properties.getMessageId().toString();
             }
         }
 
         public String getMimeType()
         {
-
-            if(_properties == null || _properties.getContentType() == null)
+            Properties properties = getPropertiesSection();
+            if(properties == null || properties.getContentType() == null)
             {
                 return null;
             }
             else
             {
-                return _properties.getContentType().toString();
+                return properties.getContentType().toString();
             }
         }
 
@@ -457,51 +396,54 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
 
         public byte getPriority()
         {
-            if(_header == null || _header.getPriority() == null)
+            Header header = getHeaderSection();
+            if(header == null || header.getPriority() == null)
             {
                 return 4; //javax.jms.Message.DEFAULT_PRIORITY;
             }
             else
             {
-                return _header.getPriority().byteValue();
+                return header.getPriority().byteValue();
             }
         }
 
         public long getTimestamp()
         {
-            if(_properties == null || _properties.getCreationTime() == null)
+            Properties properties = getPropertiesSection();
+            if(properties == null || properties.getCreationTime() == null)
             {
                 return 0L;
             }
             else
             {
-                return _properties.getCreationTime().getTime();
+                return properties.getCreationTime().getTime();
             }
 
         }
 
         public String getType()
         {
-
-            if(_messageAnnotations == null || _messageAnnotations.get(JMS_TYPE) == null)
+            Map messageAnnotations = getMessageAnnotations();
+            if(messageAnnotations == null || messageAnnotations.get(JMS_TYPE) == null)
             {
                 return null;
             }
             else
             {
-                return _messageAnnotations.get(JMS_TYPE).toString();
+                return messageAnnotations.get(JMS_TYPE).toString();
             }
         }
 
         public String getReplyTo()
         {
-            if(_properties == null || _properties.getReplyTo() == null)
+            Properties properties = getPropertiesSection();
+            if(properties == null || properties.getReplyTo() == null)
             {
                 return null;
             }
             else
             {
-                return _properties.getReplyTo().toString();
+                return properties.getReplyTo().toString();
             }
         }
 
@@ -519,19 +461,21 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
 
         public Object getHeader(final String name)
         {
-            return _appProperties == null ? null : _appProperties.get(name);
+            Map appProperties = getApplicationProperties();
+            return appProperties == null ? null : appProperties.get(name);
         }
 
         public boolean containsHeaders(final Set<String> names)
         {
-            if(_appProperties == null)
+            Map appProperties = getApplicationProperties();
+            if(appProperties == null)
             {
                 return false;
             }
 
             for(String key : names)
             {
-                if(!_appProperties.containsKey(key))
+                if(!appProperties.containsKey(key))
                 {
                     return false;
                 }
@@ -542,31 +486,36 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
         @Override
         public Collection<String> getHeaderNames()
         {
-            if(_appProperties == null)
+            Map appProperties = getApplicationProperties();
+            if(appProperties == null)
             {
                 return Collections.emptySet();
             }
-            return Collections.unmodifiableCollection(_appProperties.keySet());
+            return Collections.unmodifiableCollection(appProperties.keySet());
         }
 
         public boolean containsHeader(final String name)
         {
-            return _appProperties != null && _appProperties.containsKey(name);
+            Map appProperties = getApplicationProperties();
+            return appProperties != null && appProperties.containsKey(name);
         }
 
         public String getSubject()
         {
-            return _properties == null ? null : _properties.getSubject();
+            Properties properties = getPropertiesSection();
+            return properties == null ? null : properties.getSubject();
         }
 
         public String getTo()
         {
-            return _properties == null ? null : _properties.getTo();
+            Properties properties = getPropertiesSection();
+            return properties == null ? null : properties.getTo();
         }
 
         public Map<String, Object> getHeadersAsMap()
         {
-            return new HashMap<String, Object>(_appProperties);
+            Map appProperties = getApplicationProperties();
+            return new HashMap<String, Object>(appProperties);
         }
     }
 
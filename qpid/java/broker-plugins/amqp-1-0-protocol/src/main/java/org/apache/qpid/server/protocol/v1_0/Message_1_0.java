@@ -22,7 +22,7 @@ package org.apache.qpid.server.protocol.v1_0;
 
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import org.apache.qpid.server.message.AbstractServerMessageImpl;
 import org.apache.qpid.server.store.StoredMessage;
@@ -30,34 +30,16 @@ import org.apache.qpid.server.store.StoredMessage;
 public class Message_1_0 extends AbstractServerMessageImpl<Message_1_0, MessageMetaData_1_0>
 {
 
-    private List<ByteBuffer> _fragments;
+    // null for messages instantiated from the store, whose content is read from the store when sent
+    private final List<ByteBuffer> _fragments;
+    private volatile long _size = -1l;
     private long _arrivalTime;
 
 
     public Message_1_0(final StoredMessage<MessageMetaData_1_0> storedMessage)
     {
         super(storedMessage, null);
-        _fragments = restoreFragments(storedMessage);
-    }
-
-    private static List<ByteBuffer> restoreFragments(StoredMessage<MessageMetaData_1_0> storedMessage)
-    {
-        ArrayList<ByteBuffer> fragments = new ArrayList<ByteBuffer>();
-        final int FRAGMENT_SIZE = 2048;
-        int offset = 0;
-        ByteBuffer b;
-        do
-        {
-
-            b = storedMessage.getContent(offset,FRAGMENT_SIZE);
-            if(b.hasRemaining())
-            {
-                fragments.add(b);
-                offset+= b.remaining();
-            }
-        }
-        while(b.hasRemaining());
-        return fragments;
+        _fragments = null;
     }
 
     public Message_1_0(final StoredMessage<MessageMetaData_1_0> storedMessage,
@@ -69,6 +51,15 @@ public class Message_1_0 extends AbstractServerMessageImpl<Message_1_0, MessageM
         _arrivalTime = System.currentTimeMillis();
     }
 
+    /**
+     * Creates a message converted from another protocol, whose content is held rather than stored.
+     */
+    Message_1_0(final StoredMessage<MessageMetaData_1_0> storedMessage, final ByteBuffer content)
+    {
+        super(storedMessage, null);
+        _fragments = Collections.singletonList(content);
+    }
+
     public String getInitialRoutingAddress()
     {
         Object routingKey = getMessageHeader().getHeader("routing-key");
@@ -94,18 +85,30 @@ public class Message_1_0 extends AbstractServerMessageImpl<Message_1_0, MessageM
 
     public long getSize()
     {
-        long size = 0l;
-        if(_fragments != null)
+        long size = _size;
+        if(size < 0l)
         {
-            for(ByteBuffer buf : _fragments)
-            {
-                size += buf.remaining();
-            }
+            size = _fragments == null ? getStoredContentSize() : getFragmentsSize();
+            _size = size;
         }
+        return size;
+    }
 
+    private long getFragmentsSize()
+    {
+        long size = 0l;
+        for(ByteBuffer buf : _fragments)
+        {
+            size += buf.remaining();
+        }
         return size;
     }
 
+    private long getStoredContentSize()
+    {
+        return getMessageMetaData().getContentSize();
+    }
+
     public long getExpiration()
     {
         return getMessageHeader().getExpiration();
@@ -116,9 +119,29 @@ public class Message_1_0 extends AbstractServerMessageImpl<Message_1_0, MessageM
         return _arrivalTime;
     }
 
-    public List<ByteBuffer> getFragments()
+    /**
+     * @return the encoded message, read directly from the store if the message was instantiated from the store
+     */
+    public ByteBuffer getPayload()
     {
-        return _fragments;
+        if(_fragments == null)
+        {
+            return getStoredMessage().getContent(0, (int) getSize());
+        }
+        else if(_fragments.size() == 1)
+        {
+            return _fragments.get(0);
+        }
+        else
+        {
+            ByteBuffer payload = ByteBuffer.allocate((int) getSize());
+            for(ByteBuffer fragment : _fragments)
+            {
+                payload.put(fragment.duplicate());
+            }
+            payload.flip();
+            return payload;
+        }
     }
 
 }
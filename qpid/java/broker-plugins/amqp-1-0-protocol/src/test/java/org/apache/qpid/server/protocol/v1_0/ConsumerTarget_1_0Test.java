@@ -0,0 +1,112 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.protocol.v1_0;
+
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.qpid.amqp_1_0.transport.ConnectionEndpoint;
+import org.apache.qpid.amqp_1_0.transport.Container;
+import org.apache.qpid.amqp_1_0.transport.SaslServerProvider;
+import org.apache.qpid.amqp_1_0.transport.SendingLinkEndpoint;
+import org.apache.qpid.amqp_1_0.transport.SessionEndpoint;
+import org.apache.qpid.amqp_1_0.type.UnsignedInteger;
+import org.apache.qpid.server.consumer.ConsumerTarget;
+import org.apache.qpid.server.message.MessageInstance;
+
+public class ConsumerTarget_1_0Test extends TestCase
+{
+    private SessionEndpoint _sessionEndpoint;
+    private SendingLinkEndpoint _linkEndpoint;
+    private ConsumerTarget_1_0 _target;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        ConnectionEndpoint connectionEndpoint = new ConnectionEndpoint(new Container(), (SaslServerProvider) null);
+        _sessionEndpoint = new SessionEndpoint(connectionEndpoint);
+        _linkEndpoint = new SendingLinkEndpoint(_sessionEndpoint, "test");
+
+        SendingLink_1_0 link = mock(SendingLink_1_0.class, RETURNS_DEEP_STUBS);
+        when(link.getEndpoint()).thenReturn(_linkEndpoint);
+        when(link.getLock()).thenReturn(_linkEndpoint.getLock());
+        when(link.isAttached()).thenReturn(true);
+        when(link.getTransactionId()).thenReturn(null);
+        when(link.getSession().getConnectionModel().isStopped()).thenReturn(false);
+
+        _target = new ConsumerTarget_1_0(link, true);
+        _target.flowStateChanged();
+        assertEquals(ConsumerTarget.State.ACTIVE, _target.getState());
+    }
+
+    public void testBatchLimitedByLinkCredit()
+    {
+        _linkEndpoint.setLinkCredit(UnsignedInteger.valueOf(3));
+        _sessionEndpoint.setOutgoingSessionCredit(UnsignedInteger.valueOf(100));
+
+        assertEquals(3, _target.allocateCredit(createEntries(5)));
+        assertEquals(ConsumerTarget.State.SUSPENDED, _target.getState());
+    }
+
+    public void testBatchLimitedBySessionCreditSmallerThanLinkCredit()
+    {
+        _linkEndpoint.setLinkCredit(UnsignedInteger.valueOf(100));
+        _sessionEndpoint.setOutgoingSessionCredit(UnsignedInteger.valueOf(2));
+
+        assertEquals(2, _target.allocateCredit(createEntries(5)));
+        assertEquals(ConsumerTarget.State.SUSPENDED, _target.getState());
+    }
+
+    public void testWholeBatchAllocatedWhenCreditSuffices()
+    {
+        _linkEndpoint.setLinkCredit(UnsignedInteger.valueOf(100));
+        _sessionEndpoint.setOutgoingSessionCredit(UnsignedInteger.valueOf(100));
+
+        assertEquals(5, _target.allocateCredit(createEntries(5)));
+        assertEquals(ConsumerTarget.State.ACTIVE, _target.getState());
+    }
+
+    public void testNothingAllocatedWithoutSessionCredit()
+    {
+        _linkEndpoint.setLinkCredit(UnsignedInteger.valueOf(100));
+        _sessionEndpoint.setOutgoingSessionCredit(UnsignedInteger.ZERO);
+
+        assertEquals(0, _target.allocateCredit(createEntries(5)));
+        assertEquals(ConsumerTarget.State.SUSPENDED, _target.getState());
+    }
+
+    private List<MessageInstance> createEntries(final int count)
+    {
+        List<MessageInstance> entries = new ArrayList<MessageInstance>();
+        for(int i = 0; i < count; i++)
+        {
+            entries.add(mock(MessageInstance.class));
+        }
+        return entries;
+    }
+}
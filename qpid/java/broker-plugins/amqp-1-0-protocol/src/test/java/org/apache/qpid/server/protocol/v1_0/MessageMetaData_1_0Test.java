@@ -0,0 +1,319 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.protocol.v1_0;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.qpid.amqp_1_0.messaging.SectionDecoder;
+import org.apache.qpid.amqp_1_0.messaging.SectionDecoderImpl;
+import org.apache.qpid.amqp_1_0.messaging.SectionEncoder;
+import org.apache.qpid.amqp_1_0.messaging.SectionEncoderImpl;
+import org.apache.qpid.amqp_1_0.type.Binary;
+import org.apache.qpid.amqp_1_0.type.Section;
+import org.apache.qpid.amqp_1_0.type.Symbol;
+import org.apache.qpid.amqp_1_0.type.UnsignedByte;
+import org.apache.qpid.amqp_1_0.type.codec.AMQPDescribedTypeRegistry;
+import org.apache.qpid.amqp_1_0.type.messaging.AmqpSequence;
+import org.apache.qpid.amqp_1_0.type.messaging.AmqpValue;
+import org.apache.qpid.amqp_1_0.type.messaging.ApplicationProperties;
+import org.apache.qpid.amqp_1_0.type.messaging.Data;
+import org.apache.qpid.amqp_1_0.type.messaging.DeliveryAnnotations;
+import org.apache.qpid.amqp_1_0.type.messaging.Header;
+import org.apache.qpid.amqp_1_0.type.messaging.MessageAnnotations;
+import org.apache.qpid.amqp_1_0.type.messaging.Properties;
+import org.apache.qpid.server.store.StoredMessage;
+
+public class MessageMetaData_1_0Test extends TestCase
+{
+    private static final String MESSAGE_ID = "message-id";
+    private static final String TO = "queue";
+    private static final String JMS_TYPE = "jms-type";
+    private static final byte DESCRIBED_TYPE = (byte) 0x00;
+    private static final byte SMALL_ULONG = (byte) 0x53;
+    private static final byte AMQP_SEQUENCE_DESCRIPTOR = (byte) 0x76;
+
+    private final AMQPDescribedTypeRegistry _typeRegistry = AMQPDescribedTypeRegistry.newInstance()
+            .registerTransportLayer()
+            .registerMessagingLayer()
+            .registerTransactionLayer()
+            .registerSecurityLayer();
+    private final SectionEncoder _encoder = new SectionEncoderImpl(_typeRegistry);
+    private final SectionDecoder _decoder = new SectionDecoderImpl(_typeRegistry);
+
+    public void testAllSectionsBeforeBody()
+    {
+        MessageMetaData_1_0 metaData = decode(header(), deliveryAnnotations(), messageAnnotations(), properties(),
+                                              applicationProperties(), data());
+
+        assertAllSectionsDecoded(metaData);
+    }
+
+    public void testNoSectionsBeforeBody()
+    {
+        MessageMetaData_1_0 metaData = decode(data());
+
+        MessageMetaData_1_0.MessageHeader_1_0 messageHeader = metaData.getMessageHeader();
+        assertFalse(metaData.isPersistent());
+        assertEquals(4, messageHeader.getPriority());
+        assertNull(messageHeader.getMessageId());
+        assertNull(messageHeader.getTo());
+        assertNull(messageHeader.getType());
+        assertNull(messageHeader.getHeader("key"));
+        assertTrue(messageHeader.getHeaderNames().isEmpty());
+    }
+
+    public void testOnlyHeader()
+    {
+        MessageMetaData_1_0 metaData = decode(header(), amqpValue());
+
+        assertTrue(metaData.isPersistent());
+        assertEquals(7, metaData.getMessageHeader().getPriority());
+        assertNull(metaData.getMessageHeader().getMessageId());
+        assertNull(metaData.getMessageHeader().getHeader("key"));
+    }
+
+    public void testAnnotationsWithoutHeader()
+    {
+        MessageMetaData_1_0 metaData = decode(deliveryAnnotations(), messageAnnotations(), amqpValue());
+
+        assertFalse(metaData.isPersistent());
+        assertEquals(JMS_TYPE, metaData.getMessageHeader().getType());
+        assertNull(metaData.getMessageHeader().getTo());
+    }
+
+    public void testPropertiesWithoutAnnotations()
+    {
+        MessageMetaData_1_0 metaData = decode(header(), properties(), amqpSequence());
+
+        assertTrue(metaData.isPersistent());
+        assertEquals(MESSAGE_ID, metaData.getMessageHeader().getMessageId());
+        assertEquals(TO, metaData.getMessageHeader().getTo());
+        assertNull(metaData.getMessageHeader().getType());
+        assertNull(metaData.getMessageHeader().getHeader("key"));
+    }
+
+    public void testOnlyApplicationProperties()
+    {
+        MessageMetaData_1_0 metaData = decode(applicationProperties(), data());
+
+        assertNull(metaData.getMessageHeader().getMessageId());
+        assertEquals("value", metaData.getMessageHeader().getHeader("key"));
+        assertTrue(metaData.getMessageHeader().containsHeader("key"));
+    }
+
+    public void testEachKindOfBody()
+    {
+        for (Section body : Arrays.asList(data(), amqpSequence(), amqpValue()))
+        {
+            MessageMetaData_1_0 metaData = decode(header(), deliveryAnnotations(), messageAnnotations(), properties(),
+                                                  applicationProperties(), body);
+
+            assertAllSectionsDecoded(metaData);
+        }
+    }
+
+    public void testBodyWithSymbolicDescriptor()
+    {
+        ByteBuffer sections = encode(header(), properties(), applicationProperties());
+        byte[] descriptor = "amqp:data:binary".getBytes();
+        byte[] body = new byte[] { 1, 2, 3 };
+
+        ByteBuffer buf = ByteBuffer.allocate(sections.remaining() + 3 + descriptor.length + 2 + body.length);
+        buf.put(sections);
+        buf.put(DESCRIBED_TYPE);
+        buf.put((byte) 0xa3);
+        buf.put((byte) descriptor.length);
+        buf.put(descriptor);
+        buf.put((byte) 0xa0);
+        buf.put((byte) body.length);
+        buf.put(body);
+        buf.flip();
+
+        MessageMetaData_1_0 metaData = new MessageMetaData_1_0(new ByteBuffer[] { buf }, _decoder);
+
+        assertTrue(metaData.isPersistent());
+        assertEquals(MESSAGE_ID, metaData.getMessageHeader().getMessageId());
+        assertEquals("value", metaData.getMessageHeader().getHeader("key"));
+        assertEquals(buf.remaining(), metaData.getContentSize());
+    }
+
+    public void testSectionsSplitAcrossFragments()
+    {
+        ByteBuffer buf = encode(header(), deliveryAnnotations(), messageAnnotations(), properties(),
+                                applicationProperties(), data());
+        List<ByteBuffer> fragments = new ArrayList<ByteBuffer>();
+        while (buf.hasRemaining())
+        {
+            ByteBuffer fragment = buf.slice();
+            fragment.limit(Math.min(7, fragment.remaining()));
+            buf.position(buf.position() + fragment.remaining());
+            fragments.add(fragment);
+        }
+
+        MessageMetaData_1_0 metaData =
+                new MessageMetaData_1_0(fragments.toArray(new ByteBuffer[fragments.size()]), _decoder);
+
+        assertAllSectionsDecoded(metaData);
+        assertEquals(buf.limit(), metaData.getContentSize());
+    }
+
+    public void testStoreRoundTrip()
+    {
+        ByteBuffer encoded = encode(header(), deliveryAnnotations(), messageAnnotations(), properties(),
+                                    applicationProperties(), data());
+        MessageMetaData_1_0 metaData = new MessageMetaData_1_0(new ByteBuffer[] { encoded }, _decoder);
+
+        ByteBuffer stored = ByteBuffer.allocate(metaData.getStorableSize());
+        assertEquals(encoded.remaining(), metaData.writeToBuffer(stored));
+        stored.flip();
+
+        MessageMetaData_1_0 recovered = MessageMetaData_1_0.FACTORY.createMetaData(stored);
+
+        assertFalse("Factory should consume the buffer", stored.hasRemaining());
+        assertEquals(metaData.getStorableSize(), recovered.getStorableSize());
+        assertEquals(metaData.getContentSize(), recovered.getContentSize());
+        assertAllSectionsDecoded(recovered);
+    }
+
+    public void testSizeOfStoredMessageTakenFromMetaData()
+    {
+        ByteBuffer encoded = encode(header(), properties(), data());
+        MessageMetaData_1_0 metaData = new MessageMetaData_1_0(new ByteBuffer[] { encoded }, _decoder);
+
+        @SuppressWarnings("unchecked")
+        StoredMessage<MessageMetaData_1_0> storedMessage = mock(StoredMessage.class);
+        when(storedMessage.getMetaData()).thenReturn(metaData);
+
+        Message_1_0 message = new Message_1_0(storedMessage);
+
+        assertEquals(encoded.remaining(), message.getSize());
+        verify(storedMessage, never()).getContent(anyInt(), anyInt());
+        verify(storedMessage, never()).getContent(anyInt(), any(ByteBuffer.class));
+    }
+
+    private void assertAllSectionsDecoded(final MessageMetaData_1_0 metaData)
+    {
+        MessageMetaData_1_0.MessageHeader_1_0 messageHeader = metaData.getMessageHeader();
+        assertTrue(metaData.isPersistent());
+        assertEquals(7, messageHeader.getPriority());
+        assertEquals(JMS_TYPE, messageHeader.getType());
+        assertEquals(MESSAGE_ID, messageHeader.getMessageId());
+        assertEquals(TO, messageHeader.getTo());
+        assertEquals("value", messageHeader.getHeader("key"));
+        assertEquals(Collections.singleton("key"), new HashSet<String>(messageHeader.getHeaderNames()));
+    }
+
+    private MessageMetaData_1_0 decode(final Section... sections)
+    {
+        return new MessageMetaData_1_0(new ByteBuffer[] { encode(sections) }, _decoder);
+    }
+
+    private ByteBuffer encode(final Section... sections)
+    {
+        for (Section section : sections)
+        {
+            if (section instanceof AmqpSequence)
+            {
+                // the writer of amqp-sequence sections cannot encode them, so the descriptor is written here
+                _encoder.encodeRaw(new byte[] { DESCRIBED_TYPE, SMALL_ULONG, AMQP_SEQUENCE_DESCRIPTOR });
+                _encoder.encodeObject(((AmqpSequence) section).getValue());
+            }
+            else
+            {
+                _encoder.encodeObject(section);
+            }
+        }
+        ByteBuffer buf = _encoder.getEncoding().asByteBuffer();
+        _encoder.reset();
+        return buf;
+    }
+
+    private Header header()
+    {
+        Header header = new Header();
+        header.setDurable(Boolean.TRUE);
+        header.setPriority(UnsignedByte.valueOf((byte) 7));
+        return header;
+    }
+
+    private DeliveryAnnotations deliveryAnnotations()
+    {
+        Map<Symbol, Object> annotations = new HashMap<Symbol, Object>();
+        annotations.put(Symbol.valueOf("x-opt-delivery"), "delivery");
+        return new DeliveryAnnotations(annotations);
+    }
+
+    private MessageAnnotations messageAnnotations()
+    {
+        Map<Symbol, Object> annotations = new HashMap<Symbol, Object>();
+        annotations.put(MessageMetaData_1_0.JMS_TYPE, JMS_TYPE);
+        return new MessageAnnotations(annotations);
+    }
+
+    private Properties properties()
+    {
+        Properties properties = new Properties();
+        properties.setMessageId(MESSAGE_ID);
+        properties.setTo(TO);
+        return properties;
+    }
+
+    private ApplicationProperties applicationProperties()
+    {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("key", "value");
+        return new ApplicationProperties(properties);
+    }
+
+    private Data data()
+    {
+        return new Data(new Binary(new byte[] { 1, 2, 3 }));
+    }
+
+    private AmqpSequence amqpSequence()
+    {
+        List<Object> values = new ArrayList<Object>();
+        values.add("a");
+        values.add("b");
+        return new AmqpSequence(values);
+    }
+
+    private AmqpValue amqpValue()
+    {
+        return new AmqpValue("value");
+    }
+}
@@ -50,6 +50,7 @@ public abstract class AbstractDerbyMessageStore extends AbstractJDBCMessageStore
         if (_messageStoreOpen.compareAndSet(false, true))
         {
             _parent = parent;
+            setFlowToDiskManager(FlowToDiskManager.getFlowToDiskManager(parent));
 
             DerbyUtils.loadDerbyDriver();
 
@@ -67,6 +68,7 @@ public abstract class AbstractDerbyMessageStore extends AbstractJDBCMessageStore
             createOrOpenMessageStoreDatabase();
             setInitialSize();
             setMaximumMessageId();
+            startCommitter(parent.getName());
         }
     }
 
@@ -85,7 +87,14 @@ public abstract class AbstractDerbyMessageStore extends AbstractJDBCMessageStore
     {
         if (_messageStoreOpen.compareAndSet(true,  false))
         {
-            doClose();
+            try
+            {
+                stopCommitter();
+            }
+            finally
+            {
+                doClose();
+            }
         }
     }
 
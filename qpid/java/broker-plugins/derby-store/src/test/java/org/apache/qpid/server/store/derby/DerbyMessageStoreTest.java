@@ -22,10 +22,27 @@ package org.apache.qpid.server.store.derby;
 
 
 import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.qpid.server.message.EnqueueableMessage;
 import org.apache.qpid.server.model.VirtualHost;
+import org.apache.qpid.server.store.FlowToDiskManager;
 import org.apache.qpid.server.store.MessageStore;
 import org.apache.qpid.server.store.MessageStoreTestCase;
+import org.apache.qpid.server.store.StoreFuture;
+import org.apache.qpid.server.store.StoredMessage;
+import org.apache.qpid.server.store.TestMessageMetaData;
+import org.apache.qpid.server.store.TransactionLogResource;
+import org.apache.qpid.server.txn.AsyncAutoCommitTransaction;
+import org.apache.qpid.server.txn.ServerTransaction;
 import org.apache.qpid.server.virtualhost.derby.DerbyVirtualHost;
 import org.apache.qpid.util.FileUtils;
 
@@ -61,6 +78,95 @@ public class DerbyMessageStoreTest extends MessageStoreTestCase
         assertFalse("Store exists at " + _storeLocation, location.exists());
     }
 
+    public void testFlushAfterAsyncEnqueueDoesNotCommitAgain() throws Exception
+    {
+        final CountingDerbyMessageStore store = (CountingDerbyMessageStore) getStore();
+        final int contentSize = 100;
+        final StoredMessage<TestMessageMetaData> message = store.addMessage(new TestMessageMetaData(1L, contentSize));
+
+        EnqueueableMessage enqueueableMessage = mock(EnqueueableMessage.class);
+        when(enqueueableMessage.isPersistent()).thenReturn(true);
+        when(enqueueableMessage.getMessageNumber()).thenReturn(1L);
+        when(enqueueableMessage.getStoredMessage()).thenReturn((StoredMessage) message);
+
+        TransactionLogResource queue = mock(TransactionLogResource.class);
+        when(queue.getId()).thenReturn(UUID.randomUUID());
+        when(queue.getName()).thenReturn("testQueue");
+        when(queue.isDurable()).thenReturn(true);
+
+        final StoreFuture[] recordedFuture = new StoreFuture[1];
+        AsyncAutoCommitTransaction.FutureRecorder recorder = new AsyncAutoCommitTransaction.FutureRecorder()
+        {
+            @Override
+            public void recordFuture(final StoreFuture future, final ServerTransaction.Action action)
+            {
+                recordedFuture[0] = future;
+            }
+        };
+
+        store.resetCounts();
+
+        // the 0-8 and 0-10 publish paths enqueue through the async transaction and then flush the message
+        new AsyncAutoCommitTransaction(store, recorder).enqueue(queue, enqueueableMessage, mock(ServerTransaction.Action.class));
+        StoreFuture flushFuture = message.flushToStore();
+        flushFuture.waitForCompletion();
+        recordedFuture[0].waitForCompletion();
+
+        assertEquals("Unexpected number of commits", 1, store.getCommitCount());
+        assertEquals("Unexpected store size", contentSize, store.getStoreSize());
+    }
+
+    public void testFlowToDiskWritesContentOfMessageNotYetStored() throws Exception
+    {
+        final CountingDerbyMessageStore store = (CountingDerbyMessageStore) getStore();
+        final int contentSize = 100;
+        final FlowToDiskManager flowToDiskManager = new FlowToDiskManager(contentSize, new File(_storeLocation));
+        store.useFlowToDiskManager(flowToDiskManager);
+        store.resetCounts();
+
+        // neither message is enqueued on a durable queue, so the store would otherwise never write them
+        final StoredMessage<TestMessageMetaData> first = addMessageWithContent(store, 1L, contentSize);
+        assertEquals("Unexpected number of commits", 0, store.getCommitCount());
+
+        final StoredMessage<TestMessageMetaData> second = addMessageWithContent(store, 2L, contentSize);
+        assertEquals("Unexpected evicted messages", 1L, flowToDiskManager.getEvictedMessages());
+        assertEquals("Unexpected in memory bytes", (long) contentSize, flowToDiskManager.getInMemoryBytes());
+        assertEquals("Flowed message should have been written", 1, store.getCommitCount());
+        assertEquals("Unexpected store size", contentSize, store.getStoreSize());
+
+        assertContent(first, 1);
+        assertContent(second, 2);
+        assertEquals("Flowed content should have been read from the store", 1L, flowToDiskManager.getReloadCount());
+
+        second.remove();
+        assertEquals("Unexpected store size", 0, store.getStoreSize());
+    }
+
+    private StoredMessage<TestMessageMetaData> addMessageWithContent(final MessageStore store,
+                                                                     final long messageId,
+                                                                     final int contentSize)
+    {
+        final StoredMessage<TestMessageMetaData> message = store.addMessage(new TestMessageMetaData(messageId, contentSize));
+        final ByteBuffer content = ByteBuffer.allocate(contentSize);
+        while(content.hasRemaining())
+        {
+            content.put((byte) messageId);
+        }
+        content.flip();
+        message.addContent(0, content);
+        return message;
+    }
+
+    private void assertContent(final StoredMessage<TestMessageMetaData> message, final int expectedByte)
+    {
+        final ByteBuffer content = message.getContent(0, message.getMetaData().getContentSize());
+        assertEquals("Unexpected content length", message.getMetaData().getContentSize(), content.remaining());
+        while(content.hasRemaining())
+        {
+            assertEquals("Unexpected content", (byte) expectedByte, content.get());
+        }
+    }
+
     @Override
     protected VirtualHost createVirtualHost()
     {
@@ -87,7 +193,71 @@ public class DerbyMessageStoreTest extends MessageStoreTestCase
     @Override
     protected MessageStore createMessageStore()
     {
-        return new DerbyMessageStore();
+        return new CountingDerbyMessageStore();
+    }
+
+    private static class CountingDerbyMessageStore extends DerbyMessageStore
+    {
+        private final AtomicInteger _commitCount = new AtomicInteger();
+        private final AtomicInteger _storeSize = new AtomicInteger();
+
+        @Override
+        protected Connection getConnection() throws SQLException
+        {
+            final Connection connection = super.getConnection();
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                       new Class[]{Connection.class},
+                                                       new InvocationHandler()
+                                                       {
+                                                           @Override
+                                                           public Object invoke(final Object proxy,
+                                                                                final Method method,
+                                                                                final Object[] args)
+                                                                   throws Throwable
+                                                           {
+                                                               if ("commit".equals(method.getName()))
+                                                               {
+                                                                   _commitCount.incrementAndGet();
+                                                               }
+                                                               try
+                                                               {
+                                                                   return method.invoke(connection, args);
+                                                               }
+                                                               catch (InvocationTargetException e)
+                                                               {
+                                                                   throw e.getCause();
+                                                               }
+                                                           }
+                                                       });
+        }
+
+        @Override
+        protected void storedSizeChange(final int delta)
+        {
+            _storeSize.addAndGet(delta);
+            super.storedSizeChange(delta);
+        }
+
+        void useFlowToDiskManager(final FlowToDiskManager flowToDiskManager)
+        {
+            setFlowToDiskManager(flowToDiskManager);
+        }
+
+        void resetCounts()
+        {
+            _commitCount.set(0);
+            _storeSize.set(0);
+        }
+
+        int getCommitCount()
+        {
+            return _commitCount.get();
+        }
+
+        int getStoreSize()
+        {
+            return _storeSize.get();
+        }
     }
 
 }
@@ -24,6 +24,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.qpid.server.model.ConfiguredObject;
+import org.apache.qpid.server.store.FlowToDiskManager;
 import org.apache.qpid.server.store.StoreException;
 import org.apache.qpid.server.store.StoreFuture;
 import org.apache.qpid.server.store.Transaction;
@@ -41,11 +42,13 @@ public abstract class GenericAbstractJDBCMessageStore extends org.apache.qpid.se
         if (_messageStoreOpen.compareAndSet(false, true))
         {
             _parent = parent;
+            setFlowToDiskManager(FlowToDiskManager.getFlowToDiskManager(parent));
 
             doOpen(parent);
 
             createOrOpenMessageStoreDatabase();
             setMaximumMessageId();
+            startCommitter(parent.getName());
         }
     }
 
@@ -75,7 +78,14 @@ public abstract class GenericAbstractJDBCMessageStore extends org.apache.qpid.se
             }
             finally
             {
-                doClose();
+                try
+                {
+                    stopCommitter();
+                }
+                finally
+                {
+                    doClose();
+                }
             }
 
         }
@@ -54,6 +54,7 @@ import org.apache.qpid.server.management.plugin.servlet.DefinedFileServlet;
 import org.apache.qpid.server.management.plugin.servlet.FileServlet;
 import org.apache.qpid.server.management.plugin.servlet.LogFileServlet;
 import org.apache.qpid.server.management.plugin.servlet.rest.HelperServlet;
+import org.apache.qpid.server.management.plugin.servlet.rest.LatencyServlet;
 import org.apache.qpid.server.management.plugin.servlet.rest.LogFileListingServlet;
 import org.apache.qpid.server.management.plugin.servlet.rest.LogRecordsServlet;
 import org.apache.qpid.server.management.plugin.servlet.rest.LoggedOnUserPreferencesServlet;
@@ -264,6 +265,7 @@ public class HttpManagement extends AbstractPluginAdapter<HttpManagement> implem
         root.addServlet(new ServletHolder(new StructureServlet()), "/service/structure");
         root.addServlet(new ServletHolder(new MessageServlet()), "/service/message/*");
         root.addServlet(new ServletHolder(new MessageContentServlet()), "/service/message-content/*");
+        root.addServlet(new ServletHolder(new LatencyServlet()), "/service/latency/*");
 
         root.addServlet(new ServletHolder(new LogRecordsServlet()), "/service/logrecords");
 
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.qpid.server.management.plugin.servlet.rest;
+
+import java.io.IOException;
+import java.security.AccessControlException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.qpid.server.model.Queue;
+import org.apache.qpid.server.model.VirtualHost;
+import org.apache.qpid.server.security.SecurityManager;
+import org.apache.qpid.server.security.access.Operation;
+
+/**
+ * Reports and resets the latency histograms of a virtual host or of one of its queues.
+ *
+ * GET /service/latency/&lt;vhost&gt;[/&lt;queue&gt;] returns the percentiles recorded so far, and DELETE on the
+ * same path discards them.  Deleting the histograms of a virtual host also deletes those of all of its queues.
+ */
+public class LatencyServlet extends AbstractServlet
+{
+    public LatencyServlet()
+    {
+        super();
+    }
+
+    @Override
+    protected void doGetWithSubjectAndActor(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+    {
+        VirtualHost<?,?,?> vhost = getVirtualHostFromRequest(request);
+        if (vhost == null)
+        {
+            sendError(response, HttpServletResponse.SC_NOT_FOUND);
+        }
+        else if (getPathInfoElements(request).length > 1)
+        {
+            Queue<?> queue = getQueueFromRequest(request, vhost);
+            if (queue == null)
+            {
+                sendError(response, HttpServletResponse.SC_NOT_FOUND);
+            }
+            else
+            {
+                sendJsonResponse(queue.getLatencyHistograms(), response);
+            }
+        }
+        else
+        {
+            sendJsonResponse(vhost.getLatencyHistograms(), response);
+        }
+    }
+
+    @Override
+    protected void doDeleteWithSubjectAndActor(HttpServletRequest request, HttpServletResponse response)
+    {
+        VirtualHost<?,?,?> vhost = getVirtualHostFromRequest(request);
+        if (vhost == null)
+        {
+            sendError(response, HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        try
+        {
+            if (getPathInfoElements(request).length > 1)
+            {
+                Queue<?> queue = getQueueFromRequest(request, vhost);
+                if (queue == null)
+                {
+                    sendError(response, HttpServletResponse.SC_NOT_FOUND);
+                    return;
+                }
+                authorizeMethod("VirtualHost.Queue", vhost);
+                queue.resetLatencyHistograms();
+            }
+            else
+            {
+                authorizeMethod("VirtualHost", vhost);
+                vhost.resetLatencyHistograms();
+            }
+            response.setStatus(HttpServletResponse.SC_OK);
+        }
+        catch (AccessControlException e)
+        {
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+        }
+    }
+
+    private VirtualHost<?,?,?> getVirtualHostFromRequest(HttpServletRequest request)
+    {
+        String[] pathInfoElements = getPathInfoElements(request);
+        if (pathInfoElements == null || pathInfoElements.length < 1 || pathInfoElements.length > 2)
+        {
+            throw new IllegalArgumentException("Invalid path is specified");
+        }
+        return getBroker().findVirtualHostByName(pathInfoElements[0]);
+    }
+
+    private Queue<?> getQueueFromRequest(HttpServletRequest request, VirtualHost<?,?,?> vhost)
+    {
+        String queueName = getPathInfoElements(request)[1];
+        for (Queue<?> queue : vhost.getQueues())
+        {
+            if (queue.getName().equals(queueName))
+            {
+                return queue;
+            }
+        }
+        return null;
+    }
+
+    private void authorizeMethod(String componentName, VirtualHost<?,?,?> vhost)
+    {
+        SecurityManager securityManager = getBroker().getSecurityManager();
+        securityManager.authoriseMethod(Operation.UPDATE, componentName, "resetLatencyHistograms", vhost.getName());
+    }
+}
@@ -51,6 +51,7 @@ import org.apache.qpid.server.transport.AcceptingTransport;
 import org.apache.qpid.server.util.ServerScopedRuntimeException;
 import org.apache.qpid.transport.Sender;
 import org.apache.qpid.transport.network.NetworkConnection;
+import org.apache.qpid.transport.network.NetworkWriteStatistics;
 
 class WebSocketProvider implements AcceptingTransport
 {
@@ -61,6 +62,7 @@ class WebSocketProvider implements AcceptingTransport
     private final Set<Protocol> _supported;
     private final Protocol _defaultSupportedProtocolReply;
     private final ProtocolEngineFactory _factory;
+    private final NetworkWriteStatistics _writeStatistics = new NetworkWriteStatistics();
     private Server _server;
 
     WebSocketProvider(final Transport transport,
@@ -161,6 +163,19 @@ class WebSocketProvider implements AcceptingTransport
 
     }
 
+    @Override
+    public long getBytesWritten()
+    {
+        return _writeStatistics.getBytesWritten();
+    }
+
+    @Override
+    public long getWakeupsPerSecond()
+    {
+        // frames are handed straight to the web socket connection, so there is no writer of our own to wake
+        return 0l;
+    }
+
     private class AmqpWebSocket implements WebSocket,WebSocket.OnBinaryMessage
     {
         private final SocketAddress _localAddress;
@@ -249,7 +264,9 @@ class WebSocketProvider implements AcceptingTransport
         {
             try
             {
-                _connection.sendMessage(msg.array(),msg.arrayOffset()+msg.position(),msg.remaining());
+                final int length = msg.remaining();
+                _connection.sendMessage(msg.array(),msg.arrayOffset()+msg.position(),length);
+                _writeStatistics.bytesWritten(length);
             }
             catch (IOException e)
             {
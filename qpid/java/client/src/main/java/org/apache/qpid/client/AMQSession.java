@@ -27,12 +27,15 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -136,6 +139,11 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
      */
     protected final boolean DEAMON_DISPATCHER_THREAD = Boolean.getBoolean(ClientProperties.DAEMON_DISPATCHER);
 
+    /**
+     * Flag indicating to deliver messages on the shared dispatcher pool rather than a dispatcher thread of our own
+     */
+    private final boolean _pooledDispatch = DispatcherPool.isEnabled();
+
     /** The connection to which this session belongs. */
     private AMQConnection _connection;
 
@@ -198,6 +206,9 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
 
     private final IdToConsumerMap<C> _consumers = new IdToConsumerMap<C>();
 
+    /** Tracks the messages sent with a completion listener, created when the first is sent. */
+    private volatile PublishConfirmationTracker _publishConfirmations;
+
     /**
      * Contains a list of consumers which have been removed but which might still have
      * messages to acknowledge, eg in client ack or transacted modes
@@ -454,14 +465,7 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
                                                                                  "Above threshold(" + _prefetchHighMark
                                                                                  + ") so suspending channel. Current value is " + currentValue);
                                                                      }
-                                                                     try
-                                                                     {
-                                                                         Threading.getThreadFactory().createThread(new SuspenderRunner(_suspendState)).start();
-                                                                     }
-                                                                     catch (Exception e)
-                                                                     {
-                                                                         throw new RuntimeException("Failed to create thread", e);
-                                                                     }
+                                                                     suspendChannelLater(_suspendState);
                                                                  }
                                                              }
                                                          }
@@ -483,14 +487,7 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
                                                                                  "Below threshold(" + _prefetchLowMark
                                                                                  + ") so unsuspending channel. Current value is " + currentValue);
                                                                      }
-                                                                     try
-                                                                     {
-                                                                         Threading.getThreadFactory().createThread(new SuspenderRunner(_suspendState)).start();
-                                                                     }
-                                                                     catch (Exception e)
-                                                                     {
-                                                                         throw new RuntimeException("Failed to create thread", e);
-                                                                     }
+                                                                     suspendChannelLater(_suspendState);
                                                                  }
                                                              }
                                                          }
@@ -696,6 +693,7 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
         if (!setClosed())
         {
             setClosing(true);
+            awaitPublishConfirmations(timeout);
             synchronized (getFailoverMutex())
             {
                 // We must close down all producers and consumers in an orderly fashion. This is the only method
@@ -747,6 +745,74 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
 
     public abstract void sendClose(long timeout) throws AMQException, FailoverException;
 
+    PublishConfirmationTracker getPublishConfirmations()
+    {
+        PublishConfirmationTracker confirmations = _publishConfirmations;
+        if (confirmations == null)
+        {
+            synchronized (this)
+            {
+                confirmations = _publishConfirmations;
+                if (confirmations == null)
+                {
+                    Executor executor = new Executor()
+                    {
+                        @Override
+                        public void execute(Runnable command)
+                        {
+                            _connection.performConnectionTask(command);
+                        }
+                    };
+                    int window = Integer.getInteger(ClientProperties.QPID_PUBLISH_CONFIRM_WINDOW,
+                                                    ClientProperties.DEFAULT_PUBLISH_CONFIRM_WINDOW);
+                    long timeout = Long.getLong(ClientProperties.QPID_FLOW_CONTROL_WAIT_FAILURE,
+                                                ClientProperties.DEFAULT_FLOW_CONTROL_WAIT_FAILURE);
+                    confirmations = new PublishConfirmationTracker(executor, window, timeout);
+                    _publishConfirmations = confirmations;
+                }
+            }
+        }
+        return confirmations;
+    }
+
+    /**
+     * Waits for the broker to confirm the messages sent with a completion listener, so that closing the session does
+     * not fail messages which are about to be confirmed.
+     */
+    private void awaitPublishConfirmations(long timeout)
+    {
+        PublishConfirmationTracker confirmations = _publishConfirmations;
+        if (confirmations != null)
+        {
+            if (timeout < 0)
+            {
+                timeout = Long.getLong(ClientProperties.QPID_FLOW_CONTROL_WAIT_FAILURE,
+                                       ClientProperties.DEFAULT_FLOW_CONTROL_WAIT_FAILURE);
+            }
+            try
+            {
+                if (!confirmations.awaitConfirmations(timeout))
+                {
+                    _logger.warn("Closing session with " + confirmations.getUnconfirmedCount()
+                                 + " messages still awaiting confirmation");
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void failPublishConfirmations(Exception cause)
+    {
+        PublishConfirmationTracker confirmations = _publishConfirmations;
+        if (confirmations != null)
+        {
+            confirmations.fail(cause);
+        }
+    }
+
     /**
      * Called when the server initiates the closure of the session unilaterally.
      *
@@ -893,7 +959,7 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
                     }
                     else
                     {
-                        _queue.add(new CloseConsumerMessage(consumer));
+                        addToDispatchQueue(new CloseConsumerMessage(consumer));
                     }
                 }
             }
@@ -1662,7 +1728,32 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
             _logger.debug("Message[" + message.toString() + "] received in session");
         }
         _highestDeliveryTag.set(message.getDeliveryTag());
-        _queue.add(message);
+        addToDispatchQueue(message);
+    }
+
+    private void addToDispatchQueue(Dispatchable dispatchable)
+    {
+        _queue.add(dispatchable);
+
+        Dispatcher dispatcher = _dispatcher;
+        if (dispatcher != null)
+        {
+            dispatcher.schedule();
+        }
+    }
+
+    /**
+     * @return true if the current thread is the one delivering this session's messages
+     */
+    private boolean isDispatcherThread()
+    {
+        Thread current = Thread.currentThread();
+        if (current == _dispatcherThread)
+        {
+            return true;
+        }
+        Dispatcher dispatcher = _dispatcher;
+        return dispatcher != null && dispatcher.isDraining(current);
     }
 
     public void declareAndBind(AMQDestination amqd)
@@ -2158,7 +2249,7 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
 
     void syncDispatchQueue()
     {
-        if (Thread.currentThread() == _dispatcherThread)
+        if (isDispatcherThread())
         {
             while (!super.isClosed() && !_queue.isEmpty())
             {
@@ -2189,7 +2280,7 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
 
             final CountDownLatch signal = new CountDownLatch(1);
 
-            _queue.add(new Dispatchable()
+            addToDispatchQueue(new Dispatchable()
             {
                 public void dispatch(AMQSession ssn)
                 {
@@ -2210,7 +2301,7 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
 
     void drainDispatchQueue()
     {
-        if (Thread.currentThread() == _dispatcherThread)
+        if (isDispatcherThread())
         {
             while (!super.isClosed() && !_queue.isEmpty())
             {
@@ -2241,7 +2332,7 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
 
             final CountDownLatch signal = new CountDownLatch(1);
 
-            _queue.add(new Dispatchable()
+            addToDispatchQueue(new Dispatchable()
             {
                 public void dispatch(AMQSession ssn)
                 {
@@ -2319,7 +2410,7 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
     void startDispatcherIfNecessary()
     {
         //If we are the dispatcher then we don't need to check we are started
-        if (Thread.currentThread() == _dispatcherThread)
+        if (isDispatcherThread())
         {
             return;
         }
@@ -2347,7 +2438,16 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
 
     synchronized void startDispatcherIfNecessary(boolean initiallyStopped)
     {
-        if (_dispatcher == null)
+        if (_dispatcher == null && _pooledDispatch)
+        {
+            _dispatcher = new Dispatcher();
+            _dispatcher.setConnectionStopped(initiallyStopped);
+            if (_dispatcherLogger.isDebugEnabled())
+            {
+                _dispatcherLogger.debug("Pooled dispatcher created for channel " + _channelId);
+            }
+        }
+        else if (_dispatcher == null)
         {
             _dispatcher = new Dispatcher();
             try
@@ -2535,6 +2635,8 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
      */
     private void closeProducersAndConsumers(AMQException amqe) throws JMSException
     {
+        failPublishConfirmations(amqe == null ? new AMQException("Session closed") : amqe);
+
         JMSException jmse = null;
         try
         {
@@ -2949,6 +3051,13 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
 
     private void rejectMessagesForConsumerTag(int consumerTag, boolean requeue, boolean rejectAllConsumers)
     {
+        Dispatcher dispatcher = _dispatcher;
+        if (dispatcher != null)
+        {
+            // messages taken from the queue while the connection was stopped come before those still in it
+            dispatcher.rejectStoppedMessages(consumerTag, requeue, rejectAllConsumers);
+        }
+
         Iterator messages = _queue.iterator();
         if (_logger.isDebugEnabled())
         {
@@ -2964,6 +3073,11 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
                 _logger.debug("No messages in _queue to reject");
             }
         }
+        rejectMessages(messages, consumerTag, requeue, rejectAllConsumers);
+    }
+
+    private void rejectMessages(Iterator messages, int consumerTag, boolean requeue, boolean rejectAllConsumers)
+    {
         while (messages.hasNext())
         {
             UnprocessedMessage message = (UnprocessedMessage) messages.next();
@@ -3128,6 +3242,22 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
         private final Object _lock = new Object();
         private final String dispatcherID = "" + System.identityHashCode(this);
 
+        /** When dispatching on the shared pool, whether a task to drain the queue is in the pool or running */
+        private final AtomicBoolean _scheduled = new AtomicBoolean(false);
+        private volatile Thread _drainingThread;
+        /**
+         * When dispatching on the shared pool, the messages taken from the queue after the connection was stopped,
+         * which are delivered before any others once it is started.  Guarded by _lock.
+         */
+        private final LinkedList<UnprocessedMessage> _stoppedMessages = new LinkedList<UnprocessedMessage>();
+        private final Runnable _drainTask = new Runnable()
+        {
+            public void run()
+            {
+                drain();
+            }
+        };
+
         public Dispatcher()
         {
         }
@@ -3135,17 +3265,107 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
         public void close()
         {
             _closed.set(true);
-            _dispatcherThread.interrupt();
+            if (!_pooledDispatch)
+            {
+                _dispatcherThread.interrupt();
+            }
 
             // fixme awaitTermination
 
         }
 
+        /**
+         * When dispatching on the shared pool, ensures a task is there to drain the queue.  Only one task is
+         * scheduled at a time, so messages are still delivered in order.
+         */
+        void schedule()
+        {
+            if (_pooledDispatch && !_closed.get() && _scheduled.compareAndSet(false, true))
+            {
+                DispatcherPool.getExecutor().execute(_drainTask);
+            }
+        }
+
+        boolean isDraining(Thread thread)
+        {
+            return _drainingThread == thread;
+        }
+
+        /**
+         * Dispatches at most a prefetch's worth of messages, and then gives the thread back to the pool, rescheduling
+         * if there are more, so that a session which keeps receiving does not starve the others sharing the pool.
+         */
+        private void drain()
+        {
+            _drainingThread = Thread.currentThread();
+            try
+            {
+                int remaining = Math.max(1, _prefetchHighMark);
+                Dispatchable disp;
+                while (remaining-- > 0 && !_closed.get() && !isConnectionStopped() && (disp = poll()) != null)
+                {
+                    disp.dispatch(AMQSession.this);
+                }
+            }
+            finally
+            {
+                _drainingThread = null;
+                _scheduled.set(false);
+            }
+
+            // something may have been added after the queue was last polled, by a thread which found us scheduled
+            if (hasPending() && !isConnectionStopped())
+            {
+                schedule();
+            }
+        }
+
+        private Dispatchable poll()
+        {
+            synchronized (_lock)
+            {
+                UnprocessedMessage message = _stoppedMessages.poll();
+                if (message != null)
+                {
+                    return message;
+                }
+            }
+            return (Dispatchable) _queue.poll();
+        }
+
+        private boolean hasPending()
+        {
+            synchronized (_lock)
+            {
+                if (!_stoppedMessages.isEmpty())
+                {
+                    return true;
+                }
+            }
+            return !_queue.isEmpty();
+        }
+
+        private boolean isConnectionStopped()
+        {
+            synchronized (_lock)
+            {
+                return connectionStopped();
+            }
+        }
+
         private AtomicBoolean getClosed()
         {
             return _closed;
         }
 
+        void rejectStoppedMessages(int consumerTag, boolean requeue, boolean rejectAllConsumers)
+        {
+            synchronized (_lock)
+            {
+                rejectMessages(_stoppedMessages.iterator(), consumerTag, requeue, rejectAllConsumers);
+            }
+        }
+
         public void rejectPending(C consumer)
         {
             // Reject messages on pre-receive queue
@@ -3292,6 +3512,11 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
                 }
             }
 
+            if (!connectionStopped)
+            {
+                schedule();
+            }
+
             return currently;
         }
 
@@ -3301,6 +3526,12 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
 
             synchronized (_lock)
             {
+                if (_pooledDispatch && connectionStopped())
+                {
+                    // rather than hold a thread of the shared pool, keep the message until the connection is started
+                    _stoppedMessages.add(message);
+                    return;
+                }
 
                 try
                 {
@@ -3404,6 +3635,22 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
 
     public abstract AMQMessageDelegateFactory getMessageDelegateFactory();
 
+    /**
+     * Suspends or unsuspends the channel on the connection's task pool, as the threshold events of the queue are fired
+     * by the threads adding and removing messages, which must not wait for the broker.
+     */
+    private void suspendChannelLater(AtomicBoolean suspendState)
+    {
+        try
+        {
+            _connection.performConnectionTask(new SuspenderRunner(suspendState));
+        }
+        catch (RejectedExecutionException e)
+        {
+            _logger.debug("Connection is closing, so not changing the flow state of session " + this);
+        }
+    }
+
     private class SuspenderRunner implements Runnable
     {
         private AtomicBoolean _suspend;
@@ -35,6 +35,7 @@ import javax.jms.Topic;
 import org.apache.qpid.AMQException;
 import org.apache.qpid.client.message.AbstractJMSMessage;
 import org.apache.qpid.client.message.MessageConverter;
+import org.apache.qpid.jms.CompletionListener;
 import org.apache.qpid.transport.TransportException;
 import org.apache.qpid.util.UUIDGen;
 import org.apache.qpid.util.UUIDs;
@@ -389,6 +390,81 @@ public abstract class BasicMessageProducer extends Closeable implements org.apac
         }
     }
 
+    public void send(Message message, CompletionListener listener) throws JMSException
+    {
+        send(message, _deliveryMode, _messagePriority, _timeToLive, listener);
+    }
+
+    public void send(Message message, int deliveryMode, int priority, long timeToLive, CompletionListener listener)
+        throws JMSException
+    {
+        checkPreConditions();
+        checkInitialDestination();
+        checkCompletionListener(listener);
+
+        PublishConfirmationTracker.PendingPublish confirmation =
+                _session.getPublishConfirmations().register(message, listener);
+        boolean sent = false;
+        try
+        {
+            synchronized (_connection.getFailoverMutex())
+            {
+                sendImpl(_destination, message, deliveryMode, priority, timeToLive, _mandatory, _immediate,
+                         confirmation);
+                sent = true;
+            }
+        }
+        finally
+        {
+            confirmation.sendFinished(sent);
+        }
+    }
+
+    public void send(Destination destination, Message message, CompletionListener listener) throws JMSException
+    {
+        send(destination, message, _deliveryMode, _messagePriority, _timeToLive, listener);
+    }
+
+    public void send(Destination destination, Message message, int deliveryMode, int priority, long timeToLive,
+                     CompletionListener listener) throws JMSException
+    {
+        checkPreConditions();
+        checkDestination(destination);
+        checkCompletionListener(listener);
+
+        PublishConfirmationTracker.PendingPublish confirmation =
+                _session.getPublishConfirmations().register(message, listener);
+        boolean sent = false;
+        try
+        {
+            synchronized (_connection.getFailoverMutex())
+            {
+                validateDestination(destination);
+                sendImpl((AMQDestination) destination, message, deliveryMode, priority, timeToLive,
+                        _mandatory == null
+                                ? destination instanceof Topic
+                                    ? _defaultMandatoryTopicValue
+                                    : _defaultMandatoryValue
+                                : _mandatory,
+                        _immediate,
+                        confirmation);
+                sent = true;
+            }
+        }
+        finally
+        {
+            confirmation.sendFinished(sent);
+        }
+    }
+
+    private void checkCompletionListener(CompletionListener listener)
+    {
+        if (listener == null)
+        {
+            throw new IllegalArgumentException("CompletionListener must not be null");
+        }
+    }
+
     private AbstractJMSMessage convertToNativeMessage(Message message) throws JMSException
     {
         if (message instanceof AbstractJMSMessage)
@@ -478,6 +554,21 @@ public abstract class BasicMessageProducer extends Closeable implements org.apac
      */
     protected void sendImpl(AMQDestination destination, Message origMessage, int deliveryMode, int priority, long timeToLive,
                             boolean mandatory, boolean immediate) throws JMSException
+    {
+        sendImpl(destination, origMessage, deliveryMode, priority, timeToLive, mandatory, immediate, null);
+    }
+
+    /**
+     * The caller of this method must hold the failover mutex.
+     *
+     * @param confirmation if not null, the message is sent without waiting for the broker to confirm it, and the
+     * confirmation is completed when the broker does
+     *
+     * @throws JMSException
+     */
+    protected void sendImpl(AMQDestination destination, Message origMessage, int deliveryMode, int priority, long timeToLive,
+                            boolean mandatory, boolean immediate,
+                            PublishConfirmationTracker.PendingPublish confirmation) throws JMSException
     {
         checkTemporaryDestination(destination);
         origMessage.setJMSDestination(destination);
@@ -497,7 +588,8 @@ public abstract class BasicMessageProducer extends Closeable implements org.apac
 
         try
         {
-            sendMessage(destination, origMessage, message, messageId, deliveryMode, priority, timeToLive, mandatory, immediate);
+            sendMessage(destination, origMessage, message, messageId, deliveryMode, priority, timeToLive, mandatory, immediate,
+                        confirmation);
         }
         catch (TransportException e)
         {
@@ -525,7 +617,8 @@ public abstract class BasicMessageProducer extends Closeable implements org.apac
 
     abstract void sendMessage(AMQDestination destination, Message origMessage, AbstractJMSMessage message,
                               UUID messageId, int deliveryMode, int priority, long timeToLive, boolean mandatory,
-                              boolean immediate) throws JMSException;
+                              boolean immediate, PublishConfirmationTracker.PendingPublish confirmation)
+            throws JMSException;
 
     private void checkTemporaryDestination(AMQDestination destination) throws JMSException
     {
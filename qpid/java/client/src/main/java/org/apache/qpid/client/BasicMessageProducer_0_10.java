@@ -34,6 +34,7 @@ import org.apache.qpid.transport.MessageAcquireMode;
 import org.apache.qpid.transport.MessageDeliveryMode;
 import org.apache.qpid.transport.MessageDeliveryPriority;
 import org.apache.qpid.transport.MessageProperties;
+import org.apache.qpid.transport.MessageTransfer;
 import org.apache.qpid.transport.Option;
 import org.apache.qpid.transport.TransportException;
 import org.apache.qpid.util.Strings;
@@ -105,7 +106,7 @@ public class BasicMessageProducer_0_10 extends BasicMessageProducer
      */
     void sendMessage(AMQDestination destination, Message origMessage, AbstractJMSMessage message,
                      UUID messageId, int deliveryMode, int priority, long timeToLive, boolean mandatory,
-                     boolean immediate) throws JMSException
+                     boolean immediate, PublishConfirmationTracker.PendingPublish confirmation) throws JMSException
     {
         message.prepareForSending();
 
@@ -225,7 +226,21 @@ public class BasicMessageProducer_0_10 extends BasicMessageProducer
             
 
             ByteBuffer buffer = data == null ? ByteBuffer.allocate(0) : data.slice();
-            
+
+            if (confirmation != null)
+            {
+                // the broker completes the transfer once it is done with the message, and the session calls
+                // the confirmation back then, so there is no need to wait for it here
+                MessageTransfer transfer = new MessageTransfer(exchangeName,
+                                                               MessageAcceptMode.NONE,
+                                                               MessageAcquireMode.PRE_ACQUIRED,
+                                                               new Header(deliveryProp, messageProps),
+                                                               buffer, SYNC, unreliable ? UNRELIABLE : NONE);
+                transfer.setCompletionListener(confirmation);
+                ssn.invoke(transfer);
+                return;
+            }
+
             ssn.messageTransfer(destination.getExchangeName() == null ? "" : destination.getExchangeName().toString(), 
                                 MessageAcceptMode.NONE,
                                 MessageAcquireMode.PRE_ACQUIRED,
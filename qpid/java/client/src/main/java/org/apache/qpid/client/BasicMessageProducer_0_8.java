@@ -78,7 +78,7 @@ public class BasicMessageProducer_0_8 extends BasicMessageProducer
 
     void sendMessage(AMQDestination destination, Message origMessage, AbstractJMSMessage message,
                      UUID messageId, int deliveryMode,int priority, long timeToLive, boolean mandatory,
-                     boolean immediate) throws JMSException
+                     boolean immediate, PublishConfirmationTracker.PendingPublish confirmation) throws JMSException
     {
         BasicPublishBody body = getSession().getMethodRegistry().createBasicPublishBody(getSession().getTicket(),
                                                                                         destination.getExchangeName(),
@@ -183,6 +183,21 @@ public class BasicMessageProducer_0_8 extends BasicMessageProducer
         }
 
         getConnection().getProtocolHandler().writeFrame(compositeFrame);
+
+        if (confirmation != null)
+        {
+            // 0-8/0-9 has no publisher confirms, so the best that can be done is to wait for the broker to
+            // have processed everything sent before the sync
+            try
+            {
+                getSession().sync();
+                confirmation.confirm();
+            }
+            catch (AMQException e)
+            {
+                confirmation.fail(e);
+            }
+        }
     }
 
     /**
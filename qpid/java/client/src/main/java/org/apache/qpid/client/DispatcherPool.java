@@ -0,0 +1,123 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.qpid.configuration.ClientProperties;
+import org.apache.qpid.thread.Threading;
+
+/**
+ * The pool of threads which sessions share to deliver messages to their consumers, when
+ * {@link ClientProperties#QPID_DISPATCHER_POOL_SIZE} is set.  The pool is sized when first used.
+ *
+ * A session never has more than one task in the pool at a time, so its messages are still delivered one at a time
+ * and in order.  Idle threads end after a minute, so the pool costs nothing while no session is using it.
+ */
+final class DispatcherPool
+{
+    private static final long KEEP_ALIVE_SECONDS = 60l;
+
+    private static volatile Executor _executor;
+
+    private DispatcherPool()
+    {
+    }
+
+    static boolean isEnabled()
+    {
+        return getPoolSize() > 0;
+    }
+
+    private static int getPoolSize()
+    {
+        return Integer.getInteger(ClientProperties.QPID_DISPATCHER_POOL_SIZE,
+                                  ClientProperties.DEFAULT_DISPATCHER_POOL_SIZE);
+    }
+
+    static Executor getExecutor()
+    {
+        Executor executor = _executor;
+        if (executor == null)
+        {
+            synchronized (DispatcherPool.class)
+            {
+                executor = _executor;
+                if (executor == null)
+                {
+                    int size = Math.max(1, getPoolSize());
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size,
+                                                                     KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                                                     new LinkedBlockingQueue<Runnable>(),
+                                                                     new DispatcherThreadFactory());
+                    pool.allowCoreThreadTimeOut(true);
+                    executor = pool;
+                    _executor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Shuts the pool down, letting tasks already submitted finish, so that the next use creates a new pool sized
+     * from the current value of {@link ClientProperties#QPID_DISPATCHER_POOL_SIZE}.
+     */
+    static void shutdown()
+    {
+        synchronized (DispatcherPool.class)
+        {
+            if (_executor != null)
+            {
+                ((ThreadPoolExecutor) _executor).shutdown();
+                _executor = null;
+            }
+        }
+    }
+
+    private static class DispatcherThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger _threadCount = new AtomicInteger();
+        private final boolean _daemon = Boolean.getBoolean(ClientProperties.DAEMON_DISPATCHER);
+
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread;
+            try
+            {
+                thread = Threading.getThreadFactory().createThread(runnable);
+            }
+            catch (Exception e)
+            {
+                throw new Error("Error creating Dispatcher thread", e);
+            }
+            thread.setName("Dispatcher-Pool-" + _threadCount.incrementAndGet());
+            thread.setDaemon(_daemon);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.qpid.jms.CompletionListener;
+import org.apache.qpid.transport.Method;
+
+/**
+ * Tracks the messages a session has sent with a {@link CompletionListener} until the broker confirms them, and calls
+ * their listeners back in the order in which the messages were sent.
+ *
+ * A message is registered before it is handed to the transport, and the sender reports when it has finished with the
+ * send call.  A listener is called once its message has been both confirmed (or failed) and finished with by the
+ * sender, and only after the listeners of all earlier messages.  Listeners are called one at a time by the given
+ * executor, never by the sending thread or by the thread which receives the confirmation.
+ *
+ * The number of messages awaiting confirmation is limited to a window.  Registering a message which would exceed it
+ * waits until an earlier message is confirmed.
+ */
+class PublishConfirmationTracker
+{
+    private static final Logger _logger = LoggerFactory.getLogger(PublishConfirmationTracker.class);
+
+    private static final int PENDING = 0;
+    private static final int CONFIRMED = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private final Executor _executor;
+    private final int _window;
+    private final long _timeout;
+
+    private final Queue<PendingPublish> _pending = new ConcurrentLinkedQueue<PendingPublish>();
+    private final AtomicBoolean _dispatching = new AtomicBoolean();
+    private final Runnable _dispatcher = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            dispatch();
+        }
+    };
+
+    private final Object _lock = new Object();
+    private int _unconfirmed;
+    private Exception _failure;
+
+    PublishConfirmationTracker(Executor executor, int window, long timeout)
+    {
+        _executor = executor;
+        _window = Math.max(1, window);
+        _timeout = timeout;
+    }
+
+    /**
+     * Registers a message about to be sent, first waiting for room in the window if need be.
+     */
+    PendingPublish register(Message message, CompletionListener listener) throws JMSException
+    {
+        synchronized (_lock)
+        {
+            long deadline = System.currentTimeMillis() + _timeout;
+            while (_unconfirmed >= _window && _failure == null)
+            {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                {
+                    throw new JMSException("Timed out after " + _timeout + "ms waiting for the broker to confirm "
+                                           + _unconfirmed + " earlier messages");
+                }
+                try
+                {
+                    _lock.wait(remaining);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new JMSException("Interrupted while waiting for the broker to confirm earlier messages");
+                }
+            }
+            if (_failure != null)
+            {
+                JMSException jmse = new JMSException("Session can no longer send messages: " + _failure.getMessage());
+                jmse.setLinkedException(_failure);
+                jmse.initCause(_failure);
+                throw jmse;
+            }
+            _unconfirmed++;
+        }
+
+        PendingPublish publish = new PendingPublish(message, listener);
+        _pending.add(publish);
+        return publish;
+    }
+
+    int getUnconfirmedCount()
+    {
+        synchronized (_lock)
+        {
+            return _unconfirmed;
+        }
+    }
+
+    /**
+     * Waits until every registered message has been confirmed or has failed.
+     *
+     * @return false if messages were still awaiting confirmation when the timeout elapsed
+     */
+    boolean awaitConfirmations(long timeout) throws InterruptedException
+    {
+        synchronized (_lock)
+        {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (_unconfirmed > 0)
+            {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                {
+                    return false;
+                }
+                _lock.wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Fails every message awaiting confirmation, and any registered later.
+     */
+    void fail(Exception cause)
+    {
+        synchronized (_lock)
+        {
+            if (_failure == null)
+            {
+                _failure = cause;
+            }
+            _lock.notifyAll();
+        }
+        for (PendingPublish publish : _pending)
+        {
+            publish.fail(cause);
+        }
+    }
+
+    private void unconfirmedRemoved()
+    {
+        synchronized (_lock)
+        {
+            _unconfirmed--;
+            _lock.notifyAll();
+        }
+    }
+
+    private void scheduleDispatch()
+    {
+        PendingPublish head = _pending.peek();
+        if (head != null && head.isReady() && _dispatching.compareAndSet(false, true))
+        {
+            try
+            {
+                _executor.execute(_dispatcher);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // the connection is closing, so there is no other thread left to do it
+                _dispatcher.run();
+            }
+        }
+    }
+
+    private void dispatch()
+    {
+        try
+        {
+            PendingPublish publish;
+            while ((publish = _pending.peek()) != null && publish.isReady())
+            {
+                _pending.poll();
+                publish.notifyListener();
+            }
+        }
+        finally
+        {
+            _dispatching.set(false);
+        }
+        // the head may have become ready after it was last looked at
+        scheduleDispatch();
+    }
+
+    final class PendingPublish implements Method.CompletionListener
+    {
+        private final Message _message;
+        private final CompletionListener _listener;
+        private final AtomicInteger _state = new AtomicInteger(PENDING);
+        private volatile Exception _exception;
+        private volatile boolean _sendFinished;
+
+        private PendingPublish(Message message, CompletionListener listener)
+        {
+            _message = message;
+            _listener = listener;
+        }
+
+        /**
+         * Called when the broker has completed the transfer of the message.
+         */
+        @Override
+        public void onComplete(Method method)
+        {
+            confirm();
+        }
+
+        void confirm()
+        {
+            if (_state.compareAndSet(PENDING, CONFIRMED))
+            {
+                unconfirmedRemoved();
+                scheduleDispatch();
+            }
+        }
+
+        void fail(Exception exception)
+        {
+            _exception = exception;
+            if (_state.compareAndSet(PENDING, FAILED))
+            {
+                unconfirmedRemoved();
+                scheduleDispatch();
+            }
+        }
+
+        /**
+         * Called by the sender once the send call has finished with the message.  If the send did not succeed, the
+         * listener is not called.
+         */
+        void sendFinished(boolean sent)
+        {
+            if (!sent && _state.getAndSet(CANCELLED) == PENDING)
+            {
+                unconfirmedRemoved();
+            }
+            _sendFinished = true;
+            scheduleDispatch();
+        }
+
+        private boolean isReady()
+        {
+            return _sendFinished && _state.get() != PENDING;
+        }
+
+        private void notifyListener()
+        {
+            try
+            {
+                switch (_state.get())
+                {
+                    case CONFIRMED:
+                        _listener.onCompletion(_message);
+                        break;
+                    case FAILED:
+                        _listener.onException(_message, _exception);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            catch (RuntimeException e)
+            {
+                _logger.warn("Completion listener threw an exception", e);
+            }
+        }
+    }
+}
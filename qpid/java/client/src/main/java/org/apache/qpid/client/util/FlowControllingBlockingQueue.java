@@ -26,12 +26,20 @@ import org.slf4j.LoggerFactory;
 import java.util.Iterator;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * A blocking queue that emits events above a user specified threshold allowing the caller to take action (e.g. flow
  * control) to try to prevent the queue growing (much) further. The underlying queue itself is not bounded therefore the
- * caller is not obliged to react to the events. <p/> This implementation is <b>only</b> safe where we have a single
- * thread adding items and a single (different) thread removing items.
+ * caller is not obliged to react to the events. <p/> Any number of threads may add items, but only one thread at a
+ * time may remove them.
+ * <p/>
+ * Neither adding nor removing takes a lock.  A thread taking from the empty queue parks until an item is added.  The
+ * threshold events are edge triggered: {@link ThresholdListener#aboveThreshold} is called by the thread whose add
+ * takes the size of the queue to the high threshold, and {@link ThresholdListener#underThreshold} by the thread whose
+ * removal takes it below the low threshold.  As they are called without a lock, a listener may see the events of
+ * concurrent adds and removals out of order, and should act on the current state rather than on the event alone.
  *
  * @todo Make this implement java.util.Queue and hide the implementation. Then different queue types can be substituted.
  */
@@ -48,8 +56,14 @@ public class FlowControllingBlockingQueue
     private final ThresholdListener _listener;
 
     /** We require a separate count so we can track whether we have reached the threshold */
-    private int _count;
-    
+    private final AtomicInteger _count = new AtomicInteger();
+
+    /** The largest number of items the queue has held */
+    private final AtomicInteger _peakCount = new AtomicInteger();
+
+    /** The thread parked in {@link #take()} waiting for an item, if any */
+    private volatile Thread _waiter;
+
     private boolean disableFlowControl; 
 
     public boolean isEmpty()
@@ -83,53 +97,131 @@ public class FlowControllingBlockingQueue
     public Object take() throws InterruptedException
     {
         Object o = _queue.poll();
-        if(o == null)
+        if (o == null)
         {
-            synchronized(this)
+            Thread current = Thread.currentThread();
+            _waiter = current;
+            try
             {
-                while((o = _queue.poll())==null)
+                // an add which happened before the waiter was set will not have unparked us, so poll again first
+                while ((o = _queue.poll()) == null)
                 {
-                    wait();
+                    if (Thread.interrupted())
+                    {
+                        throw new InterruptedException();
+                    }
+                    LockSupport.park(this);
                 }
             }
-        }
-        if (!disableFlowControl && _listener != null)
-        {
-            synchronized (_listener)
+            finally
             {
-                if (_count-- == _flowControlLowThreshold)
-                {
-                    _listener.underThreshold(_count);
-                }
+                _waiter = null;
             }
-            
         }
+        removed();
+
+        return o;
+    }
 
+    /**
+     * Removes the head of the queue without waiting.
+     *
+     * @return the head of the queue, or null if it is empty
+     */
+    public Object poll()
+    {
+        Object o = _queue.poll();
+        if (o != null)
+        {
+            removed();
+        }
         return o;
     }
 
+    private void removed()
+    {
+        int count = _count.getAndDecrement();
+        if (!disableFlowControl && _listener != null && count == _flowControlLowThreshold)
+        {
+            _listener.underThreshold(count - 1);
+        }
+    }
+
     public void add(Object o)
     {
-        synchronized(this)
+        // count the item before it can be taken, so the count never drops below the size of the queue
+        int count = _count.incrementAndGet();
+        int peak = _peakCount.get();
+        while (count > peak && !_peakCount.compareAndSet(peak, count))
         {
-            _queue.add(o);
+            peak = _peakCount.get();
+        }
+
+        _queue.add(o);
 
-            notifyAll();
+        Thread waiter = _waiter;
+        if (waiter != null)
+        {
+            LockSupport.unpark(waiter);
         }
-        if (!disableFlowControl && _listener != null)
+
+        if (!disableFlowControl && _listener != null && count == _flowControlHighThreshold)
         {
-            synchronized (_listener)
-            {
-                if (++_count == _flowControlHighThreshold)
-                {
-                    _listener.aboveThreshold(_count);
-                }
-            }
+            _listener.aboveThreshold(count);
         }
     }
 
+    /**
+     * @return the number of items in the queue
+     */
+    public int size()
+    {
+        return _count.get();
+    }
+
+    /**
+     * @return the largest number of items the queue has held
+     */
+    public int getPeakSize()
+    {
+        return _peakCount.get();
+    }
+
+    /**
+     * Returns an iterator over the items of the queue.  Items removed through the iterator are counted as removed, so
+     * may take the size of the queue below the low threshold.
+     */
     public Iterator iterator()
     {
-        return _queue.iterator();
+        final Iterator iterator = _queue.iterator();
+        return new Iterator()
+        {
+            private Object _last;
+
+            public boolean hasNext()
+            {
+                return iterator.hasNext();
+            }
+
+            public Object next()
+            {
+                _last = iterator.next();
+                return _last;
+            }
+
+            public void remove()
+            {
+                if (_last == null)
+                {
+                    throw new IllegalStateException();
+                }
+                // the item may have been taken since it was returned, in which case it has already been counted
+                if (_queue.remove(_last))
+                {
+                    removed();
+                }
+                _last = null;
+            }
+        };
     }
 }
@@ -0,0 +1,37 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.jms;
+
+import javax.jms.Message;
+
+/**
+ * Notified when a message sent with one of the {@link MessageProducer} send methods taking a listener has been
+ * confirmed by the broker, or has failed.  Modelled on the JMS 2.0 interface of the same name.
+ *
+ * The listeners of messages sent on a session are called in the order in which the messages were sent, one at a
+ * time, and never from the thread which sent the message.
+ */
+public interface CompletionListener
+{
+    void onCompletion(Message message);
+
+    void onException(Message message, Exception exception);
+}
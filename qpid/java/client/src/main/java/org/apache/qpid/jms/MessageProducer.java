@@ -36,4 +36,20 @@ public interface MessageProducer extends javax.jms.MessageProducer
                      int priority, long timeToLive, boolean mandatory, boolean immediate)
             throws JMSException;
 
+    /**
+     * Sends a message without waiting for the broker to confirm it.  The listener is called once the broker has
+     * confirmed the message, after which the message may be reused.  The number of messages a session may have
+     * awaiting confirmation is limited, and a send which would exceed the limit blocks until an earlier message is
+     * confirmed.
+     */
+    void send(Message message, CompletionListener completionListener) throws JMSException;
+
+    void send(Message message, int deliveryMode, int priority, long timeToLive,
+              CompletionListener completionListener) throws JMSException;
+
+    void send(Destination destination, Message message, CompletionListener completionListener) throws JMSException;
+
+    void send(Destination destination, Message message, int deliveryMode, int priority, long timeToLive,
+              CompletionListener completionListener) throws JMSException;
+
 }
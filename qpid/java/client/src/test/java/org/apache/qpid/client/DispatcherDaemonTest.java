@@ -18,9 +18,12 @@
  */
 package org.apache.qpid.client;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 import javax.jms.Session;
 
 import org.apache.qpid.AMQException;
+import org.apache.qpid.client.message.UnprocessedMessage;
 import org.apache.qpid.configuration.ClientProperties;
 import org.apache.qpid.test.utils.QpidTestCase;
 import org.apache.qpid.url.URLSyntaxException;
@@ -36,6 +39,7 @@ public class DispatcherDaemonTest extends QpidTestCase
         {
             _session.getDispatcherThread().interrupt();
         }
+        DispatcherPool.shutdown();
     }
 
     public void testDispatcherIsRunInDaemonThreadWithNoMessageListener() throws Exception
@@ -55,6 +59,40 @@ public class DispatcherDaemonTest extends QpidTestCase
                 _session.getDispatcherThread().isDaemon());
     }
 
+    public void testDispatcherUsesSharedPoolWhenPoolSizeIsSet() throws Exception
+    {
+        DispatcherPool.shutdown();
+        setTestSystemProperty(ClientProperties.QPID_DISPATCHER_POOL_SIZE, "2");
+        _session = createSession();
+        _session.startDispatcherIfNecessary();
+        assertNotNull("Dispatcher should have been created", _session.getDispatcher());
+        assertNull("Session should not have a dispatcher thread of its own", _session.getDispatcherThread());
+
+        final AtomicReference<Thread> dispatchingThread = new AtomicReference<Thread>();
+        _session.messageReceived(new UnprocessedMessage(0)
+        {
+            @Override
+            public long getDeliveryTag()
+            {
+                return 1;
+            }
+
+            @Override
+            public void dispatch(final AMQSession ssn)
+            {
+                dispatchingThread.set(Thread.currentThread());
+            }
+        });
+
+        // returns once the pool has dispatched everything queued so far
+        _session.syncDispatchQueue();
+
+        Thread thread = dispatchingThread.get();
+        assertNotNull("Message was not dispatched", thread);
+        assertTrue("Message was not dispatched on a thread of the pool: " + thread.getName(),
+                   thread.getName().startsWith("Dispatcher-Pool-"));
+    }
+
     private AMQSession<?,?> createSession() throws AMQException, URLSyntaxException
     {
         AMQConnection amqConnection = new MockAMQConnection(
@@ -0,0 +1,188 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.apache.qpid.jms.CompletionListener;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class PublishConfirmationTrackerTest extends QpidTestCase
+{
+    private final QueuedExecutor _executor = new QueuedExecutor();
+    private final RecordingListener _listener = new RecordingListener();
+
+    public void testListenersCalledInSendOrder() throws Exception
+    {
+        PublishConfirmationTracker tracker = new PublishConfirmationTracker(_executor, 10, 1000);
+        Message first = mock(Message.class);
+        Message second = mock(Message.class);
+        Message third = mock(Message.class);
+
+        PublishConfirmationTracker.PendingPublish firstPublish = send(tracker, first);
+        PublishConfirmationTracker.PendingPublish secondPublish = send(tracker, second);
+        PublishConfirmationTracker.PendingPublish thirdPublish = send(tracker, third);
+        assertEquals(3, tracker.getUnconfirmedCount());
+
+        thirdPublish.confirm();
+        secondPublish.confirm();
+        _executor.runAll();
+        assertTrue("Listeners should wait for earlier messages", _listener._completed.isEmpty());
+        assertEquals(1, tracker.getUnconfirmedCount());
+
+        firstPublish.confirm();
+        _executor.runAll();
+        assertEquals(Arrays.asList(first, second, third), _listener._completed);
+        assertEquals(0, tracker.getUnconfirmedCount());
+        assertTrue(tracker.awaitConfirmations(0));
+    }
+
+    public void testListenerWaitsForSendToFinish() throws Exception
+    {
+        PublishConfirmationTracker tracker = new PublishConfirmationTracker(_executor, 10, 1000);
+        Message message = mock(Message.class);
+
+        PublishConfirmationTracker.PendingPublish publish = tracker.register(message, _listener);
+        publish.confirm();
+        _executor.runAll();
+        assertTrue("Listener should not be called before the send has finished", _listener._completed.isEmpty());
+
+        publish.sendFinished(true);
+        _executor.runAll();
+        assertEquals(Arrays.asList(message), _listener._completed);
+    }
+
+    public void testWindowLimitsUnconfirmedMessages() throws Exception
+    {
+        PublishConfirmationTracker tracker = new PublishConfirmationTracker(_executor, 2, 10);
+        PublishConfirmationTracker.PendingPublish firstPublish = send(tracker, mock(Message.class));
+        send(tracker, mock(Message.class));
+
+        try
+        {
+            tracker.register(mock(Message.class), _listener);
+            fail("Sending beyond the window should time out");
+        }
+        catch (JMSException e)
+        {
+            // pass
+        }
+        assertFalse(tracker.awaitConfirmations(10));
+
+        firstPublish.confirm();
+        send(tracker, mock(Message.class));
+        assertEquals(2, tracker.getUnconfirmedCount());
+    }
+
+    public void testCancelledSendIsNotNotified() throws Exception
+    {
+        PublishConfirmationTracker tracker = new PublishConfirmationTracker(_executor, 10, 1000);
+        Message cancelled = mock(Message.class);
+        Message sent = mock(Message.class);
+
+        tracker.register(cancelled, _listener).sendFinished(false);
+        send(tracker, sent).confirm();
+        _executor.runAll();
+
+        assertEquals(Arrays.asList(sent), _listener._completed);
+        assertTrue(_listener._failed.isEmpty());
+        assertEquals(0, tracker.getUnconfirmedCount());
+    }
+
+    public void testFailNotifiesUnconfirmedMessages() throws Exception
+    {
+        PublishConfirmationTracker tracker = new PublishConfirmationTracker(_executor, 10, 1000);
+        Message confirmed = mock(Message.class);
+        Message unconfirmed = mock(Message.class);
+
+        send(tracker, confirmed).confirm();
+        send(tracker, unconfirmed);
+        tracker.fail(new Exception("Session closed"));
+        _executor.runAll();
+
+        assertEquals(Arrays.asList(confirmed), _listener._completed);
+        assertEquals(Arrays.asList(unconfirmed), _listener._failed);
+        assertEquals(0, tracker.getUnconfirmedCount());
+
+        try
+        {
+            tracker.register(mock(Message.class), _listener);
+            fail("Sending after a failure should not be possible");
+        }
+        catch (JMSException e)
+        {
+            // pass
+        }
+    }
+
+    private PublishConfirmationTracker.PendingPublish send(PublishConfirmationTracker tracker, Message message)
+            throws JMSException
+    {
+        PublishConfirmationTracker.PendingPublish publish = tracker.register(message, _listener);
+        publish.sendFinished(true);
+        return publish;
+    }
+
+    private static class QueuedExecutor implements Executor
+    {
+        private final List<Runnable> _tasks = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command)
+        {
+            _tasks.add(command);
+        }
+
+        void runAll()
+        {
+            while (!_tasks.isEmpty())
+            {
+                _tasks.remove(0).run();
+            }
+        }
+    }
+
+    private static class RecordingListener implements CompletionListener
+    {
+        private final List<Message> _completed = new ArrayList<Message>();
+        private final List<Message> _failed = new ArrayList<Message>();
+
+        @Override
+        public void onCompletion(Message message)
+        {
+            _completed.add(message);
+        }
+
+        @Override
+        public void onException(Message message, Exception exception)
+        {
+            _failed.add(message);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class FlowControllingBlockingQueueTest extends QpidTestCase
+{
+    private final List<String> _events = new ArrayList<String>();
+
+    private final FlowControllingBlockingQueue.ThresholdListener _listener =
+            new FlowControllingBlockingQueue.ThresholdListener()
+            {
+                public void aboveThreshold(int currentValue)
+                {
+                    _events.add("above " + currentValue);
+                }
+
+                public void underThreshold(int currentValue)
+                {
+                    _events.add("under " + currentValue);
+                }
+            };
+
+    public void testThresholdEventsFireOnceOnEachCrossing() throws Exception
+    {
+        FlowControllingBlockingQueue queue = new FlowControllingBlockingQueue(3, 1, _listener);
+
+        for (int i = 0; i < 5; i++)
+        {
+            queue.add(i);
+        }
+        assertEquals(Arrays.asList("above 3"), _events);
+
+        for (int i = 0; i < 5; i++)
+        {
+            assertEquals(i, queue.take());
+        }
+        assertEquals(Arrays.asList("above 3", "under 0"), _events);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    public void testRemovalThroughIteratorIsCounted() throws Exception
+    {
+        FlowControllingBlockingQueue queue = new FlowControllingBlockingQueue(3, 3, _listener);
+
+        for (int i = 0; i < 4; i++)
+        {
+            queue.add(i);
+        }
+
+        Iterator iterator = queue.iterator();
+        while (iterator.hasNext())
+        {
+            if (((Integer) iterator.next()) % 2 == 0)
+            {
+                iterator.remove();
+            }
+        }
+        assertEquals(2, queue.size());
+        assertEquals(Arrays.asList("above 3", "under 2"), _events);
+
+        assertEquals(1, queue.take());
+        assertEquals(3, queue.take());
+        assertEquals(0, queue.size());
+
+        for (int i = 0; i < 3; i++)
+        {
+            queue.add(i);
+        }
+        assertEquals(Arrays.asList("above 3", "under 2", "above 3"), _events);
+    }
+
+    public void testRemovalThroughIteratorOfTakenItemIsNotCounted() throws Exception
+    {
+        FlowControllingBlockingQueue queue = new FlowControllingBlockingQueue(10, null);
+        queue.add("a");
+        queue.add("b");
+
+        Iterator iterator = queue.iterator();
+        assertEquals("a", iterator.next());
+        assertEquals("a", queue.take());
+        iterator.remove();
+
+        assertEquals(1, queue.size());
+        assertEquals("b", queue.take());
+        assertEquals(0, queue.size());
+    }
+
+    public void testNoEventsWhenFlowControlDisabled() throws Exception
+    {
+        FlowControllingBlockingQueue queue = new FlowControllingBlockingQueue(0, _listener);
+
+        queue.add("a");
+        assertEquals("a", queue.poll());
+        assertTrue(_events.isEmpty());
+    }
+
+    public void testOccupancyCounters() throws Exception
+    {
+        FlowControllingBlockingQueue queue = new FlowControllingBlockingQueue(10, null);
+
+        queue.add("a");
+        queue.add("b");
+        queue.add("c");
+        queue.take();
+        queue.add("d");
+        queue.poll();
+
+        assertEquals(2, queue.size());
+        assertEquals(3, queue.getPeakSize());
+    }
+
+    public void testTakeWaitsForAdd() throws Exception
+    {
+        final FlowControllingBlockingQueue queue = new FlowControllingBlockingQueue(10, null);
+        final AtomicReference<Object> taken = new AtomicReference<Object>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Thread consumer = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    taken.set(queue.take());
+                }
+                catch (InterruptedException e)
+                {
+                    taken.set(e);
+                }
+                done.countDown();
+            }
+        });
+        consumer.start();
+
+        assertFalse("Take should wait while the queue is empty", done.await(100, TimeUnit.MILLISECONDS));
+        queue.add("a");
+        assertTrue("Take should return once an item is added", done.await(5, TimeUnit.SECONDS));
+        assertEquals("a", taken.get());
+    }
+
+    public void testTakeIsInterruptible() throws Exception
+    {
+        final FlowControllingBlockingQueue queue = new FlowControllingBlockingQueue(10, null);
+        final AtomicReference<Object> taken = new AtomicReference<Object>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Thread consumer = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    taken.set(queue.take());
+                }
+                catch (InterruptedException e)
+                {
+                    taken.set(e);
+                }
+                done.countDown();
+            }
+        });
+        consumer.start();
+        consumer.interrupt();
+
+        assertTrue("Take should return when interrupted", done.await(5, TimeUnit.SECONDS));
+        assertTrue(taken.get() instanceof InterruptedException);
+    }
+}
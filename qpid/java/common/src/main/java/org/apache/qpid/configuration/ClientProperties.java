@@ -248,6 +248,21 @@ public class ClientProperties
      */
     public static final String SET_EXPIRATION_AS_TTL = "qpid.set_expiration_as_ttl";
 
+    /**
+     * System property to set the maximum number of messages sent with a completion listener which a session may have
+     * awaiting confirmation by the broker.  A send which would exceed it waits, for at most the flow control wait
+     * failure time, until an earlier message is confirmed.
+     */
+    public static final String QPID_PUBLISH_CONFIRM_WINDOW = "qpid.publish_confirm_window";
+    public static final int DEFAULT_PUBLISH_CONFIRM_WINDOW = 1000;
+
+    /**
+     * System property to set the number of threads in a pool shared by all sessions to deliver messages to their
+     * consumers.  When zero, the default, each session starts its own dispatcher thread instead.
+     */
+    public static final String QPID_DISPATCHER_POOL_SIZE = "qpid.jms.dispatcher_pool_size";
+    public static final int DEFAULT_DISPATCHER_POOL_SIZE = 0;
+
 
 
     private ClientProperties()
@@ -36,6 +36,12 @@ public class CommonProperties
     public static final String HANDSHAKE_TIMEOUT_PROP_NAME = "qpid.handshake_timeout";
     public static final int HANDSHAKE_TIMEOUT_DEFAULT = 2;
 
+    /**
+     * The number of selector threads used by each non-blocking (NIO) network transport to service its connections
+     */
+    public static final String NIO_SELECTOR_THREADS_PROP_NAME = "qpid.nio_selector_threads";
+    public static final int NIO_SELECTOR_THREADS_DEFAULT = Runtime.getRuntime().availableProcessors();
+
 
     private CommonProperties()
     {
@@ -30,4 +30,9 @@ public interface IncomingNetworkTransport extends NetworkTransport
     public void accept(NetworkTransportConfiguration config,
                        ProtocolEngineFactory factory,
                        SSLContext sslContext);
+
+    /**
+     * Returns the totals written by the connections this transport has accepted.
+     */
+    public NetworkWriteStatistics getWriteStatistics();
 }
\ No newline at end of file
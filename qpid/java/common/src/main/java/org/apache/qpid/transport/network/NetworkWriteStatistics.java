@@ -0,0 +1,60 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.network;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Totals of the bytes written, and of the times a writer had to be woken to write them, across all of the
+ * connections accepted by an {@link IncomingNetworkTransport}.
+ */
+public final class NetworkWriteStatistics
+{
+    private final long _startTime = System.currentTimeMillis();
+    private final AtomicLong _bytesWritten = new AtomicLong();
+    private final AtomicLong _wakeups = new AtomicLong();
+
+    public void bytesWritten(long bytes)
+    {
+        _bytesWritten.addAndGet(bytes);
+    }
+
+    public void wakeup()
+    {
+        _wakeups.incrementAndGet();
+    }
+
+    public long getBytesWritten()
+    {
+        return _bytesWritten.get();
+    }
+
+    public long getWakeupCount()
+    {
+        return _wakeups.get();
+    }
+
+    public long getWakeupsPerSecond()
+    {
+        final long elapsed = System.currentTimeMillis() - _startTime;
+        return elapsed <= 0 ? 0 : (1000l * _wakeups.get()) / elapsed;
+    }
+}
@@ -38,9 +38,15 @@ public class Transport
 
     // Can't reference the class directly here, as this would preclude the ability to bundle transports separately.
     private static final String IO_TRANSPORT_CLASSNAME = "org.apache.qpid.transport.network.io.IoNetworkTransport";
+    private static final String NIO_TRANSPORT_CLASSNAME = "org.apache.qpid.transport.network.io.NonBlockingNetworkTransport";
 
     public static final String TCP = "tcp";
 
+    /** Name of the thread-per-socket incoming transport implementation */
+    public static final String IO = "IO";
+    /** Name of the selector based incoming transport implementation */
+    public static final String NIO = "NIO";
+
     private final static Map<ProtocolVersion,String> OUTGOING_PROTOCOL_TO_IMPLDEFAULTS_MAP;
 
     static
@@ -64,6 +70,29 @@ public class Transport
                 System.getProperty(QPID_BROKER_TRANSPORT_PROPNAME, IO_TRANSPORT_CLASSNAME));
     }
 
+    /**
+     * Returns a new incoming transport of the given implementation, either {@link #IO} or {@link #NIO}.  A transport
+     * class name given by the {@link #QPID_BROKER_TRANSPORT_PROPNAME} system property takes precedence.
+     */
+    public static IncomingNetworkTransport getIncomingTransportInstance(final String implementation)
+    {
+        final String defaultClassName;
+        if (implementation == null || IO.equalsIgnoreCase(implementation))
+        {
+            defaultClassName = IO_TRANSPORT_CLASSNAME;
+        }
+        else if (NIO.equalsIgnoreCase(implementation))
+        {
+            defaultClassName = NIO_TRANSPORT_CLASSNAME;
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unknown network transport implementation " + implementation);
+        }
+        return (IncomingNetworkTransport) loadTransportClass(
+                System.getProperty(QPID_BROKER_TRANSPORT_PROPNAME, defaultClassName));
+    }
+
     public static OutgoingNetworkTransport getOutgoingTransportInstance(
             final ProtocolVersion protocolVersion)
     {
@@ -34,6 +34,7 @@ import org.slf4j.LoggerFactory;
 import org.apache.qpid.transport.Receiver;
 import org.apache.qpid.transport.Sender;
 import org.apache.qpid.transport.network.NetworkConnection;
+import org.apache.qpid.transport.network.NetworkWriteStatistics;
 import org.apache.qpid.transport.network.Ticker;
 
 public class IoNetworkConnection implements NetworkConnection
@@ -51,6 +52,13 @@ public class IoNetworkConnection implements NetworkConnection
 
     public IoNetworkConnection(Socket socket, Receiver<ByteBuffer> delegate,
             int sendBufferSize, int receiveBufferSize, long timeout, Ticker ticker)
+    {
+        this(socket, delegate, sendBufferSize, receiveBufferSize, timeout, ticker, null);
+    }
+
+    public IoNetworkConnection(Socket socket, Receiver<ByteBuffer> delegate,
+            int sendBufferSize, int receiveBufferSize, long timeout, Ticker ticker,
+            NetworkWriteStatistics transportStatistics)
     {
         _socket = socket;
         _timeout = timeout;
@@ -58,7 +66,7 @@ public class IoNetworkConnection implements NetworkConnection
         _ioReceiver = new IoReceiver(_socket, delegate, receiveBufferSize,_timeout);
         _ioReceiver.setTicker(ticker);
 
-        _ioSender = new IoSender(_socket, 2 * sendBufferSize, _timeout);
+        _ioSender = new IoSender(_socket, 2 * sendBufferSize, _timeout, transportStatistics);
 
         _ioSender.setReceiver(_ioReceiver);
 
@@ -57,6 +57,7 @@ public class IoNetworkTransport implements OutgoingNetworkTransport, IncomingNet
     private Socket _socket;
     private IoNetworkConnection _connection;
     private AcceptingThread _acceptor;
+    private final NetworkWriteStatistics _writeStatistics = new NetworkWriteStatistics();
 
     public NetworkConnection connect(ConnectionSettings settings,
                                      Receiver<ByteBuffer> delegate,
@@ -134,6 +135,12 @@ public class IoNetworkTransport implements OutgoingNetworkTransport, IncomingNet
         return _connection;
     }
 
+    @Override
+    public NetworkWriteStatistics getWriteStatistics()
+    {
+        return _writeStatistics;
+    }
+
     public void accept(NetworkTransportConfiguration config,
                        ProtocolEngineFactory factory,
                        SSLContext sslContext)
@@ -239,7 +246,7 @@ public class IoNetworkTransport implements OutgoingNetworkTransport, IncomingNet
 
                         final IdleTimeoutTicker ticker = new IdleTimeoutTicker(engine, TIMEOUT);
                         NetworkConnection connection = new IoNetworkConnection(socket, engine, sendBufferSize, receiveBufferSize, _timeout,
-                                                                               ticker);
+                                                                               ticker, _writeStatistics);
 
                         connection.setMaxReadIdle(HANSHAKE_TIMEOUT);
 
@@ -24,16 +24,30 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.qpid.thread.Threading;
 import org.apache.qpid.transport.Sender;
 import org.apache.qpid.transport.SenderClosedException;
 import org.apache.qpid.transport.SenderException;
 import org.apache.qpid.transport.TransportException;
+import org.apache.qpid.transport.network.NetworkWriteStatistics;
 import org.apache.qpid.transport.util.Logger;
 
 
+/**
+ * Writes the frames handed to it by the connection's protocol layer to a socket from a dedicated sender thread.
+ * Frames may be sent from any thread, but sends must not overlap: the protocol layers serialise them, so there is only
+ * ever one producer at a time.
+ *
+ * Frames are copied into a ring buffer without locking: the producer only ever advances <code>head</code> and the
+ * sender thread only ever advances <code>tail</code>.  Whichever side has to wait for the other parks, and is
+ * unparked by the other side once it has made progress.  The sender thread writes everything that is queued in a
+ * single pass.  When the queued region wraps the end of the buffer and is small, both parts are copied into a
+ * scratch array so that they still go to the socket in one write; larger regions are written in two.
+ */
 public final class IoSender implements Runnable, Sender<ByteBuffer>
 {
 
@@ -44,16 +58,19 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
     // we can test other cases as well
     private final static int START = Integer.MAX_VALUE - 10;
 
+    // wrapped regions up to this size are copied so that they are written to the socket in one call
+    private final static int MAX_COALESCED_WRITE = 16 * 1024;
+
     private final long timeout;
     private final Socket socket;
     private final OutputStream out;
 
     private final byte[] buffer;
+    private byte[] scratch;
     private volatile int head = START;
     private volatile int tail = START;
     private volatile boolean idle = true;
-    private final Object notFull = new Object();
-    private final Object notEmpty = new Object();
+    private volatile Thread waitingProducer;
     private final AtomicBoolean closed = new AtomicBoolean(false);
     private final Thread senderThread;
     private IoReceiver _receiver;
@@ -61,9 +78,27 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
 
     private volatile Throwable exception = null;
 
+    // statistics - each counter is only updated by one thread, either the producer or the sender
+    private final long startTime = System.currentTimeMillis();
+    private volatile long bytesWritten;
+    private volatile long writes;
+    private volatile long wakeups;
+    private volatile long producerWaits;
+    private final NetworkWriteStatistics transportStatistics;
+
     public IoSender(Socket socket, int bufferSize, long timeout)
+    {
+        this(socket, bufferSize, timeout, null);
+    }
+
+    /**
+     * @param transportStatistics if not null, the totals of the transport that accepted the socket, to which this
+     *                            sender adds its bytes written and wakeups
+     */
+    public IoSender(Socket socket, int bufferSize, long timeout, NetworkWriteStatistics transportStatistics)
     {
         this.socket = socket;
+        this.transportStatistics = transportStatistics;
         this.buffer = new byte[pof2(bufferSize)]; // buffer size must be a power of 2
         this.timeout = timeout;
         _remoteSocketAddress = socket.getRemoteSocketAddress().toString();
@@ -126,38 +161,7 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
             if (hd - tl >= size)
             {
                 flush();
-                synchronized (notFull)
-                {
-                    final long start = System.currentTimeMillis();
-                    long elapsed = 0;
-                    while (!closed.get() && head - tail >= size && elapsed < timeout)
-                    {
-                        try
-                        {
-                            notFull.wait(timeout - elapsed);
-                        }
-                        catch (InterruptedException e)
-                        {
-                            // pass
-                        }
-                        elapsed = System.currentTimeMillis() - start;
-                    }
-
-                    checkNotAlreadyClosed();
-
-                    if (head - tail >= size)
-                    {
-                        try
-                        {
-                            log.error("write timed out for socket %s: head %d, tail %d", _remoteSocketAddress, head, tail);
-                            throw new SenderException(String.format("write timed out for socket %s: head %d, tail %d",  _remoteSocketAddress, head, tail));
-                        }
-                        finally
-                        {
-                            close(false, false);
-                        }
-                    }
-                }
+                awaitSpace();
                 continue;
             }
 
@@ -180,17 +184,50 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
         }
     }
 
-    public void flush()
+    private void awaitSpace()
     {
-        if (idle)
+        final int size = buffer.length;
+        producerWaits++;
+        waitingProducer = Thread.currentThread();
+        try
+        {
+            final long start = System.currentTimeMillis();
+            long elapsed = 0;
+            while (!closed.get() && head - tail >= size && elapsed < timeout)
+            {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(timeout - elapsed));
+                elapsed = System.currentTimeMillis() - start;
+            }
+        }
+        finally
         {
-            synchronized (notEmpty)
+            waitingProducer = null;
+        }
+
+        checkNotAlreadyClosed();
+
+        if (head - tail >= size)
+        {
+            try
             {
-                notEmpty.notify();
+                log.error("write timed out for socket %s: head %d, tail %d", _remoteSocketAddress, head, tail);
+                throw new SenderException(String.format("write timed out for socket %s: head %d, tail %d",  _remoteSocketAddress, head, tail));
+            }
+            finally
+            {
+                close(false, false);
             }
         }
     }
 
+    public void flush()
+    {
+        if (idle)
+        {
+            LockSupport.unpark(senderThread);
+        }
+    }
+
     public void close()
     {
         close(true, true);
@@ -200,15 +237,8 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
     {
         if (!closed.getAndSet(true))
         {
-            synchronized (notFull)
-            {
-                notFull.notify();
-            }
-
-            synchronized (notEmpty)
-            {
-                notEmpty.notify();
-            }
+            unparkProducer();
+            LockSupport.unpark(senderThread);
 
             try
             {
@@ -244,6 +274,15 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
         }
     }
 
+    private void unparkProducer()
+    {
+        final Thread producer = waitingProducer;
+        if (producer != null)
+        {
+            LockSupport.unpark(producer);
+        }
+    }
+
     public void run()
     {
         final int size = buffer.length;
@@ -261,18 +300,15 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
 
                 idle = true;
 
-                synchronized (notEmpty)
+                // the producer writes head before reading idle, and we write idle before re-reading head,
+                // so at least one side observes the other and no wakeup is lost
+                while (head == tail && !closed.get())
                 {
-                    while (head == tail && !closed.get())
+                    LockSupport.park(this);
+                    wakeups++;
+                    if (transportStatistics != null)
                     {
-                        try
-                        {
-                            notEmpty.wait();
-                        }
-                        catch (InterruptedException e)
-                        {
-                            // pass
-                        }
+                        transportStatistics.wakeup();
                     }
                 }
 
@@ -283,20 +319,12 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
 
             final int hd_idx = mod(hd, size);
             final int tl_idx = mod(tl, size);
+            final int available = hd - tl;
 
             final int length;
-            if (tl_idx < hd_idx)
-            {
-                length = hd_idx - tl_idx;
-            }
-            else
-            {
-                length = size - tl_idx;
-            }
-
             try
             {
-                out.write(buffer, tl_idx, length);
+                length = write(tl_idx, available, size);
             }
             catch (IOException e)
             {
@@ -306,14 +334,85 @@ public final class IoSender implements Runnable, Sender<ByteBuffer>
                 break;
             }
             tail += length;
-            if (head - tl >= size)
+            writes++;
+            bytesWritten += length;
+            if (transportStatistics != null)
             {
-                synchronized (notFull)
-                {
-                    notFull.notify();
-                }
+                transportStatistics.bytesWritten(length);
             }
+            unparkProducer();
         }
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Sender for socket %s closing: %d bytes in %d writes (%d bytes per write), %d wakeups/s, %d producer waits",
+                      _remoteSocketAddress, bytesWritten, writes, getAverageBytesPerWrite(), getWakeupsPerSecond(),
+                      producerWaits);
+        }
+    }
+
+    /**
+     * Writes all of the <code>available</code> bytes starting at <code>tl_idx</code>.  If that region wraps around
+     * the end of the buffer and is small enough, both parts are copied into the scratch array and written with a
+     * single call.
+     */
+    private int write(final int tl_idx, final int available, final int size) throws IOException
+    {
+        final int firstLength = Math.min(available, size - tl_idx);
+        final int secondLength = available - firstLength;
+
+        if (secondLength == 0)
+        {
+            out.write(buffer, tl_idx, firstLength);
+        }
+        else if (available <= MAX_COALESCED_WRITE)
+        {
+            if (scratch == null)
+            {
+                scratch = new byte[Math.min(MAX_COALESCED_WRITE, size)];
+            }
+            System.arraycopy(buffer, tl_idx, scratch, 0, firstLength);
+            System.arraycopy(buffer, 0, scratch, firstLength, secondLength);
+            out.write(scratch, 0, available);
+        }
+        else
+        {
+            out.write(buffer, tl_idx, firstLength);
+            out.write(buffer, 0, secondLength);
+        }
+        return available;
+    }
+
+    public long getBytesWritten()
+    {
+        return bytesWritten;
+    }
+
+    public long getWriteCount()
+    {
+        return writes;
+    }
+
+    public long getAverageBytesPerWrite()
+    {
+        final long writeCount = writes;
+        return writeCount == 0 ? 0 : bytesWritten / writeCount;
+    }
+
+    public long getWakeupCount()
+    {
+        return wakeups;
+    }
+
+    public long getWakeupsPerSecond()
+    {
+        final long elapsed = System.currentTimeMillis() - startTime;
+        return elapsed <= 0 ? 0 : (1000l * wakeups) / elapsed;
+    }
+
+    public long getProducerWaitCount()
+    {
+        return producerWaits;
     }
 
     public void setIdleTimeout(int i)
@@ -0,0 +1,832 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.network.io;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.security.Principal;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.qpid.transport.Receiver;
+import org.apache.qpid.transport.Sender;
+import org.apache.qpid.transport.SenderClosedException;
+import org.apache.qpid.transport.SenderException;
+import org.apache.qpid.transport.network.NetworkConnection;
+import org.apache.qpid.transport.network.NetworkWriteStatistics;
+import org.apache.qpid.transport.network.Ticker;
+import org.apache.qpid.transport.network.security.SSLStatus;
+import org.apache.qpid.transport.network.security.ssl.SSLBufferingSender;
+import org.apache.qpid.transport.network.security.ssl.SSLReceiver;
+
+/**
+ * A {@link NetworkConnection} over a non-blocking {@link SocketChannel}, serviced by a shared {@link SelectorThread}
+ * rather than by a dedicated receiver and sender thread pair.
+ *
+ * The selector thread only moves bytes.  Data read from the channel, idle ticks and the closing of the connection are
+ * handed, in order, to a receive worker taken from the transport's executor, so the protocol engine may block without
+ * holding up the other connections of the selector; once too much received data is waiting for the worker the
+ * selector stops reading from the channel until it has caught up.
+ *
+ * Outgoing frames are written by the sending thread itself when it flushes, and are only left for the selector thread
+ * when the socket cannot take them all.  Small frames are copied into a shared output chunk so that they are written
+ * together; larger frames are written straight from the caller's buffer, and only the part the socket does not take
+ * at once is copied.  When an {@link SSLEngine} is supplied, data is encrypted and decrypted using the existing
+ * {@link SSLBufferingSender} and {@link SSLReceiver}.
+ */
+public class NonBlockingConnection implements NetworkConnection
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(NonBlockingConnection.class);
+
+    private static final int MAX_GATHERED_BUFFERS = 64;
+    private static final int OUTPUT_CHUNK_SIZE = 64 * 1024;
+    // frames up to this size are copied into the output chunk, larger ones are written from the caller's buffer
+    private static final int MAX_COALESCED_FRAME = 4 * 1024;
+
+    private final SocketChannel _socketChannel;
+    private final Ticker _ticker;
+    private final SelectorThread _selectorThread;
+    private final Executor _receiveExecutor;
+    private final int _receiveBufferSize;
+    private final long _sendBufferLimit;
+    private final long _receiveBufferLimit;
+    private final long _timeout;
+    private final SocketAddress _remoteAddress;
+    private final SocketAddress _localAddress;
+
+    // guarded by _writeLock, which is held by whichever thread, sender or selector, is writing to the channel
+    private final Object _writeLock = new Object();
+    private final ArrayDeque<ByteBuffer> _writing = new ArrayDeque<ByteBuffer>();
+    private ByteBuffer _chunk;
+    private int _chunkStart;
+
+    private final AtomicLong _pendingBytes = new AtomicLong();
+    private final AtomicBoolean _closeRequested = new AtomicBoolean(false);
+    private final AtomicBoolean _closed = new AtomicBoolean(false);
+    private final Object _sendLock = new Object();
+    private volatile boolean _wantsWrite;
+
+    private final Queue<Runnable> _receiveTasks = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicBoolean _receiving = new AtomicBoolean(false);
+    private final AtomicLong _receivePendingBytes = new AtomicLong();
+    private final AtomicBoolean _readSuspended = new AtomicBoolean(false);
+    private final AtomicBoolean _tickPending = new AtomicBoolean(false);
+    private final Runnable _receiveWorker = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            processReceiveTasks();
+        }
+    };
+
+    private final NonBlockingSender _sender = new NonBlockingSender();
+    private final SSLEngine _sslEngine;
+    private final SSLBufferingSender _sslSender;
+    private final Receiver<ByteBuffer> _receiver;
+    private final NetworkWriteStatistics _transportStatistics;
+
+    private ByteBuffer _readBuffer;
+    private long _closeDeadline;
+    private boolean _receiveFailed;
+
+    private volatile int _maxReadIdle;
+    private volatile int _maxWriteIdle;
+    private volatile Throwable _exception;
+
+    private Principal _principal;
+    private boolean _principalChecked;
+    private final Object _lock = new Object();
+
+    NonBlockingConnection(SocketChannel socketChannel,
+                          Receiver<ByteBuffer> delegate,
+                          int sendBufferSize,
+                          int receiveBufferSize,
+                          long timeout,
+                          Ticker ticker,
+                          SelectorThread selectorThread,
+                          Executor receiveExecutor,
+                          SSLEngine sslEngine,
+                          NetworkWriteStatistics transportStatistics)
+    {
+        _socketChannel = socketChannel;
+        _ticker = ticker;
+        _selectorThread = selectorThread;
+        _receiveExecutor = receiveExecutor;
+        _receiveBufferSize = receiveBufferSize;
+        _sendBufferLimit = 2l * sendBufferSize;
+        _receiveBufferLimit = 2l * receiveBufferSize;
+        _timeout = timeout;
+        _remoteAddress = socketChannel.socket().getRemoteSocketAddress();
+        _localAddress = socketChannel.socket().getLocalSocketAddress();
+        _readBuffer = ByteBuffer.allocate(receiveBufferSize);
+        _sslEngine = sslEngine;
+        _transportStatistics = transportStatistics;
+
+        if (sslEngine == null)
+        {
+            _sslSender = null;
+            _receiver = delegate;
+        }
+        else
+        {
+            SSLStatus sslStatus = new SSLStatus();
+            _sslSender = new SSLBufferingSender(sslEngine, _sender, sslStatus);
+            _receiver = new SSLReceivingDelegate(new SSLReceiver(sslEngine, delegate, sslStatus));
+        }
+    }
+
+    SocketChannel getSocketChannel()
+    {
+        return _socketChannel;
+    }
+
+    @Override
+    public void start()
+    {
+        _selectorThread.addConnection(this);
+    }
+
+    @Override
+    public Sender<ByteBuffer> getSender()
+    {
+        return _sslSender == null ? _sender : _sslSender;
+    }
+
+    @Override
+    public void close()
+    {
+        try
+        {
+            if (_sslSender != null)
+            {
+                _sslSender.close();
+            }
+        }
+        finally
+        {
+            _sender.close();
+        }
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress()
+    {
+        return _remoteAddress;
+    }
+
+    @Override
+    public SocketAddress getLocalAddress()
+    {
+        return _localAddress;
+    }
+
+    @Override
+    public void setMaxWriteIdle(int sec)
+    {
+        _maxWriteIdle = sec;
+        _selectorThread.rescheduleTicks();
+    }
+
+    @Override
+    public void setMaxReadIdle(int sec)
+    {
+        _maxReadIdle = sec;
+        _selectorThread.rescheduleTicks();
+    }
+
+    @Override
+    public Principal getPeerPrincipal()
+    {
+        synchronized (_lock)
+        {
+            if (!_principalChecked)
+            {
+                if (_sslEngine != null)
+                {
+                    try
+                    {
+                        _principal = _sslEngine.getSession().getPeerPrincipal();
+                    }
+                    catch (SSLPeerUnverifiedException e)
+                    {
+                        _principal = null;
+                    }
+                }
+
+                _principalChecked = true;
+            }
+
+            return _principal;
+        }
+    }
+
+    @Override
+    public int getMaxReadIdle()
+    {
+        return _maxReadIdle;
+    }
+
+    @Override
+    public int getMaxWriteIdle()
+    {
+        return _maxWriteIdle;
+    }
+
+    /**
+     * Called on the selector thread when the channel is readable.
+     */
+    void doRead()
+    {
+        try
+        {
+            int read = _socketChannel.read(_readBuffer);
+            if (read == -1)
+            {
+                closed();
+            }
+            else if (read > 0)
+            {
+                // the receiver may retain references to the data passed to it, so the region handed over is never
+                // overwritten; once over half the buffer is used a fresh buffer is allocated instead
+                ByteBuffer data = _readBuffer.duplicate();
+                data.flip();
+                data.position(_readBuffer.position() - read);
+                received(data.slice());
+
+                if (_readBuffer.position() > _receiveBufferSize / 2)
+                {
+                    _readBuffer = ByteBuffer.allocate(_receiveBufferSize);
+                }
+            }
+        }
+        catch (final IOException e)
+        {
+            if (!_closeRequested.get())
+            {
+                receive(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        _receiver.exception(e);
+                    }
+                });
+            }
+            closed();
+        }
+    }
+
+    private void received(final ByteBuffer data)
+    {
+        final int size = data.remaining();
+        if (_receivePendingBytes.addAndGet(size) >= _receiveBufferLimit)
+        {
+            // stop reading until the worker has caught up; the worker may already have done so by the time the flag
+            // is set, in which case it is cleared again here rather than by the worker
+            _readSuspended.set(true);
+            if (_receivePendingBytes.get() > _receiveBufferSize || !_readSuspended.compareAndSet(true, false))
+            {
+                updateInterest();
+            }
+        }
+
+        receive(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (!_receiveFailed)
+                {
+                    try
+                    {
+                        _receiver.received(data);
+                    }
+                    catch (Throwable t)
+                    {
+                        _receiveFailed = true;
+                        if (!_closeRequested.get())
+                        {
+                            _receiver.exception(t);
+                        }
+                        _sender.closeNow();
+                    }
+                }
+
+                if (_receivePendingBytes.addAndGet(-size) <= _receiveBufferSize && _readSuspended.compareAndSet(true, false))
+                {
+                    _selectorThread.schedule(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            updateInterest();
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Called on the selector thread when the connection's ticks are due.  The ticker, which may call into the
+     * protocol engine, is run by the receive worker, so the next tick is rescheduled once it has finished.
+     *
+     * @return the time in milliseconds until the connection next needs to be ticked
+     */
+    int tick(final long currentTime)
+    {
+        final int timeToNextTick = _ticker.getTimeToNextTick(currentTime);
+        if (timeToNextTick > 0)
+        {
+            return timeToNextTick;
+        }
+        if (!_tickPending.getAndSet(true))
+        {
+            receive(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        _ticker.tick(System.currentTimeMillis());
+                    }
+                    finally
+                    {
+                        _tickPending.set(false);
+                        _selectorThread.rescheduleTicks();
+                    }
+                }
+            });
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Queues a task for the receive worker.  Tasks of a connection are run one at a time, in the order they are
+     * queued, by at most one thread of the executor.
+     */
+    private void receive(final Runnable task)
+    {
+        _receiveTasks.add(task);
+        if (!_receiving.getAndSet(true))
+        {
+            try
+            {
+                _receiveExecutor.execute(_receiveWorker);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // the transport is closing; finish the connection's outstanding work here instead
+                processReceiveTasks();
+            }
+        }
+    }
+
+    private void processReceiveTasks()
+    {
+        do
+        {
+            Runnable task;
+            while ((task = _receiveTasks.poll()) != null)
+            {
+                try
+                {
+                    task.run();
+                }
+                catch (RuntimeException e)
+                {
+                    LOGGER.error("Unexpected exception receiving from '" + _remoteAddress + "'", e);
+                }
+            }
+            _receiving.set(false);
+        }
+        while (!_receiveTasks.isEmpty() && !_receiving.getAndSet(true));
+    }
+
+    /**
+     * Called on the selector thread once the channel can accept more data, and when a requested close is started.
+     */
+    void doWrite()
+    {
+        if (_closed.get())
+        {
+            return;
+        }
+
+        boolean complete;
+        try
+        {
+            synchronized (_writeLock)
+            {
+                if (_closeRequested.get())
+                {
+                    publishChunk();
+                }
+                writeQueued(null);
+                complete = _writing.isEmpty();
+                _wantsWrite = !complete;
+            }
+        }
+        catch (IOException e)
+        {
+            LOGGER.info("Exception writing to '" + _remoteAddress + "': " + e);
+            _exception = e;
+            closed();
+            return;
+        }
+
+        updateInterest();
+
+        if (complete && _closeRequested.get())
+        {
+            closed();
+        }
+    }
+
+    /**
+     * Writes as much of the queued data, followed by <code>extra</code> if given, as the channel will take without
+     * blocking.  Must be called holding <code>_writeLock</code>.
+     */
+    private void writeQueued(final ByteBuffer extra) throws IOException
+    {
+        final boolean hasExtra = extra != null;
+        while (!_writing.isEmpty() || (hasExtra && extra.hasRemaining()))
+        {
+            final int queued = Math.min(_writing.size(), hasExtra ? MAX_GATHERED_BUFFERS - 1 : MAX_GATHERED_BUFFERS);
+            final boolean includeExtra = hasExtra && queued == _writing.size();
+            ByteBuffer[] buffers = new ByteBuffer[includeExtra ? queued + 1 : queued];
+            Iterator<ByteBuffer> iterator = _writing.iterator();
+            for (int i = 0; i < queued; i++)
+            {
+                buffers[i] = iterator.next();
+            }
+            if (includeExtra)
+            {
+                buffers[queued] = extra;
+            }
+
+            final int extraStart = hasExtra ? extra.position() : 0;
+            final long written = _socketChannel.write(buffers);
+            final long extraWritten = hasExtra ? extra.position() - extraStart : 0;
+
+            while (!_writing.isEmpty() && !_writing.peek().hasRemaining())
+            {
+                _writing.poll();
+            }
+
+            if (written > 0)
+            {
+                _transportStatistics.bytesWritten(written);
+                if (written > extraWritten)
+                {
+                    queuedBytesWritten(written - extraWritten);
+                }
+            }
+
+            if (buffers[buffers.length - 1].hasRemaining())
+            {
+                // the socket send buffer is full
+                break;
+            }
+        }
+    }
+
+    /**
+     * Moves the frames copied into the output chunk since it was last published onto the queue to be written.  Must
+     * be called holding <code>_writeLock</code>.
+     */
+    private void publishChunk()
+    {
+        if (_chunk != null && _chunk.position() > _chunkStart)
+        {
+            ByteBuffer published = _chunk.duplicate();
+            published.flip();
+            published.position(_chunkStart);
+            _writing.add(published.slice());
+            _chunkStart = _chunk.position();
+        }
+    }
+
+    private void queuedBytesWritten(final long written)
+    {
+        long pending = _pendingBytes.addAndGet(-written);
+        if (pending < _sendBufferLimit)
+        {
+            synchronized (_sendLock)
+            {
+                _sendLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Must be called on the selector thread.
+     */
+    private void updateInterest()
+    {
+        _selectorThread.updateInterest(this, !_readSuspended.get(), _wantsWrite);
+    }
+
+    /**
+     * Closes the channel immediately without writing any further data.  Called on the selector thread when the
+     * peer has closed, an error has occurred, or a requested close has completed.
+     */
+    void closed()
+    {
+        if (!_closed.getAndSet(true))
+        {
+            _closeRequested.set(true);
+            _selectorThread.removeConnection(this);
+            try
+            {
+                _socketChannel.close();
+            }
+            catch (IOException e)
+            {
+                LOGGER.debug("Exception closing socket channel", e);
+            }
+            finally
+            {
+                synchronized (_sendLock)
+                {
+                    _sendLock.notifyAll();
+                }
+                receive(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        _receiver.closed();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Closes the connection if a requested close has been waiting too long for queued data to be written.
+     */
+    boolean closeIfOverdue(long currentTime)
+    {
+        if (_closeRequested.get() && !_closed.get() && _closeDeadline != 0L && currentTime >= _closeDeadline)
+        {
+            LOGGER.debug("Timed out waiting to write queued data to '" + _remoteAddress + "' before closing");
+            closed();
+            return true;
+        }
+        return _closed.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "NonBlockingConnection[" + _remoteAddress + "]";
+    }
+
+    private final class NonBlockingSender implements Sender<ByteBuffer>
+    {
+        @Override
+        public void setIdleTimeout(final int i)
+        {
+            // idle handling is performed by the selector thread's ticker
+        }
+
+        @Override
+        public void send(final ByteBuffer msg)
+        {
+            checkNotAlreadyClosed();
+
+            int size = msg.remaining();
+            if (size == 0)
+            {
+                return;
+            }
+
+            if (_pendingBytes.get() >= _sendBufferLimit && !_selectorThread.isSelectorThread())
+            {
+                awaitBufferSpace();
+            }
+
+            // callers are free to reuse their buffer once send returns, so whatever is not written now is copied
+            synchronized (_writeLock)
+            {
+                if (size <= MAX_COALESCED_FRAME)
+                {
+                    if (_chunk == null || _chunk.remaining() < size)
+                    {
+                        publishChunk();
+                        _chunk = ByteBuffer.allocate(OUTPUT_CHUNK_SIZE);
+                        _chunkStart = 0;
+                    }
+                    _pendingBytes.addAndGet(size);
+                    _chunk.put(msg);
+                }
+                else
+                {
+                    publishChunk();
+                    if (!_wantsWrite)
+                    {
+                        write(msg);
+                    }
+                    if (msg.hasRemaining())
+                    {
+                        ByteBuffer copy = ByteBuffer.allocate(msg.remaining());
+                        _pendingBytes.addAndGet(copy.remaining());
+                        copy.put(msg);
+                        copy.flip();
+                        _writing.add(copy);
+                    }
+                }
+            }
+        }
+
+        private void awaitBufferSpace()
+        {
+            flush();
+            synchronized (_sendLock)
+            {
+                final long start = System.currentTimeMillis();
+                long elapsed = 0;
+                while (!_closed.get() && _pendingBytes.get() >= _sendBufferLimit && elapsed < _timeout)
+                {
+                    try
+                    {
+                        _sendLock.wait(_timeout - elapsed);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // pass
+                    }
+                    elapsed = System.currentTimeMillis() - start;
+                }
+            }
+
+            checkNotAlreadyClosed();
+
+            if (_pendingBytes.get() >= _sendBufferLimit)
+            {
+                LOGGER.error("write timed out for socket " + _remoteAddress);
+                closeNow();
+                throw new SenderException("write timed out for socket " + _remoteAddress);
+            }
+        }
+
+        /**
+         * Writes the queued data from the calling thread, leaving whatever the socket will not take at once for the
+         * selector thread.
+         */
+        @Override
+        public void flush()
+        {
+            if (_closed.get())
+            {
+                return;
+            }
+            synchronized (_writeLock)
+            {
+                publishChunk();
+                if (!_wantsWrite)
+                {
+                    write(null);
+                }
+            }
+        }
+
+        /**
+         * Must be called holding <code>_writeLock</code> while the selector thread is not waiting to write.
+         */
+        private void write(final ByteBuffer extra)
+        {
+            try
+            {
+                writeQueued(extra);
+            }
+            catch (IOException e)
+            {
+                LOGGER.info("Exception writing to '" + _remoteAddress + "': " + e);
+                _exception = e;
+                closeNow();
+                throw new SenderException("Exception writing to " + _remoteAddress, e);
+            }
+
+            if (!_writing.isEmpty())
+            {
+                _wantsWrite = true;
+                _transportStatistics.wakeup();
+                _selectorThread.schedule(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        updateInterest();
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            if (!_closeRequested.getAndSet(true))
+            {
+                _selectorThread.schedule(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        _closeDeadline = System.currentTimeMillis() + _timeout;
+                        doWrite();
+                    }
+                });
+            }
+        }
+
+        private void closeNow()
+        {
+            _closeRequested.set(true);
+            _selectorThread.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    closed();
+                }
+            });
+        }
+
+        private void checkNotAlreadyClosed()
+        {
+            if (_closeRequested.get())
+            {
+                throw new SenderClosedException("sender for socket " + _remoteAddress + " is closed", _exception);
+            }
+        }
+    }
+
+    /**
+     * Wraps the SSL receiver so that any handshake data produced by the engine while unwrapping is sent promptly.
+     */
+    private final class SSLReceivingDelegate implements Receiver<ByteBuffer>
+    {
+        private final SSLReceiver _sslReceiver;
+
+        private SSLReceivingDelegate(final SSLReceiver sslReceiver)
+        {
+            _sslReceiver = sslReceiver;
+        }
+
+        @Override
+        public void received(final ByteBuffer msg)
+        {
+            _sslReceiver.received(msg);
+            _sslSender.send();
+            _sslSender.flush();
+        }
+
+        @Override
+        public void exception(final Throwable t)
+        {
+            _sslReceiver.exception(t);
+        }
+
+        @Override
+        public void closed()
+        {
+            _sslReceiver.closed();
+        }
+    }
+}
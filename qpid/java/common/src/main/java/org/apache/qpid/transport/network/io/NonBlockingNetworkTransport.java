@@ -0,0 +1,314 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.network.io;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.qpid.configuration.CommonProperties;
+import org.apache.qpid.protocol.ProtocolEngine;
+import org.apache.qpid.protocol.ProtocolEngineFactory;
+import org.apache.qpid.transport.NetworkTransportConfiguration;
+import org.apache.qpid.transport.TransportException;
+import org.apache.qpid.transport.network.IncomingNetworkTransport;
+import org.apache.qpid.transport.network.NetworkWriteStatistics;
+
+/**
+ * An incoming network transport which services all of its connections from a small, fixed pool of
+ * {@link SelectorThread}s, rather than dedicating a receiver and a sender thread to each socket as
+ * {@link IoNetworkTransport} does.
+ *
+ * New connections are accepted by the first selector thread.  The protocol engines are run by receive workers taken
+ * from a pool shared by all of the transport's connections, which grows as engines block.
+ */
+public class NonBlockingNetworkTransport implements IncomingNetworkTransport
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(NonBlockingNetworkTransport.class);
+    private static final int TIMEOUT = Integer.getInteger(CommonProperties.IO_NETWORK_TRANSPORT_TIMEOUT_PROP_NAME,
+                                                          CommonProperties.IO_NETWORK_TRANSPORT_TIMEOUT_DEFAULT);
+    private static final int HANSHAKE_TIMEOUT = Integer.getInteger(CommonProperties.HANDSHAKE_TIMEOUT_PROP_NAME ,
+                                                                   CommonProperties.HANDSHAKE_TIMEOUT_DEFAULT);
+    private static final int SELECTOR_THREADS = Integer.getInteger(CommonProperties.NIO_SELECTOR_THREADS_PROP_NAME,
+                                                                   CommonProperties.NIO_SELECTOR_THREADS_DEFAULT);
+    //Delay to avoid tight spinning the accept loop during issues such as too many open files
+    private static final long ACCEPT_ERROR_DELAY = 1000l;
+
+    private Acceptor _acceptor;
+    private SelectorThread[] _selectorThreads;
+    private ExecutorService _receiveExecutor;
+    private final NetworkWriteStatistics _writeStatistics = new NetworkWriteStatistics();
+
+    public void accept(NetworkTransportConfiguration config,
+                       ProtocolEngineFactory factory,
+                       SSLContext sslContext)
+    {
+        _receiveExecutor = Executors.newCachedThreadPool(new ReceiverThreadFactory(config));
+        _selectorThreads = new SelectorThread[Math.max(1, SELECTOR_THREADS)];
+        for (int i = 0; i < _selectorThreads.length; i++)
+        {
+            _selectorThreads[i] = new SelectorThread(String.format("Selector-%s-%d", config.getAddress(), i),
+                                                     TIMEOUT);
+            _selectorThreads[i].start();
+        }
+
+        try
+        {
+            _acceptor = new Acceptor(config, factory, sslContext);
+            _selectorThreads[0].addAcceptor(_acceptor._serverSocketChannel, _acceptor);
+        }
+        catch (IOException e)
+        {
+            closeSelectorThreads();
+            throw new TransportException("Failed to start AMQP on port : " + config, e);
+        }
+    }
+
+    public void close()
+    {
+        try
+        {
+            if (_acceptor != null)
+            {
+                _acceptor.close();
+            }
+        }
+        finally
+        {
+            closeSelectorThreads();
+        }
+    }
+
+    @Override
+    public NetworkWriteStatistics getWriteStatistics()
+    {
+        return _writeStatistics;
+    }
+
+    private void closeSelectorThreads()
+    {
+        if (_selectorThreads != null)
+        {
+            for (SelectorThread selectorThread : _selectorThreads)
+            {
+                selectorThread.close();
+            }
+        }
+        if (_receiveExecutor != null)
+        {
+            // lets the workers finish telling the engines their connections have closed
+            _receiveExecutor.shutdown();
+        }
+    }
+
+    private SelectorThread nextSelectorThread()
+    {
+        SelectorThread leastLoaded = _selectorThreads[0];
+        for (int i = 1; i < _selectorThreads.length; i++)
+        {
+            if (_selectorThreads[i].getConnectionCount() < leastLoaded.getConnectionCount())
+            {
+                leastLoaded = _selectorThreads[i];
+            }
+        }
+        return leastLoaded;
+    }
+
+    /**
+     * Accepts the connections waiting on the listening channel.  Run on the selector thread the channel is
+     * registered with.
+     */
+    private class Acceptor implements Runnable
+    {
+        private final NetworkTransportConfiguration _config;
+        private final ProtocolEngineFactory _factory;
+        private final SSLContext _sslContext;
+        private final ServerSocketChannel _serverSocketChannel;
+
+        private Acceptor(NetworkTransportConfiguration config,
+                         ProtocolEngineFactory factory,
+                         SSLContext sslContext) throws IOException
+        {
+            _config = config;
+            _factory = factory;
+            _sslContext = sslContext;
+
+            InetSocketAddress address = config.getAddress();
+
+            _serverSocketChannel = ServerSocketChannel.open();
+            _serverSocketChannel.configureBlocking(false);
+            _serverSocketChannel.socket().setReuseAddress(true);
+            _serverSocketChannel.socket().bind(address);
+        }
+
+        /**
+            Close the underlying ServerSocketChannel if it has not already been closed.
+         */
+        public void close()
+        {
+            LOGGER.debug("Shutting down the Acceptor");
+
+            if (_serverSocketChannel.isOpen())
+            {
+                try
+                {
+                    _serverSocketChannel.close();
+                }
+                catch (IOException e)
+                {
+                    throw new TransportException(e);
+                }
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            while (_serverSocketChannel.isOpen())
+            {
+                SocketChannel socketChannel = null;
+                try
+                {
+                    socketChannel = _serverSocketChannel.accept();
+                    if (socketChannel == null)
+                    {
+                        break;
+                    }
+                    socketChannel.configureBlocking(false);
+
+                    Socket socket = socketChannel.socket();
+                    socket.setTcpNoDelay(_config.getTcpNoDelay());
+
+                    final Integer sendBufferSize = _config.getSendBufferSize();
+                    final Integer receiveBufferSize = _config.getReceiveBufferSize();
+
+                    socket.setSendBufferSize(sendBufferSize);
+                    socket.setReceiveBufferSize(receiveBufferSize);
+
+                    ProtocolEngine engine = _factory.newProtocolEngine();
+
+                    final IdleTimeoutTicker ticker = new IdleTimeoutTicker(engine, TIMEOUT);
+                    NonBlockingConnection connection =
+                            new NonBlockingConnection(socketChannel, engine, sendBufferSize, receiveBufferSize,
+                                                      TIMEOUT, ticker, nextSelectorThread(), _receiveExecutor,
+                                                      createSSLEngine(), _writeStatistics);
+
+                    connection.setMaxReadIdle(HANSHAKE_TIMEOUT);
+
+                    ticker.setConnection(connection);
+
+                    engine.setNetworkConnection(connection, connection.getSender());
+
+                    connection.start();
+                }
+                catch(RuntimeException e)
+                {
+                    LOGGER.error("Error accepting connection on address " + _config.getAddress(), e);
+                    closeChannelIfNecessary(socketChannel);
+                }
+                catch(IOException e)
+                {
+                    if (socketChannel != null)
+                    {
+                        LOGGER.info("Error configuring connection accepted on address " + _config.getAddress()
+                                    + ": " + e);
+                        closeChannelIfNecessary(socketChannel);
+                    }
+                    else
+                    {
+                        if (_serverSocketChannel.isOpen())
+                        {
+                            LOGGER.error("Error accepting connection on address " + _config.getAddress(), e);
+                            _selectorThreads[0].pauseAcceptor(_serverSocketChannel, ACCEPT_ERROR_DELAY);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        private SSLEngine createSSLEngine()
+        {
+            if (_sslContext == null)
+            {
+                return null;
+            }
+
+            SSLEngine sslEngine = _sslContext.createSSLEngine();
+            sslEngine.setUseClientMode(false);
+            if (_config.needClientAuth())
+            {
+                sslEngine.setNeedClientAuth(true);
+            }
+            else if (_config.wantClientAuth())
+            {
+                sslEngine.setWantClientAuth(true);
+            }
+            return sslEngine;
+        }
+
+        private void closeChannelIfNecessary(final SocketChannel socketChannel)
+        {
+            if(socketChannel != null)
+            {
+                try
+                {
+                    socketChannel.close();
+                }
+                catch (IOException e)
+                {
+                    LOGGER.debug("Exception while closing socket channel", e);
+                }
+            }
+        }
+    }
+
+    private static final class ReceiverThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger _count = new AtomicInteger();
+        private final String _prefix;
+
+        private ReceiverThreadFactory(final NetworkTransportConfiguration config)
+        {
+            _prefix = "Receiver-" + config.getAddress() + "-";
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, _prefix + _count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
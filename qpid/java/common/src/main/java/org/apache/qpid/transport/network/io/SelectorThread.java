@@ -0,0 +1,349 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.network.io;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.qpid.transport.TransportException;
+
+/**
+ * A single selector thread servicing the accepts, reads, writes and idle ticks of many {@link NonBlockingConnection}s.
+ *
+ * All interaction with the selector (registration, interest changes, closing of channels) is performed on this
+ * thread; other threads post work through {@link #schedule(Runnable)}.  Nothing run on this thread may block: the
+ * protocol engines of the connections are only ever called from their connection's receive worker.
+ */
+final class SelectorThread extends Thread
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(SelectorThread.class);
+
+    private final Selector _selector;
+    private final Queue<Runnable> _tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final List<DelayedTask> _delayedTasks = new ArrayList<DelayedTask>();
+    private final Set<NonBlockingConnection> _connections = new CopyOnWriteArraySet<NonBlockingConnection>();
+    private final AtomicBoolean _closed = new AtomicBoolean(false);
+    private final int _defaultTickInterval;
+
+    private volatile boolean _rescheduleTicks;
+    private long _nextTickTime;
+
+    SelectorThread(final String name, final int defaultTickInterval)
+    {
+        super(name);
+        setDaemon(true);
+        _defaultTickInterval = defaultTickInterval;
+        try
+        {
+            _selector = Selector.open();
+        }
+        catch (IOException e)
+        {
+            throw new TransportException("Unable to open selector", e);
+        }
+    }
+
+    /**
+     * Registers a listening channel with this thread.  The given handler is run on this thread whenever the channel
+     * has connections waiting to be accepted.
+     */
+    void addAcceptor(final ServerSocketChannel serverSocketChannel, final Runnable acceptHandler)
+    {
+        schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    serverSocketChannel.register(_selector, SelectionKey.OP_ACCEPT, acceptHandler);
+                }
+                catch (ClosedChannelException e)
+                {
+                    LOGGER.debug("Listening channel closed before it could be registered", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops accepting from the given listening channel for the given time, for instance whilst the process has
+     * run out of file descriptors.  Must be called on this thread.
+     */
+    void pauseAcceptor(final ServerSocketChannel serverSocketChannel, final long delay)
+    {
+        final SelectionKey key = serverSocketChannel.keyFor(_selector);
+        if (key != null && key.isValid())
+        {
+            key.interestOps(0);
+            _delayedTasks.add(new DelayedTask(System.currentTimeMillis() + delay, new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if (key.isValid())
+                    {
+                        key.interestOps(SelectionKey.OP_ACCEPT);
+                    }
+                }
+            }));
+        }
+    }
+
+    void addConnection(final NonBlockingConnection connection)
+    {
+        schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    connection.getSocketChannel().register(_selector, SelectionKey.OP_READ, connection);
+                    _connections.add(connection);
+                    _rescheduleTicks = true;
+                }
+                catch (ClosedChannelException e)
+                {
+                    connection.closed();
+                }
+            }
+        });
+    }
+
+    void removeConnection(final NonBlockingConnection connection)
+    {
+        _connections.remove(connection);
+        SelectionKey key = connection.getSocketChannel().keyFor(_selector);
+        if (key != null)
+        {
+            key.cancel();
+        }
+    }
+
+    /**
+     * Must be called on this thread.
+     */
+    void updateInterest(final NonBlockingConnection connection, final boolean wantsRead, final boolean wantsWrite)
+    {
+        SelectionKey key = connection.getSocketChannel().keyFor(_selector);
+        if (key != null && key.isValid())
+        {
+            key.interestOps((wantsRead ? SelectionKey.OP_READ : 0) | (wantsWrite ? SelectionKey.OP_WRITE : 0));
+        }
+    }
+
+    void schedule(final Runnable task)
+    {
+        _tasks.add(task);
+        _selector.wakeup();
+    }
+
+    /**
+     * Forces the next pass of the selection loop to recompute the idle tick deadlines, for instance because
+     * the read or write idle time of a connection has been shortened.
+     */
+    void rescheduleTicks()
+    {
+        _rescheduleTicks = true;
+        _selector.wakeup();
+    }
+
+    boolean isSelectorThread()
+    {
+        return Thread.currentThread() == this;
+    }
+
+    int getConnectionCount()
+    {
+        return _connections.size();
+    }
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            while (!_closed.get())
+            {
+                long now = System.currentTimeMillis();
+                long wakeTime = _nextTickTime == 0L ? now + _defaultTickInterval : _nextTickTime;
+                for (DelayedTask delayedTask : _delayedTasks)
+                {
+                    wakeTime = Math.min(wakeTime, delayedTask._time);
+                }
+
+                _selector.select(Math.max(1L, wakeTime - now));
+
+                runTasks();
+                processSelectedKeys();
+
+                now = System.currentTimeMillis();
+                runDelayedTasks(now);
+                if (_rescheduleTicks || now >= _nextTickTime)
+                {
+                    _rescheduleTicks = false;
+                    processTicks(now);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            LOGGER.error("Selector thread " + getName() + " failed", e);
+        }
+        finally
+        {
+            for (NonBlockingConnection connection : _connections)
+            {
+                connection.closed();
+            }
+            _connections.clear();
+            try
+            {
+                _selector.close();
+            }
+            catch (IOException e)
+            {
+                LOGGER.debug("Exception closing selector", e);
+            }
+        }
+    }
+
+    private void runTasks()
+    {
+        Runnable task;
+        while ((task = _tasks.poll()) != null)
+        {
+            runTask(task);
+        }
+    }
+
+    private void runDelayedTasks(final long now)
+    {
+        Iterator<DelayedTask> iterator = _delayedTasks.iterator();
+        while (iterator.hasNext())
+        {
+            DelayedTask delayedTask = iterator.next();
+            if (delayedTask._time <= now)
+            {
+                iterator.remove();
+                runTask(delayedTask._task);
+            }
+        }
+    }
+
+    private void runTask(final Runnable task)
+    {
+        try
+        {
+            task.run();
+        }
+        catch (RuntimeException e)
+        {
+            LOGGER.error("Unexpected exception running task on selector thread " + getName(), e);
+        }
+    }
+
+    private void processSelectedKeys()
+    {
+        Iterator<SelectionKey> iterator = _selector.selectedKeys().iterator();
+        while (iterator.hasNext())
+        {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+
+            if (key.attachment() instanceof Runnable)
+            {
+                if (key.isValid() && key.isAcceptable())
+                {
+                    runTask((Runnable) key.attachment());
+                }
+                continue;
+            }
+
+            NonBlockingConnection connection = (NonBlockingConnection) key.attachment();
+            try
+            {
+                if (key.isValid() && key.isWritable())
+                {
+                    connection.doWrite();
+                }
+                if (key.isValid() && key.isReadable())
+                {
+                    connection.doRead();
+                }
+            }
+            catch (CancelledKeyException e)
+            {
+                connection.closed();
+            }
+        }
+    }
+
+    private void processTicks(final long now)
+    {
+        long nextTickTime = now + _defaultTickInterval;
+        for (NonBlockingConnection connection : _connections)
+        {
+            if (connection.closeIfOverdue(now))
+            {
+                continue;
+            }
+            nextTickTime = Math.min(nextTickTime, now + Math.max(1, connection.tick(now)));
+        }
+        _nextTickTime = nextTickTime;
+    }
+
+    void close()
+    {
+        if (!_closed.getAndSet(true))
+        {
+            _selector.wakeup();
+        }
+    }
+
+    private static final class DelayedTask
+    {
+        private final long _time;
+        private final Runnable _task;
+
+        private DelayedTask(final long time, final Runnable task)
+        {
+            _time = time;
+            _task = task;
+        }
+    }
+}
@@ -29,6 +29,7 @@ import org.apache.qpid.transport.NetworkTransportConfiguration;
 import org.apache.qpid.transport.Receiver;
 import org.apache.qpid.transport.TransportException;
 import org.apache.qpid.transport.network.io.IoNetworkTransport;
+import org.apache.qpid.transport.network.io.NonBlockingNetworkTransport;
 
 import javax.net.ssl.SSLContext;
 import java.nio.ByteBuffer;
@@ -77,6 +78,25 @@ public class TransportTest extends QpidTestCase
         assertTrue(networkTransport instanceof IoNetworkTransport);
     }
 
+    public void testGetIncomingTransportByImplementationName() throws Exception
+    {
+        assertTrue(Transport.getIncomingTransportInstance(Transport.IO) instanceof IoNetworkTransport);
+        assertTrue(Transport.getIncomingTransportInstance(Transport.NIO) instanceof NonBlockingNetworkTransport);
+    }
+
+    public void testInvalidIncomingTransportImplementationName() throws Exception
+    {
+        try
+        {
+            Transport.getIncomingTransportInstance("invalid");
+            fail("Should have failed to load the transport for an unknown implementation");
+        }
+        catch(IllegalArgumentException iae)
+        {
+            //expected, ignore
+        }
+    }
+
     public void testOverriddenGetIncomingTransport() throws Exception
     {
         setTestSystemProperty(Transport.QPID_BROKER_TRANSPORT_PROPNAME, TestIncomingNetworkTransport.class.getName());
@@ -153,5 +173,10 @@ public class TransportTest extends QpidTestCase
         {
             throw new UnsupportedOperationException();
         }
+
+        public NetworkWriteStatistics getWriteStatistics()
+        {
+            throw new UnsupportedOperationException();
+        }
     }
 }
@@ -0,0 +1,296 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.network.io;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+import org.apache.qpid.transport.network.NetworkWriteStatistics;
+
+public class IoSenderTest extends QpidTestCase
+{
+    private static final long TIMEOUT = 10000l;
+    private static final int PRODUCERS = 4;
+    private static final int RECORDS_PER_PRODUCER = 2000;
+    // much smaller than the data sent, so that the ring buffer wraps and producers have to wait for the sender
+    private static final int BUFFER_SIZE = 256;
+
+    private final List<Throwable> _errors = Collections.synchronizedList(new ArrayList<Throwable>());
+    private final Object _sendLock = new Object();
+
+    private ServerSocket _serverSocket;
+    private Socket _socket;
+    private Socket _peer;
+    private IoSender _sender;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            if (_sender != null)
+            {
+                _sender.close();
+            }
+            if (_peer != null)
+            {
+                _peer.close();
+            }
+            if (_socket != null)
+            {
+                _socket.close();
+            }
+            _serverSocket.close();
+        }
+        finally
+        {
+            super.tearDown();
+        }
+    }
+
+    public void testDataOfEachProducerWrittenInOrderThroughStream() throws Exception
+    {
+        connect(new Socket());
+        assertNull("Plain socket should have no channel", _socket.getChannel());
+
+        sendAndVerify();
+    }
+
+    public void testDataOfEachProducerWrittenInOrderThroughChannel() throws Exception
+    {
+        // a channel-backed socket is written through its stream just as a plain one is
+        connect(SocketChannel.open().socket());
+        assertNotNull("Socket should have a channel", _socket.getChannel());
+
+        sendAndVerify();
+    }
+
+    public void testSmallWrappedRegionWrittenInOneCallAndCountedByTransport() throws Exception
+    {
+        final List<Integer> writeLengths = Collections.synchronizedList(new ArrayList<Integer>());
+        NetworkWriteStatistics statistics = new NetworkWriteStatistics();
+        connect(new Socket()
+        {
+            @Override
+            public OutputStream getOutputStream() throws IOException
+            {
+                return new FilterOutputStream(super.getOutputStream())
+                {
+                    @Override
+                    public void write(final byte[] b, final int off, final int len) throws IOException
+                    {
+                        writeLengths.add(len);
+                        out.write(b, off, len);
+                    }
+                };
+            }
+        }, statistics);
+
+        // the ring buffer starts a few bytes short of its end, so this wraps
+        byte[] data = new byte[20];
+        for (int i = 0; i < data.length; i++)
+        {
+            data[i] = (byte) i;
+        }
+        _sender.send(ByteBuffer.wrap(data));
+        _sender.flush();
+
+        byte[] received = new byte[data.length];
+        new DataInputStream(_peer.getInputStream()).readFully(received);
+        assertTrue("Unexpected data received", Arrays.equals(data, received));
+
+        _sender.close();
+        assertEquals("Wrapped region should have been written in one call",
+                     Collections.singletonList(data.length), writeLengths);
+        assertEquals("Unexpected bytes written counted by transport", data.length, statistics.getBytesWritten());
+        assertTrue("Sender wakeup not counted by transport", statistics.getWakeupCount() > 0);
+    }
+
+    private void connect(final Socket socket) throws IOException
+    {
+        connect(socket, null);
+    }
+
+    private void connect(final Socket socket, final NetworkWriteStatistics statistics) throws IOException
+    {
+        _socket = socket;
+        _socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), _serverSocket.getLocalPort()));
+        _peer = _serverSocket.accept();
+        _sender = new IoSender(_socket, BUFFER_SIZE, TIMEOUT, statistics);
+        _sender.initiate();
+    }
+
+    /**
+     * Has several producers send numbered records of varying length, some in two parts as a frame header and body
+     * are, and checks that the peer receives every record of each producer, intact and in order.  The producers
+     * serialise their sends, as the protocol layers do, but the sends of different producers are interleaved.
+     */
+    private void sendAndVerify() throws Exception
+    {
+        final int[] nextRecords = new int[PRODUCERS];
+        Thread reader = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    DataInputStream input = new DataInputStream(_peer.getInputStream());
+                    for (int i = 0; i < PRODUCERS * RECORDS_PER_PRODUCER; i++)
+                    {
+                        int producer = input.readInt();
+                        int record = input.readInt();
+                        byte[] payload = new byte[input.readInt()];
+                        input.readFully(payload);
+
+                        assertEquals("Record of producer " + producer + " out of order",
+                                     nextRecords[producer], record);
+                        nextRecords[producer]++;
+                        assertEquals("Unexpected payload length", getPayloadLength(record), payload.length);
+                        for (byte b : payload)
+                        {
+                            assertEquals("Payload of record " + record + " of producer " + producer + " corrupted",
+                                         (byte) record, b);
+                        }
+                    }
+                }
+                catch (EOFException e)
+                {
+                    _errors.add(new AssertionError("Connection closed before every record was received"));
+                }
+                catch (Throwable e)
+                {
+                    _errors.add(e);
+                }
+            }
+        }, "reader");
+        reader.start();
+
+        List<Thread> producers = new ArrayList<Thread>();
+        for (int i = 0; i < PRODUCERS; i++)
+        {
+            final int producer = i;
+            Thread thread = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for (int record = 0; record < RECORDS_PER_PRODUCER; record++)
+                        {
+                            send(producer, record);
+                        }
+                    }
+                    catch (Throwable e)
+                    {
+                        _errors.add(e);
+                    }
+                }
+            }, "producer-" + i);
+            producers.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : producers)
+        {
+            thread.join(TIMEOUT);
+            assertFalse("Producer " + thread.getName() + " did not complete", thread.isAlive());
+        }
+        reader.join(TIMEOUT);
+        assertFalse("Reader did not receive every record", reader.isAlive());
+        assertTrue("Unexpected errors: " + _errors, _errors.isEmpty());
+
+        for (int i = 0; i < PRODUCERS; i++)
+        {
+            assertEquals("Unexpected number of records received from producer " + i,
+                         RECORDS_PER_PRODUCER, nextRecords[i]);
+        }
+        // the sender thread has finished updating its statistics once it has stopped
+        _sender.close();
+        assertTrue("Producers never had to wait for the sender", _sender.getProducerWaitCount() > 0);
+        assertEquals("Unexpected number of bytes written", getTotalBytes(), _sender.getBytesWritten());
+    }
+
+    private void send(final int producer, final int record)
+    {
+        int length = getPayloadLength(record);
+        ByteBuffer header = ByteBuffer.allocate(12);
+        header.putInt(producer).putInt(record).putInt(length);
+        header.flip();
+        byte[] payload = new byte[length];
+        Arrays.fill(payload, (byte) record);
+
+        synchronized (_sendLock)
+        {
+            if (record % 2 == 0)
+            {
+                _sender.send(header);
+                _sender.send(ByteBuffer.wrap(payload));
+            }
+            else
+            {
+                ByteBuffer buf = ByteBuffer.allocate(header.remaining() + length);
+                buf.put(header).put(payload);
+                buf.flip();
+                _sender.send(buf);
+            }
+            _sender.flush();
+        }
+    }
+
+    private static int getPayloadLength(final int record)
+    {
+        // up to twice the buffer size, so that some records cannot be queued in one go
+        return record % (2 * BUFFER_SIZE + 1);
+    }
+
+    private static long getTotalBytes()
+    {
+        long total = 0l;
+        for (int record = 0; record < RECORDS_PER_PRODUCER; record++)
+        {
+            total += 12 + getPayloadLength(record);
+        }
+        return PRODUCERS * total;
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.network.io;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.apache.qpid.configuration.CommonProperties;
+import org.apache.qpid.protocol.ProtocolEngine;
+import org.apache.qpid.protocol.ProtocolEngineFactory;
+import org.apache.qpid.ssl.SSLContextFactory;
+import org.apache.qpid.test.utils.QpidTestCase;
+import org.apache.qpid.transport.NetworkTransportConfiguration;
+import org.apache.qpid.transport.Sender;
+import org.apache.qpid.transport.network.NetworkConnection;
+
+public class NonBlockingNetworkTransportTest extends QpidTestCase
+{
+    private static final String BROKER_KEYSTORE_PATH = TEST_RESOURCES_DIR + "/ssl/java_broker_keystore.jks";
+    private static final String STORE_PASSWORD = "password";
+    private static final String STORE_TYPE = "JKS";
+
+    private NonBlockingNetworkTransport _transport;
+    private int _port;
+    private final CountDownLatch _closed = new CountDownLatch(1);
+    private final CountDownLatch _release = new CountDownLatch(1);
+    private final AtomicBoolean _blockFirstEngine = new AtomicBoolean();
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _port = findFreePort();
+        _transport = new NonBlockingNetworkTransport();
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            _release.countDown();
+            _transport.close();
+        }
+        finally
+        {
+            super.tearDown();
+        }
+    }
+
+    private void startTransport(final SSLContext sslContext)
+    {
+        _transport.accept(new TestNetworkTransportConfiguration(), new ProtocolEngineFactory()
+        {
+            @Override
+            public ProtocolEngine newProtocolEngine()
+            {
+                return new EchoProtocolEngine(_blockFirstEngine.getAndSet(false));
+            }
+        }, sslContext);
+    }
+
+    public void testLargeMessageIsEchoed() throws Exception
+    {
+        startTransport(null);
+        final byte[] data = new byte[1024 * 1024];
+        new Random().nextBytes(data);
+
+        Socket socket = new Socket("localhost", _port);
+        try
+        {
+            assertEchoed(socket, data);
+
+            // the count is updated once the write call that sent the last bytes has returned
+            long deadline = System.currentTimeMillis() + 5000;
+            while (_transport.getWriteStatistics().getBytesWritten() < data.length
+                   && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10);
+            }
+            assertEquals("Unexpected bytes written counted by transport",
+                         (long) data.length, _transport.getWriteStatistics().getBytesWritten());
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    public void testDataIsEchoedOverSsl() throws Exception
+    {
+        startTransport(SSLContextFactory.buildClientContext(null, null, null, null,
+                                                            BROKER_KEYSTORE_PATH, STORE_PASSWORD, STORE_TYPE,
+                                                            KeyManagerFactory.getDefaultAlgorithm(), null));
+        final byte[] data = new byte[256 * 1024];
+        new Random().nextBytes(data);
+
+        SSLContext clientContext = SSLContext.getInstance(SSLContextFactory.TRANSPORT_LAYER_SECURITY_CODE);
+        clientContext.init(null, new TrustManager[] { new TrustingTrustManager() }, null);
+        SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket("localhost", _port);
+        try
+        {
+            socket.startHandshake();
+            assertEchoed(socket, data);
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    public void testBlockedEngineDoesNotDelayOtherConnections() throws Exception
+    {
+        _blockFirstEngine.set(true);
+        startTransport(null);
+
+        List<Socket> sockets = new ArrayList<Socket>();
+        try
+        {
+            Socket blocked = new Socket("localhost", _port);
+            sockets.add(blocked);
+            blocked.getOutputStream().write(1);
+
+            // at least one of these shares a selector thread with the blocked connection
+            int selectorThreads = Integer.getInteger(CommonProperties.NIO_SELECTOR_THREADS_PROP_NAME,
+                                                     CommonProperties.NIO_SELECTOR_THREADS_DEFAULT);
+            for (int i = 0; i <= selectorThreads; i++)
+            {
+                Socket socket = new Socket("localhost", _port);
+                sockets.add(socket);
+                socket.setSoTimeout(5000);
+                assertEchoed(socket, new byte[] { (byte) i });
+            }
+        }
+        finally
+        {
+            _release.countDown();
+            for (Socket socket : sockets)
+            {
+                socket.close();
+            }
+        }
+    }
+
+    public void testPeerCloseIsReported() throws Exception
+    {
+        startTransport(null);
+        Socket socket = new Socket("localhost", _port);
+        socket.getOutputStream().write(1);
+        socket.close();
+
+        assertTrue("Engine was not told the connection closed", _closed.await(5, TimeUnit.SECONDS));
+    }
+
+    private void assertEchoed(final Socket socket, final byte[] data) throws Exception
+    {
+        final OutputStream out = socket.getOutputStream();
+        Thread writer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    out.write(data);
+                    out.flush();
+                }
+                catch (IOException e)
+                {
+                    // reported by the reader failing below
+                }
+            }
+        });
+        writer.start();
+
+        byte[] echoed = new byte[data.length];
+        new DataInputStream(socket.getInputStream()).readFully(echoed);
+        writer.join(5000);
+
+        assertTrue("Echoed data differs from data sent", Arrays.equals(data, echoed));
+    }
+
+    private class EchoProtocolEngine implements ProtocolEngine
+    {
+        private final boolean _block;
+        private Sender<ByteBuffer> _sender;
+        private volatile long _lastReadTime = System.currentTimeMillis();
+
+        private EchoProtocolEngine(final boolean block)
+        {
+            _block = block;
+        }
+
+        @Override
+        public SocketAddress getRemoteAddress()
+        {
+            return null;
+        }
+
+        @Override
+        public SocketAddress getLocalAddress()
+        {
+            return null;
+        }
+
+        @Override
+        public long getWrittenBytes()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getReadBytes()
+        {
+            return 0;
+        }
+
+        @Override
+        public void closed()
+        {
+            _closed.countDown();
+        }
+
+        @Override
+        public void writerIdle()
+        {
+        }
+
+        @Override
+        public void readerIdle()
+        {
+        }
+
+        @Override
+        public void setNetworkConnection(final NetworkConnection network, final Sender<ByteBuffer> sender)
+        {
+            _sender = sender;
+        }
+
+        @Override
+        public void received(final ByteBuffer msg)
+        {
+            _lastReadTime = System.currentTimeMillis();
+            if (_block)
+            {
+                try
+                {
+                    _release.await(10, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            _sender.send(msg);
+            _sender.flush();
+        }
+
+        @Override
+        public void exception(final Throwable t)
+        {
+        }
+
+        @Override
+        public long getLastReadTime()
+        {
+            return _lastReadTime;
+        }
+
+        @Override
+        public long getLastWriteTime()
+        {
+            return 0;
+        }
+    }
+
+    private static class TrustingTrustManager implements X509TrustManager
+    {
+        @Override
+        public void checkClientTrusted(final X509Certificate[] chain, final String authType)
+        {
+        }
+
+        @Override
+        public void checkServerTrusted(final X509Certificate[] chain, final String authType)
+        {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers()
+        {
+            return new X509Certificate[0];
+        }
+    }
+
+    private class TestNetworkTransportConfiguration implements NetworkTransportConfiguration
+    {
+        @Override
+        public Boolean getTcpNoDelay()
+        {
+            return true;
+        }
+
+        @Override
+        public Integer getReceiveBufferSize()
+        {
+            return 65536;
+        }
+
+        @Override
+        public Integer getSendBufferSize()
+        {
+            return 65536;
+        }
+
+        @Override
+        public InetSocketAddress getAddress()
+        {
+            return new InetSocketAddress(_port);
+        }
+
+        @Override
+        public boolean needClientAuth()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean wantClientAuth()
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.amqp_1_0.codec;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.apache.qpid.amqp_1_0.messaging.SectionEncoderImpl;
+import org.apache.qpid.amqp_1_0.type.Binary;
+import org.apache.qpid.amqp_1_0.type.Symbol;
+import org.apache.qpid.amqp_1_0.type.UnsignedByte;
+import org.apache.qpid.amqp_1_0.type.UnsignedInteger;
+import org.apache.qpid.amqp_1_0.type.codec.AMQPDescribedTypeRegistry;
+import org.apache.qpid.amqp_1_0.type.messaging.ApplicationProperties;
+import org.apache.qpid.amqp_1_0.type.messaging.Data;
+import org.apache.qpid.amqp_1_0.type.messaging.Header;
+import org.apache.qpid.amqp_1_0.type.messaging.Properties;
+import org.apache.qpid.amqp_1_0.type.transport.Transfer;
+
+/**
+ * Encoding with the AMQP 1.0 value writers: the transfer performative sent for every message, and the sections of
+ * the message itself.
+ */
+@State(Scope.Thread)
+public class ValueWriterBenchmark
+{
+    @Param({"0", "10", "50"})
+    public int _applicationPropertyCount;
+
+    private AMQPDescribedTypeRegistry _registry;
+    private SectionEncoderImpl _sectionEncoder;
+    private ByteBuffer _buffer;
+
+    private Transfer _transfer;
+    private Header _header;
+    private Properties _properties;
+    private ApplicationProperties _applicationProperties;
+    private Data _data;
+
+    @Setup
+    public void setUp()
+    {
+        _registry = AMQPDescribedTypeRegistry.newInstance().registerTransportLayer().registerMessagingLayer();
+        _sectionEncoder = new SectionEncoderImpl(_registry);
+        _buffer = ByteBuffer.allocate(65536);
+
+        _transfer = new Transfer();
+        _transfer.setHandle(UnsignedInteger.ZERO);
+        _transfer.setDeliveryId(UnsignedInteger.valueOf(1234567));
+        _transfer.setDeliveryTag(new Binary(new byte[] { 0, 0, 0, 0, 0, 18, -42, -121 }));
+        _transfer.setMessageFormat(UnsignedInteger.ZERO);
+        _transfer.setSettled(Boolean.FALSE);
+
+        _header = new Header();
+        _header.setDurable(Boolean.TRUE);
+        _header.setPriority(UnsignedByte.valueOf((byte) 4));
+
+        _properties = new Properties();
+        _properties.setMessageId("ID:6a6a6c36-4d4b-4b4c-8d1b-23e2f1b61c9d");
+        _properties.setTo("queue");
+        _properties.setSubject("subject");
+        _properties.setContentType(Symbol.valueOf("text/plain"));
+
+        Map<String, Object> applicationProperties = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < _applicationPropertyCount; i++)
+        {
+            applicationProperties.put("property" + i, i % 2 == 0 ? "value" + i : Integer.valueOf(i));
+        }
+        _applicationProperties = new ApplicationProperties(applicationProperties);
+
+        _data = new Data(new Binary(new byte[1024]));
+    }
+
+    @Benchmark
+    public int writeTransfer()
+    {
+        _buffer.clear();
+        ValueWriter<Transfer> writer = _registry.getValueWriter(_transfer);
+        writer.setValue(_transfer);
+        return writer.writeToBuffer(_buffer);
+    }
+
+    @Benchmark
+    public Binary encodeMessage()
+    {
+        _sectionEncoder.reset();
+        _sectionEncoder.encodeObject(_header);
+        _sectionEncoder.encodeObject(_properties);
+        _sectionEncoder.encodeObject(_applicationProperties);
+        _sectionEncoder.encodeObject(_data);
+        return _sectionEncoder.getEncoding();
+    }
+}
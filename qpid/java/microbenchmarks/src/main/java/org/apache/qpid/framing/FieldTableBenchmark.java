@@ -0,0 +1,102 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.framing;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.apache.qpid.util.BytesDataOutput;
+
+/**
+ * Encoding and decoding of the 0-8/0-9 field table which carries the application headers of a message.
+ */
+@State(Scope.Thread)
+public class FieldTableBenchmark
+{
+    @Param({"1", "10", "50"})
+    public int _propertyCount;
+
+    private String[] _names;
+    private byte[] _encoded;
+    private BytesDataOutput _output;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        _names = new String[_propertyCount];
+        for (int i = 0; i < _propertyCount; i++)
+        {
+            _names[i] = "property" + i;
+        }
+
+        FieldTable table = createTable();
+        _encoded = new byte[(int) table.getEncodedSize() + 4];
+        _output = new BytesDataOutput(_encoded);
+        table.writeToBuffer(_output);
+    }
+
+    private FieldTable createTable()
+    {
+        FieldTable table = new FieldTable();
+        for (int i = 0; i < _propertyCount; i++)
+        {
+            switch (i % 4)
+            {
+                case 0:
+                    table.setString(_names[i], "value" + i);
+                    break;
+                case 1:
+                    table.setInteger(_names[i], i);
+                    break;
+                case 2:
+                    table.setLong(_names[i], (long) i);
+                    break;
+                default:
+                    table.setBoolean(_names[i], true);
+                    break;
+            }
+        }
+        return table;
+    }
+
+    @Benchmark
+    public int encode() throws IOException
+    {
+        _output.reset();
+        createTable().writeToBuffer(_output);
+        return _output.length();
+    }
+
+    /**
+     * Decodes a received table and looks up its last property, which decodes every property.
+     */
+    @Benchmark
+    public Object decode() throws IOException
+    {
+        FieldTable table = new FieldTable(_encoded, 4, _encoded.length - 4);
+        return table.getObject(_names[_propertyCount - 1]);
+    }
+}
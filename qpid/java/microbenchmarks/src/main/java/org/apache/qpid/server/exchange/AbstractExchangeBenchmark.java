@@ -0,0 +1,102 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.exchange;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import org.apache.qpid.server.message.InstanceProperties;
+import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.server.message.internal.InternalMessage;
+import org.apache.qpid.server.message.internal.InternalMessageHeader;
+import org.apache.qpid.server.model.Exchange;
+import org.apache.qpid.server.queue.AMQQueue;
+import org.apache.qpid.server.queue.BaseQueue;
+import org.apache.qpid.server.util.BrokerTestHelper;
+import org.apache.qpid.server.virtualhost.VirtualHostImpl;
+
+/**
+ * Common set up of the exchange routing benchmarks: an in-memory virtual host holding the exchange under test and
+ * the queues bound to it.  Only the routing decision is measured; messages are not enqueued.
+ */
+@State(Scope.Benchmark)
+public abstract class AbstractExchangeBenchmark<E extends AbstractExchange<E>>
+{
+    protected VirtualHostImpl<?,?,?> _virtualHost;
+    protected E _exchange;
+
+    protected void createExchange(String name) throws Exception
+    {
+        BrokerTestHelper.setUp();
+        _virtualHost = BrokerTestHelper.createVirtualHost(getClass().getSimpleName());
+
+        Map<String,Object> attributes = new HashMap<String, Object>();
+        attributes.put(Exchange.ID, UUID.randomUUID());
+        attributes.put(Exchange.NAME, name);
+        attributes.put(Exchange.DURABLE, false);
+
+        _exchange = newExchange(attributes, _virtualHost);
+        _exchange.open();
+    }
+
+    protected abstract E newExchange(Map<String, Object> attributes, VirtualHostImpl<?,?,?> virtualHost);
+
+    @TearDown
+    public void tearDown()
+    {
+        try
+        {
+            if (_virtualHost != null)
+            {
+                _virtualHost.close();
+            }
+        }
+        finally
+        {
+            BrokerTestHelper.tearDown();
+        }
+    }
+
+    protected AMQQueue<?> createQueue(String name) throws Exception
+    {
+        return BrokerTestHelper.createQueue(name, _virtualHost);
+    }
+
+    protected ServerMessage<?> createMessage(String routingKey, Map<String, Object> headers)
+    {
+        InternalMessageHeader header = new InternalMessageHeader(headers, null, 0l, null, null, null, null, null,
+                                                                 (byte) 4, 0l, null, null);
+        InternalMessage message = InternalMessage.createStringMessage(_virtualHost.getMessageStore(), header, "body");
+        message.setInitialRoutingAddress(routingKey);
+        return message;
+    }
+
+    protected List<? extends BaseQueue> route(ServerMessage<?> message)
+    {
+        return _exchange.route(message, message.getInitialRoutingAddress(), InstanceProperties.EMPTY);
+    }
+}
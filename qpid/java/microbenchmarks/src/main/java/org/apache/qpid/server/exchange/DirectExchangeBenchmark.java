@@ -0,0 +1,78 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.exchange;
+
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.server.queue.BaseQueue;
+import org.apache.qpid.server.virtualhost.VirtualHostImpl;
+
+/**
+ * Routing through a direct exchange with one queue bound to each routing key.
+ */
+public class DirectExchangeBenchmark extends AbstractExchangeBenchmark<DirectExchange>
+{
+    @Param({"10", "100", "1000"})
+    public int _bindingCount;
+
+    private ServerMessage<?>[] _matchingMessages;
+    private ServerMessage<?> _unmatchedMessage;
+    private int _next;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        createExchange("direct");
+        _matchingMessages = new ServerMessage<?>[_bindingCount];
+        for (int i = 0; i < _bindingCount; i++)
+        {
+            _exchange.addBinding("key" + i, createQueue("queue" + i), null);
+            _matchingMessages[i] = createMessage("key" + i, null);
+        }
+        _unmatchedMessage = createMessage("unbound", null);
+    }
+
+    @Override
+    protected DirectExchange newExchange(Map<String, Object> attributes, VirtualHostImpl<?,?,?> virtualHost)
+    {
+        return new DirectExchange(attributes, virtualHost);
+    }
+
+    @Benchmark
+    public List<? extends BaseQueue> routeMatching()
+    {
+        ServerMessage<?> message = _matchingMessages[_next];
+        _next = (_next + 1) % _matchingMessages.length;
+        return route(message);
+    }
+
+    @Benchmark
+    public List<? extends BaseQueue> routeUnmatched()
+    {
+        return route(_unmatchedMessage);
+    }
+}
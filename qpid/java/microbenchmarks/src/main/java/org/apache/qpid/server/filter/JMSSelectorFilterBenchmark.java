@@ -0,0 +1,84 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.filter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import org.apache.qpid.server.message.InstanceProperties;
+import org.apache.qpid.server.message.internal.InternalMessage;
+import org.apache.qpid.server.message.internal.InternalMessageHeader;
+import org.apache.qpid.server.store.MemoryMessageStore;
+
+/**
+ * Evaluation of JMS selectors against a message, as done for every message offered to a consumer with a selector.
+ */
+@State(Scope.Benchmark)
+public class JMSSelectorFilterBenchmark
+{
+    @Param({"symbol = 'IBM'",
+            "symbol = 'IBM' AND price > 100.0",
+            "symbol IN ('AAPL', 'GOOG', 'IBM') OR exchange LIKE 'NY%'",
+            "JMSPriority > 3 AND volume BETWEEN 1000 AND 5000"})
+    public String _selector;
+
+    private MemoryMessageStore _messageStore;
+    private JMSSelectorFilter _filter;
+    private Filterable _message;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        _messageStore = new MemoryMessageStore();
+        _messageStore.openMessageStore(null);
+
+        Map<String, Object> headers = new HashMap<String, Object>();
+        headers.put("symbol", "IBM");
+        headers.put("exchange", "NYSE");
+        headers.put("price", 190.5d);
+        headers.put("volume", 2000);
+        InternalMessageHeader header = new InternalMessageHeader(headers, null, 0l, null, null, null, null, null,
+                                                                 (byte) 4, 0l, null, null);
+
+        _filter = new JMSSelectorFilter(_selector);
+        _message = Filterable.Factory.newInstance(InternalMessage.createStringMessage(_messageStore, header, "body"),
+                                                  InstanceProperties.EMPTY);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        _messageStore.closeMessageStore();
+    }
+
+    @Benchmark
+    public boolean matches()
+    {
+        return _filter.matches(_message);
+    }
+}
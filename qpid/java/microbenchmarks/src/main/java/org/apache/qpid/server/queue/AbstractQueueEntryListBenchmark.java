@@ -0,0 +1,150 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.server.message.internal.InternalMessage;
+import org.apache.qpid.server.message.internal.InternalMessageHeader;
+import org.apache.qpid.server.model.Queue;
+import org.apache.qpid.server.util.BrokerTestHelper;
+import org.apache.qpid.server.virtualhost.VirtualHostImpl;
+
+/**
+ * Common set up of the queue entry list benchmarks.  The list under test already holds a number of entries, which
+ * stay on it, so that adding, walking and scavenging are measured against a list of realistic depth.
+ *
+ * Deleting an entry also updates the statistics of its queue, as it does in the broker.
+ */
+@State(Scope.Benchmark)
+public abstract class AbstractQueueEntryListBenchmark
+{
+    @Param({"0", "1000", "100000"})
+    public int _depth;
+
+    protected VirtualHostImpl<?,?,?> _virtualHost;
+
+    private ServerMessage<?>[] _messages;
+    private int _next;
+
+    protected void createVirtualHost() throws Exception
+    {
+        BrokerTestHelper.setUp();
+        _virtualHost = BrokerTestHelper.createVirtualHost(getClass().getSimpleName());
+    }
+
+    protected Map<String, Object> queueAttributes()
+    {
+        Map<String,Object> attributes = new HashMap<String, Object>();
+        attributes.put(Queue.ID, UUID.randomUUID());
+        attributes.put(Queue.NAME, getClass().getSimpleName());
+        attributes.put(Queue.DURABLE, false);
+        return attributes;
+    }
+
+    /**
+     * Creates the messages which are added to the list in turn, and fills the list to the required depth.
+     */
+    protected void createMessages(int count)
+    {
+        _messages = new ServerMessage<?>[count];
+        for (int i = 0; i < count; i++)
+        {
+            InternalMessageHeader header = new InternalMessageHeader(messageHeaders(i), null, 0l, null, null, null,
+                                                                     null, null, (byte) 4, 0l, null, null);
+            _messages[i] = InternalMessage.createStringMessage(_virtualHost.getMessageStore(), header, "body");
+        }
+
+        QueueEntryList list = getEntries();
+        for (int i = 0; i < _depth; i++)
+        {
+            list.add(nextMessage());
+        }
+    }
+
+    protected Map<String, Object> messageHeaders(int index)
+    {
+        return null;
+    }
+
+    protected abstract QueueEntryList getEntries();
+
+    private ServerMessage<?> nextMessage()
+    {
+        ServerMessage<?> message = _messages[_next];
+        _next = (_next + 1) % _messages.length;
+        return message;
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        try
+        {
+            if (_virtualHost != null)
+            {
+                _virtualHost.close();
+            }
+        }
+        finally
+        {
+            BrokerTestHelper.tearDown();
+        }
+    }
+
+    /**
+     * Adds an entry and consumes it again, as happens to every message passing through a queue.  Every so many
+     * deletions the list scavenges the deleted entries.
+     */
+    @Benchmark
+    public QueueEntry addAndDelete()
+    {
+        QueueEntry entry = getEntries().add(nextMessage());
+        entry.acquire();
+        entry.delete();
+        return entry;
+    }
+
+    /**
+     * Walks the list from its head to its tail, as a consumer looking for the next available message does.
+     */
+    @Benchmark
+    public int walk()
+    {
+        QueueEntryList list = getEntries();
+        int count = 0;
+        QueueEntry entry = list.getHead();
+        while ((entry = list.next(entry)) != null)
+        {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Benchmarks the list of entries of a sorted queue, which is kept in order of a message header.  Messages arrive
+ * with their keys in random order, so each is inserted at a random position in the list.
+ */
+public class SortedQueueEntryListBenchmark extends AbstractQueueEntryListBenchmark
+{
+    private static final String SORT_KEY = "KEY";
+    private static final int MESSAGE_COUNT = 1024;
+
+    private final Random _random = new Random(0);
+    private SortedQueueEntryList _entries;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        createVirtualHost();
+        Map<String, Object> attributes = queueAttributes();
+        attributes.put(SortedQueue.SORT_KEY, SORT_KEY);
+        SortedQueueImpl queue = new SortedQueueImpl(attributes, _virtualHost);
+        queue.open();
+        _entries = queue.getEntries();
+        createMessages(MESSAGE_COUNT);
+    }
+
+    @Override
+    protected Map<String, Object> messageHeaders(int index)
+    {
+        return Collections.<String, Object>singletonMap(SORT_KEY, String.format("%08d", _random.nextInt(100000000)));
+    }
+
+    @Override
+    protected QueueEntryList getEntries()
+    {
+        return _entries;
+    }
+}
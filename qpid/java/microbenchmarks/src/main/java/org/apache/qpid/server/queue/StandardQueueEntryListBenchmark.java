@@ -0,0 +1,47 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Benchmarks the list of entries of a standard queue, which is kept in arrival order.
+ */
+public class StandardQueueEntryListBenchmark extends AbstractQueueEntryListBenchmark
+{
+    private StandardQueueEntryList _entries;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        createVirtualHost();
+        StandardQueueImpl queue = new StandardQueueImpl(queueAttributes(), _virtualHost);
+        queue.open();
+        _entries = queue.getEntries();
+        createMessages(1);
+    }
+
+    @Override
+    protected QueueEntryList getEntries()
+    {
+        return _entries;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store;
+
+import java.util.UUID;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import org.apache.qpid.server.message.internal.InternalMessage;
+import org.apache.qpid.server.message.internal.InternalMessageHeader;
+
+/**
+ * Enqueues and dequeues of messages in the in-memory message store, each committed in its own transaction as an
+ * auto-acknowledged publish and consume would be.
+ */
+@State(Scope.Benchmark)
+public class MemoryMessageStoreBenchmark
+{
+    @Param({"0", "1024", "65536"})
+    public int _messageSize;
+
+    private final TransactionLogResource _queue = new TransactionLogResource()
+    {
+        private final UUID _id = UUID.randomUUID();
+
+        @Override
+        public String getName()
+        {
+            return "queue";
+        }
+
+        @Override
+        public UUID getId()
+        {
+            return _id;
+        }
+
+        @Override
+        public boolean isDurable()
+        {
+            return true;
+        }
+    };
+
+    private MemoryMessageStore _messageStore;
+    private InternalMessageHeader _header;
+    private byte[] _content;
+    private InternalMessage _message;
+
+    @Setup
+    public void setUp()
+    {
+        _messageStore = new MemoryMessageStore();
+        _messageStore.openMessageStore(null);
+        _header = new InternalMessageHeader(null, null, 0l, null, null, null, null, null, (byte) 4, 0l, null, null);
+        _content = new byte[_messageSize];
+        _message = InternalMessage.createBytesMessage(_messageStore, _header, _content);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        _messageStore.closeMessageStore();
+    }
+
+    @Benchmark
+    public void enqueueAndDequeue()
+    {
+        Transaction txn = _messageStore.newTransaction();
+        txn.enqueueMessage(_queue, _message);
+        txn.commitTran();
+
+        txn = _messageStore.newTransaction();
+        txn.dequeueMessage(_queue, _message);
+        txn.commitTran();
+    }
+
+    /**
+     * The whole life of a message in the store: it is added, enqueued, dequeued and finally removed.
+     */
+    @Benchmark
+    public void addEnqueueDequeueRemove()
+    {
+        InternalMessage message = InternalMessage.createBytesMessage(_messageStore, _header, _content);
+
+        Transaction txn = _messageStore.newTransaction();
+        txn.enqueueMessage(_queue, message);
+        txn.commitTran();
+
+        txn = _messageStore.newTransaction();
+        txn.dequeueMessage(_queue, message);
+        txn.commitTran();
+
+        message.getStoredMessage().remove();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.codec;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.apache.qpid.transport.DeliveryProperties;
+import org.apache.qpid.transport.MessageDeliveryMode;
+import org.apache.qpid.transport.MessageDeliveryPriority;
+import org.apache.qpid.transport.MessageProperties;
+import org.apache.qpid.transport.ReplyTo;
+import org.apache.qpid.transport.Struct;
+
+/**
+ * Encoding and decoding of the header of an 0-10 message transfer: its delivery and message properties, the latter
+ * carrying the application headers.
+ */
+@State(Scope.Thread)
+public class BBCodecBenchmark
+{
+    @Param({"0", "10", "50"})
+    public int _applicationHeaderCount;
+
+    private DeliveryProperties _deliveryProperties;
+    private MessageProperties _messageProperties;
+    private BBEncoder _encoder;
+    private BBDecoder _decoder;
+    private ByteBuffer _encoded;
+
+    @Setup
+    public void setUp()
+    {
+        Map<String, Object> applicationHeaders = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < _applicationHeaderCount; i++)
+        {
+            applicationHeaders.put("header" + i, i % 2 == 0 ? "value" + i : Integer.valueOf(i));
+        }
+
+        _deliveryProperties = new DeliveryProperties();
+        _deliveryProperties.setPriority(MessageDeliveryPriority.MEDIUM);
+        _deliveryProperties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        _deliveryProperties.setTimestamp(System.currentTimeMillis());
+        _deliveryProperties.setExchange("amq.direct");
+        _deliveryProperties.setRoutingKey("queue");
+
+        _messageProperties = new MessageProperties();
+        _messageProperties.setContentLength(1024);
+        _messageProperties.setMessageId(UUID.randomUUID());
+        _messageProperties.setReplyTo(new ReplyTo("amq.direct", "replies"));
+        _messageProperties.setContentType("text/plain");
+        _messageProperties.setApplicationHeaders(applicationHeaders);
+
+        _encoder = new BBEncoder(4096);
+        _decoder = new BBDecoder();
+        ByteBuffer encoded = encode();
+        _encoded = ByteBuffer.allocate(encoded.remaining());
+        _encoded.put(encoded);
+        _encoded.flip();
+    }
+
+    @Benchmark
+    public ByteBuffer encode()
+    {
+        _encoder.init();
+        _encoder.writeStruct32(_deliveryProperties);
+        _encoder.writeStruct32(_messageProperties);
+        return _encoder.segment();
+    }
+
+    @Benchmark
+    public Struct decode()
+    {
+        _decoder.init(_encoded.duplicate());
+        _decoder.readStruct32();
+        return _decoder.readStruct32();
+    }
+}
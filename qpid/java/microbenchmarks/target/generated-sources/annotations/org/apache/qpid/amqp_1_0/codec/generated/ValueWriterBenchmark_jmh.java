@@ -0,0 +1,4 @@
+package org.apache.qpid.amqp_1_0.codec.generated;
+public class ValueWriterBenchmark_jmh extends ValueWriterBenchmark_jmh_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.apache.qpid.framing.generated;
+public class FieldTableBenchmark_jmh extends FieldTableBenchmark_jmh_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.apache.qpid.server.exchange.generated;
+public class DirectExchangeBenchmark_jmh extends DirectExchangeBenchmark_jmh_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.apache.qpid.server.exchange.generated;
+public class HeadersExchangeBenchmark_jmh extends HeadersExchangeBenchmark_jmh_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.apache.qpid.server.exchange.generated;
+public class TopicExchangeBenchmark_jmh extends TopicExchangeBenchmark_jmh_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.apache.qpid.server.filter.generated;
+public class JMSSelectorFilterBenchmark_jmh extends JMSSelectorFilterBenchmark_jmh_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.apache.qpid.server.queue.generated;
+public class SortedQueueEntryListBenchmark_jmh extends SortedQueueEntryListBenchmark_jmh_B3 {
+}
+
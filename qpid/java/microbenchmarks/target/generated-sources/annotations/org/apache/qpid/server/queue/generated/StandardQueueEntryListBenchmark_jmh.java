@@ -0,0 +1,4 @@
+package org.apache.qpid.server.queue.generated;
+public class StandardQueueEntryListBenchmark_jmh extends StandardQueueEntryListBenchmark_jmh_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.apache.qpid.server.store.generated;
+public class MemoryMessageStoreBenchmark_jmh extends MemoryMessageStoreBenchmark_jmh_B3 {
+}
+
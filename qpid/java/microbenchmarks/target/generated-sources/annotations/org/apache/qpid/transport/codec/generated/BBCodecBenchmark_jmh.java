@@ -0,0 +1,4 @@
+package org.apache.qpid.transport.codec.generated;
+public class BBCodecBenchmark_jmh extends BBCodecBenchmark_jmh_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.openjdk.jmh.infra.generated;
+public class Blackhole_jmh extends Blackhole_jmh_B3 {
+}
+